@@ -0,0 +1,15 @@
+-- Audit trail of user actions (logins, purchases, menu access)
+-- Rows are written in batches by src/Util/AuditLogger.java
+USE StoreDB;
+
+CREATE TABLE IF NOT EXISTS AuditLog (
+    AuditID BIGINT AUTO_INCREMENT PRIMARY KEY,
+    UserID INT NOT NULL,
+    Action VARCHAR(50) NOT NULL,
+    Details VARCHAR(500) NOT NULL,
+    EventTime DATETIME(3) NOT NULL,
+    -- audit queries filter by user, by action or by time range
+    INDEX idx_audit_user_time (UserID, EventTime),
+    INDEX idx_audit_action_time (Action, EventTime),
+    INDEX idx_audit_time (EventTime)
+);
@@ -0,0 +1,16 @@
+-- Feed of product and stock changes shared by all application instances
+-- Rows are written in the same transaction as the change by src/Util/ChangeFeed.java,
+-- and every instance polls for rows written by the others
+USE StoreDB;
+
+CREATE TABLE IF NOT EXISTS ChangeLog (
+    ChangeID BIGINT AUTO_INCREMENT PRIMARY KEY,
+    ProductID VARCHAR(20) NOT NULL,
+    ChangeType VARCHAR(20) NOT NULL,
+    -- stock after the change, NULL when the change did not touch it
+    StockLevel INT NULL,
+    SourceNode VARCHAR(100) NOT NULL,
+    ChangeTime DATETIME(3) NOT NULL,
+    -- rows older than a day are deleted by time
+    INDEX idx_changelog_time (ChangeTime)
+);
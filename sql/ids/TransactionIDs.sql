@@ -0,0 +1,31 @@
+-- Purchase IDs made by the application (src/Util/IdGenerator.java) instead of AUTO_INCREMENT
+-- IDs are 64-bit: milliseconds since 2024-01-01, node number and sequence, so they are unique
+-- across shards and instances and sort by time. Run it on every shard before starting this
+-- version; the application refuses to start while the old column is in place
+USE StoreDB;
+
+ALTER TABLE Purchase MODIFY TransactionID BIGINT NOT NULL;
+
+DROP PROCEDURE IF EXISTS MakePurchase;
+DELIMITER //
+CREATE PROCEDURE MakePurchase(
+    IN p_transactionID BIGINT,
+    IN p_personID INT, 
+    IN p_productID VARCHAR(20), 
+    IN p_quantity INT
+)
+BEGIN
+    DECLARE current_quantity INT;
+    -- Check if sufficient stock is available 
+    SELECT ItemQuantity INTO current_quantity
+    FROM Products
+    WHERE ProductID = p_productID;
+    
+    IF current_quantity >= p_quantity THEN
+        INSERT INTO Purchase (TransactionID, PersonID, ProductID, Date, QuantityPurchased)
+        VALUES (p_transactionID, p_personID, p_productID, NOW(), p_quantity);
+    ELSE
+        SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = 'Insufficient stock';
+    END IF;
+END //
+DELIMITER ;
@@ -0,0 +1,16 @@
+-- Purchases made from the local checkout journal that the database refused when they were
+-- replayed, e.g. because the stock had run out meanwhile
+-- Written by src/Logic/CheckoutJournal.java; each one is a sale to settle with the customer
+USE StoreDB;
+
+CREATE TABLE IF NOT EXISTS CheckoutConflicts (
+    TransactionID BIGINT PRIMARY KEY,
+    PersonID INT NOT NULL,
+    ProductID VARCHAR(20) NOT NULL,
+    QuantityPurchased INT NOT NULL,
+    -- when the cashier made the sale
+    SaleTime DATETIME(3) NOT NULL,
+    Reason VARCHAR(200) NOT NULL,
+    ReportedAt DATETIME(3) NOT NULL,
+    INDEX idx_conflict_reported (ReportedAt)
+);
@@ -44,7 +44,7 @@ CREATE TABLE Products (
 
 
 CREATE TABLE Purchase (
-    TransactionID INT AUTO_INCREMENT PRIMARY KEY,
+    TransactionID BIGINT NOT NULL PRIMARY KEY, -- made by src/Util/IdGenerator.java
     PersonID INT NOT NULL,
     ProductID VARCHAR(20) NOT NULL,
     Date DATETIME NOT NULL,
@@ -53,6 +53,17 @@ CREATE TABLE Purchase (
     FOREIGN KEY (ProductID) REFERENCES Products(ProductID)
 );
 
+-- Feed of product and stock changes, written with each change by src/Util/ChangeFeed.java
+CREATE TABLE ChangeLog (
+    ChangeID BIGINT AUTO_INCREMENT PRIMARY KEY,
+    ProductID VARCHAR(20) NOT NULL,
+    ChangeType VARCHAR(20) NOT NULL,
+    StockLevel INT NULL,
+    SourceNode VARCHAR(100) NOT NULL,
+    ChangeTime DATETIME(3) NOT NULL,
+    INDEX idx_changelog_time (ChangeTime)
+);
+
 -- Inventory update trigger
 DELIMITER //
 CREATE TRIGGER update_inventory
@@ -67,6 +78,7 @@ DELIMITER ;
 -- stored procedure for making purchases 
 DELIMITER //
 CREATE PROCEDURE MakePurchase(
+    IN p_transactionID BIGINT,
     IN p_personID INT, 
     IN p_productID VARCHAR(20), 
     IN p_quantity INT
@@ -79,8 +91,8 @@ BEGIN
     WHERE ProductID = p_productID;
     
     IF current_quantity >= p_quantity THEN
-        INSERT INTO Purchase (PersonID, ProductID, Date, QuantityPurchased)
-        VALUES (p_personID, p_productID, NOW(), p_quantity);
+        INSERT INTO Purchase (TransactionID, PersonID, ProductID, Date, QuantityPurchased)
+        VALUES (p_transactionID, p_personID, p_productID, NOW(), p_quantity);
     ELSE
         SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = 'Insufficient stock';
     END IF;
@@ -188,55 +200,55 @@ INSERT INTO Products (ProductID, ItemName, ItemPrice, ItemQuantity) VALUES
 ('P030', 'WristBrace', 12.99, 33);
 
 -- Call is for testing stored procedures (Running these calls will affect the database values)
--- And populates rows in purchase table 
+-- And populates rows in purchase table, with TransactionIDs far below the generated ones 
 
-CALL MakePurchase(6,'P017',1);
-CALL MakePurchase(10,'P008',1);
-CALL MakePurchase(13,'P011',1);
-CALL MakePurchase(7,'P007',2);
-CALL MakePurchase(4,'P004',2);
-CALL MakePurchase(24,'P006',1);
-CALL MakePurchase(12,'P021',1);
-CALL MakePurchase(6,'P012',1);
-CALL MakePurchase(11,'P026',1);
-CALL MakePurchase(6,'P020',2);
-CALL MakePurchase(19,'P004',1);
-CALL MakePurchase(3,'P003',3);
-CALL MakePurchase(15,'P002',1);
-CALL MakePurchase(7,'P030',1);
-CALL MakePurchase(23,'P014',1);
-CALL MakePurchase(9,'P009',1);
-CALL MakePurchase(18,'P018',1);
-CALL MakePurchase(13,'P028',1);
-CALL MakePurchase(6,'P022',1);
-CALL MakePurchase(2,'P002',1);
-CALL MakePurchase(1,'P001',2);
-CALL MakePurchase(20,'P016',1);
-CALL MakePurchase(6,'P027',1);
-CALL MakePurchase(8,'P001',1);
-CALL MakePurchase(7,'P019',2);
-CALL MakePurchase(8,'P024',2);
-CALL MakePurchase(7,'P013',1);
-CALL MakePurchase(21,'P007',1);
-CALL MakePurchase(25,'P012',1);
-CALL MakePurchase(16,'P003',1);
-CALL MakePurchase(1,'P001',1);
-CALL MakePurchase(10,'P015',1);
-CALL MakePurchase(22,'P009',1);
-CALL MakePurchase(6,'P030',1);
-CALL MakePurchase(6,'P018',1);
-CALL MakePurchase(7,'P016',1);
-CALL MakePurchase(14,'P023',1);
-CALL MakePurchase(27,'P001',1);
-CALL MakePurchase(10,'P014',1);
-CALL MakePurchase(26,'P001',1);
-CALL MakePurchase(17,'P020',1);
-CALL MakePurchase(28,'P001',1);
-CALL MakePurchase(29,'P001',1);
-CALL MakePurchase(5,'P005',1);
-CALL MakePurchase(7,'P029',1);
-CALL MakePurchase(10,'P005',1);
-CALL MakePurchase(10,'P006',1);
-CALL MakePurchase(12,'P019',1);
-CALL MakePurchase(7,'P014',1);
-CALL MakePurchase(10,'P001',1);
+CALL MakePurchase(1,6,'P017',1);
+CALL MakePurchase(2,10,'P008',1);
+CALL MakePurchase(3,13,'P011',1);
+CALL MakePurchase(4,7,'P007',2);
+CALL MakePurchase(5,4,'P004',2);
+CALL MakePurchase(6,24,'P006',1);
+CALL MakePurchase(7,12,'P021',1);
+CALL MakePurchase(8,6,'P012',1);
+CALL MakePurchase(9,11,'P026',1);
+CALL MakePurchase(10,6,'P020',2);
+CALL MakePurchase(11,19,'P004',1);
+CALL MakePurchase(12,3,'P003',3);
+CALL MakePurchase(13,15,'P002',1);
+CALL MakePurchase(14,7,'P030',1);
+CALL MakePurchase(15,23,'P014',1);
+CALL MakePurchase(16,9,'P009',1);
+CALL MakePurchase(17,18,'P018',1);
+CALL MakePurchase(18,13,'P028',1);
+CALL MakePurchase(19,6,'P022',1);
+CALL MakePurchase(20,2,'P002',1);
+CALL MakePurchase(21,1,'P001',2);
+CALL MakePurchase(22,20,'P016',1);
+CALL MakePurchase(23,6,'P027',1);
+CALL MakePurchase(24,8,'P001',1);
+CALL MakePurchase(25,7,'P019',2);
+CALL MakePurchase(26,8,'P024',2);
+CALL MakePurchase(27,7,'P013',1);
+CALL MakePurchase(28,21,'P007',1);
+CALL MakePurchase(29,25,'P012',1);
+CALL MakePurchase(30,16,'P003',1);
+CALL MakePurchase(31,1,'P001',1);
+CALL MakePurchase(32,10,'P015',1);
+CALL MakePurchase(33,22,'P009',1);
+CALL MakePurchase(34,6,'P030',1);
+CALL MakePurchase(35,6,'P018',1);
+CALL MakePurchase(36,7,'P016',1);
+CALL MakePurchase(37,14,'P023',1);
+CALL MakePurchase(38,27,'P001',1);
+CALL MakePurchase(39,10,'P014',1);
+CALL MakePurchase(40,26,'P001',1);
+CALL MakePurchase(41,17,'P020',1);
+CALL MakePurchase(42,28,'P001',1);
+CALL MakePurchase(43,29,'P001',1);
+CALL MakePurchase(44,5,'P005',1);
+CALL MakePurchase(45,7,'P029',1);
+CALL MakePurchase(46,10,'P005',1);
+CALL MakePurchase(47,10,'P006',1);
+CALL MakePurchase(48,12,'P019',1);
+CALL MakePurchase(49,7,'P014',1);
+CALL MakePurchase(50,10,'P001',1);
@@ -255,5 +255,67 @@ BEGIN
 END //
 DELIMITER ;
 
+-- Create the AuditLog table for batched user action auditing
+CREATE TABLE IF NOT EXISTS AuditLog (
+    AuditID BIGINT AUTO_INCREMENT PRIMARY KEY,
+    UserID INT NOT NULL,
+    Action VARCHAR(50) NOT NULL,
+    Details VARCHAR(500) NOT NULL,
+    EventTime DATETIME(3) NOT NULL,
+    INDEX idx_audit_user_time (UserID, EventTime),
+    INDEX idx_audit_action_time (Action, EventTime),
+    INDEX idx_audit_time (EventTime)
+);
+
+-- Create the ChangeLog table for the change feed shared by application instances
+CREATE TABLE IF NOT EXISTS ChangeLog (
+    ChangeID BIGINT AUTO_INCREMENT PRIMARY KEY,
+    ProductID VARCHAR(20) NOT NULL,
+    ChangeType VARCHAR(20) NOT NULL,
+    StockLevel INT NULL,
+    SourceNode VARCHAR(100) NOT NULL,
+    ChangeTime DATETIME(3) NOT NULL,
+    INDEX idx_changelog_time (ChangeTime)
+);
+
+-- Take Purchase IDs from the application (src/Util/IdGenerator.java) instead of AUTO_INCREMENT
+ALTER TABLE Purchase MODIFY TransactionID BIGINT NOT NULL;
+
+DROP PROCEDURE IF EXISTS MakePurchase;
+DELIMITER //
+CREATE PROCEDURE MakePurchase(
+    IN p_transactionID BIGINT,
+    IN p_personID INT, 
+    IN p_productID VARCHAR(20), 
+    IN p_quantity INT
+)
+BEGIN
+    DECLARE current_quantity INT;
+    -- Check if sufficient stock is available 
+    SELECT ItemQuantity INTO current_quantity
+    FROM Products
+    WHERE ProductID = p_productID;
+    
+    IF current_quantity >= p_quantity THEN
+        INSERT INTO Purchase (TransactionID, PersonID, ProductID, Date, QuantityPurchased)
+        VALUES (p_transactionID, p_personID, p_productID, NOW(), p_quantity);
+    ELSE
+        SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = 'Insufficient stock';
+    END IF;
+END //
+DELIMITER ;
+
+-- Create the CheckoutConflicts table for journaled purchases the database refused
+CREATE TABLE IF NOT EXISTS CheckoutConflicts (
+    TransactionID BIGINT PRIMARY KEY,
+    PersonID INT NOT NULL,
+    ProductID VARCHAR(20) NOT NULL,
+    QuantityPurchased INT NOT NULL,
+    SaleTime DATETIME(3) NOT NULL,
+    Reason VARCHAR(200) NOT NULL,
+    ReportedAt DATETIME(3) NOT NULL,
+    INDEX idx_conflict_reported (ReportedAt)
+);
+
 -- Print completion message
 SELECT 'Database objects created successfully!' AS Message;
@@ -0,0 +1,15 @@
+-- Sequence of PersonIDs for customer sharding, kept on shard 0 (the main database)
+-- Created and seeded with the highest PersonID on any shard by src/Util/ShardRouter.java;
+-- each shard's own AUTO_INCREMENT would hand out IDs already used on the others
+USE StoreDB;
+
+CREATE TABLE IF NOT EXISTS PersonIdSequence (
+    Name VARCHAR(30) PRIMARY KEY,
+    LastID INT NOT NULL
+);
+
+-- IDs are taken with
+--   UPDATE PersonIdSequence SET LastID = LAST_INSERT_ID(LastID + 1) WHERE Name = 'Persons';
+--   SELECT LAST_INSERT_ID();
+INSERT IGNORE INTO PersonIdSequence (Name, LastID)
+SELECT 'Persons', COALESCE(MAX(PersonID), 0) FROM Persons;
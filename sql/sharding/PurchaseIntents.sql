@@ -0,0 +1,14 @@
+-- Stock taken for sharded purchases not yet known to be written, kept on shard 0 (the main database)
+-- Created by src/Util/ShardRouter.java. A row is added with the stock taken and removed once the
+-- purchase is on the customer's shard or the stock is back; src/Logic/PurchaseIntentResolver.java
+-- puts back the stock of rows left behind
+USE StoreDB;
+
+CREATE TABLE IF NOT EXISTS PurchaseIntents (
+    TransactionID BIGINT PRIMARY KEY,
+    PersonID INT NOT NULL,
+    ProductID VARCHAR(20) NOT NULL,
+    QuantityPurchased INT NOT NULL,
+    CreatedAt DATETIME(3) NOT NULL,
+    INDEX idx_intent_created (CreatedAt)
+);
@@ -1,6 +1,9 @@
 package src.Authentication;
 
 import src.Objects.Person;
+import src.Util.EventBus;
+import src.Util.Metrics;
+import src.Util.ShardRouter;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
@@ -10,13 +13,13 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Base64;
 
 public class AuthenticationService {
     private static String dbUrl; // database url
     private static String dbUser; // database username
     private static String dbPassword; // database password
-    private static Person currentUser = null; // currently authenticated user
 
     // sets the database connection information
     // @param url database url
@@ -53,7 +56,7 @@ public class AuthenticationService {
                         "ADD COLUMN password VARCHAR(64) NOT NULL DEFAULT '', " +
                         "ADD COLUMN salt VARCHAR(32) NOT NULL DEFAULT '', " +
                         "ADD COLUMN role ENUM('USER', 'ADMIN') NOT NULL DEFAULT 'USER'")) {
-                    stmt.executeUpdate();
+                    Metrics.timed("AddAuthColumns", stmt::executeUpdate);
                 }
                 
                 // create a default admin user
@@ -61,13 +64,13 @@ public class AuthenticationService {
                         "INSERT INTO Persons (FName, LName, Email, Phone, password, salt, role) " +
                         "VALUES ('Admin', 'User', 'admin@store.com', '000-000-0000', '', '', 'ADMIN') " +
                         "ON DUPLICATE KEY UPDATE role = 'ADMIN'")) {
-                    stmt.executeUpdate();
+                    Metrics.timed("CreateDefaultAdmin", stmt::executeUpdate);
                 }
                 
                 // update existing users to have the USER role
                 try (PreparedStatement stmt = conn.prepareStatement(
                         "UPDATE Persons SET role = 'USER' WHERE Email != 'admin@store.com'")) {
-                    stmt.executeUpdate();
+                    Metrics.timed("ResetUserRoles", stmt::executeUpdate);
                 }
                 
                 System.out.println("Database schema updated successfully.");
@@ -82,19 +85,46 @@ public class AuthenticationService {
         return java.sql.DriverManager.getConnection(dbUrl, dbUser, dbPassword);
     }
 
-    // authenticates a user with the provided email and password
+    // gets a connection to the database holding a user: the shard with the email when customers
+    // are sharded (see ShardRouter), otherwise the only database
+    // @param email user's email
+    // @return a connection; for an unknown email, one to the main database
+    // @throws SQLException if a database error occurs
+    private static Connection getConnection(String email) throws SQLException {
+        Connection shard = ShardRouter.isSharded() ? ShardRouter.connectionForEmail(email) : null;
+        return shard != null ? shard : getConnection();
+    }
+
+    // authenticates a user and makes them the user of the current thread's session
+    // any session already bound to the thread is closed first
     // @param email user's email
     // @param password user's password
     // @return true if authentication is successful, false otherwise
     public static boolean authenticate(String email, String password) {
+        Session session = login(email, password);
+        if (session == null) {
+            return false;
+        }
+        SessionManager.close(SessionManager.current());
+        SessionManager.bind(session);
+        return true;
+    }
+
+    // authenticates a user and opens a new session for them
+    // the session is not bound to any thread; front ends serving many users keep its token
+    // and look it up with SessionManager.get for each request
+    // @param email user's email
+    // @param password user's password
+    // @return the new session, or null if authentication failed
+    public static Session login(String email, String password) {
         String sql = "SELECT PersonID, FName, LName, Email, Phone, password, salt, role FROM Persons WHERE Email = ?";
 
-        try (Connection conn = getConnection();
+        try (Connection conn = getConnection(email);
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setString(1, email); // set the email parameter in the query
 
-            try (ResultSet rs = pstmt.executeQuery()) {
+            try (ResultSet rs = Metrics.timed("Authenticate", pstmt::executeQuery)) {
                 if (rs.next()) {
                     String storedPassword = rs.getString("password");
                     String salt = rs.getString("salt");
@@ -111,23 +141,22 @@ public class AuthenticationService {
                     // verify the password by hashing the input password with the stored salt
                     String hashedInputPassword = hashPassword(password, salt);
                     if (hashedInputPassword.equals(storedPassword)) {
-                        // create the user object and store it for the session
-                        currentUser = new Person(
+                        // create the user object and open a session for it
+                        return SessionManager.open(new Person(
                                 rs.getInt("PersonID"),
                                 rs.getString("FName"),
                                 rs.getString("LName"),
                                 rs.getString("Phone"),
                                 rs.getString("Email"),
                                 rs.getString("role")
-                        );
-                        return true;
+                        ));
                     }
                 }
             }
         } catch (SQLException | NoSuchAlgorithmException e) {
             System.err.println("Authentication error: " + e.getMessage());
         }
-        return false;
+        return null;
     }
 
     // registers a new user with the provided information
@@ -149,11 +178,15 @@ public class AuthenticationService {
             String salt = generateSalt();
             String hashedPassword = hashPassword(password, salt);
 
+            if (ShardRouter.isSharded()) {
+                return registerOnShard(firstName, lastName, email, phone, hashedPassword, salt);
+            }
+
             // insert new user with USER role by default
             String sql = "INSERT INTO Persons (FName, LName, Email, Phone, password, salt, role) VALUES (?, ?, ?, ?, ?, ?, 'USER')";
             
             try (Connection conn = getConnection();
-                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                 PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
                 
                 // set parameters for the insert query
                 pstmt.setString(1, firstName);
@@ -163,7 +196,14 @@ public class AuthenticationService {
                 pstmt.setString(5, hashedPassword);
                 pstmt.setString(6, salt);
                 
-                int rowsAffected = pstmt.executeUpdate();
+                int rowsAffected = Metrics.timed("RegisterUser", pstmt::executeUpdate);
+                if (rowsAffected > 0) {
+                    try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                        if (generatedKeys.next()) {
+                            EventBus.customerRegistered(generatedKeys.getInt(1));
+                        }
+                    }
+                }
                 return rowsAffected > 0;
             }
         } catch (SQLException | NoSuchAlgorithmException e) {
@@ -172,6 +212,38 @@ public class AuthenticationService {
         }
     }
 
+    // registers a new user when customers are sharded: the ID is taken first, since it decides the shard
+    // @param firstName first name
+    // @param lastName last name
+    // @param email email
+    // @param phone phone number
+    // @param hashedPassword hashed password
+    // @param salt salt used for hashing
+    // @return true if registration is successful
+    // @throws SQLException if a database error occurs
+    private static boolean registerOnShard(String firstName, String lastName, String email, String phone,
+                                           String hashedPassword, String salt) throws SQLException {
+        int personId = ShardRouter.nextPersonId();
+        String sql = "INSERT INTO Persons (PersonID, FName, LName, Email, Phone, password, salt, role) VALUES (?, ?, ?, ?, ?, ?, ?, 'USER')";
+
+        try (Connection conn = ShardRouter.connectionFor(personId);
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, personId);
+            pstmt.setString(2, firstName);
+            pstmt.setString(3, lastName);
+            pstmt.setString(4, email);
+            pstmt.setString(5, phone);
+            pstmt.setString(6, hashedPassword);
+            pstmt.setString(7, salt);
+
+            boolean registered = Metrics.timed("RegisterUser", pstmt::executeUpdate) > 0;
+            if (registered) {
+                EventBus.customerRegistered(personId);
+            }
+            return registered;
+        }
+    }
+
     // updates a user's password
     // @param email user's email
     // @param hashedPassword hashed password
@@ -180,7 +252,7 @@ public class AuthenticationService {
     private static void updatePassword(String email, String hashedPassword, String salt) throws SQLException {
         String sql = "UPDATE Persons SET password = ?, salt = ? WHERE Email = ?";
         
-        try (Connection conn = getConnection();
+        try (Connection conn = getConnection(email);
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             // set parameters for the update query
@@ -188,7 +260,7 @@ public class AuthenticationService {
             pstmt.setString(2, salt);
             pstmt.setString(3, email);
             
-            pstmt.executeUpdate();
+            Metrics.timed("UpdatePassword", pstmt::executeUpdate);
         }
     }
 
@@ -197,6 +269,10 @@ public class AuthenticationService {
     // @return true if email exists, false otherwise
     // @throws SQLException if a database error occurs
     private static boolean emailExists(String email) throws SQLException {
+        if (ShardRouter.isSharded()) {
+            // emails must be unique across all shards
+            return ShardRouter.shardOfEmail(email) >= 0;
+        }
         String sql = "SELECT COUNT(*) FROM Persons WHERE Email = ?";
         
         try (Connection conn = getConnection();
@@ -204,7 +280,7 @@ public class AuthenticationService {
             
             pstmt.setString(1, email);
             
-            try (ResultSet rs = pstmt.executeQuery()) {
+            try (ResultSet rs = Metrics.timed("EmailExists", pstmt::executeQuery)) {
                 if (rs.next()) {
                     return rs.getInt(1) > 0; // if count > 0, email exists
                 }
@@ -227,33 +303,36 @@ public class AuthenticationService {
     // @param salt salt to use for hashing
     // @return hashed password
     // @throws NoSuchAlgorithmException if SHA-256 is not available
-    private static String hashPassword(String password, String salt) throws NoSuchAlgorithmException {
+    public static String hashPassword(String password, String salt) throws NoSuchAlgorithmException {
         MessageDigest md = MessageDigest.getInstance("SHA-256"); // use SHA-256 algorithm
         md.update(Base64.getDecoder().decode(salt)); // add the salt to the digest
         byte[] hashedPassword = md.digest(password.getBytes(StandardCharsets.UTF_8)); // hash the password
         return Base64.getEncoder().encodeToString(hashedPassword); // encode as base64 string
     }
 
-    // gets the currently authenticated user
+    // gets the user of the session bound to the current thread
     // @return the current user, or null if no user is authenticated
     public static Person getCurrentUser() {
-        return currentUser;
+        Session session = SessionManager.current();
+        return session != null ? session.getUser() : null;
     }
 
-    // logs out the current user
+    // logs out the current user, closing the session bound to the current thread
     public static void logout() {
-        currentUser = null; // clear the current user
+        SessionManager.close(SessionManager.current());
+        SessionManager.bind(null);
     }
 
     // checks if the current user has admin role
     // @return true if the current user is an admin, false otherwise
     public static boolean isAdmin() {
-        return currentUser != null && "ADMIN".equals(currentUser.getRole());
+        Session session = SessionManager.current();
+        return session != null && session.isAdmin();
     }
 
     // checks if a user is currently authenticated
     // @return true if a user is authenticated, false otherwise
     public static boolean isAuthenticated() {
-        return currentUser != null;
+        return SessionManager.current() != null;
     }
 }
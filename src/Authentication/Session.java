@@ -0,0 +1,120 @@
+package src.Authentication;
+
+import src.Objects.Person;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// everything that belongs to one logged-in user at one terminal
+// sessions are created by SessionManager when a user logs in and may be used from several
+// threads at once (a menu thread and its background tasks), so all state here is thread safe
+public class Session {
+    private final String id;
+    private final Person user;
+    private final long createdAt;
+    private volatile long lastAccess;
+    private volatile long lastWrite; // when the session last changed data, 0 if never
+    private final Map<String, String> preferences = new ConcurrentHashMap<>();
+    private final Map<String, Object> cache = new ConcurrentHashMap<>();
+
+    // constructor
+    // @param id random session token
+    // @param user the authenticated user
+    Session(String id, Person user) {
+        this.id = id;
+        this.user = user;
+        this.createdAt = System.currentTimeMillis();
+        this.lastAccess = createdAt;
+    }
+
+    public String getId() { return id; }
+    public Person getUser() { return user; }
+    public int getUserId() { return user.getPersonID(); }
+    public long getCreatedAt() { return createdAt; }
+    public long getLastAccess() { return lastAccess; }
+    public long getLastWrite() { return lastWrite; }
+
+    // check if the session's user has admin role
+    // @return true if the user is an admin
+    public boolean isAdmin() {
+        return "ADMIN".equals(user.getRole());
+    }
+
+    // get a preference of this session, such as the page size
+    // @param key preference name
+    // @param defaultValue value to use when the preference is not set
+    // @return the preference value
+    public String getPreference(String key, String defaultValue) {
+        return preferences.getOrDefault(key, defaultValue);
+    }
+
+    // get a numeric preference of this session
+    // @param key preference name
+    // @param defaultValue value to use when the preference is not set or not a number
+    // @return the preference value
+    public int getIntPreference(String key, int defaultValue) {
+        String value = preferences.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    // set a preference of this session
+    // @param key preference name
+    // @param value preference value, or null to clear it
+    public void setPreference(String key, String value) {
+        if (value == null) {
+            preferences.remove(key);
+        } else {
+            preferences.put(key, value);
+        }
+    }
+
+    // get a value cached for this session
+    // the cache lives as long as the session and is not shared with other sessions
+    // @param key cache key
+    // @return the cached value, or null if nothing is cached under the key
+    @SuppressWarnings("unchecked")
+    public <T> T getCached(String key) {
+        return (T) cache.get(key);
+    }
+
+    // cache a value for this session
+    // @param key cache key
+    // @param value the value, not null
+    public void putCached(String key, Object value) {
+        cache.put(key, value);
+    }
+
+    // remove a cached value
+    // @param key cache key
+    public void invalidate(String key) {
+        cache.remove(key);
+    }
+
+    // record that the session is changing data now, so its reads go to the primary database
+    // for a while (see ConnectionRouter)
+    public void markWrite() {
+        lastWrite = System.currentTimeMillis();
+    }
+
+    // record that the session was used now
+    void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+
+    // clear the session's cached data when it ends
+    void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "Session of user " + user.getPersonID() + " (" + user.getRole() + ")";
+    }
+}
@@ -0,0 +1,146 @@
+package src.Authentication;
+
+import src.Objects.Person;
+import src.Util.Logger;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// keeps track of the logged-in sessions of the process
+// any number of sessions can be open at once, one per terminal or client, and each is
+// looked up by its random token. a session is bound to the thread working for it, so code
+// deep in the call chain (permission checks, audit logging) finds the right user through
+// AuthenticationService.getCurrentUser() without it being passed down every method.
+// services that hand work to other threads carry the session across with callAs
+//
+// sessions idle for longer than storedb.session.idle-minutes (30 by default) are closed;
+// expired sessions are swept lazily when sessions are opened or looked up
+public class SessionManager {
+    private static final long IDLE_TIMEOUT_MS =
+            TimeUnit.MINUTES.toMillis(Long.getLong("storedb.session.idle-minutes", 30));
+    private static final long SWEEP_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Session> boundSession = new ThreadLocal<>();
+    private static final SecureRandom random = new SecureRandom();
+    private static volatile long lastSweep = System.currentTimeMillis();
+
+    // open a session for an authenticated user
+    // @param user the user
+    // @return the new session
+    public static Session open(Person user) {
+        sweepIfDue();
+        byte[] token = new byte[24];
+        random.nextBytes(token);
+        Session session = new Session(Base64.getUrlEncoder().withoutPadding().encodeToString(token), user);
+        sessions.put(session.getId(), session);
+        Logger.log(Logger.INFO, "Opened session for user {} ({} active)", user.getPersonID(), sessions.size());
+        return session;
+    }
+
+    // look up an open session by its token
+    // @param sessionId the session token
+    // @return the session, or null if it does not exist or has expired
+    public static Session get(String sessionId) {
+        sweepIfDue();
+        if (sessionId == null) {
+            return null;
+        }
+        Session session = sessions.get(sessionId);
+        if (session == null) {
+            return null;
+        }
+        if (isExpired(session, System.currentTimeMillis())) {
+            close(session);
+            return null;
+        }
+        session.touch();
+        return session;
+    }
+
+    // close a session; work already running for it finishes, but it can no longer be looked up
+    // @param session the session, may be null
+    public static void close(Session session) {
+        if (session != null && sessions.remove(session.getId(), session)) {
+            session.clear();
+            Logger.log(Logger.INFO, "Closed session for user {} ({} active)", session.getUserId(), sessions.size());
+        }
+    }
+
+    // bind a session to the current thread
+    // @param session the session, or null to unbind
+    public static void bind(Session session) {
+        if (session == null) {
+            boundSession.remove();
+        } else {
+            session.touch();
+            boundSession.set(session);
+        }
+    }
+
+    // get the session bound to the current thread
+    // @return the session, or null if none is bound
+    public static Session current() {
+        return boundSession.get();
+    }
+
+    // run a task with a session bound to the current thread, restoring the previous binding after
+    // @param session the session to run as, may be null
+    // @param task the task
+    // @return the task's result
+    // @throws Exception whatever the task throws
+    public static <T> T callAs(Session session, Callable<T> task) throws Exception {
+        Session previous = boundSession.get();
+        bind(session);
+        try {
+            return task.call();
+        } finally {
+            bind(previous);
+        }
+    }
+
+    // wrap a task so it runs with a session bound, whichever thread ends up running it
+    // @param session the session to run as, may be null
+    // @param task the task
+    // @return the wrapped task
+    public static <T> Callable<T> wrap(Session session, Callable<T> task) {
+        return () -> callAs(session, task);
+    }
+
+    // get the open sessions
+    // @return a snapshot of the sessions
+    public static List<Session> getActiveSessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    // close every session that has been idle for too long
+    // @return the number of sessions closed
+    public static int expireIdleSessions() {
+        long now = System.currentTimeMillis();
+        lastSweep = now;
+        int expired = 0;
+        for (Session session : sessions.values()) {
+            if (isExpired(session, now)) {
+                close(session);
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    private static boolean isExpired(Session session, long now) {
+        return now - session.getLastAccess() > IDLE_TIMEOUT_MS;
+    }
+
+    private static void sweepIfDue() {
+        if (System.currentTimeMillis() - lastSweep > SWEEP_INTERVAL_MS) {
+            expireIdleSessions();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package src.Benchmark;
+
+import src.Util.LatencyHistogram;
+
+import java.lang.management.ManagementFactory;
+
+// small single-threaded micro-benchmark harness
+// each benchmark is warmed up for a fixed time so the jit has compiled the hot path,
+// then measured over several timed iterations; every call's latency goes into a
+// LatencyHistogram and the bytes allocated by the benchmark thread are read from the
+// ThreadMXBean, so one run reports throughput, latency percentiles and allocation rate
+public class BenchmarkHarness {
+    private final long warmupNanos;
+    private final long iterationNanos;
+    private final int iterations;
+    private final com.sun.management.ThreadMXBean threadBean;
+
+    // sink to keep the jit from removing the benchmarked work
+    private static volatile Object blackhole;
+
+    // one benchmarked operation
+    // @param i invocation counter, useful for cycling through test data
+    public interface Operation {
+        Object run(int i) throws Exception;
+    }
+
+    // constructor
+    // @param warmupSeconds seconds to run each benchmark before measuring
+    // @param iterationSeconds length of each measured iteration
+    // @param iterations number of measured iterations
+    public BenchmarkHarness(int warmupSeconds, int iterationSeconds, int iterations) {
+        this.warmupNanos = warmupSeconds * 1_000_000_000L;
+        this.iterationNanos = iterationSeconds * 1_000_000_000L;
+        this.iterations = iterations;
+        this.threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (threadBean.isThreadAllocatedMemorySupported()) {
+            threadBean.setThreadAllocatedMemoryEnabled(true);
+        }
+    }
+
+    // warm up and measure one benchmark
+    // @param name display name of the benchmark
+    // @param operation the operation under test
+    // @return the measured result
+    // @throws Exception if the operation fails
+    public Result run(String name, Operation operation) throws Exception {
+        int counter = 0;
+
+        long warmupEnd = System.nanoTime() + warmupNanos;
+        while (System.nanoTime() < warmupEnd) {
+            blackhole = operation.run(counter++);
+        }
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = allocatedBytes(threadId);
+        long measuredNanos = 0;
+        double bestThroughput = 0;
+        double worstThroughput = Double.MAX_VALUE;
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            long operations = 0;
+            long iterationStart = System.nanoTime();
+            long iterationEnd = iterationStart + iterationNanos;
+            long now = iterationStart;
+
+            while (now < iterationEnd) {
+                long start = now;
+                blackhole = operation.run(counter++);
+                now = System.nanoTime();
+                histogram.record(now - start);
+                operations++;
+            }
+
+            long elapsed = now - iterationStart;
+            measuredNanos += elapsed;
+            double throughput = operations * 1_000_000_000.0 / elapsed;
+            bestThroughput = Math.max(bestThroughput, throughput);
+            worstThroughput = Math.min(worstThroughput, throughput);
+        }
+
+        long bytes = allocatedBytes(threadId) - bytesBefore;
+        return new Result(name, histogram.snapshot(), measuredNanos, bytes, bestThroughput, worstThroughput);
+    }
+
+    // print the column headings for results
+    public static void printHeader() {
+        System.out.printf("%-36s %12s %10s %10s %10s %10s %12s %12s%n",
+                "Benchmark", "ops/s", "+/-%", "p50(us)", "p99(us)", "max(us)", "B/op", "MB/s");
+        System.out.println("-".repeat(130));
+    }
+
+    // read the bytes allocated so far by a thread
+    // @param threadId the thread
+    // @return allocated bytes, or -1 if the jvm cannot report them
+    private long allocatedBytes(long threadId) {
+        return threadBean.isThreadAllocatedMemorySupported() ? threadBean.getThreadAllocatedBytes(threadId) : -1;
+    }
+
+    // measured result of one benchmark
+    public static class Result {
+        private final String name;
+        private final LatencyHistogram.Snapshot latency;
+        private final long measuredNanos;
+        private final long allocatedBytes;
+        private final double bestThroughput;
+        private final double worstThroughput;
+
+        Result(String name, LatencyHistogram.Snapshot latency, long measuredNanos, long allocatedBytes,
+               double bestThroughput, double worstThroughput) {
+            this.name = name;
+            this.latency = latency;
+            this.measuredNanos = measuredNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.bestThroughput = bestThroughput;
+            this.worstThroughput = worstThroughput;
+        }
+
+        public String getName() { return name; }
+        public LatencyHistogram.Snapshot getLatency() { return latency; }
+
+        // get the mean throughput over all measured iterations
+        // @return operations per second
+        public double getThroughput() {
+            return measuredNanos == 0 ? 0 : latency.getCount() * 1_000_000_000.0 / measuredNanos;
+        }
+
+        // get the bytes allocated per operation
+        // @return bytes per operation, or -1 if allocation could not be measured
+        public double getBytesPerOperation() {
+            return allocatedBytes < 0 || latency.getCount() == 0 ? -1 : (double) allocatedBytes / latency.getCount();
+        }
+
+        // get the allocation rate over the measured time
+        // @return megabytes allocated per second, or -1 if allocation could not be measured
+        public double getAllocationRate() {
+            return allocatedBytes < 0 || measuredNanos == 0 ? -1 : allocatedBytes * 1000.0 / measuredNanos / 1.048576;
+        }
+
+        // print this result as one table row
+        // the +/- column is half the spread between the best and worst iteration
+        public void print() {
+            double throughput = getThroughput();
+            double spread = throughput == 0 ? 0 : (bestThroughput - worstThroughput) / 2 / throughput * 100;
+            System.out.printf("%-36s %12.1f %10.1f %10.1f %10.1f %10.1f %12.1f %12.1f%n",
+                    name, throughput, spread,
+                    latency.getPercentileNanos(50) / 1000.0,
+                    latency.getPercentileNanos(99) / 1000.0,
+                    latency.getMaxNanos() / 1000.0,
+                    getBytesPerOperation(), getAllocationRate());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package src.Benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// command line options for the benchmark tools, given as --name value pairs
+// a bare --name with no value is treated as a flag set to true
+public class BenchmarkOptions {
+    // same defaults as the application
+    private static final String DEFAULT_URL = "jdbc:mysql://localhost:3306/storedb";
+    private static final String DEFAULT_USER = "root";
+    private static final String DEFAULT_PASSWORD = "password";
+
+    private final Map<String, String> values = new HashMap<>();
+
+    // constructor
+    // @param args the command line arguments
+    // @throws IllegalArgumentException if an argument is not an option
+    public BenchmarkOptions(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            String name = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                values.put(name, args[++i]);
+            } else {
+                values.put(name, "true");
+            }
+        }
+    }
+
+    public String getUrl() { return getString("url", DEFAULT_URL); }
+    public String getUser() { return getString("user", DEFAULT_USER); }
+    public String getPassword() { return getString("password", DEFAULT_PASSWORD); }
+
+    // get a text option
+    // @param name option name without the leading dashes
+    // @param defaultValue value to use when the option is missing
+    // @return the option value
+    public String getString(String name, String defaultValue) {
+        return values.getOrDefault(name, defaultValue);
+    }
+
+    // get a whole number option
+    // @param name option name without the leading dashes
+    // @param defaultValue value to use when the option is missing
+    // @return the option value
+    // @throws IllegalArgumentException if the value is not a number
+    public int getInt(String name, int defaultValue) {
+        return (int) getLong(name, defaultValue);
+    }
+
+    // get a whole number option
+    // @param name option name without the leading dashes
+    // @param defaultValue value to use when the option is missing
+    // @return the option value
+    // @throws IllegalArgumentException if the value is not a number
+    public long getLong(String name, long defaultValue) {
+        String value = values.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option --" + name + " expects a number but got: " + value);
+        }
+    }
+
+    // get a decimal option
+    // @param name option name without the leading dashes
+    // @param defaultValue value to use when the option is missing
+    // @return the option value
+    // @throws IllegalArgumentException if the value is not a number
+    public double getDouble(String name, double defaultValue) {
+        String value = values.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option --" + name + " expects a number but got: " + value);
+        }
+    }
+
+    // check whether a flag was given
+    // @param name option name without the leading dashes
+    // @return true if the flag is present and not set to false
+    public boolean has(String name) {
+        String value = values.get(name);
+        return value != null && !"false".equalsIgnoreCase(value);
+    }
+}
@@ -0,0 +1,431 @@
+package src.Benchmark;
+
+import src.Logic.OptimizedCompleteTransactions;
+import src.Logic.OptimizedCustomerHistory;
+import src.Logic.OptimizedManageProducts;
+import src.Util.ChangeFeed;
+import src.Util.LatencyHistogram;
+import src.Util.Logger;
+import src.Util.Metrics;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// load generator simulating concurrent cashiers at checkout terminals
+// each cashier repeatedly picks a purchase, product search or purchase history lookup
+// from a weighted mix and runs it through the optimized services
+//
+// arrivals are open-loop: every cashier follows its own Poisson schedule of intended
+// start times, fixed before the run, and latency is measured from the intended start
+// rather than from when the call actually began. when the database falls behind, the
+// time a request would have waited is counted instead of being hidden by the slower
+// request rate (coordinated omission). service time (actual start to end) is reported
+// alongside so queueing and database time can be told apart
+//
+// at the end the stock of every product the run touched is checked against the
+// purchases the cashiers saw succeed and the Purchase rows the run inserted
+//
+// usage:
+// java -cp .:lib/mysql-connector-j-9.1.0.jar src.Benchmark.CheckoutLoadGenerator
+//      [--url jdbc:mysql://localhost:3306/storedb] [--user root] [--password password]
+//      [--cashiers 20] [--rate 50 | --think-ms 400] [--duration 60]
+//      [--mix purchase:60,search:30,history:10] [--products 500] [--customers 500]
+//      [--seed 42] [--virtual]
+public class CheckoutLoadGenerator {
+    private static final String PURCHASE = "purchase";
+    private static final String SEARCH = "search";
+    private static final String HISTORY = "history";
+    private static final String[] OPERATIONS = {PURCHASE, SEARCH, HISTORY};
+
+    private static final int HISTORY_PAGE_SIZE = 10;
+    private static final int PROGRESS_INTERVAL_SECONDS = 5;
+
+    // settings
+    private final BenchmarkOptions options;
+    private final int cashiers;
+    private final double meanThinkNanos;
+    private final long durationNanos;
+    private final int[] cumulativeWeights = new int[OPERATIONS.length];
+    private final long seed;
+
+    // test data
+    private final List<String> productIds = new ArrayList<>();
+    private final List<String> searchTerms = new ArrayList<>();
+    private final List<Integer> customerIds = new ArrayList<>();
+    private final Map<String, Integer> initialStock = new HashMap<>();
+    private long lastTransactionIdBefore;
+
+    // results
+    private final Map<String, LatencyHistogram> responseTimes = new HashMap<>();
+    private final Map<String, LatencyHistogram> serviceTimes = new HashMap<>();
+    private final Map<String, LongAdder> failures = new HashMap<>();
+    private final Map<String, LongAdder> purchasedByProduct = new ConcurrentHashMap<>();
+    private final LongAdder lateStarts = new LongAdder();
+
+    // constructor
+    // @param options command line options
+    // @throws IllegalArgumentException if an option is invalid
+    public CheckoutLoadGenerator(BenchmarkOptions options) {
+        this.options = options;
+        this.cashiers = options.getInt("cashiers", 20);
+        this.durationNanos = options.getLong("duration", 60) * 1_000_000_000L;
+        this.seed = options.getLong("seed", 42);
+
+        // a total arrival rate is spread evenly over the cashiers
+        double rate = options.getDouble("rate", 0);
+        double thinkMillis = rate > 0 ? cashiers * 1000.0 / rate : options.getDouble("think-ms", 400);
+        if (cashiers <= 0 || thinkMillis <= 0 || durationNanos <= 0) {
+            throw new IllegalArgumentException("Cashiers, rate/think time and duration must be positive");
+        }
+        this.meanThinkNanos = thinkMillis * 1_000_000;
+
+        parseMix(options.getString("mix", "purchase:60,search:30,history:10"));
+        for (String operation : OPERATIONS) {
+            responseTimes.put(operation, new LatencyHistogram());
+            serviceTimes.put(operation, new LatencyHistogram());
+            failures.put(operation, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) {
+        CheckoutLoadGenerator generator;
+        try {
+            generator = new CheckoutLoadGenerator(new BenchmarkOptions(args));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+
+        Logger.init();
+        Logger.setLevel(Logger.WARNING);
+        try {
+            generator.run();
+        } catch (Exception e) {
+            System.err.println("Load test failed: " + e.getMessage());
+        } finally {
+            Logger.close();
+        }
+    }
+
+    // load the test data, drive the load and print the report
+    // @throws Exception if setup, the run or the consistency check fails
+    public void run() throws Exception {
+        String url = options.getUrl();
+        OptimizedManageProducts.setConnectionInfo(url, options.getUser(), options.getPassword());
+        OptimizedCompleteTransactions.setConnectionInfo(url, options.getUser(), options.getPassword());
+        OptimizedCustomerHistory.setConnectionInfo(url, options.getUser(), options.getPassword());
+        // purchases and product writes add to the ChangeLog, created here on older databases
+        ChangeFeed.setConnectionInfo(url, options.getUser(), options.getPassword());
+
+        loadTestData(options.getInt("products", 500), options.getInt("customers", 500));
+        Metrics.reset();
+
+        System.out.printf("Running %d cashiers for %d s, mean think time %.0f ms (%.1f arrivals/s)%n",
+                cashiers, durationNanos / 1_000_000_000L, meanThinkNanos / 1_000_000,
+                cashiers * 1_000_000_000.0 / meanThinkNanos);
+
+        // the services report to the console on every call, silence that while the load runs
+        PrintStream console = System.out;
+        PrintStream errors = System.err;
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(discard);
+        System.setErr(discard);
+
+        long start = System.nanoTime();
+        ExecutorService executor = Workers.newExecutor(options.has("virtual"), cashiers, "cashier", console);
+        try {
+            for (int i = 0; i < cashiers; i++) {
+                SplittableRandom random = new SplittableRandom(seed + i);
+                executor.execute(() -> runCashier(random, start, start + durationNanos));
+            }
+            executor.shutdown();
+
+            while (!executor.awaitTermination(PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS)) {
+                printProgress(console, System.nanoTime() - start);
+            }
+        } finally {
+            executor.shutdownNow();
+            System.setOut(console);
+            System.setErr(errors);
+        }
+
+        printReport(System.nanoTime() - start);
+        checkStockConsistency();
+    }
+
+    // one cashier: wait for each scheduled arrival, then run an operation from the mix
+    // @param random this cashier's random source
+    // @param start when the run started
+    // @param end when the run ends
+    private void runCashier(SplittableRandom random, long start, long end) {
+        long intended = start + nextThinkTime(random);
+
+        while (intended < end && !Thread.currentThread().isInterrupted()) {
+            long now = System.nanoTime();
+            if (now < intended) {
+                LockSupport.parkNanos(intended - now);
+                continue; // re-check, park can return early
+            }
+            if (now - intended > 1_000_000) {
+                lateStarts.increment(); // more than 1 ms behind schedule
+            }
+
+            String operation = pickOperation(random);
+            boolean ok;
+            try {
+                ok = execute(operation, random);
+            } catch (Exception e) {
+                ok = false;
+            }
+            long finished = System.nanoTime();
+
+            responseTimes.get(operation).record(finished - intended);
+            serviceTimes.get(operation).record(finished - now);
+            if (!ok) {
+                failures.get(operation).increment();
+            }
+
+            // the next arrival is scheduled from the previous one, not from when this call finished
+            intended += nextThinkTime(random);
+        }
+    }
+
+    // run one operation
+    // @param operation the operation name
+    // @param random source for the operation's parameters
+    // @return true if the operation succeeded
+    // @throws SQLException if a database error occurs
+    private boolean execute(String operation, SplittableRandom random) throws SQLException {
+        switch (operation) {
+            case PURCHASE -> {
+                String productId = productIds.get(random.nextInt(productIds.size()));
+                int customerId = customerIds.get(random.nextInt(customerIds.size()));
+                boolean ok = OptimizedCompleteTransactions.makePurchase(customerId, productId, 1);
+                if (ok) {
+                    purchasedByProduct.computeIfAbsent(productId, id -> new LongAdder()).increment();
+                }
+                return ok;
+            }
+            case SEARCH -> {
+                // each filter is used on about half of the searches
+                String name = random.nextBoolean() ? searchTerms.get(random.nextInt(searchTerms.size())) : null;
+                Float minPrice = random.nextBoolean() ? 10f : null;
+                Float maxPrice = random.nextBoolean() ? 200f : null;
+                OptimizedManageProducts.findProducts(name, minPrice, maxPrice, random.nextBoolean());
+                return true;
+            }
+            default -> {
+                int customerId = customerIds.get(random.nextInt(customerIds.size()));
+                OptimizedCustomerHistory.fetchPurchaseHistory(customerId, 1, HISTORY_PAGE_SIZE);
+                return true;
+            }
+        }
+    }
+
+    // load products, customers and the starting stock used by the run
+    // @param productLimit maximum number of in-stock products to use
+    // @param customerLimit maximum number of customers to use
+    // @throws SQLException if a database error occurs or there is no data to use
+    private void loadTestData(int productLimit, int customerLimit) throws SQLException {
+        try (Connection conn = getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT ProductID, ItemName, ItemQuantity FROM Products WHERE ItemQuantity > 0 ORDER BY ProductID LIMIT ?")) {
+                stmt.setInt(1, productLimit);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        productIds.add(rs.getString("ProductID"));
+                        initialStock.put(rs.getString("ProductID"), rs.getInt("ItemQuantity"));
+                        String name = rs.getString("ItemName");
+                        int space = name.indexOf(' ');
+                        searchTerms.add(space > 0 ? name.substring(0, space) : name);
+                    }
+                }
+            }
+
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT PersonID FROM Persons ORDER BY PersonID LIMIT ?")) {
+                stmt.setInt(1, customerLimit);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        customerIds.add(rs.getInt("PersonID"));
+                    }
+                }
+            }
+
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(TransactionID), 0) FROM Purchase")) {
+                lastTransactionIdBefore = rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+
+        if (productIds.isEmpty() || customerIds.isEmpty()) {
+            throw new SQLException("The database needs at least one in-stock product and one customer");
+        }
+        System.out.println("Using " + productIds.size() + " products and " + customerIds.size() + " customers");
+    }
+
+    // compare final stock with the purchases made during the run
+    // for every product: starting stock - final stock must equal both the purchases the
+    // cashiers saw succeed and the Purchase rows inserted since the run started
+    // @throws SQLException if a database error occurs
+    private void checkStockConsistency() throws SQLException {
+        Map<String, Long> insertedByProduct = new HashMap<>();
+        Map<String, Integer> finalStock = new HashMap<>();
+
+        try (Connection conn = getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT ProductID, SUM(QuantityPurchased) AS Purchased FROM Purchase WHERE TransactionID > ? GROUP BY ProductID")) {
+                stmt.setLong(1, lastTransactionIdBefore);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        insertedByProduct.put(rs.getString("ProductID"), rs.getLong("Purchased"));
+                    }
+                }
+            }
+
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT ItemQuantity FROM Products WHERE ProductID = ?")) {
+                for (String productId : productIds) {
+                    stmt.setString(1, productId);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        finalStock.put(productId, rs.next() ? rs.getInt(1) : -1);
+                    }
+                }
+            }
+        }
+
+        System.out.println("\n--- Stock Consistency ---");
+        int mismatches = 0;
+        for (String productId : productIds) {
+            long stockDrop = initialStock.get(productId) - (long) finalStock.get(productId);
+            long seen = purchasedByProduct.containsKey(productId) ? purchasedByProduct.get(productId).sum() : 0;
+            long inserted = insertedByProduct.getOrDefault(productId, 0L);
+
+            if (finalStock.get(productId) < 0 || stockDrop != seen || stockDrop != inserted) {
+                mismatches++;
+                if (mismatches <= 10) {
+                    System.out.printf("  %s: stock %d -> %d, successful purchases %d, purchase rows %d%n",
+                            productId, initialStock.get(productId), finalStock.get(productId), seen, inserted);
+                }
+            }
+        }
+
+        if (mismatches == 0) {
+            System.out.println("OK: stock matches purchases for all " + productIds.size() + " products");
+        } else {
+            System.out.println("FAILED: " + mismatches + " products do not match "
+                    + "(purchases made outside this run also show up here)");
+        }
+    }
+
+    // print a one line progress summary
+    // @param console stream to print to
+    // @param elapsedNanos time since the run started
+    private void printProgress(PrintStream console, long elapsedNanos) {
+        long completed = 0;
+        long failed = 0;
+        for (String operation : OPERATIONS) {
+            completed += responseTimes.get(operation).snapshot().getCount();
+            failed += failures.get(operation).sum();
+        }
+        console.printf("[%3d s] %d operations, %d failed, %d late starts%n",
+                elapsedNanos / 1_000_000_000L, completed, failed, lateStarts.sum());
+    }
+
+    // print throughput and latency per operation
+    // @param elapsedNanos length of the run
+    private void printReport(long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+
+        System.out.println("\n--- Load Test Results ---");
+        System.out.printf("%-10s %8s %7s %9s | %-35s | %-35s%n", "Operation", "Count", "Failed", "ops/s",
+                "response ms (p50 / p95 / p99 / max)", "service ms (p50 / p95 / p99 / max)");
+        System.out.println("-".repeat(115));
+
+        long total = 0;
+        long totalFailed = 0;
+        for (String operation : OPERATIONS) {
+            LatencyHistogram.Snapshot response = responseTimes.get(operation).snapshot();
+            LatencyHistogram.Snapshot service = serviceTimes.get(operation).snapshot();
+            long failed = failures.get(operation).sum();
+            total += response.getCount();
+            totalFailed += failed;
+
+            System.out.printf("%-10s %8d %7d %9.1f | %-35s | %-35s%n", operation, response.getCount(), failed,
+                    response.getCount() / seconds, percentiles(response), percentiles(service));
+        }
+
+        System.out.println("-".repeat(115));
+        System.out.printf("Total: %d operations in %.1f s (%.1f ops/s), %d failed, %d started more than 1 ms late%n",
+                total, seconds, total / seconds, totalFailed, lateStarts.sum());
+
+        Metrics.printReport();
+    }
+
+    // parse an operation mix such as purchase:60,search:30,history:10
+    // @param mix the mix
+    // @throws IllegalArgumentException if the mix is malformed
+    private void parseMix(String mix) {
+        int[] weights = new int[OPERATIONS.length];
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split(":");
+            int index = List.of(OPERATIONS).indexOf(pair[0].trim().toLowerCase());
+            if (pair.length != 2 || index < 0) {
+                throw new IllegalArgumentException("Invalid mix entry '" + part + "', expected e.g. purchase:60");
+            }
+            try {
+                weights[index] = Integer.parseInt(pair[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid weight in mix entry '" + part + "'");
+            }
+        }
+
+        int sum = 0;
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            sum += Math.max(0, weights[i]);
+            cumulativeWeights[i] = sum;
+        }
+        if (sum == 0) {
+            throw new IllegalArgumentException("The operation mix needs at least one positive weight");
+        }
+    }
+
+    private String pickOperation(SplittableRandom random) {
+        int roll = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (roll < cumulativeWeights[i]) {
+                return OPERATIONS[i];
+            }
+        }
+        return OPERATIONS[OPERATIONS.length - 1];
+    }
+
+    // exponentially distributed think time, so each cashier's arrivals form a Poisson process
+    private long nextThinkTime(SplittableRandom random) {
+        return (long) (-Math.log(1.0 - random.nextDouble()) * meanThinkNanos);
+    }
+
+    private static String percentiles(LatencyHistogram.Snapshot snapshot) {
+        return String.format("%7.1f / %7.1f / %7.1f / %7.1f",
+                snapshot.getPercentileNanos(50) / 1e6, snapshot.getPercentileNanos(95) / 1e6,
+                snapshot.getPercentileNanos(99) / 1e6, snapshot.getMaxNanos() / 1e6);
+    }
+
+    private Connection getConnection() throws SQLException {
+        return DriverManager.getConnection(options.getUrl(), options.getUser(), options.getPassword());
+    }
+}
@@ -0,0 +1,275 @@
+package src.Benchmark;
+
+import src.Authentication.AuthenticationService;
+import src.Logic.OptimizedCompleteTransactions;
+import src.Logic.OptimizedCustomerHistory;
+import src.Logic.OptimizedManageProducts;
+import src.Objects.ProductPageData;
+import src.Util.ChangeFeed;
+import src.Util.Logger;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Random;
+
+// benchmarks for the data-access hot paths of the optimized services
+// covers the product page fetch, every SearchProducts filter combination, purchases,
+// the customer summary lookup, authentication, password hashing and the mapping of
+// product rows to ProductPageData
+//
+// the database benchmarks need a StoreDB created by DatabaseSetup; a seeded set of
+// BENCH products and a benchmark customer are added (or reset) before measuring, and
+// the purchase benchmark inserts real Purchase rows, so use a disposable database.
+// with --offline only the hashing and mapping benchmarks run, using an in-memory
+// CachedRowSet as a stand-in for the driver's result set
+//
+// usage:
+// java -cp .:lib/mysql-connector-j-9.1.0.jar src.Benchmark.DataAccessBenchmarks
+//      [--url jdbc:mysql://localhost:3306/storedb] [--user root] [--password password]
+//      [--products 1000] [--seed 42] [--warmup 5] [--time 5] [--iterations 3] [--offline]
+public class DataAccessBenchmarks {
+    private static final String PRODUCT_PREFIX = "BENCH";
+    private static final String BENCH_EMAIL = "benchmark@storedb.local";
+    private static final String BENCH_PASSWORD = "benchmark-password";
+    private static final int PAGE_SIZE = 10;
+    private static final int INSERT_BATCH_SIZE = 500;
+
+    // stock given to every seeded product so purchases never run out during a run
+    private static final int SEEDED_STOCK = 1_000_000;
+
+    // words used for generated product names; the first one is the search term
+    private static final String[] ADJECTIVES = {"Deluxe", "Compact", "Classic", "Portable", "Smart", "Heavy", "Mini", "Eco"};
+    private static final String[] NOUNS = {"Widget", "Lamp", "Kettle", "Speaker", "Backpack", "Charger", "Blender", "Monitor"};
+
+    // search filters: name term, price range and in-stock only
+    private static final String SEARCH_TERM = "Widget";
+    private static final float SEARCH_MIN_PRICE = 25f;
+    private static final float SEARCH_MAX_PRICE = 150f;
+
+    public static void main(String[] args) {
+        BenchmarkOptions options;
+        try {
+            options = new BenchmarkOptions(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+
+        int productCount = options.getInt("products", 1000);
+        long seed = options.getLong("seed", 42);
+        BenchmarkHarness harness = new BenchmarkHarness(
+                options.getInt("warmup", 5), options.getInt("time", 5), options.getInt("iterations", 3));
+
+        // keep log file i/o out of the measurements
+        Logger.init();
+        Logger.setLevel(Logger.WARNING);
+
+        System.out.println("=====================================================");
+        System.out.println("  Data Access Benchmarks");
+        System.out.println("=====================================================");
+        BenchmarkHarness.printHeader();
+
+        try {
+            runOfflineBenchmarks(harness, seed);
+
+            if (!options.has("offline")) {
+                String url = options.getUrl();
+                OptimizedManageProducts.setConnectionInfo(url, options.getUser(), options.getPassword());
+                OptimizedCompleteTransactions.setConnectionInfo(url, options.getUser(), options.getPassword());
+                OptimizedCustomerHistory.setConnectionInfo(url, options.getUser(), options.getPassword());
+                // purchases and product writes add to the ChangeLog, created here on older databases
+                ChangeFeed.setConnectionInfo(url, options.getUser(), options.getPassword());
+                AuthenticationService.setConnectionInfo(url, options.getUser(), options.getPassword());
+
+                int customerId = seedDatabase(options, productCount, seed);
+                runDatabaseBenchmarks(harness, productCount, customerId, seed);
+            }
+        } catch (Exception e) {
+            System.err.println("Benchmark failed: " + e.getMessage());
+        } finally {
+            Logger.close();
+        }
+    }
+
+    // benchmarks that need no database
+    // @param harness the harness to run with
+    // @param seed random seed for the generated rows
+    // @throws Exception if a benchmark fails
+    private static void runOfflineBenchmarks(BenchmarkHarness harness, long seed) throws Exception {
+        String salt = "c2FsdHNhbHRzYWx0c2FsdA==";
+        harness.run("HashPassword", i -> AuthenticationService.hashPassword(BENCH_PASSWORD, salt)).print();
+
+        CachedRowSet page = productRows(PAGE_SIZE, seed);
+        harness.run("MapProductRows[10]", i -> mapRows(page)).print();
+
+        CachedRowSet largePage = productRows(100, seed);
+        harness.run("MapProductRows[100]", i -> mapRows(largePage)).print();
+    }
+
+    // benchmarks against the database
+    // @param harness the harness to run with
+    // @param productCount number of seeded products
+    // @param customerId id of the benchmark customer
+    // @param seed random seed for the chosen products
+    // @throws Exception if a benchmark fails
+    private static void runDatabaseBenchmarks(BenchmarkHarness harness, int productCount, int customerId, long seed) throws Exception {
+        int pages = Math.max(1, productCount / PAGE_SIZE);
+        harness.run("GetPaginatedProducts",
+                i -> OptimizedManageProducts.fetchProductPage(i % pages + 1, PAGE_SIZE, "ProductID", "ASC")).print();
+
+        // every combination of the three filters
+        for (int mask = 0; mask < 8; mask++) {
+            String name = (mask & 1) != 0 ? SEARCH_TERM : null;
+            Float minPrice = (mask & 2) != 0 ? SEARCH_MIN_PRICE : null;
+            Float maxPrice = (mask & 2) != 0 ? SEARCH_MAX_PRICE : null;
+            boolean inStockOnly = (mask & 4) != 0;
+            String label = "SearchProducts[" + ((mask & 1) != 0 ? "name" : "-") + ","
+                    + ((mask & 2) != 0 ? "price" : "-") + "," + (inStockOnly ? "stock" : "-") + "]";
+            harness.run(label, i -> OptimizedManageProducts.findProducts(name, minPrice, maxPrice, inStockOnly)).print();
+        }
+
+        harness.run("Authenticate", i -> AuthenticationService.authenticate(BENCH_EMAIL, BENCH_PASSWORD)).print();
+
+        // the summary and purchase paths print to the console, which is silenced while they run
+        if (!AuthenticationService.authenticate(BENCH_EMAIL, BENCH_PASSWORD)) {
+            throw new SQLException("Could not log in as the benchmark customer");
+        }
+        runQuiet(harness, "CustomerPurchaseSummary", i -> {
+            OptimizedCustomerHistory.viewCustomerPurchaseSummary(customerId);
+            return null;
+        });
+
+        Random random = new Random(seed);
+        runQuiet(harness, "MakePurchase", i -> {
+            OptimizedCompleteTransactions.makePurchase(customerId, productId(random.nextInt(productCount)), 1);
+            return null;
+        });
+        AuthenticationService.logout();
+    }
+
+    // run a benchmark with System.out discarded and print its result afterwards
+    // @param harness the harness to run with
+    // @param name display name of the benchmark
+    // @param operation the operation under test
+    // @throws Exception if the benchmark fails
+    private static void runQuiet(BenchmarkHarness harness, String name, BenchmarkHarness.Operation operation) throws Exception {
+        PrintStream console = System.out;
+        BenchmarkHarness.Result result;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            result = harness.run(name, operation);
+        } finally {
+            System.setOut(console);
+        }
+        result.print();
+    }
+
+    // insert or reset the seeded products and make sure the benchmark customer exists
+    // @param options connection options
+    // @param productCount number of products to seed
+    // @param seed random seed for names and prices
+    // @return the benchmark customer's id
+    // @throws SQLException if a database error occurs
+    private static int seedDatabase(BenchmarkOptions options, int productCount, long seed) throws SQLException {
+        System.out.println("Seeding " + productCount + " products...");
+        Random random = new Random(seed);
+
+        try (Connection conn = DriverManager.getConnection(options.getUrl(), options.getUser(), options.getPassword())) {
+            for (int start = 0; start < productCount; start += INSERT_BATCH_SIZE) {
+                int rows = Math.min(INSERT_BATCH_SIZE, productCount - start);
+
+                StringBuilder sql = new StringBuilder("INSERT INTO Products (ProductID, ItemName, ItemPrice, ItemQuantity) VALUES ");
+                for (int i = 0; i < rows; i++) {
+                    sql.append(i == 0 ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+                }
+                sql.append(" ON DUPLICATE KEY UPDATE ItemName = VALUES(ItemName), ItemPrice = VALUES(ItemPrice), ItemQuantity = VALUES(ItemQuantity)");
+
+                try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                    int parameter = 1;
+                    for (int i = start; i < start + rows; i++) {
+                        stmt.setString(parameter++, productId(i));
+                        stmt.setString(parameter++, productName(random));
+                        stmt.setFloat(parameter++, productPrice(random));
+                        stmt.setInt(parameter++, SEEDED_STOCK);
+                    }
+                    stmt.executeUpdate();
+                }
+            }
+        }
+
+        if (!AuthenticationService.authenticate(BENCH_EMAIL, BENCH_PASSWORD)
+                && !AuthenticationService.register("Bench", "Customer", BENCH_EMAIL, "555-000-0000", BENCH_PASSWORD)) {
+            throw new SQLException("Could not create the benchmark customer " + BENCH_EMAIL);
+        }
+        if (!AuthenticationService.authenticate(BENCH_EMAIL, BENCH_PASSWORD)) {
+            throw new SQLException("Benchmark customer " + BENCH_EMAIL + " exists with a different password");
+        }
+        int customerId = AuthenticationService.getCurrentUser().getPersonID();
+        AuthenticationService.logout();
+        return customerId;
+    }
+
+    // build an in-memory result set of product rows
+    // @param rows number of rows
+    // @param seed random seed for names and prices
+    // @return the rows, positioned before the first row
+    // @throws SQLException if the row set cannot be built
+    private static CachedRowSet productRows(int rows, long seed) throws SQLException {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(4);
+        String[] names = {"ProductID", "ItemName", "ItemPrice", "ItemQuantity"};
+        int[] types = {Types.VARCHAR, Types.VARCHAR, Types.DOUBLE, Types.INTEGER};
+        for (int column = 1; column <= 4; column++) {
+            metaData.setColumnName(column, names[column - 1]);
+            metaData.setColumnLabel(column, names[column - 1]);
+            metaData.setColumnType(column, types[column - 1]);
+        }
+
+        CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+        rowSet.setMetaData(metaData);
+
+        Random random = new Random(seed);
+        for (int i = 0; i < rows; i++) {
+            rowSet.moveToInsertRow();
+            rowSet.updateString(1, productId(i));
+            rowSet.updateString(2, productName(random));
+            rowSet.updateDouble(3, productPrice(random));
+            rowSet.updateInt(4, random.nextInt(500));
+            rowSet.insertRow();
+        }
+        rowSet.moveToCurrentRow();
+        rowSet.beforeFirst();
+        return rowSet;
+    }
+
+    // map every row of a row set, then rewind it for the next call
+    // @param rowSet the rows
+    // @return the mapped page data
+    // @throws SQLException if a row cannot be read
+    private static ProductPageData mapRows(CachedRowSet rowSet) throws SQLException {
+        ProductPageData pageData = new ProductPageData();
+        OptimizedManageProducts.readProducts(rowSet, pageData);
+        rowSet.beforeFirst();
+        return pageData;
+    }
+
+    private static String productId(int index) {
+        return String.format("%s%05d", PRODUCT_PREFIX, index);
+    }
+
+    private static String productName(Random random) {
+        return ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " " + NOUNS[random.nextInt(NOUNS.length)];
+    }
+
+    private static float productPrice(Random random) {
+        return Math.round((1 + random.nextDouble() * 299) * 100) / 100f;
+    }
+}
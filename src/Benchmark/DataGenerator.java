@@ -0,0 +1,463 @@
+package src.Benchmark;
+
+import src.Util.IdGenerator;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// synthetic data generator for scaling tests
+// fills Persons, Products and Purchase with as many rows as requested using
+// distributions that look like a real store:
+// - product popularity follows a Zipf distribution, so a few products sell most
+// - customers are also Zipf distributed, giving a heavy tail of one-off buyers
+//   and a small group of regulars
+// - purchase dates follow weekly and yearly seasonality (weekends and the end of
+//   the year are busier) and business hours with lunch and evening peaks
+// - prices are log-normal, phone numbers match the XXX-XXX-XXXX trigger format
+//
+// rows are written with multi-row inserts. product stock is computed up front from
+// the generated purchases, so every product still has stock left after its purchases.
+// with --defer-triggers the update_inventory trigger is dropped during the purchase
+// load and the stock is applied with a single set-based update afterwards, also for
+// the purchases written before a load that fails; this is much faster, but must not be
+// used while the application is taking orders
+//
+// generated rows use GEN product IDs and @gen.example.com emails, so run it against
+// a database that has not been generated into yet
+//
+// purchase TransactionIDs are made from the purchase date, so they sort by date as real ones
+// do. dates only have whole seconds, so purchase i is placed i % 1000 milliseconds into its
+// second with sequence i / 1000, which keeps the IDs unique for up to 4096000 purchases per
+// second of dates. IdGenerator cannot date IDs before 2024, so --start must not be earlier
+//
+// usage:
+// java -cp .:lib/mysql-connector-j-9.1.0.jar src.Benchmark.DataGenerator
+//      [--url jdbc:mysql://localhost:3306/storedb] [--user root] [--password password]
+//      [--persons 100000] [--products 20000] [--purchases 1000000] [--batch 1000]
+//      [--product-skew 1.1] [--customer-skew 0.8] [--start 2024-01-01] [--days 730]
+//      [--seed 42] [--defer-triggers]
+public class DataGenerator {
+    private static final String PRODUCT_PREFIX = "GEN";
+    private static final String EMAIL_DOMAIN = "@gen.example.com";
+    private static final int PROGRESS_EVERY = 100_000;
+
+    private static final String CREATE_INVENTORY_TRIGGER =
+            "CREATE TRIGGER update_inventory AFTER INSERT ON Purchase FOR EACH ROW " +
+            "UPDATE Products SET ItemQuantity = ItemQuantity - NEW.QuantityPurchased WHERE ProductID = NEW.ProductID";
+
+    private static final String[] FIRST_NAMES = {
+        "James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael", "Linda", "David", "Elizabeth",
+        "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah", "Carlos", "Karen",
+        "Daniel", "Lisa", "Matthew", "Nancy", "Anthony", "Sofia", "Mark", "Aisha", "Wei", "Priya"
+    };
+    private static final String[] LAST_NAMES = {
+        "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+        "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor", "Moore", "Jackson", "Martin",
+        "Lee", "Perez", "Thompson", "White", "Harris", "Chen", "Patel", "Nguyen", "Kim", "Clark"
+    };
+    private static final String[] ADJECTIVES = {
+        "Deluxe", "Compact", "Classic", "Portable", "Smart", "Heavy Duty", "Mini", "Eco", "Pro", "Wireless",
+        "Premium", "Basic", "Ultra", "Vintage", "Digital"
+    };
+    private static final String[] NOUNS = {
+        "Laptop", "Headphones", "Kettle", "Speaker", "Backpack", "Charger", "Blender", "Monitor", "Keyboard", "Mouse",
+        "Lamp", "Camera", "Watch", "Tablet", "Printer", "Router", "Toaster", "Fan", "Jacket", "Sneakers"
+    };
+
+    // relative traffic by hour of day, store open 8:00 to 22:00
+    private static final double[] HOUR_WEIGHTS = {
+        0, 0, 0, 0, 0, 0, 0, 0, 0.5, 0.8, 1.0, 1.2, 1.8, 1.6, 1.1, 1.0, 1.1, 1.5, 2.0, 1.9, 1.4, 0.9, 0.4, 0
+    };
+    // relative traffic by month, January first
+    private static final double[] MONTH_WEIGHTS = {0.75, 0.7, 0.85, 0.9, 0.95, 1.0, 1.0, 1.05, 0.95, 1.0, 1.4, 1.8};
+
+    private final BenchmarkOptions options;
+    private final int personCount;
+    private final int productCount;
+    private final long purchaseCount;
+    private final int batchSize;
+    private final long seed;
+    private final LocalDate startDate;
+    private final int days;
+
+    // constructor
+    // @param options command line options
+    // @throws IllegalArgumentException if an option is invalid
+    public DataGenerator(BenchmarkOptions options) {
+        this.options = options;
+        this.personCount = options.getInt("persons", 100_000);
+        this.productCount = options.getInt("products", 20_000);
+        this.purchaseCount = options.getLong("purchases", 1_000_000);
+        this.batchSize = options.getInt("batch", 1000);
+        this.seed = options.getLong("seed", 42);
+        this.startDate = LocalDate.parse(options.getString("start", "2024-01-01"));
+        this.days = options.getInt("days", 730);
+
+        if (personCount <= 0 || productCount <= 0 || purchaseCount < 0 || batchSize <= 0 || days <= 0) {
+            throw new IllegalArgumentException("Row counts, batch size and days must be positive");
+        }
+        if (batchSize > 10_000) {
+            throw new IllegalArgumentException("Batch size is limited to 10000 rows to stay under the placeholder limit");
+        }
+        if (productCount > 9_999_999) {
+            throw new IllegalArgumentException("At most 9999999 products can be generated");
+        }
+        if (Timestamp.valueOf(startDate.atStartOfDay()).getTime() < IdGenerator.EPOCH) {
+            throw new IllegalArgumentException("Purchases cannot be dated before 2024, where TransactionIDs start");
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            new DataGenerator(new BenchmarkOptions(args)).run();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+        } catch (SQLException e) {
+            System.err.println("Data generation failed: " + e.getMessage());
+        }
+    }
+
+    // generate and load all rows
+    // @throws SQLException if a database error occurs
+    public void run() throws SQLException {
+        ZipfSampler productPopularity = new ZipfSampler(productCount, options.getDouble("product-skew", 1.1));
+        ZipfSampler customerActivity = new ZipfSampler(personCount, options.getDouble("customer-skew", 0.8));
+        DaySampler daySampler = new DaySampler();
+
+        // popularity rank to product/customer index, so the busiest rows are spread across the id range
+        int[] productByRank = permutation(productCount, new SplittableRandom(seed + 1));
+        int[] customerByRank = permutation(personCount, new SplittableRandom(seed + 2));
+
+        // first pass over the purchase stream: how many units each product will sell
+        long[] unitsSold = new long[productCount];
+        SplittableRandom countRandom = new SplittableRandom(seed + 3);
+        for (long i = 0; i < purchaseCount; i++) {
+            int product = productByRank[productPopularity.sample(countRandom)];
+            customerActivity.sample(countRandom);
+            daySampler.sample(countRandom);
+            unitsSold[product] += quantity(countRandom);
+        }
+
+        long started = System.nanoTime();
+        try (Connection conn = DriverManager.getConnection(options.getUrl(), options.getUser(), options.getPassword())) {
+            conn.setAutoCommit(false);
+
+            insertProducts(conn, unitsSold);
+            int[] personIds = insertPersons(conn);
+
+            boolean deferTriggers = options.has("defer-triggers");
+            if (deferTriggers) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("DROP TRIGGER IF EXISTS update_inventory");
+                }
+            }
+            try {
+                // second pass over the same stream, this time writing the rows
+                SplittableRandom purchaseRandom = new SplittableRandom(seed + 3);
+                insertPurchases(conn, purchaseRandom, productPopularity, customerActivity, daySampler,
+                        productByRank, customerByRank, personIds);
+            } finally {
+                if (deferTriggers) {
+                    try {
+                        // batches are committed as they are written, so a load that failed partway
+                        // still has purchases whose stock nothing has taken
+                        conn.rollback();
+                        applyInventory(conn);
+                    } finally {
+                        try (Statement stmt = conn.createStatement()) {
+                            stmt.execute(CREATE_INVENTORY_TRIGGER);
+                        }
+                    }
+                }
+            }
+        }
+
+        System.out.printf("Done in %.1f s%n", (System.nanoTime() - started) / 1e9);
+    }
+
+    // insert the products, stocked for every unit the purchases will take plus some left over
+    // @param conn the connection to use
+    // @param unitsSold units each product will sell
+    // @throws SQLException if a database error occurs
+    private void insertProducts(Connection conn, long[] unitsSold) throws SQLException {
+        SplittableRandom random = new SplittableRandom(seed + 4);
+        try (MultiRowInsert insert = new MultiRowInsert(conn,
+                "INSERT INTO Products (ProductID, ItemName, ItemPrice, ItemQuantity) VALUES ", 4, batchSize, "products")) {
+            for (int i = 0; i < productCount; i++) {
+                String name = ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " "
+                        + NOUNS[random.nextInt(NOUNS.length)] + " " + (100 + random.nextInt(900));
+                // log-normal price with a median around $33
+                double price = Math.exp(3.5 + random.nextGaussian() * 1.0);
+                price = Math.round(Math.min(5000, Math.max(0.99, price)) * 100) / 100.0;
+                long stock = unitsSold[i] + random.nextInt(200);
+
+                insert.add(productId(i), name, price, stock);
+            }
+        }
+    }
+
+    // insert the customers and read back their generated ids
+    // @param conn the connection to use
+    // @return person ids, indexed by generated customer number
+    // @throws SQLException if a database error occurs
+    private int[] insertPersons(Connection conn) throws SQLException {
+        SplittableRandom random = new SplittableRandom(seed + 5);
+        try (MultiRowInsert insert = new MultiRowInsert(conn,
+                "INSERT INTO Persons (FName, LName, Email, Phone) VALUES ", 4, batchSize, "persons")) {
+            for (int i = 0; i < personCount; i++) {
+                String first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+                String last = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+                String email = (first + "." + last + "." + i).toLowerCase() + EMAIL_DOMAIN;
+                String phone = String.format("%03d-%03d-%04d",
+                        200 + random.nextInt(800), random.nextInt(1000), random.nextInt(10000));
+
+                insert.add(first, last, email, phone);
+            }
+        }
+
+        // auto-increment ids are not guaranteed to be contiguous, so look them up
+        int[] ids = new int[personCount];
+        int count = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT PersonID FROM Persons WHERE Email LIKE ? ORDER BY PersonID")) {
+            stmt.setString(1, "%" + EMAIL_DOMAIN);
+            stmt.setFetchSize(Integer.MIN_VALUE); // stream the rows instead of buffering them
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next() && count < personCount) {
+                    ids[count++] = rs.getInt(1);
+                }
+            }
+        }
+        if (count < personCount) {
+            throw new SQLException("Expected " + personCount + " generated persons but found " + count);
+        }
+        return ids;
+    }
+
+    // insert the purchases
+    // the random source must start in the same state as for the counting pass so the
+    // same products are bought
+    // @throws SQLException if a database error occurs
+    private void insertPurchases(Connection conn, SplittableRandom random, ZipfSampler productPopularity,
+                                 ZipfSampler customerActivity, DaySampler daySampler,
+                                 int[] productByRank, int[] customerByRank, int[] personIds) throws SQLException {
+        try (MultiRowInsert insert = new MultiRowInsert(conn,
+                "INSERT INTO Purchase (TransactionID, PersonID, ProductID, Date, QuantityPurchased) VALUES ", 5, batchSize,
+                "purchases")) {
+            for (long i = 0; i < purchaseCount; i++) {
+                int product = productByRank[productPopularity.sample(random)];
+                int customer = customerByRank[customerActivity.sample(random)];
+                LocalDateTime date = daySampler.sample(random);
+                int quantity = quantity(random);
+
+                Timestamp time = Timestamp.valueOf(date);
+                long transactionId = IdGenerator.at(time.getTime() + i % 1000, (int) (i / 1000 % 4096));
+                insert.add(transactionId, personIds[customer], productId(product), time, quantity);
+            }
+        }
+    }
+
+    // subtract the generated purchases from stock in one statement
+    // used instead of the per-row trigger when triggers are deferred
+    // @param conn the connection to use
+    // @throws SQLException if a database error occurs
+    private void applyInventory(Connection conn) throws SQLException {
+        System.out.println("Applying inventory for generated purchases...");
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE Products p JOIN (" +
+                "  SELECT ProductID, SUM(QuantityPurchased) AS Sold FROM Purchase WHERE ProductID LIKE ? GROUP BY ProductID" +
+                ") s ON p.ProductID = s.ProductID SET p.ItemQuantity = p.ItemQuantity - s.Sold")) {
+            stmt.setString(1, PRODUCT_PREFIX + "%");
+            stmt.executeUpdate();
+        }
+        conn.commit();
+    }
+
+    // units bought in one purchase: mostly one, occasionally a few
+    private static int quantity(SplittableRandom random) {
+        double roll = random.nextDouble();
+        if (roll < 0.7) {
+            return 1;
+        } else if (roll < 0.9) {
+            return 2;
+        }
+        return 3 + random.nextInt(3);
+    }
+
+    private static String productId(int index) {
+        return String.format("%s%07d", PRODUCT_PREFIX, index);
+    }
+
+    // random permutation of 0..n-1
+    private static int[] permutation(int n, SplittableRandom random) {
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+        return values;
+    }
+
+    // binary search a cumulative distribution for a uniform value
+    private static int search(double[] cumulative, double value) {
+        int index = Arrays.binarySearch(cumulative, value);
+        index = index >= 0 ? index : -index - 1;
+        return Math.min(index, cumulative.length - 1);
+    }
+
+    // samples ranks 0..n-1 with probability proportional to 1 / (rank + 1)^skew
+    private static class ZipfSampler {
+        private final double[] cumulative;
+
+        ZipfSampler(int n, double skew) {
+            cumulative = new double[n];
+            double sum = 0;
+            for (int rank = 0; rank < n; rank++) {
+                sum += 1.0 / Math.pow(rank + 1, skew);
+                cumulative[rank] = sum;
+            }
+            for (int rank = 0; rank < n; rank++) {
+                cumulative[rank] /= sum;
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            return search(cumulative, random.nextDouble());
+        }
+    }
+
+    // samples purchase times with weekly, yearly and time-of-day seasonality
+    private class DaySampler {
+        private final double[] dayCumulative = new double[days];
+        private final double[] hourCumulative = new double[24];
+
+        DaySampler() {
+            double sum = 0;
+            for (int day = 0; day < days; day++) {
+                LocalDate date = startDate.plusDays(day);
+                double weight = MONTH_WEIGHTS[date.getMonthValue() - 1];
+                if (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+                    weight *= 1.4;
+                }
+                sum += weight;
+                dayCumulative[day] = sum;
+            }
+            for (int day = 0; day < days; day++) {
+                dayCumulative[day] /= sum;
+            }
+
+            sum = 0;
+            for (int hour = 0; hour < 24; hour++) {
+                sum += HOUR_WEIGHTS[hour];
+                hourCumulative[hour] = sum;
+            }
+            for (int hour = 0; hour < 24; hour++) {
+                hourCumulative[hour] /= sum;
+            }
+        }
+
+        LocalDateTime sample(SplittableRandom random) {
+            int day = search(dayCumulative, random.nextDouble());
+            int hour = search(hourCumulative, random.nextDouble());
+            return startDate.plusDays(day).atTime(hour, random.nextInt(60), random.nextInt(60));
+        }
+    }
+
+    // buffers rows and writes them with multi-row insert statements
+    // full batches reuse one prepared statement; each batch is committed on its own
+    private static class MultiRowInsert implements AutoCloseable {
+        private final Connection conn;
+        private final String prefix;
+        private final int columns;
+        private final int batchSize;
+        private final String label;
+        private final Object[] values;
+        private final long started = System.nanoTime();
+        private PreparedStatement fullBatch;
+        private int rows;
+        private long written;
+
+        MultiRowInsert(Connection conn, String prefix, int columns, int batchSize, String label) {
+            this.conn = conn;
+            this.prefix = prefix;
+            this.columns = columns;
+            this.batchSize = batchSize;
+            this.label = label;
+            this.values = new Object[columns * batchSize];
+        }
+
+        void add(Object... row) throws SQLException {
+            System.arraycopy(row, 0, values, rows * columns, columns);
+            if (++rows == batchSize) {
+                if (fullBatch == null) {
+                    fullBatch = conn.prepareStatement(sql(batchSize));
+                }
+                write(fullBatch);
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                if (rows > 0) {
+                    try (PreparedStatement tail = conn.prepareStatement(sql(rows))) {
+                        write(tail);
+                    }
+                }
+                System.out.printf("  %s: %d rows in %.1f s%n", label, written, (System.nanoTime() - started) / 1e9);
+            } finally {
+                if (fullBatch != null) {
+                    fullBatch.close();
+                }
+            }
+        }
+
+        private void write(PreparedStatement stmt) throws SQLException {
+            for (int i = 0; i < rows * columns; i++) {
+                stmt.setObject(i + 1, values[i]);
+            }
+            stmt.executeUpdate();
+            conn.commit();
+
+            long before = written;
+            written += rows;
+            rows = 0;
+            if (written / PROGRESS_EVERY != before / PROGRESS_EVERY) {
+                double seconds = (System.nanoTime() - started) / 1e9;
+                System.out.printf("  %s: %d rows (%.0f rows/s)%n", label, written, written / seconds);
+            }
+        }
+
+        private String sql(int rowCount) {
+            StringBuilder row = new StringBuilder("(");
+            for (int i = 0; i < columns; i++) {
+                row.append(i == 0 ? "?" : ", ?");
+            }
+            row.append(")");
+
+            StringBuilder sql = new StringBuilder(prefix);
+            for (int i = 0; i < rowCount; i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append(row);
+            }
+            return sql.toString();
+        }
+    }
+}
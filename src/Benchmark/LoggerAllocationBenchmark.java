@@ -0,0 +1,102 @@
+package src.Benchmark;
+
+import src.Util.Logger;
+
+import java.lang.management.ManagementFactory;
+
+// measures heap allocation per log call for eager string building versus the
+// parameterized and supplier based logger api
+//
+// usage:
+// java -cp . src.Benchmark.LoggerAllocationBenchmark [iterations]
+public class LoggerAllocationBenchmark {
+    private static final int DEFAULT_ITERATIONS = 1_000_000;
+    private static final int WARMUP_ITERATIONS = 200_000;
+
+    // sink to keep the jit from removing the benchmarked work
+    private static int blackhole;
+
+    // non-constant values so the compiler can't fold the eager message
+    private static String sortColumn = "ProductID";
+    private static String sortDirection = "ASC";
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threadBean.isThreadAllocatedMemorySupported()) {
+            System.err.println("Thread allocation measurement is not supported on this JVM.");
+            return;
+        }
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        // filter INFO so we measure the cost of messages that are never written
+        Logger.init();
+        Logger.setLevel(Logger.WARNING);
+
+        System.out.println("=====================================================");
+        System.out.println("  Logger Allocation Benchmark (INFO filtered)");
+        System.out.println("=====================================================");
+        System.out.printf("%-30s %15s %15s%n", "Variant", "bytes/op", "ns/op");
+        System.out.println("-------------------------------------------------------------");
+
+        run(threadBean, "eager concatenation", iterations, LoggerAllocationBenchmark::eager);
+        run(threadBean, "placeholder (3 args)", iterations, LoggerAllocationBenchmark::placeholder);
+        run(threadBean, "supplier", iterations, LoggerAllocationBenchmark::supplier);
+        run(threadBean, "logUserAction", iterations, LoggerAllocationBenchmark::userAction);
+
+        System.out.println("-------------------------------------------------------------");
+        System.out.println("(checksum " + blackhole + ")");
+    }
+
+    // warm up and then measure one variant
+    // @param threadBean bean used to read allocated bytes for this thread
+    // @param name display name of the variant
+    // @param iterations number of measured calls
+    // @param body the logging call under test, given the loop index
+    private static void run(com.sun.management.ThreadMXBean threadBean, String name, int iterations, IntBody body) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            body.run(i);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            body.run(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = threadBean.getThreadAllocatedBytes(threadId) - bytesBefore;
+
+        System.out.printf("%-30s %15.1f %15.1f%n", name, (double) bytes / iterations, (double) elapsed / iterations);
+    }
+
+    private static void eager(int i) {
+        int page = i & 63; // small values so boxing hits the Integer cache in every variant
+        Logger.log(Logger.INFO, "Retrieving products page " + page + " (sort: " + sortColumn + " " + sortDirection + ")");
+        blackhole += page;
+    }
+
+    private static void placeholder(int i) {
+        int page = i & 63;
+        Logger.log(Logger.INFO, "Retrieving products page {} (sort: {} {})", page, sortColumn, sortDirection);
+        blackhole += page;
+    }
+
+    private static void supplier(int i) {
+        int page = i & 63;
+        Logger.log(Logger.INFO, () -> "Retrieving products page " + page + " (sort: " + sortColumn + " " + sortDirection + ")");
+        blackhole += page;
+    }
+
+    private static void userAction(int i) {
+        Logger.logUserAction(i & 63, "Access", "Accessed product management");
+        blackhole += i & 1;
+    }
+
+    // loop body taking the iteration index without boxing it
+    private interface IntBody {
+        void run(int i);
+    }
+}
@@ -0,0 +1,32 @@
+package src.Benchmark;
+
+import src.Util.ThreadManager;
+
+import java.io.PrintStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// executors for the simulated users of the load tools
+class Workers {
+    // create an executor with one thread per simulated user
+    // virtual threads need java 21; on older runtimes platform threads are used instead
+    // @param virtual true to run each task on its own virtual thread
+    // @param threads number of platform threads when virtual threads are not used
+    // @param name thread name for platform threads
+    // @param console stream for the fallback notice
+    // @return the executor
+    static ExecutorService newExecutor(boolean virtual, int threads, String name, PrintStream console) {
+        if (virtual) {
+            ExecutorService executor = ThreadManager.newVirtualThreadPerTaskExecutor();
+            if (executor != null) {
+                return executor;
+            }
+            console.println("Virtual threads are not available on this JVM, using platform threads");
+        }
+        return Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
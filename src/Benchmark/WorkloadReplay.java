@@ -0,0 +1,454 @@
+package src.Benchmark;
+
+import src.Logic.OptimizedCompleteTransactions;
+import src.Logic.OptimizedCustomerHistory;
+import src.Logic.OptimizedManageProducts;
+import src.Objects.AuditEvent;
+import src.Util.ChangeFeed;
+import src.Util.LatencyHistogram;
+import src.Util.LogViewer;
+import src.Util.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// captures the user actions recorded by Logger.logUserAction and replays them
+// against a test database with the original timing, so performance can be
+// regression-tested with real traffic shapes
+//
+// a workload is read from log files (a single file, or a log folder including
+// rotated .gz segments) or from a capture file written by an earlier run with
+// --write-capture. capture files hold one tab separated event per line:
+// epochMillis, userId, action, details
+//
+// during replay each user's actions run in order on that user's own thread, and
+// different users run concurrently. every action starts at its original offset from
+// the first action divided by --speed, and latency is measured from that scheduled
+// time, so a slow database shows up as latency rather than as a slower replay.
+// actions are mapped to the database work they trigger in the application:
+// - Purchase: makePurchase with the logged quantity, product and customer
+// - Access to product management: the first product page
+// - Access to transactions: a product search
+// - Access to customer history: the user's purchase history
+// - Login: the customer lookup
+// - everything else (Logout, Exit): no database work, only counted
+//
+// usage:
+// java -cp .:lib/mysql-connector-j-9.1.0.jar src.Benchmark.WorkloadReplay
+//      (--log logs | --capture workload.tsv) [--write-capture workload.tsv]
+//      [--from 2026-10-01T00:00] [--to 2026-10-02T00:00] [--speed 1] [--virtual]
+//      [--url jdbc:mysql://localhost:3306/storedb] [--user root] [--password password]
+// with --write-capture and no --replay the workload is only written, not replayed
+public class WorkloadReplay {
+    private static final DateTimeFormatter ACTION_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final Pattern PURCHASE_DETAILS = Pattern.compile("Processed purchase of (\\d+) (.+) for customer (\\d+)");
+    private static final int PRODUCT_PAGE_SIZE = 10;
+    private static final int PROGRESS_INTERVAL_SECONDS = 5;
+
+    private final BenchmarkOptions options;
+    private final double speed;
+
+    // test data used to resolve logged purchases
+    private final Map<String, String> productIdsByName = new HashMap<>();
+    private final List<String> fallbackProductIds = new ArrayList<>();
+
+    // results by action label
+    private final Map<String, LatencyHistogram> responseTimes = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> serviceTimes = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private final LongAdder completed = new LongAdder();
+
+    // constructor
+    // @param options command line options
+    // @throws IllegalArgumentException if an option is invalid
+    public WorkloadReplay(BenchmarkOptions options) {
+        this.options = options;
+        this.speed = options.getDouble("speed", 1.0);
+        if (speed <= 0) {
+            throw new IllegalArgumentException("Speed must be positive");
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            BenchmarkOptions options = new BenchmarkOptions(args);
+            WorkloadReplay replay = new WorkloadReplay(options);
+
+            Logger.init();
+            Logger.setLevel(Logger.WARNING);
+
+            List<AuditEvent> workload = replay.loadWorkload();
+            System.out.println("Loaded " + workload.size() + " user actions from "
+                    + workload.stream().map(AuditEvent::getUserId).distinct().count() + " users");
+
+            if (options.getString("write-capture", null) != null) {
+                writeCapture(Paths.get(options.getString("write-capture", null)), workload);
+                if (!options.has("replay")) {
+                    return;
+                }
+            }
+            replay.replay(workload);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Replay failed: " + e.getMessage());
+        } finally {
+            Logger.close();
+        }
+    }
+
+    // read the workload from the configured source, oldest action first
+    // @return the user actions
+    // @throws IOException if a source cannot be read
+    // @throws IllegalArgumentException if no source is configured
+    public List<AuditEvent> loadWorkload() throws IOException {
+        String logPath = options.getString("log", null);
+        String capturePath = options.getString("capture", null);
+
+        List<AuditEvent> events;
+        if (capturePath != null) {
+            events = readCapture(Paths.get(capturePath));
+        } else if (logPath != null) {
+            events = readLogs(Paths.get(logPath));
+        } else {
+            throw new IllegalArgumentException("Give the workload with --log <file or folder> or --capture <file>");
+        }
+
+        Instant from = parseTime(options.getString("from", null));
+        Instant to = parseTime(options.getString("to", null));
+        events.removeIf(event -> (from != null && event.getEventTime().isBefore(from))
+                || (to != null && !event.getEventTime().isBefore(to)));
+
+        // stable sort keeps the logged order of actions within the same second
+        events.sort(Comparator.comparing(AuditEvent::getEventTime));
+        return events;
+    }
+
+    // replay a workload against the configured database and print the report
+    // @param workload the user actions, oldest first
+    // @throws Exception if setup or the replay fails
+    public void replay(List<AuditEvent> workload) throws Exception {
+        if (workload.isEmpty()) {
+            System.out.println("Nothing to replay.");
+            return;
+        }
+
+        String url = options.getUrl();
+        OptimizedManageProducts.setConnectionInfo(url, options.getUser(), options.getPassword());
+        OptimizedCompleteTransactions.setConnectionInfo(url, options.getUser(), options.getPassword());
+        OptimizedCustomerHistory.setConnectionInfo(url, options.getUser(), options.getPassword());
+        // purchases and product writes add to the ChangeLog, created here on older databases
+        ChangeFeed.setConnectionInfo(url, options.getUser(), options.getPassword());
+        loadProducts();
+
+        // one lane per user, keeping that user's actions in order
+        Map<Integer, List<AuditEvent>> lanes = new LinkedHashMap<>();
+        for (AuditEvent event : workload) {
+            lanes.computeIfAbsent(event.getUserId(), id -> new ArrayList<>()).add(event);
+        }
+
+        long firstMillis = workload.get(0).getEventTime().toEpochMilli();
+        long spanMillis = workload.get(workload.size() - 1).getEventTime().toEpochMilli() - firstMillis;
+        System.out.printf("Replaying %.0f s of traffic at %.1fx (about %.0f s) with %d concurrent users%n",
+                spanMillis / 1000.0, speed, spanMillis / 1000.0 / speed, lanes.size());
+
+        // the services report to the console on every call, silence that while replaying
+        PrintStream console = System.out;
+        PrintStream errors = System.err;
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(discard);
+        System.setErr(discard);
+
+        long start = System.nanoTime();
+        ExecutorService executor = Workers.newExecutor(options.has("virtual"), lanes.size(), "replay-user", console);
+        try {
+            int lane = 0;
+            for (List<AuditEvent> events : lanes.values()) {
+                SplittableRandom random = new SplittableRandom(lane++);
+                executor.execute(() -> replayLane(events, firstMillis, start, random));
+            }
+            executor.shutdown();
+
+            while (!executor.awaitTermination(PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS)) {
+                console.printf("[%3d s] %d of %d actions replayed%n",
+                        (System.nanoTime() - start) / 1_000_000_000L, completed.sum(), workload.size());
+            }
+        } finally {
+            executor.shutdownNow();
+            System.setOut(console);
+            System.setErr(errors);
+        }
+
+        printReport(System.nanoTime() - start);
+    }
+
+    // replay one user's actions in order
+    // @param events the user's actions, oldest first
+    // @param firstMillis time of the first action in the whole workload
+    // @param start when the replay started
+    // @param random source for parameters the log does not record
+    private void replayLane(List<AuditEvent> events, long firstMillis, long start, SplittableRandom random) {
+        for (AuditEvent event : events) {
+            long offsetNanos = (long) ((event.getEventTime().toEpochMilli() - firstMillis) * 1_000_000 / speed);
+            long scheduled = start + offsetNanos;
+
+            long now = System.nanoTime();
+            while (now < scheduled) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                LockSupport.parkNanos(scheduled - now);
+                now = System.nanoTime();
+            }
+
+            String label = label(event);
+            boolean ok;
+            try {
+                ok = execute(event, random);
+            } catch (Exception e) {
+                ok = false;
+            }
+            long finished = System.nanoTime();
+
+            responseTimes.computeIfAbsent(label, key -> new LatencyHistogram()).record(finished - scheduled);
+            serviceTimes.computeIfAbsent(label, key -> new LatencyHistogram()).record(finished - now);
+            if (!ok) {
+                failures.computeIfAbsent(label, key -> new LongAdder()).increment();
+            }
+            completed.increment();
+        }
+    }
+
+    // run the database work a logged action stands for
+    // @param event the action
+    // @param random source for parameters the log does not record
+    // @return true if the work succeeded
+    // @throws SQLException if a database error occurs
+    private boolean execute(AuditEvent event, SplittableRandom random) throws SQLException {
+        String action = event.getAction();
+        String details = event.getDetails();
+
+        if ("Purchase".equalsIgnoreCase(action)) {
+            Matcher matcher = PURCHASE_DETAILS.matcher(details);
+            if (!matcher.find()) {
+                return false;
+            }
+            String productId = productIdsByName.get(matcher.group(2));
+            if (productId == null) {
+                productId = fallbackProductIds.get(random.nextInt(fallbackProductIds.size()));
+            }
+            return OptimizedCompleteTransactions.makePurchase(
+                    Integer.parseInt(matcher.group(3)), productId, Integer.parseInt(matcher.group(1)));
+        }
+        if ("Login".equalsIgnoreCase(action)) {
+            return OptimizedCustomerHistory.customerExists(event.getUserId());
+        }
+        if ("Access".equalsIgnoreCase(action)) {
+            if (details.contains("product")) {
+                OptimizedManageProducts.fetchProductPage(1, PRODUCT_PAGE_SIZE, "ProductID", "ASC");
+            } else if (details.contains("transaction")) {
+                OptimizedManageProducts.findProducts(null, null, null, true);
+            } else if (details.contains("history")) {
+                OptimizedCustomerHistory.fetchPurchaseHistory(event.getUserId(), 1, PRODUCT_PAGE_SIZE);
+            }
+        }
+        return true; // actions without database work always succeed
+    }
+
+    // load product names so logged purchases can be mapped back to product IDs
+    // @throws SQLException if a database error occurs or there are no products
+    private void loadProducts() throws SQLException {
+        try (Connection conn = DriverManager.getConnection(options.getUrl(), options.getUser(), options.getPassword());
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT ProductID, ItemName, ItemQuantity FROM Products")) {
+            while (rs.next()) {
+                productIdsByName.putIfAbsent(rs.getString("ItemName"), rs.getString("ProductID"));
+                if (rs.getInt("ItemQuantity") > 0 && fallbackProductIds.size() < 1000) {
+                    fallbackProductIds.add(rs.getString("ProductID"));
+                }
+            }
+        }
+        if (fallbackProductIds.isEmpty()) {
+            throw new SQLException("The test database has no products in stock");
+        }
+    }
+
+    // print latency per action type
+    // @param elapsedNanos length of the replay
+    private void printReport(long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+
+        System.out.println("\n--- Replay Results ---");
+        System.out.printf("%-36s %8s %7s | %-35s | %-35s%n", "Action", "Count", "Failed",
+                "response ms (p50 / p95 / p99 / max)", "service ms (p50 / p95 / p99 / max)");
+        System.out.println("-".repeat(128));
+
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(responseTimes).entrySet()) {
+            String label = entry.getKey();
+            LatencyHistogram.Snapshot response = entry.getValue().snapshot();
+            LatencyHistogram.Snapshot service = serviceTimes.get(label).snapshot();
+            long failed = failures.containsKey(label) ? failures.get(label).sum() : 0;
+
+            System.out.printf("%-36s %8d %7d | %-35s | %-35s%n", label, response.getCount(), failed,
+                    percentiles(response), percentiles(service));
+        }
+
+        System.out.println("-".repeat(128));
+        System.out.printf("Replayed %d actions in %.1f s%n", completed.sum(), seconds);
+    }
+
+    // read user actions from a log file, or from every log segment in a folder
+    // @param path the log file or folder
+    // @return the user actions in file order
+    // @throws IOException if a file cannot be read
+    private static List<AuditEvent> readLogs(Path path) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(path)) {
+            // segment names sort by rotation time, and the active file sorts after them
+            try (Stream<Path> listing = Files.list(path)) {
+                listing.filter(file -> {
+                    String name = file.getFileName().toString();
+                    return name.endsWith(".log") || name.endsWith(".log.gz");
+                }).sorted().forEach(files::add);
+            }
+        } else {
+            files.add(path);
+        }
+
+        List<AuditEvent> events = new ArrayList<>();
+        LogViewer.LogFilter filter = new LogViewer.LogFilter().minimumLevel(Level.INFO);
+        for (Path file : files) {
+            LogViewer.search(file, filter, entry -> {
+                AuditEvent event = toEvent(entry);
+                if (event != null) {
+                    events.add(event);
+                }
+            });
+        }
+        return events;
+    }
+
+    // turn a logged user action into a workload event
+    // @param entry the log record
+    // @return the event, or null if the record is not a user action
+    private static AuditEvent toEvent(LogViewer.LogEntry entry) {
+        if (entry.getUserId() < 0 || entry.getAction() == null) {
+            return null;
+        }
+
+        // messages look like "[User N] Action - details at yyyy-MM-dd HH:mm:ss"
+        String message = entry.getMessage();
+        int at = message.lastIndexOf(" at ");
+        int dash = message.indexOf(" - ");
+        if (at < 0 || dash < 0 || dash + 3 > at) {
+            return null;
+        }
+
+        try {
+            LocalDateTime time = LocalDateTime.parse(message.substring(at + 4).trim(), ACTION_TIME);
+            String details = message.substring(dash + 3, at);
+            return new AuditEvent(entry.getUserId(), entry.getAction(), details,
+                    time.atZone(ZoneId.systemDefault()).toInstant());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // read a capture file written by writeCapture
+    // @param file the capture file
+    // @return the events
+    // @throws IOException if the file cannot be read
+    private static List<AuditEvent> readCapture(Path file) throws IOException {
+        List<AuditEvent> events = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 4);
+                if (parts.length != 4) {
+                    continue; // skip malformed lines
+                }
+                try {
+                    events.add(new AuditEvent(Integer.parseInt(parts[1]), parts[2], parts[3],
+                            Instant.ofEpochMilli(Long.parseLong(parts[0]))));
+                } catch (NumberFormatException e) {
+                    // skip malformed lines
+                }
+            }
+        }
+        return events;
+    }
+
+    // write a workload as a capture file
+    // @param file the file to write
+    // @param events the events
+    // @throws IOException if the file cannot be written
+    private static void writeCapture(Path file, List<AuditEvent> events) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (AuditEvent event : events) {
+                writer.write(event.getEventTime().toEpochMilli() + "\t" + event.getUserId() + "\t"
+                        + event.getAction() + "\t" + event.getDetails().replace('\t', ' ').replace('\n', ' '));
+                writer.newLine();
+            }
+        }
+        System.out.println("Wrote " + events.size() + " actions to " + file);
+    }
+
+    // group Access actions by the menu they opened
+    private static String label(AuditEvent event) {
+        if ("Access".equalsIgnoreCase(event.getAction())) {
+            return event.getAction() + " / " + event.getDetails().replace("Accessed ", "");
+        }
+        return event.getAction();
+    }
+
+    private static Instant parseTime(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid time '" + value + "', expected e.g. 2026-10-01T09:00");
+        }
+    }
+
+    private static String percentiles(LatencyHistogram.Snapshot snapshot) {
+        return String.format("%7.1f / %7.1f / %7.1f / %7.1f",
+                snapshot.getPercentileNanos(50) / 1e6, snapshot.getPercentileNanos(95) / 1e6,
+                snapshot.getPercentileNanos(99) / 1e6, snapshot.getMaxNanos() / 1e6);
+    }
+}
@@ -0,0 +1,532 @@
+package src.Logic;
+
+import src.Objects.PurchaseResult;
+import src.Util.DomainEvent;
+import src.Util.EventBus;
+import src.Util.IdGenerator;
+import src.Util.JournalFile;
+import src.Util.Logger;
+import src.Util.Metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// local-first checkout: purchases are committed to a journal on local disk and written to the
+// database in the background, so cashiers keep selling while the database is slow or out of reach
+//
+// turned on by storedb.journal.file, the path of the journal (one per instance). a purchase is
+// checked against a cached view of the catalog, which is the database's stock as last seen
+// minus the purchases journaled but not yet written, then appended to the journal and synced
+// together with any other purchases made at the same moment. the cashier gets the result as
+// soon as it is on disk; a purchase that cannot be synced is cancelled in the journal and fails
+//
+// a background thread replays the journal to the database in order, checking the stock again.
+// every purchase carries its TransactionID from IdGenerator, so one replayed twice after a
+// crash is recognised and skipped. a purchase the database refuses, because the stock ran out
+// meanwhile or the customer or product is gone, is a conflict: it is logged and added to the
+// CheckoutConflicts table for someone to settle with the customer, and replay goes on. any other
+// error leaves the purchase where it is and replay tries again later, waiting up to 30 seconds
+// between tries. whatever is still in the journal at shutdown is replayed on the next start
+//
+// storedb.journal.capacity sets how many purchases can wait (65536 by default); when the journal
+// is full, purchases fail until the database catches up
+public class CheckoutJournal {
+    private static final int DEFAULT_CAPACITY = 65536;
+    // TransactionID, customer ID, quantity, sale time, product ID length and up to 80 bytes of
+    // product ID, which is a VARCHAR(20)
+    private static final int RECORD_SIZE = 8 + 4 + 4 + 8 + 2 + 80;
+    private static final long REPLAY_INTERVAL_MILLIS = 50;
+    private static final long FIRST_RETRY_MILLIS = 1000;
+    private static final long MAX_RETRY_MILLIS = 30_000;
+
+    private static String dbUrl; // database url
+    private static String dbUser; // database username
+    private static String dbPassword; // database password
+
+    private static volatile JournalFile journal = null; // null unless started
+    private static ScheduledExecutorService replayer = null;
+
+    // product ID -> what this instance knows of the product
+    private static final Map<String, StockEntry> catalog = new ConcurrentHashMap<>();
+    // customers the database confirmed, so their purchases need not ask it again
+    private static final Set<Integer> knownCustomers = ConcurrentHashMap.newKeySet();
+
+    // replay state, only touched by the replay thread
+    private static long retryMillis = 0; // wait before the next try, 0 while replay is going well
+    private static long retryAt = 0; // System.nanoTime() before which not to try
+
+    // the cached view of one product
+    private static final class StockEntry {
+        String name;
+        double price;
+        int stored; // stock in the database as last seen
+        int pending; // journaled and not yet written to the database
+        boolean stale; // name or price may have changed since they were read
+    }
+
+    // one purchase as written in the journal
+    private static final class JournaledPurchase {
+        final long transactionId;
+        final int customerId;
+        final int quantity;
+        final long saleTime; // milliseconds since 1970
+        final String productId;
+
+        JournaledPurchase(long transactionId, int customerId, int quantity, long saleTime, String productId) {
+            this.transactionId = transactionId;
+            this.customerId = customerId;
+            this.quantity = quantity;
+            this.saleTime = saleTime;
+            this.productId = productId;
+        }
+
+        byte[] encode() {
+            byte[] id = productId.getBytes(StandardCharsets.UTF_8);
+            return ByteBuffer.allocate(RECORD_SIZE)
+                    .putLong(transactionId).putInt(customerId).putInt(quantity).putLong(saleTime)
+                    .putShort((short) id.length).put(id)
+                    .array();
+        }
+
+        static JournaledPurchase decode(byte[] record) {
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            long transactionId = buffer.getLong();
+            int customerId = buffer.getInt();
+            int quantity = buffer.getInt();
+            long saleTime = buffer.getLong();
+            byte[] id = new byte[buffer.getShort()];
+            buffer.get(id);
+            return new JournaledPurchase(transactionId, customerId, quantity, saleTime,
+                    new String(id, StandardCharsets.UTF_8));
+        }
+    }
+
+    // sets the database connection information and creates the CheckoutConflicts table if needed
+    // @param url database url
+    // @param user database username
+    // @param password database password
+    public static synchronized void setConnectionInfo(String url, String user, String password) {
+        dbUrl = url;
+        dbUser = user;
+        dbPassword = password;
+
+        if (System.getProperty("storedb.journal.file") == null) {
+            return;
+        }
+        try (Connection conn = getConnection()) {
+            ensureTable(conn);
+        } catch (SQLException e) {
+            Logger.log(Logger.WARNING, "Could not create CheckoutConflicts table: {}", e.getMessage());
+        }
+    }
+
+    // open the journal in storedb.journal.file, if set, and start replaying it
+    public static synchronized void start() {
+        String file = System.getProperty("storedb.journal.file");
+        if (file == null || file.isBlank() || journal != null) {
+            return;
+        }
+        JournalFile opened;
+        try {
+            opened = new JournalFile(Path.of(file.trim()), RECORD_SIZE,
+                    Integer.getInteger("storedb.journal.capacity", DEFAULT_CAPACITY));
+        } catch (IOException e) {
+            Logger.log(Logger.ERROR, "Checkout journal not opened, purchases go straight to the database: {}", e.getMessage());
+            return;
+        }
+
+        // subscribe before reading the catalog, so no stock change falls in between
+        EventBus.subscribe("checkout-journal", (event, sequence, endOfBatch) -> onEvent(event));
+        try {
+            loadCatalog();
+        } catch (SQLException e) {
+            Logger.log(Logger.WARNING, "Checkout journal starts without a catalog, products are read as they are sold: {}",
+                       e.getMessage());
+        }
+        // purchases left from the last run still hold their stock, even for products not read yet
+        byte[] record = new byte[RECORD_SIZE];
+        for (long next = opened.replayed(); next < opened.appended(); next++) {
+            if (opened.read(next, record) && !isCancelled(record)) {
+                JournaledPurchase purchase = JournaledPurchase.decode(record);
+                StockEntry entry = catalog.computeIfAbsent(purchase.productId, id -> {
+                    StockEntry unread = new StockEntry();
+                    unread.stale = true;
+                    return unread;
+                });
+                synchronized (entry) {
+                    entry.pending += purchase.quantity;
+                }
+            }
+        }
+
+        journal = opened;
+        replayer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkout-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        replayer.scheduleWithFixedDelay(CheckoutJournal::replay, 0, REPLAY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        Logger.log(Logger.INFO, "Checkout journal {} open with {} purchases to replay",
+                   file, opened.appended() - opened.replayed());
+    }
+
+    // stop replaying and close the journal; purchases after this go straight to the database
+    public static synchronized void stop() {
+        if (journal == null) {
+            return;
+        }
+        JournalFile closing = journal;
+        journal = null;
+        replayer.shutdown();
+        try {
+            // let a replay in progress finish its purchase
+            replayer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        replayer = null;
+        EventBus.unsubscribe("checkout-journal");
+
+        long waiting = closing.appended() - closing.replayed();
+        try {
+            closing.close();
+        } catch (IOException e) {
+            Logger.log(Logger.ERROR, "Could not close checkout journal: {}", e.getMessage());
+        }
+        if (waiting > 0) {
+            Logger.log(Logger.WARNING, "{} journaled purchases are not in the database yet; they are replayed on the next start",
+                       waiting);
+        }
+    }
+
+    // @return true if purchases go through the journal
+    public static boolean isEnabled() {
+        return journal != null;
+    }
+
+    // @return number of journaled purchases not yet written to the database
+    public static long backlog() {
+        JournalFile file = journal;
+        return file != null ? file.appended() - file.replayed() : 0;
+    }
+
+    // check a purchase against the cached view and commit it to the journal
+    // @param customerId customer ID
+    // @param productId product ID
+    // @param quantity quantity to purchase, already validated
+    // @return the outcome; refused purchases write nothing
+    // @throws SQLException if the product is not cached and the database cannot be read, or the
+    //         journal cannot be written
+    static PurchaseResult place(int customerId, String productId, int quantity) throws SQLException {
+        JournalFile file = journal;
+        if (file == null) {
+            throw new SQLException("Checkout journal is closed");
+        }
+
+        if (!knownCustomers.contains(customerId)) {
+            try {
+                if (!OptimizedCustomerHistory.customerExists(customerId)) {
+                    Logger.log(Logger.WARNING, "Attempt to make purchase with non-existent customer ID: {}", customerId);
+                    return PurchaseResult.refused(PurchaseResult.Status.UNKNOWN_CUSTOMER, customerId, productId, quantity);
+                }
+                knownCustomers.add(customerId);
+            } catch (SQLException e) {
+                // the database has the last word when the purchase is replayed
+                Logger.log(Logger.WARNING, "Could not check customer {}, journaling the purchase anyway: {}",
+                           customerId, e.getMessage());
+            }
+        }
+
+        StockEntry entry = entry(productId);
+        if (entry == null) {
+            Logger.log(Logger.WARNING, "Attempt to purchase non-existent product: {}", productId);
+            return PurchaseResult.refused(PurchaseResult.Status.UNKNOWN_PRODUCT, customerId, productId, quantity);
+        }
+        String productName;
+        double totalPrice;
+        int availableQuantity;
+        synchronized (entry) {
+            productName = entry.name;
+            totalPrice = entry.price * quantity;
+            availableQuantity = entry.stored - entry.pending;
+            if (quantity > availableQuantity) {
+                Logger.log(Logger.WARNING, "Insufficient stock for product: {}, requested: {}, available: {}",
+                          productId, quantity, availableQuantity);
+                return new PurchaseResult(PurchaseResult.Status.INSUFFICIENT_STOCK, customerId, productId,
+                        productName, quantity, 0, availableQuantity, 0);
+            }
+            entry.pending += quantity;
+        }
+
+        JournaledPurchase purchase = new JournaledPurchase(IdGenerator.next(), customerId, quantity,
+                System.currentTimeMillis(), productId);
+        long record;
+        try {
+            record = file.append(purchase.encode());
+        } catch (IOException e) {
+            synchronized (entry) {
+                entry.pending -= quantity;
+            }
+            throw new SQLException("Could not journal purchase: " + e.getMessage(), e);
+        }
+        try {
+            file.sync(record);
+        } catch (IOException e) {
+            // a sale that may not survive a crash is not a sale; the journal has blanked the
+            // record so replay passes over it
+            synchronized (entry) {
+                entry.pending -= quantity;
+            }
+            Logger.log(Logger.ERROR, "Purchase {} could not be made durable and was cancelled: {}",
+                       purchase.transactionId, e.getMessage());
+            throw new SQLException("Could not sync checkout journal: " + e.getMessage(), e);
+        }
+
+        // the cached view is no stock level to show anyone; the database's comes with the replay
+        EventBus.purchaseCompleted(customerId, productId, quantity, totalPrice, DomainEvent.UNKNOWN);
+        OptimizedCompleteTransactions.logPurchase(customerId, productId, productName, quantity, totalPrice);
+        return new PurchaseResult(PurchaseResult.Status.COMPLETED, customerId, productId,
+                productName, quantity, totalPrice, availableQuantity, purchase.transactionId);
+    }
+
+    // find a product in the cached view, reading it from the database if it is missing or stale
+    // @param productId product ID
+    // @return the entry, or null if the product does not exist
+    // @throws SQLException if the product is not cached and the database cannot be read
+    private static StockEntry entry(String productId) throws SQLException {
+        StockEntry entry = catalog.get(productId);
+        if (entry != null && !entry.stale) {
+            return entry;
+        }
+        try {
+            return loadProduct(productId);
+        } catch (SQLException e) {
+            if (entry != null && entry.name != null) {
+                // an old name or price is better than no sale
+                return entry;
+            }
+            throw e;
+        }
+    }
+
+    // read the whole catalog into the cached view
+    // @throws SQLException if a database error occurs
+    private static void loadCatalog() throws SQLException {
+        try (Connection conn = getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = Metrics.timed("LoadJournalCatalog", () -> stmt.executeQuery(
+                     "SELECT ProductID, ItemName, ItemPrice, ItemQuantity FROM Products"))) {
+            while (rs.next()) {
+                store(rs.getString(1), rs.getString(2), rs.getDouble(3), rs.getInt(4));
+            }
+        }
+    }
+
+    // read one product into the cached view
+    // @param productId product ID
+    // @return its entry, or null if the product does not exist
+    // @throws SQLException if a database error occurs
+    private static StockEntry loadProduct(String productId) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT ItemName, ItemPrice, ItemQuantity FROM Products WHERE ProductID = ?")) {
+            stmt.setString(1, productId);
+            try (ResultSet rs = Metrics.timed("LoadJournalProduct", stmt::executeQuery)) {
+                if (!rs.next()) {
+                    catalog.remove(productId);
+                    return null;
+                }
+                return store(productId, rs.getString(1), rs.getDouble(2), rs.getInt(3));
+            }
+        }
+    }
+
+    private static StockEntry store(String productId, String name, double price, int stock) {
+        StockEntry entry = catalog.computeIfAbsent(productId, id -> new StockEntry());
+        synchronized (entry) {
+            entry.name = name;
+            entry.price = price;
+            entry.stored = stock;
+            entry.stale = false;
+        }
+        return entry;
+    }
+
+    // keep the cached view's stock in step with product edits and other instances' purchases;
+    // this instance's purchases are counted when journaled and when replayed
+    private static void onEvent(DomainEvent event) {
+        StockEntry entry = catalog.get(event.getProductId());
+        if (entry == null && event.getType() != DomainEvent.Type.PRODUCT_REMOVED) {
+            return; // read when first sold
+        }
+        switch (event.getType()) {
+            case PRODUCT_REMOVED -> catalog.remove(event.getProductId());
+            case PRODUCT_ADDED, PRODUCT_UPDATED, STOCK_CHANGED -> {
+                synchronized (entry) {
+                    if (event.getType() != DomainEvent.Type.STOCK_CHANGED) {
+                        entry.stale = true;
+                    }
+                    if (event.getStockLevel() != DomainEvent.UNKNOWN) {
+                        entry.stored = event.getStockLevel();
+                    }
+                }
+            }
+            default -> {
+                // not about the catalog, or this instance's own purchase
+            }
+        }
+    }
+
+    // write the journaled purchases that are on disk to the database, in order, until one fails
+    private static void replay() {
+        if (retryMillis > 0 && System.nanoTime() < retryAt) {
+            return;
+        }
+        JournalFile file = journal;
+        if (file == null) {
+            return;
+        }
+        byte[] record = new byte[RECORD_SIZE];
+        long next = file.replayed();
+        try {
+            for (long durable = file.durable(); next < durable; next++) {
+                if (!file.read(next, record)) {
+                    Logger.log(Logger.ERROR, "Checkout journal record {} is damaged and was skipped", next);
+                } else if (!isCancelled(record)) {
+                    apply(JournaledPurchase.decode(record));
+                }
+                file.markReplayed(next + 1);
+            }
+            if (retryMillis > 0) {
+                Logger.log(Logger.INFO, "Checkout journal replay resumed");
+                retryMillis = 0;
+            }
+        } catch (SQLException e) {
+            retryMillis = retryMillis == 0 ? FIRST_RETRY_MILLIS : Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+            retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryMillis);
+            Logger.log(Logger.WARNING, "Checkout journal replay paused for {} ms with {} purchases waiting: {}",
+                       retryMillis, file.appended() - next, e.getMessage());
+        } catch (RuntimeException e) {
+            // an exception would stop the scheduled replay for good
+            Logger.log(Logger.ERROR, "Checkout journal replay failed: {}", e.getMessage());
+        }
+    }
+
+    // @param record a journal record
+    // @return true if it was cancelled, which leaves it all zeros
+    private static boolean isCancelled(byte[] record) {
+        for (byte b : record) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // write one journaled purchase to the database, or report it as a conflict
+    // @param purchase the purchase
+    // @throws SQLException if it should be tried again later
+    private static void apply(JournaledPurchase purchase) throws SQLException {
+        long start = System.nanoTime();
+        int stockLevel = DomainEvent.UNKNOWN;
+        boolean conflict = false;
+        try {
+            // it may have been written before a crash kept the replay position from reaching the disk
+            if (!OptimizedCompleteTransactions.purchaseRecorded(purchase.transactionId, purchase.customerId)) {
+                stockLevel = OptimizedCompleteTransactions.replayPurchase(purchase.transactionId, purchase.customerId,
+                        purchase.productId, purchase.quantity, new Timestamp(purchase.saleTime));
+            }
+        } catch (SQLException e) {
+            if (e.getErrorCode() != 1062) { // a duplicate TransactionID is already written
+                if (!isConflict(e)) {
+                    throw e;
+                }
+                reportConflict(purchase, e.getMessage());
+                conflict = true;
+            }
+        }
+        Metrics.record("JournalReplay", System.nanoTime() - start);
+        Metrics.record("CheckoutJournal lag", TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - purchase.saleTime));
+
+        StockEntry entry = catalog.get(purchase.productId);
+        if (entry != null) {
+            synchronized (entry) {
+                entry.pending = Math.max(0, entry.pending - purchase.quantity);
+                if (stockLevel != DomainEvent.UNKNOWN) {
+                    entry.stored = stockLevel;
+                }
+                if (conflict) {
+                    // the view sold stock the database did not have
+                    entry.stale = true;
+                }
+            }
+        }
+        if (stockLevel != DomainEvent.UNKNOWN) {
+            EventBus.stockChanged(purchase.productId, stockLevel);
+        }
+    }
+
+    // @return true if the database refused the purchase itself, so trying again cannot help
+    private static boolean isConflict(SQLException e) {
+        // 45000: stock ran out or the product is gone; 1452: customer or product is gone
+        return "45000".equals(e.getSQLState()) || e.getErrorCode() == 1452;
+    }
+
+    // log a purchase the database refused and add it to CheckoutConflicts
+    // @param purchase the purchase
+    // @param reason why it was refused
+    // @throws SQLException if the conflict cannot be recorded
+    private static void reportConflict(JournaledPurchase purchase, String reason) throws SQLException {
+        Logger.log(Logger.ERROR, "Journaled purchase {} of {} x {} for customer {} could not be written: {}",
+                   purchase.transactionId, purchase.quantity, purchase.productId, purchase.customerId, reason);
+        String sql = "INSERT IGNORE INTO CheckoutConflicts (TransactionID, PersonID, ProductID, QuantityPurchased, " +
+                     "SaleTime, Reason, ReportedAt) VALUES (?, ?, ?, ?, ?, ?, NOW(3))";
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, purchase.transactionId);
+            stmt.setInt(2, purchase.customerId);
+            stmt.setString(3, purchase.productId);
+            stmt.setInt(4, purchase.quantity);
+            stmt.setTimestamp(5, new Timestamp(purchase.saleTime));
+            stmt.setString(6, reason.length() > 200 ? reason.substring(0, 200) : reason);
+            Metrics.timed("ReportCheckoutConflict", stmt::executeUpdate);
+        }
+    }
+
+    // create the CheckoutConflicts table if it doesn't exist
+    // @param conn the connection to use
+    // @throws SQLException if a database error occurs
+    private static void ensureTable(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(
+                    "CREATE TABLE IF NOT EXISTS CheckoutConflicts (" +
+                    "TransactionID BIGINT PRIMARY KEY, " +
+                    "PersonID INT NOT NULL, " +
+                    "ProductID VARCHAR(20) NOT NULL, " +
+                    "QuantityPurchased INT NOT NULL, " +
+                    "SaleTime DATETIME(3) NOT NULL, " +
+                    "Reason VARCHAR(200) NOT NULL, " +
+                    "ReportedAt DATETIME(3) NOT NULL, " +
+                    "INDEX idx_conflict_reported (ReportedAt))");
+        }
+    }
+
+    private static Connection getConnection() throws SQLException {
+        return DriverManager.getConnection(dbUrl, dbUser, dbPassword);
+    }
+}
@@ -4,6 +4,7 @@ import src.Authentication.AuthenticationService;
 import src.Objects.Person;
 import src.Security.SecurityUtil;
 import src.Util.ErrorHandler;
+import src.Util.IdGenerator;
 import src.Util.Logger;
 import src.Util.ValidationException;
 import java.sql.*;
@@ -237,12 +238,13 @@ public class CompleteTransactions {
                 }
                 
                 // call the stored procedure to make the purchase
-                String call = "{CALL MakePurchase(?, ?, ?)}";
+                String call = "{CALL MakePurchase(?, ?, ?, ?)}";
                 try (CallableStatement stmt = conn.prepareCall(call)) {
                     // set parameters for the stored procedure
-                    stmt.setInt(1, customerId);
-                    stmt.setString(2, productId);
-                    stmt.setInt(3, quantity);
+                    stmt.setLong(1, IdGenerator.next());
+                    stmt.setInt(2, customerId);
+                    stmt.setString(3, productId);
+                    stmt.setInt(4, quantity);
                     stmt.execute();
                     
                     // log the purchase
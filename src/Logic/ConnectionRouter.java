@@ -0,0 +1,190 @@
+package src.Logic;
+
+import src.Authentication.Session;
+import src.Authentication.SessionManager;
+import src.Util.Logger;
+import src.Util.Metrics;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// sends read-only queries to replica databases, so reporting load does not slow down checkout
+// on the primary
+//
+// replicas are listed in storedb.db.replicas as comma separated JDBC urls and use the primary's
+// username and password. reads take the healthy replicas in turn; a replica that cannot be
+// reached, has stopped replicating, is further behind than the sticky window or does not let
+// its replication status be read is left out until a health check (every storedb.db.replica-check-seconds, 5 by default) finds it fit again.
+// without healthy replicas every query goes to the primary
+//
+// a session that has just written reads from the primary for storedb.db.sticky-seconds (10 by
+// default), so its users see their own changes even while the replicas catch up. work without
+// a session, such as background jobs, reads from the primary for as long after any write by
+// this instance. writes must call markWrite before they start
+public class ConnectionRouter {
+    private static final long STICKY_MILLIS =
+            TimeUnit.SECONDS.toMillis(Long.getLong("storedb.db.sticky-seconds", 10));
+    private static final long CHECK_INTERVAL_SECONDS = Long.getLong("storedb.db.replica-check-seconds", 5);
+    private static final int CHECK_TIMEOUT_SECONDS = 2;
+
+    private static String dbUser; // database username, shared by the replicas
+    private static String dbPassword; // database password, shared by the replicas
+    private static volatile List<Replica> replicas = List.of();
+    private static final AtomicInteger nextReplica = new AtomicInteger();
+    private static volatile long lastWrite; // when this instance last changed data, 0 if never
+
+    private static ScheduledExecutorService healthChecker = null;
+
+    // a replica and what the last check or connection attempt found
+    private static final class Replica {
+        final String url;
+        volatile boolean healthy = true;
+
+        Replica(String url) {
+            this.url = url;
+        }
+    }
+
+    // sets the database connection information and reads the replica list
+    // @param url primary database url
+    // @param user database username
+    // @param password database password
+    public static synchronized void setConnectionInfo(String url, String user, String password) {
+        dbUser = user;
+        dbPassword = password;
+
+        List<Replica> configured = new ArrayList<>();
+        for (String replicaUrl : System.getProperty("storedb.db.replicas", "").split(",")) {
+            if (!replicaUrl.isBlank() && !replicaUrl.trim().equals(url)) {
+                configured.add(new Replica(replicaUrl.trim()));
+            }
+        }
+        replicas = List.copyOf(configured);
+        if (!configured.isEmpty()) {
+            Logger.log(Logger.INFO, "Routing reads to {} replica(s), sticky for {} ms after a write",
+                       configured.size(), STICKY_MILLIS);
+        }
+    }
+
+    // start checking the replicas' health in the background
+    public static synchronized void start() {
+        if (healthChecker != null || replicas.isEmpty()) {
+            return;
+        }
+        healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecker.scheduleWithFixedDelay(ConnectionRouter::checkReplicas, 0, CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stop() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+            healthChecker = null;
+        }
+    }
+
+    // record that the current session, and this instance, is about to change data
+    public static void markWrite() {
+        lastWrite = System.currentTimeMillis();
+        Session session = SessionManager.current();
+        if (session != null) {
+            session.markWrite();
+        }
+    }
+
+    // get a connection to the next healthy replica for a read-only query
+    // @return the connection, or null if the query should go to the primary
+    public static Connection replicaConnection() {
+        List<Replica> current = replicas;
+        if (current.isEmpty() || readsOwnWrites()) {
+            return null;
+        }
+        int start = Math.floorMod(nextReplica.getAndIncrement(), current.size());
+        for (int i = 0; i < current.size(); i++) {
+            Replica replica = current.get((start + i) % current.size());
+            if (!replica.healthy) {
+                continue;
+            }
+            try {
+                return Metrics.timed("ConnectReplica", () -> DriverManager.getConnection(replica.url, dbUser, dbPassword));
+            } catch (SQLException e) {
+                // leave it out until the health check finds it working again
+                markDown(replica, e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    // @return true if the current session wrote recently enough that a replica may not have its
+    //         change yet, or without a session, if this instance did
+    private static boolean readsOwnWrites() {
+        Session session = SessionManager.current();
+        long written = session != null ? session.getLastWrite() : lastWrite;
+        return System.currentTimeMillis() - written < STICKY_MILLIS;
+    }
+
+    // check that every replica answers and is not too far behind
+    private static void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection conn = DriverManager.getConnection(replica.url, dbUser, dbPassword)) {
+                if (!conn.isValid(CHECK_TIMEOUT_SECONDS)) {
+                    markDown(replica, "connection not valid");
+                    continue;
+                }
+                String problem = replicationProblem(conn);
+                if (problem != null) {
+                    markDown(replica, problem);
+                } else if (!replica.healthy) {
+                    replica.healthy = true;
+                    Logger.log(Logger.INFO, "Replica {} is back in rotation", replica.url);
+                }
+            } catch (SQLException e) {
+                markDown(replica, e.getMessage());
+            } catch (RuntimeException e) {
+                // keep the schedule alive; an exception would cancel it
+                Logger.log(Logger.ERROR, "Replica health check error: {}", e.getMessage());
+            }
+        }
+    }
+
+    // @param conn connection to the replica
+    // @return why the replica should not serve reads, or null if it may
+    private static String replicationProblem(Connection conn) {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SHOW REPLICA STATUS")) {
+            if (!rs.next()) {
+                return null; // not set up as a replica, e.g. a copy kept in sync some other way
+            }
+            long lagSeconds = rs.getLong("Seconds_Behind_Source");
+            if (rs.wasNull()) {
+                return "replication is not running";
+            }
+            if (TimeUnit.SECONDS.toMillis(lagSeconds) > STICKY_MILLIS) {
+                return "replication is " + lagSeconds + " seconds behind";
+            }
+            return null;
+        } catch (SQLException e) {
+            // older server or no REPLICATION CLIENT privilege; a lag that cannot be checked may be any lag
+            return "replication status cannot be read: " + e.getMessage();
+        }
+    }
+
+    private static void markDown(Replica replica, String reason) {
+        if (replica.healthy) {
+            replica.healthy = false;
+            Logger.log(Logger.WARNING, "Replica {} out of rotation: {}", replica.url, reason);
+        }
+    }
+}
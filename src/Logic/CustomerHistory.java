@@ -115,7 +115,7 @@ public class CustomerHistory {
         int personID; // customer ID
         String firstName; // customer first name
         String lastName; // customer last name
-        int transactionID; // transaction ID
+        long transactionID; // transaction ID
         Timestamp date; // transaction date
         int quantity; // quantity purchased
         String itemName; // product name
@@ -123,7 +123,7 @@ public class CustomerHistory {
 
         // constructor to initialize transaction object
         public Transactions(int personID, String firstName, String lastName,
-                            int transactionID, Timestamp date, int quantity,
+                            long transactionID, Timestamp date, int quantity,
                             String itemName, double itemPrice) {
             this.personID = personID;
             this.firstName = firstName;
@@ -225,7 +225,7 @@ public class CustomerHistory {
 
                 while (rs.next()) {
                     // get data from result set
-                    int transactionId = rs.getInt("TransactionID");
+                    long transactionId = rs.getLong("TransactionID");
                     Timestamp date = rs.getTimestamp("Date");
                     int quantity = rs.getInt("QuantityPurchased");
                     String itemName = rs.getString("ItemName");
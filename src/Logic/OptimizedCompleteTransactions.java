@@ -1,14 +1,30 @@
 package src.Logic;
 
 import src.Authentication.AuthenticationService;
+import src.Authentication.SessionManager;
 import src.Objects.Person;
+import src.Objects.ProductData;
+import src.Objects.ProductPageData;
+import src.Objects.PurchaseResult;
 import src.Security.SecurityUtil;
+import src.Service.CustomerHistoryService;
+import src.Service.ProductService;
+import src.Service.TransactionService;
+import src.Util.ChangeFeed;
+import src.Util.DomainEvent;
 import src.Util.ErrorHandler;
+import src.Util.EventBus;
+import src.Util.IdGenerator;
 import src.Util.Logger;
+import src.Util.Metrics;
+import src.Util.ShardRouter;
 import src.Util.ValidationException;
 import java.sql.*;
+import java.util.ArrayList;
 import java.util.InputMismatchException;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
 
 public class OptimizedCompleteTransactions {
     // database connection details
@@ -27,6 +43,52 @@ public class OptimizedCompleteTransactions {
         DB_PASSWORD = password;
     }
 
+    // check that every shard has the purchase ID schema from sql/ids/TransactionIDs.sql, so an
+    // old database stops the application at startup instead of failing every purchase
+    // @throws SQLException if a shard still has the old TransactionID column or MakePurchase
+    public static void verifyPurchaseIds() throws SQLException {
+        for (int shard = 0; shard < ShardRouter.shardCount(); shard++) {
+            String problem;
+            try (Connection conn = ShardRouter.connection(shard)) {
+                problem = purchaseIdProblem(conn, shard == ShardRouter.CATALOG_SHARD);
+            } catch (SQLException e) {
+                // an unreachable database is reported where it is used
+                Logger.log(Logger.WARNING, "Could not check purchase IDs on shard {}: {}", shard, e.getMessage());
+                continue;
+            }
+            if (problem != null) {
+                throw new SQLException(problem + (ShardRouter.isSharded() ? " on shard " + shard : "")
+                        + "; run sql/ids/TransactionIDs.sql before starting");
+            }
+        }
+    }
+
+    // @param conn connection to the database to check
+    // @param checkProcedure true to check MakePurchase as well
+    // @return what is missing for IDs made by IdGenerator, or null if nothing is
+    // @throws SQLException if a database error occurs
+    private static String purchaseIdProblem(Connection conn, boolean checkProcedure) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT DATA_TYPE, EXTRA FROM information_schema.COLUMNS " +
+                    "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'Purchase' AND COLUMN_NAME = 'TransactionID'")) {
+                if (rs.next() && (!rs.getString(1).equalsIgnoreCase("bigint") || rs.getString(2).contains("auto_increment"))) {
+                    return "Purchase.TransactionID is still " + rs.getString(1) + " " + rs.getString(2);
+                }
+            }
+            if (checkProcedure) {
+                try (ResultSet rs = stmt.executeQuery(
+                        "SELECT 1 FROM information_schema.PARAMETERS WHERE SPECIFIC_SCHEMA = DATABASE() " +
+                        "AND SPECIFIC_NAME = 'MakePurchase' AND PARAMETER_NAME = 'p_transactionID'")) {
+                    if (!rs.next()) {
+                        return "MakePurchase does not take the TransactionID";
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
     // gets a database connection
     // @return a connection to the database
     // @throws SQLException if a database error occurs
@@ -101,7 +163,7 @@ public class OptimizedCompleteTransactions {
                     }
                     case 7 -> inTransactionMenu = false; // return to main menu
                     default -> {
-                        Logger.log(Logger.WARNING, "Invalid menu choice: " + choice);
+                        Logger.log(Logger.WARNING, "Invalid menu choice: {}", choice);
                         System.out.println("Invalid choice!");
                     }
                 }
@@ -157,14 +219,19 @@ public class OptimizedCompleteTransactions {
                 throw new ValidationException("Invalid phone format (XXX-XXX-XXXX required)", "Phone");
             }
             
+            ConnectionRouter.markWrite();
+            if (ShardRouter.isSharded()) {
+                addShardedClient(fname, lname, email, phone);
+                return;
+            }
             try (Connection conn = getConnection()) {
                 // check if email already exists
                 String checkEmailQuery = "SELECT COUNT(*) FROM Persons WHERE Email = ?";
                 try (PreparedStatement checkEmailStmt = conn.prepareStatement(checkEmailQuery)) {
                     checkEmailStmt.setString(1, email);
-                    try (ResultSet rs = checkEmailStmt.executeQuery()) {
+                    try (ResultSet rs = Metrics.timed("CheckEmailExists", checkEmailStmt::executeQuery)) {
                         if (rs.next() && rs.getInt(1) > 0) {
-                            Logger.log(Logger.WARNING, "Attempt to add client with existing email: " + email);
+                            Logger.log(Logger.WARNING, "Attempt to add client with existing email: {}", email);
                             System.out.println("Error: Email already exists.");
                             return;
                         }
@@ -179,20 +246,13 @@ public class OptimizedCompleteTransactions {
                     stmt.setString(2, lname);
                     stmt.setString(3, email);
                     stmt.setString(4, phone);
-                    int rowsAffected = stmt.executeUpdate();
+                    int rowsAffected = Metrics.timed("InsertClient", stmt::executeUpdate);
 
                     if (rowsAffected > 0) {
                         // get the generated person ID
                         try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
                             if (generatedKeys.next()) {
-                                int personId = generatedKeys.getInt(1);
-                                
-                                // log the client addition
-                                Logger.log(Logger.INFO, "New client added: " + fname + " " + lname + " (ID: " + personId + ")");
-                                
-                                System.out.println("Client added successfully.");
-                                System.out.println("Assigned Person ID: " + personId);
-                                System.out.println("Please use this ID when making a purchase.");
+                                clientAdded(fname, lname, generatedKeys.getInt(1));
                             }
                         }
                     }
@@ -214,6 +274,49 @@ public class OptimizedCompleteTransactions {
         }
     }
     
+    // add a client when customers are sharded: the ID is taken first, since it decides the shard
+    // @param fname first name
+    // @param lname last name
+    // @param email email, already validated
+    // @param phone phone, already validated
+    // @throws SQLException if a database error occurs
+    private static void addShardedClient(String fname, String lname, String email, String phone) throws SQLException {
+        // emails must be unique across all shards
+        if (ShardRouter.shardOfEmail(email) >= 0) {
+            Logger.log(Logger.WARNING, "Attempt to add client with existing email: {}", email);
+            System.out.println("Error: Email already exists.");
+            return;
+        }
+        
+        int personId = ShardRouter.nextPersonId();
+        String sql = "INSERT INTO Persons (PersonID, FName, LName, Email, Phone) VALUES (?, ?, ?, ?, ?)";
+        try (Connection conn = ShardRouter.connectionFor(personId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, personId);
+            stmt.setString(2, fname);
+            stmt.setString(3, lname);
+            stmt.setString(4, email);
+            stmt.setString(5, phone);
+            if (Metrics.timed("InsertClient", stmt::executeUpdate) > 0) {
+                clientAdded(fname, lname, personId);
+            }
+        }
+    }
+    
+    // report a newly added client
+    // @param fname first name
+    // @param lname last name
+    // @param personId the client's new ID
+    private static void clientAdded(String fname, String lname, int personId) {
+        // log the client addition
+        Logger.log(Logger.INFO, "New client added: {} {} (ID: {})", fname, lname, personId);
+        EventBus.customerRegistered(personId);
+        
+        System.out.println("Client added successfully.");
+        System.out.println("Assigned Person ID: " + personId);
+        System.out.println("Please use this ID when making a purchase.");
+    }
+    
     // search for products with multiple criteria
     // @param scanner scanner for user input
     private static void searchProducts(Scanner scanner) {
@@ -266,69 +369,41 @@ public class OptimizedCompleteTransactions {
             inStockOnly = inStockStr.startsWith("y");
             
             // log search criteria
-            Logger.log(Logger.INFO, "Searching products with criteria - Name: " + 
-                      (nameSearch != null ? nameSearch : "any") + 
-                      ", Min Price: " + (minPrice != null ? minPrice : "any") + 
-                      ", Max Price: " + (maxPrice != null ? maxPrice : "any") + 
-                      ", In Stock Only: " + inStockOnly);
+            Logger.log(Logger.INFO, "Searching products with criteria - Name: {}, Min Price: {}, Max Price: {}, In Stock Only: {}",
+                      nameSearch != null ? nameSearch : "any",
+                      minPrice != null ? minPrice : "any",
+                      maxPrice != null ? maxPrice : "any",
+                      inStockOnly);
             
             // execute search
-            try (Connection connection = getConnection();
-                 CallableStatement stmt = connection.prepareCall("{CALL SearchProducts(?, ?, ?, ?)}")) {
-                
-                // set parameters for the stored procedure
-                stmt.setString(1, nameSearch);
-                
-                if (minPrice != null) {
-                    stmt.setFloat(2, minPrice);
-                } else {
-                    stmt.setNull(2, Types.FLOAT);
-                }
-                
-                if (maxPrice != null) {
-                    stmt.setFloat(3, maxPrice);
-                } else {
-                    stmt.setNull(3, Types.FLOAT);
-                }
-                
-                stmt.setBoolean(4, inStockOnly);
-                
-                // execute and display results
-                try (ResultSet rs = stmt.executeQuery()) {
-                    System.out.println("\n--- Search Results ---");
-                    System.out.printf("%-10s %-30s %-10s %-10s%n", 
-                            "ID", "Name", "Price", "Quantity");
-                    System.out.println("------------------------------------------------------");
-                    
-                    boolean hasResults = false;
-                    int count = 0;
-                    
-                    while (rs.next()) {
-                        hasResults = true;
-                        count++;
-                        
-                        // format and display each product
-                        System.out.printf("%-10s %-30s $%-9.2f %-10d%n",
-                                rs.getString("ProductID"),
-                                rs.getString("ItemName"),
-                                rs.getDouble("ItemPrice"),
-                                rs.getInt("ItemQuantity"));
-                    }
-                    
-                    if (!hasResults) {
-                        System.out.println("No products found matching your criteria.");
-                    } else {
-                        System.out.println("------------------------------------------------------");
-                        System.out.println("Found " + count + " products matching your criteria.");
-                    }
-                }
+            ProductPageData results = ProductService.searchProducts(SessionManager.current(), nameSearch, minPrice, maxPrice, inStockOnly).get();
+            
+            // display results
+            System.out.println("\n--- Search Results ---");
+            System.out.printf("%-10s %-30s %-10s %-10s%n", 
+                    "ID", "Name", "Price", "Quantity");
+            System.out.println("------------------------------------------------------");
+            
+            for (ProductData product : results.getProducts()) {
+                // format and display each product
+                System.out.printf("%-10s %-30s $%-9.2f %-10d%n",
+                        product.id,
+                        product.name,
+                        product.price,
+                        product.quantity);
+            }
+            
+            if (results.getProductCount() == 0) {
+                System.out.println("No products found matching your criteria.");
+            } else {
+                System.out.println("------------------------------------------------------");
+                System.out.println("Found " + results.getProductCount() + " products matching your criteria.");
             }
         } catch (ValidationException e) {
             String errorMessage = ErrorHandler.handleValidationException(e, e.getField());
             System.err.println(errorMessage);
-        } catch (SQLException e) {
-            String errorMessage = ErrorHandler.handleSQLException(e, "searching products");
-            System.err.println(errorMessage);
+        } catch (ExecutionException e) {
+            System.err.println(ErrorHandler.handleAsyncException(e, "searching products"));
         } catch (Exception e) {
             String errorMessage = ErrorHandler.handleException(e, "searching products");
             System.err.println(errorMessage);
@@ -350,8 +425,8 @@ public class OptimizedCompleteTransactions {
             }
             
             // check if customer exists
-            if (!OptimizedCustomerHistory.customerExists(customerId)) {
-                Logger.log(Logger.WARNING, "Attempt to make purchase with non-existent customer ID: " + customerId);
+            if (!CustomerHistoryService.customerExists(SessionManager.current(), customerId).get()) {
+                Logger.log(Logger.WARNING, "Attempt to make purchase with non-existent customer ID: {}", customerId);
                 System.out.println("Error: Customer ID does not exist!");
                 return;
             }
@@ -369,7 +444,7 @@ public class OptimizedCompleteTransactions {
                      PreparedStatement stmt = conn.prepareStatement(
                              "SELECT ProductID, ItemName, ItemPrice, ItemQuantity FROM Products WHERE ItemQuantity > 0")) {
                     
-                    try (ResultSet rs = stmt.executeQuery()) {
+                    try (ResultSet rs = Metrics.timed("ListAvailableProducts", stmt::executeQuery)) {
                         System.out.println("\n--- Available Products ---");
                         System.out.printf("%-10s %-30s %-10s %-10s%n", 
                                 "ID", "Name", "Price", "Quantity");
@@ -406,7 +481,7 @@ public class OptimizedCompleteTransactions {
                     
                     stmt.setString(1, searchTerm);
                     
-                    try (ResultSet rs = stmt.executeQuery()) {
+                    try (ResultSet rs = Metrics.timed("FindProductById", stmt::executeQuery)) {
                         if (rs.next()) {
                             // found product by ID
                             productId = searchTerm;
@@ -429,7 +504,7 @@ public class OptimizedCompleteTransactions {
                                 
                                 nameStmt.setString(1, "%" + searchTerm + "%");
                                 
-                                try (ResultSet nameRs = nameStmt.executeQuery()) {
+                                try (ResultSet nameRs = Metrics.timed("SearchProductsByName", nameStmt::executeQuery)) {
                                     System.out.println("\n--- Search Results ---");
                                     System.out.printf("%-10s %-30s %-10s %-10s%n", 
                                             "ID", "Name", "Price", "Quantity");
@@ -479,7 +554,7 @@ public class OptimizedCompleteTransactions {
             }
             
             // make the purchase
-            makePurchase(customerId, productId, quantity);
+            printPurchaseResult(TransactionService.purchase(SessionManager.current(), customerId, productId, quantity).get());
             
         } catch (ValidationException e) {
             String errorMessage = ErrorHandler.handleValidationException(e, e.getField());
@@ -489,6 +564,8 @@ public class OptimizedCompleteTransactions {
             System.err.println(errorMessage);
             System.out.println("Please enter valid numeric values.");
             scanner.nextLine(); // consume invalid input
+        } catch (ExecutionException e) {
+            System.err.println(ErrorHandler.handleAsyncException(e, "processing purchase"));
         } catch (SQLException e) {
             String errorMessage = ErrorHandler.handleSQLException(e, "processing purchase");
             System.err.println(errorMessage);
@@ -498,95 +575,444 @@ public class OptimizedCompleteTransactions {
         }
     }
 
-    // handles purchase transaction
+    // handles purchase transaction and prints the outcome
     // @param customerId customer ID
     // @param productId product ID
     // @param quantity quantity to purchase
-    public static void makePurchase(int customerId, String productId, int quantity) {
+    // @return true if the purchase was completed
+    public static boolean makePurchase(int customerId, String productId, int quantity) {
         try {
-            // validate input
-            if (customerId <= 0) {
-                throw new ValidationException("Invalid customer ID", "Customer ID");
-            }
-            if (productId == null || productId.trim().isEmpty()) {
-                throw new ValidationException("Product ID cannot be empty", "Product ID");
+            PurchaseResult result = placePurchase(customerId, productId, quantity);
+            printPurchaseResult(result);
+            return result.isCompleted();
+        } catch (ValidationException e) {
+            String errorMessage = ErrorHandler.handleValidationException(e, e.getField());
+            System.err.println(errorMessage);
+        } catch (SQLException e) {
+            String errorMessage = ErrorHandler.handleSQLException(e, "processing purchase");
+            System.err.println(errorMessage);
+        } catch (Exception e) {
+            String errorMessage = ErrorHandler.handleException(e, "processing purchase");
+            System.err.println(errorMessage);
+        }
+        return false;
+    }
+    
+    // print the outcome of a purchase for the cashier
+    // @param result the outcome
+    static void printPurchaseResult(PurchaseResult result) {
+        switch (result.getStatus()) {
+            case COMPLETED -> {
+                System.out.println("Purchase completed successfully.");
+                System.out.println("Transaction ID: " + result.getTransactionId());
+                System.out.println("Total price: $" + String.format("%.2f", result.getTotalPrice()));
             }
-            if (quantity <= 0) {
-                throw new ValidationException("Quantity must be greater than zero", "Quantity");
+            case UNKNOWN_CUSTOMER -> System.out.println("Error: Customer ID does not exist!");
+            case UNKNOWN_PRODUCT -> System.out.println("Error: Product ID does not exist!");
+            case INSUFFICIENT_STOCK -> System.out.println("Not enough inventory available. Only "
+                    + result.getAvailableQuantity() + " in stock.");
+        }
+    }
+    
+    // check a purchase against the customer and stock, then record it
+    // nothing is printed, so this can be called from any front end
+    // @param customerId customer ID
+    // @param productId product ID
+    // @param quantity quantity to purchase
+    // @return the outcome; refused purchases write nothing
+    // @throws ValidationException if an argument is invalid
+    // @throws SQLException if a database error occurs
+    public static PurchaseResult placePurchase(int customerId, String productId, int quantity)
+            throws ValidationException, SQLException {
+        // validate input
+        if (customerId <= 0) {
+            throw new ValidationException("Invalid customer ID", "Customer ID");
+        }
+        if (productId == null || productId.trim().isEmpty()) {
+            throw new ValidationException("Product ID cannot be empty", "Product ID");
+        }
+        if (quantity <= 0) {
+            throw new ValidationException("Quantity must be greater than zero", "Quantity");
+        }
+        
+        ConnectionRouter.markWrite();
+        if (CheckoutJournal.isEnabled()) {
+            // committed on local disk and written to the database in the background
+            return CheckoutJournal.place(customerId, productId, quantity);
+        }
+        try (Connection conn = getConnection()) {
+            // check if customer exists
+            if (!OptimizedCustomerHistory.customerExists(customerId)) {
+                Logger.log(Logger.WARNING, "Attempt to make purchase with non-existent customer ID: {}", customerId);
+                return PurchaseResult.refused(PurchaseResult.Status.UNKNOWN_CUSTOMER, customerId, productId, quantity);
             }
             
-            try (Connection conn = getConnection()) {
-                // check if customer exists
-                if (!OptimizedCustomerHistory.customerExists(customerId)) {
-                    Logger.log(Logger.WARNING, "Attempt to make purchase with non-existent customer ID: " + customerId);
-                    System.out.println("Error: Customer ID does not exist!");
-                    return;
+            // check if product exists
+            String checkProductQuery = "SELECT * FROM Products WHERE ProductID = ?";
+            try (PreparedStatement checkProductStmt = conn.prepareStatement(checkProductQuery)) {
+                checkProductStmt.setString(1, productId);
+                try (ResultSet productRs = Metrics.timed("GetProductForPurchase", checkProductStmt::executeQuery)) {
+                    if (!productRs.next()) {
+                        Logger.log(Logger.WARNING, "Attempt to purchase non-existent product: {}", productId);
+                        return PurchaseResult.refused(PurchaseResult.Status.UNKNOWN_PRODUCT, customerId, productId, quantity);
+                    }
+                    
+                    // get product name and price for logging
+                    String productName = productRs.getString("ItemName");
+                    double productPrice = productRs.getDouble("ItemPrice");
+                    
+                    // check if there is enough stock available
+                    int availableQuantity = productRs.getInt("ItemQuantity");
+                    if (quantity > availableQuantity) {
+                        Logger.log(Logger.WARNING, "Insufficient stock for product: {}, requested: {}, available: {}",
+                                  productId, quantity, availableQuantity);
+                        return new PurchaseResult(PurchaseResult.Status.INSUFFICIENT_STOCK, customerId, productId,
+                                productName, quantity, 0, availableQuantity, 0);
+                    }
+                    
+                    // the ID is made here rather than by the database, so it is unique across shards
+                    // and with sharded customers the stock and the purchase are on different databases
+                    long transactionId = IdGenerator.next();
+                    int stockLevel = ShardRouter.isSharded()
+                            ? recordShardedPurchase(conn, transactionId, customerId, productId, quantity, null)
+                            : recordPurchase(conn, transactionId, customerId, productId, quantity);
+                    
+                    // log the purchase
+                    double totalPrice = productPrice * quantity;
+                    EventBus.purchaseCompleted(customerId, productId, quantity, totalPrice, stockLevel);
+                    logPurchase(customerId, productId, productName, quantity, totalPrice);
+                    
+                    return new PurchaseResult(PurchaseResult.Status.COMPLETED, customerId, productId,
+                            productName, quantity, totalPrice, availableQuantity, transactionId);
                 }
-                
-                // check if product exists
-                String checkProductQuery = "SELECT * FROM Products WHERE ProductID = ?";
-                try (PreparedStatement checkProductStmt = conn.prepareStatement(checkProductQuery)) {
-                    checkProductStmt.setString(1, productId);
-                    try (ResultSet productRs = checkProductStmt.executeQuery()) {
-                        if (!productRs.next()) {
-                            Logger.log(Logger.WARNING, "Attempt to purchase non-existent product: " + productId);
-                            System.out.println("Error: Product ID does not exist!");
-                            return;
-                        }
-                        
-                        // get product name and price for logging
-                        String productName = productRs.getString("ItemName");
-                        double productPrice = productRs.getDouble("ItemPrice");
-                        
-                        // check if there is enough stock available
-                        int availableQuantity = productRs.getInt("ItemQuantity");
-                        if (quantity > availableQuantity) {
-                            Logger.log(Logger.WARNING, "Insufficient stock for product: " + productId + 
-                                      ", requested: " + quantity + ", available: " + availableQuantity);
-                            System.out.println("Not enough inventory available. Only " + availableQuantity + " in stock.");
-                            return;
+            }
+        }
+    }
+    
+    // log a completed purchase, and record it as an action of the current user
+    // @param customerId customer ID
+    // @param productId product ID
+    // @param productName product name
+    // @param quantity quantity purchased
+    // @param totalPrice total price charged
+    static void logPurchase(int customerId, String productId, String productName, int quantity, double totalPrice) {
+        Logger.log(Logger.INFO, "Purchase completed: Customer ID {} purchased {} of {} (ID: {}) for ${}",
+                  customerId, quantity, productName, productId, totalPrice);
+        
+        // get current user for user action logging
+        Person currentUser = AuthenticationService.getCurrentUser();
+        if (currentUser != null) {
+            Logger.logUserAction(currentUser.getPersonID(), "Purchase", 
+                               "Processed purchase of " + quantity + " " + productName + 
+                               " for customer " + customerId);
+        }
+    }
+    
+    // check whether a purchase has been written to the database, e.g. by an earlier replay
+    // @param transactionId the purchase's TransactionID
+    // @param customerId customer ID, to find the shard
+    // @return true if the Purchase row exists
+    // @throws SQLException if a database error occurs
+    static boolean purchaseRecorded(long transactionId, int customerId) throws SQLException {
+        try (Connection conn = ShardRouter.isSharded() ? ShardRouter.connectionFor(customerId) : getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM Purchase WHERE TransactionID = ?")) {
+            stmt.setLong(1, transactionId);
+            try (ResultSet rs = Metrics.timed("CheckPurchaseRecorded", stmt::executeQuery)) {
+                return rs.next();
+            }
+        }
+    }
+    
+    // write a purchase that was accepted earlier, e.g. from the checkout journal, with the time
+    // it was made; the stock is checked again, since it may have been sold meanwhile
+    // @param transactionId TransactionID for the purchase
+    // @param customerId customer ID
+    // @param productId product ID
+    // @param quantity quantity purchased
+    // @param date when the purchase was made
+    // @return the product's stock after the purchase
+    // @throws SQLException if a database error occurs, including a lack of stock (SQLState 45000)
+    static int replayPurchase(long transactionId, int customerId, String productId, int quantity, Timestamp date)
+            throws SQLException {
+        try (Connection conn = getConnection()) {
+            if (ShardRouter.isSharded()) {
+                return recordShardedPurchase(conn, transactionId, customerId, productId, quantity, date);
+            }
+            // the same check as MakePurchase, which can only write the current time
+            return ChangeFeed.inTransaction(conn, () -> {
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "SELECT ItemQuantity FROM Products WHERE ProductID = ? FOR UPDATE")) {
+                    stmt.setString(1, productId);
+                    try (ResultSet rs = Metrics.timed("LockProductStock", stmt::executeQuery)) {
+                        if (!rs.next()) {
+                            throw new SQLException("Product does not exist", "45000");
                         }
-                        
-                        // call the stored procedure to make the purchase
-                        String call = "{CALL MakePurchase(?, ?, ?)}";
-                        try (CallableStatement stmt = conn.prepareCall(call)) {
-                            // set parameters for the stored procedure
-                            stmt.setInt(1, customerId);
-                            stmt.setString(2, productId);
-                            stmt.setInt(3, quantity);
-                            stmt.execute();
-                            
-                            // log the purchase
-                            double totalPrice = productPrice * quantity;
-                            Logger.log(Logger.INFO, "Purchase completed: Customer ID " + customerId + 
-                                      " purchased " + quantity + " of " + productName + 
-                                      " (ID: " + productId + ") for $" + totalPrice);
-                            
-                            // get current user for user action logging
-                            Person currentUser = AuthenticationService.getCurrentUser();
-                            if (currentUser != null) {
-                                Logger.logUserAction(currentUser.getPersonID(), "Purchase", 
-                                                   "Processed purchase of " + quantity + " " + productName + 
-                                                   " for customer " + customerId);
-                            }
-                            
-                            System.out.println("Purchase completed successfully.");
-                            System.out.println("Total price: $" + String.format("%.2f", totalPrice));
+                        if (rs.getInt(1) < quantity) {
+                            throw new SQLException("Insufficient stock", "45000");
                         }
                     }
                 }
-            } catch (SQLException e) {
-                throw e; // rethrow to be caught by the outer catch block
+                String insert = "INSERT INTO Purchase (TransactionID, PersonID, ProductID, Date, QuantityPurchased) VALUES (?, ?, ?, ?, ?)";
+                try (PreparedStatement stmt = conn.prepareStatement(insert)) {
+                    stmt.setLong(1, transactionId);
+                    stmt.setInt(2, customerId);
+                    stmt.setString(3, productId);
+                    stmt.setTimestamp(4, date);
+                    stmt.setInt(5, quantity);
+                    Metrics.timed("ReplayPurchase", stmt::executeUpdate);
+                }
+                int stock = fetchStock(conn, productId);
+                ChangeFeed.record(conn, productId, ChangeFeed.Change.PURCHASED, stock);
+                return stock;
+            });
+        }
+    }
+    
+    // make a purchase with the MakePurchase procedure, recording it in the change feed in the
+    // same transaction so other instances see exactly the committed purchases
+    // @param conn open connection
+    // @param transactionId TransactionID for the purchase
+    // @param customerId customer ID
+    // @param productId product ID
+    // @param quantity quantity to purchase
+    // @return the product's stock after the purchase
+    // @throws SQLException if a database error occurs, including a lack of stock
+    private static int recordPurchase(Connection conn, long transactionId, int customerId, String productId,
+                                      int quantity) throws SQLException {
+        try (CallableStatement stmt = conn.prepareCall("{CALL MakePurchase(?, ?, ?, ?)}")) {
+            // set parameters for the stored procedure
+            stmt.setLong(1, transactionId);
+            stmt.setInt(2, customerId);
+            stmt.setString(3, productId);
+            stmt.setInt(4, quantity);
+            
+            // the stock is read back for the feed, since other instances may be following it;
+            // concurrent purchases mean it may already be lower than expected
+            return ChangeFeed.inTransaction(conn, () -> {
+                Metrics.timed("MakePurchase", stmt::execute);
+                int stock = fetchStock(conn, productId);
+                ChangeFeed.record(conn, productId, ChangeFeed.Change.PURCHASED, stock);
+                return stock;
+            });
+        }
+    }
+    
+    // make a purchase when customers are sharded: take the stock from the master catalog, then
+    // write the purchase on the customer's shard, putting the stock back if that fails
+    //
+    // the stock is taken together with a row in PurchaseIntents on the catalog shard, which is
+    // removed once the purchase is written or the stock is back. an intent still there later
+    // means both failed, and PurchaseIntentResolver settles it. an intent left by an earlier
+    // attempt at the same purchase, e.g. a journal replay, means its stock is already taken.
+    // the intent is locked while the purchase is written, so the resolver waits rather than put
+    // the stock back meanwhile, and a failed write only puts it back once the shard confirms
+    // the purchase is not there, since the write may have committed before the error arrived
+    // @param conn open connection to the catalog shard
+    // @param transactionId TransactionID for the purchase
+    // @param customerId customer ID
+    // @param productId product ID
+    // @param quantity quantity to purchase
+    // @param date when the purchase was made, or null for now
+    // @return the product's stock after the purchase
+    // @throws SQLException if a database error occurs, including a lack of stock
+    private static int recordShardedPurchase(Connection conn, long transactionId, int customerId, String productId,
+                                             int quantity, Timestamp date) throws SQLException {
+        int stockLevel = ChangeFeed.inTransaction(conn, () -> {
+            boolean alreadyTaken;
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT IGNORE INTO PurchaseIntents (TransactionID, PersonID, ProductID, QuantityPurchased, CreatedAt) " +
+                    "VALUES (?, ?, ?, ?, NOW(3))")) {
+                stmt.setLong(1, transactionId);
+                stmt.setInt(2, customerId);
+                stmt.setString(3, productId);
+                stmt.setInt(4, quantity);
+                alreadyTaken = Metrics.timed("RecordPurchaseIntent", stmt::executeUpdate) == 0;
             }
-        } catch (ValidationException e) {
-            String errorMessage = ErrorHandler.handleValidationException(e, e.getField());
-            System.err.println(errorMessage);
+            if (!alreadyTaken) {
+                String take = "UPDATE Products SET ItemQuantity = ItemQuantity - ? WHERE ProductID = ? AND ItemQuantity >= ?";
+                try (PreparedStatement stmt = conn.prepareStatement(take)) {
+                    stmt.setInt(1, quantity);
+                    stmt.setString(2, productId);
+                    stmt.setInt(3, quantity);
+                    if (Metrics.timed("TakeStock", stmt::executeUpdate) == 0) {
+                        // bought by someone else since it was checked; fail as MakePurchase would
+                        throw new SQLException("Insufficient stock", "45000");
+                    }
+                }
+            }
+            int stock = fetchStock(conn, productId);
+            ChangeFeed.record(conn, productId, ChangeFeed.Change.PURCHASED, stock);
+            return stock;
+        });
+        
+        SQLException failure;
+        try {
+            failure = ChangeFeed.inTransaction(conn, () -> {
+                if (!lockPurchaseIntent(conn, transactionId)) {
+                    // the resolver put the stock back; a replay takes it again on its next try
+                    return new SQLException("Stock held for purchase " + transactionId + " was returned before it was written");
+                }
+                try {
+                    insertShardedPurchase(transactionId, customerId, productId, quantity, date);
+                } catch (SQLException e) {
+                    boolean recorded;
+                    try {
+                        recorded = purchaseRecorded(transactionId, customerId);
+                    } catch (SQLException checkFailed) {
+                        e.addSuppressed(checkFailed);
+                        throw e; // not known either way, so the intent is left for the resolver
+                    }
+                    if (!recorded) {
+                        returnStock(conn, productId, quantity);
+                        clearPurchaseIntent(conn, transactionId);
+                        return e;
+                    }
+                }
+                clearPurchaseIntent(conn, transactionId);
+                return null;
+            });
         } catch (SQLException e) {
-            String errorMessage = ErrorHandler.handleSQLException(e, "processing purchase");
-            System.err.println(errorMessage);
-        } catch (Exception e) {
-            String errorMessage = ErrorHandler.handleException(e, "processing purchase");
-            System.err.println(errorMessage);
+            Logger.log(Logger.ERROR, "Could not settle the stock of purchase {}, PurchaseIntentResolver settles it later: {}",
+                       transactionId, e.getMessage());
+            throw e;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return stockLevel;
+    }
+    
+    // write a sharded purchase on its customer's shard
+    // @param transactionId TransactionID for the purchase
+    // @param customerId customer ID
+    // @param productId product ID
+    // @param quantity quantity purchased
+    // @param date when the purchase was made, or null for now
+    // @throws SQLException if a database error occurs
+    private static void insertShardedPurchase(long transactionId, int customerId, String productId, int quantity,
+                                              Timestamp date) throws SQLException {
+        String insert = "INSERT INTO Purchase (TransactionID, PersonID, ProductID, Date, QuantityPurchased) VALUES (?, ?, ?, COALESCE(?, NOW()), ?)";
+        try (Connection shard = ShardRouter.connectionFor(customerId);
+             PreparedStatement stmt = shard.prepareStatement(insert)) {
+            stmt.setLong(1, transactionId);
+            stmt.setInt(2, customerId);
+            stmt.setString(3, productId);
+            stmt.setTimestamp(4, date);
+            stmt.setInt(5, quantity);
+            Metrics.timed("InsertShardedPurchase", stmt::executeUpdate);
+        }
+    }
+    
+    // put back stock taken for a purchase that was not written; call inside the transaction
+    // that removes its intent, so it is never returned twice
+    // @param conn open connection to the catalog shard, in a transaction
+    // @param productId product ID
+    // @param quantity quantity to put back
+    // @throws SQLException if a database error occurs
+    private static void returnStock(Connection conn, String productId, int quantity) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE Products SET ItemQuantity = ItemQuantity + ? WHERE ProductID = ?")) {
+            stmt.setInt(1, quantity);
+            stmt.setString(2, productId);
+            Metrics.timed("ReturnStock", stmt::executeUpdate);
+        }
+        int stock = fetchStock(conn, productId);
+        ChangeFeed.record(conn, productId, ChangeFeed.Change.UPDATED, stock);
+    }
+    
+    // lock a purchase's intent until the end of the transaction, so only one thread settles it
+    // @param conn open connection to the catalog shard, in a transaction
+    // @param transactionId TransactionID of the purchase
+    // @return true if the intent is still there
+    // @throws SQLException if a database error occurs
+    private static boolean lockPurchaseIntent(Connection conn, long transactionId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT 1 FROM PurchaseIntents WHERE TransactionID = ? FOR UPDATE")) {
+            stmt.setLong(1, transactionId);
+            try (ResultSet rs = Metrics.timed("LockPurchaseIntent", stmt::executeQuery)) {
+                return rs.next();
+            }
+        }
+    }
+    
+    // @param conn open connection to the catalog shard
+    // @param transactionId TransactionID of the purchase
+    // @return the number of intents removed
+    // @throws SQLException if a database error occurs
+    private static int clearPurchaseIntent(Connection conn, long transactionId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM PurchaseIntents WHERE TransactionID = ?")) {
+            stmt.setLong(1, transactionId);
+            return Metrics.timed("ClearPurchaseIntent", stmt::executeUpdate);
+        }
+    }
+    
+    // a sharded purchase whose stock is taken but which may not be written yet
+    private static final class PurchaseIntent {
+        final long transactionId;
+        final int customerId;
+        final String productId;
+        final int quantity;
+
+        PurchaseIntent(long transactionId, int customerId, String productId, int quantity) {
+            this.transactionId = transactionId;
+            this.customerId = customerId;
+            this.productId = productId;
+            this.quantity = quantity;
+        }
+    }
+    
+    // settle the intents of sharded purchases that neither finished nor got their stock back:
+    // the intent is removed if the purchase was written, otherwise the stock goes back
+    // @param olderThanSeconds only intents at least this old, so purchases still in progress are left alone
+    // @return the number of intents settled
+    // @throws SQLException if a database error occurs
+    static int resolvePurchaseIntents(int olderThanSeconds) throws SQLException {
+        int resolved = 0;
+        try (Connection conn = ShardRouter.connection(ShardRouter.CATALOG_SHARD);
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT TransactionID, PersonID, ProductID, QuantityPurchased FROM PurchaseIntents " +
+                     "WHERE CreatedAt < NOW(3) - INTERVAL ? SECOND ORDER BY CreatedAt LIMIT 100")) {
+            stmt.setInt(1, olderThanSeconds);
+            List<PurchaseIntent> intents = new ArrayList<>();
+            try (ResultSet rs = Metrics.timed("GetPurchaseIntents", stmt::executeQuery)) {
+                while (rs.next()) {
+                    intents.add(new PurchaseIntent(rs.getLong(1), rs.getInt(2), rs.getString(3), rs.getInt(4)));
+                }
+            }
+            for (PurchaseIntent intent : intents) {
+                // waits for a purchase that is being written right now, e.g. by a journal replay
+                boolean returned = ChangeFeed.inTransaction(conn, () -> {
+                    if (!lockPurchaseIntent(conn, intent.transactionId)) {
+                        return false; // settled meanwhile
+                    }
+                    boolean recorded = purchaseRecorded(intent.transactionId, intent.customerId);
+                    if (!recorded) {
+                        returnStock(conn, intent.productId, intent.quantity);
+                    }
+                    clearPurchaseIntent(conn, intent.transactionId);
+                    return !recorded;
+                });
+                if (returned) {
+                    Logger.log(Logger.WARNING, "Returned {} of product {} held by unfinished purchase {}",
+                               intent.quantity, intent.productId, intent.transactionId);
+                }
+                resolved++;
+            }
+        }
+        return resolved;
+    }
+    
+    // read a product's current stock
+    // @param conn open connection
+    // @param productId product ID
+    // @return the quantity in stock, or DomainEvent.UNKNOWN if the product no longer exists
+    // @throws SQLException if a database error occurs
+    private static int fetchStock(Connection conn, String productId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT ItemQuantity FROM Products WHERE ProductID = ?")) {
+            stmt.setString(1, productId);
+            try (ResultSet rs = Metrics.timed("GetProductStock", stmt::executeQuery)) {
+                return rs.next() ? rs.getInt(1) : DomainEvent.UNKNOWN;
+            }
         }
     }
     
@@ -608,14 +1034,15 @@ public class OptimizedCompleteTransactions {
                 throw new ValidationException("Invalid email format", "Email");
             }
             
-            Logger.log(Logger.INFO, "Looking up customer ID for email: " + email);
+            Logger.log(Logger.INFO, "Looking up customer ID for email: {}", email);
             
-            try (Connection conn = getConnection();
+            Connection shard = ShardRouter.isSharded() ? ShardRouter.connectionForEmail(email) : null;
+            try (Connection conn = shard != null ? shard : getConnection();
                  CallableStatement stmt = conn.prepareCall("{CALL FindMyCustomerID(?)}")) {
                 
                 stmt.setString(1, email);
                 
-                try (ResultSet rs = stmt.executeQuery()) {
+                try (ResultSet rs = Metrics.timed("FindMyCustomerID", stmt::executeQuery)) {
                     if (rs.next()) {
                         // check if we got a message (no customer found)
                         if (rs.getMetaData().getColumnCount() == 1 && rs.getMetaData().getColumnName(1).equals("Message")) {
@@ -628,7 +1055,7 @@ public class OptimizedCompleteTransactions {
                             System.out.println("Email: " + rs.getString("Email"));
                             System.out.println("Phone: " + rs.getString("Phone"));
                             
-                            Logger.log(Logger.INFO, "Customer ID found for email " + email + ": " + rs.getInt("PersonID"));
+                            Logger.log(Logger.INFO, "Customer ID found for email {}: {}", email, rs.getInt("PersonID"));
                         }
                     } else {
                         System.out.println("No customer found with this email address.");
@@ -4,19 +4,27 @@ import src.Objects.*;
 import src.Security.SecurityUtil;
 import src.Util.ErrorHandler;
 import src.Util.Logger;
+import src.Util.Metrics;
+import src.Util.ScatterGather;
+import src.Util.ShardRouter;
+import src.Util.TaskScope;
 import src.Util.ValidationException;
 
 import java.util.Scanner;
 import java.sql.*;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.InputMismatchException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 public class OptimizedCustomerHistory {
     private static String dbUrl; // database url
     private static String dbUser; // database username
     private static String dbPassword; // database password
     private static final int DEFAULT_PAGE_SIZE = 10; // default number of items per page
+    private static final Duration SCREEN_TIMEOUT = Duration.ofSeconds(10); // limit for the parallel queries of one screen
     
     // sets the database connection information
     // @param url database url
@@ -34,6 +42,32 @@ public class OptimizedCustomerHistory {
     private static Connection getConnection() throws SQLException {
         return DriverManager.getConnection(dbUrl, dbUser, dbPassword);
     }
+
+    // gets a connection for a read-only query, from a replica when ConnectionRouter has one
+    // @return a connection to a replica or the primary database
+    // @throws SQLException if a database error occurs
+    private static Connection getReadConnection() throws SQLException {
+        Connection replica = ConnectionRouter.replicaConnection();
+        return replica != null ? replica : getConnection();
+    }
+
+    // gets a connection for a read-only query about one customer: the customer's shard when
+    // customers are sharded, otherwise a replica or the primary
+    // @param customerId customer ID
+    // @return a connection to the database holding the customer
+    // @throws SQLException if a database error occurs
+    private static Connection getCustomerReadConnection(int customerId) throws SQLException {
+        return ShardRouter.isSharded() ? ShardRouter.connectionFor(customerId) : getReadConnection();
+    }
+
+    // gets a connection for a read-only query about the customer with an email
+    // @param email customer email
+    // @return a connection to the database holding the customer, if any
+    // @throws SQLException if a database error occurs
+    private static Connection getCustomerReadConnection(String email) throws SQLException {
+        Connection shard = ShardRouter.isSharded() ? ShardRouter.connectionForEmail(email) : null;
+        return shard != null ? shard : getReadConnection();
+    }
     
     // main method for customer history menu
     // @param scanner scanner for user input
@@ -94,8 +128,8 @@ public class OptimizedCustomerHistory {
                             if (SecurityUtil.hasAdminPermission()) {
                                 viewPastPurchasesPaginated(scanner);
                             } else {
-                                Logger.log(Logger.WARNING, "Unauthorized attempt to view all purchases by user ID: " + 
-                                          (currentUser != null ? currentUser.getPersonID() : "unknown"));
+                                Logger.log(Logger.WARNING, "Unauthorized attempt to view all purchases by user ID: {}",
+                                          currentUser != null ? currentUser.getPersonID() : "unknown");
                                 System.out.println("Access denied. Admin privileges required.");
                             }
                         }
@@ -104,7 +138,7 @@ public class OptimizedCustomerHistory {
                             managing = false; // return to main menu
                         }
                         default -> {
-                            Logger.log(Logger.WARNING, "Invalid menu choice: " + choice);
+                            Logger.log(Logger.WARNING, "Invalid menu choice: {}", choice);
                             System.out.println("Invalid choice!");
                         }
                     }
@@ -128,6 +162,7 @@ public class OptimizedCustomerHistory {
     }
     
     // searches for a customer by email
+    // the customer lookup and the purchase summary are queried in parallel
     // @param email email to search for
     private static void searchCustomer(String email) {
         try {
@@ -141,46 +176,34 @@ public class OptimizedCustomerHistory {
                 throw new ValidationException("Invalid email format", "Email");
             }
             
-            Logger.log(Logger.INFO, "Searching for customer with email: " + email);
+            Logger.log(Logger.INFO, "Searching for customer with email: {}", email);
             
-            // optimized query to find customer by email using index
-            String sql = "SELECT PersonID, FName, LName, Email, Phone FROM Persons WHERE Email = ?";
-
-            try (Connection conn = getConnection();
-                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-                // set email parameter
-                pstmt.setString(1, email);
-
-                try (ResultSet rs = pstmt.executeQuery()) {
-                    if (rs.next()) {
-                        // create person object from result set
-                        Person person = new Person(
-                                rs.getInt("PersonID"),
-                                rs.getString("FName"),
-                                rs.getString("LName"),
-                                rs.getString("Phone"),
-                                rs.getString("Email")
-                        );
-                        
-                        Logger.log(Logger.INFO, "Customer found: " + person.getPersonID() + " - " + 
-                                  person.getFirstName() + " " + person.getLastName());
-                        
-                        System.out.println("Customer Found: " + person);
-                        
-                        // show purchase summary
-                        viewCustomerPurchaseSummary(person.getPersonID());
-                    } else {
-                        Logger.log(Logger.INFO, "No customer found with email: " + email);
-                        System.out.println("No customer was found with the email: " + email);
-                    }
+            try (TaskScope scope = new TaskScope("Customer search", SCREEN_TIMEOUT)) {
+                TaskScope.Subtask<Person> customer = scope.fork(() -> findCustomerByEmail(email));
+                TaskScope.Subtask<CustomerSummary> summary = scope.fork(() -> fetchCustomerSummaryByEmail(email));
+                scope.join();
+                
+                Person person = customer.get();
+                if (person != null) {
+                    Logger.log(Logger.INFO, "Customer found: {} - {} {}",
+                              person.getPersonID(), person.getFirstName(), person.getLastName());
+                    
+                    System.out.println("Customer Found: " + person);
+                    
+                    // show purchase summary
+                    showCustomerPurchaseSummary(person.getPersonID(), summary.get());
+                } else {
+                    Logger.log(Logger.INFO, "No customer found with email: {}", email);
+                    System.out.println("No customer was found with the email: " + email);
                 }
             }
         } catch (ValidationException e) {
             String errorMessage = ErrorHandler.handleValidationException(e, e.getField());
             System.err.println(errorMessage);
-        } catch (SQLException e) {
-            String errorMessage = ErrorHandler.handleSQLException(e, "searching for customer");
+        } catch (ExecutionException e) {
+            String errorMessage = e.getCause() instanceof SQLException sqlException
+                    ? ErrorHandler.handleSQLException(sqlException, "searching for customer")
+                    : ErrorHandler.handleException(e, "searching for customer");
             System.err.println(errorMessage);
         } catch (Exception e) {
             String errorMessage = ErrorHandler.handleException(e, "searching for customer");
@@ -188,6 +211,35 @@ public class OptimizedCustomerHistory {
         }
     }
     
+    // find a customer by email
+    // @param email email to search for
+    // @return the customer, or null if no customer has that email
+    // @throws SQLException if a database error occurs
+    public static Person findCustomerByEmail(String email) throws SQLException {
+        // optimized query to find customer by email using index
+        String sql = "SELECT PersonID, FName, LName, Email, Phone FROM Persons WHERE Email = ?";
+
+        try (Connection conn = getCustomerReadConnection(email);
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            // set email parameter
+            pstmt.setString(1, email);
+
+            try (ResultSet rs = Metrics.timed("FindCustomerByEmail", pstmt::executeQuery)) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new Person(
+                        rs.getInt("PersonID"),
+                        rs.getString("FName"),
+                        rs.getString("LName"),
+                        rs.getString("Phone"),
+                        rs.getString("Email")
+                );
+            }
+        }
+    }
+    
     // view customer purchase history with pagination
     // @param scanner scanner for user input
     // @param customerId customer ID
@@ -200,7 +252,7 @@ public class OptimizedCustomerHistory {
             
             // check if customer exists
             if (!customerExists(customerId)) {
-                Logger.log(Logger.WARNING, "Attempt to view history for non-existent customer ID: " + customerId);
+                Logger.log(Logger.WARNING, "Attempt to view history for non-existent customer ID: {}", customerId);
                 System.out.println("Error: Customer ID does not exist!");
                 return;
             }
@@ -212,9 +264,8 @@ public class OptimizedCustomerHistory {
             // admins can view any customer's history, regular users can only view their own
             if (!SecurityUtil.hasAdminPermission() && 
                 (currentUser == null || currentUser.getPersonID() != customerId)) {
-                Logger.log(Logger.WARNING, "Unauthorized attempt to view customer history for ID: " + 
-                          customerId + " by user ID: " + 
-                          (currentUser != null ? currentUser.getPersonID() : "unknown"));
+                Logger.log(Logger.WARNING, "Unauthorized attempt to view customer history for ID: {} by user ID: {}",
+                          customerId, currentUser != null ? currentUser.getPersonID() : "unknown");
                 System.out.println("Access denied. You can only view your own purchase history.");
                 return;
             }
@@ -224,7 +275,7 @@ public class OptimizedCustomerHistory {
             boolean viewing = true;
             
             while (viewing) {
-                try (Connection conn = getConnection();
+                try (Connection conn = getCustomerReadConnection(customerId);
                      CallableStatement stmt = conn.prepareCall("{CALL GetCustomerPurchaseHistory(?, ?, ?)}")) {
                     
                     // set parameters for the stored procedure
@@ -232,19 +283,18 @@ public class OptimizedCustomerHistory {
                     stmt.setInt(2, page);
                     stmt.setInt(3, pageSize);
                     
-                    Logger.log(Logger.INFO, "Viewing purchase history for customer ID: " + 
-                              customerId + " (page " + page + ")");
+                    Logger.log(Logger.INFO, "Viewing purchase history for customer ID: {} (page {})", customerId, page);
                     
-                    boolean hasResults = stmt.execute();
+                    boolean hasResults = Metrics.timed("GetCustomerPurchaseHistory", stmt::execute);
                     int totalPurchases = 0;
                     
                     if (hasResults) {
                         // display purchase history
                         try (ResultSet rs = stmt.getResultSet()) {
                             System.out.println("\n--- Purchase History (Page " + page + ") ---");
-                            System.out.printf("%-5s %-20s %-15s %-25s %-10s %-10s %-10s%n", 
+                            System.out.printf("%-19s %-20s %-15s %-25s %-10s %-10s %-10s%n", 
                                     "ID", "Date", "Product ID", "Product Name", "Quantity", "Price", "Total");
-                            System.out.println("-----------------------------------------------------------------------------------------");
+                            System.out.println("-------------------------------------------------------------------------------------------------------");
                             
                             boolean hasPurchases = false;
                             int count = 0;
@@ -254,8 +304,8 @@ public class OptimizedCustomerHistory {
                                 count++;
                                 
                                 // format and display each purchase
-                                System.out.printf("%-5d %-20s %-15s %-25s %-10d $%-9.2f $%-9.2f%n",
-                                        rs.getInt("TransactionID"),
+                                System.out.printf("%-19d %-20s %-15s %-25s %-10d $%-9.2f $%-9.2f%n",
+                                        rs.getLong("TransactionID"),
                                         rs.getTimestamp("Date").toString(),
                                         rs.getString("ProductID"),
                                         rs.getString("ItemName"),
@@ -267,7 +317,7 @@ public class OptimizedCustomerHistory {
                             if (!hasPurchases) {
                                 System.out.println("No purchase history found for this customer on this page.");
                             } else {
-                                System.out.println("-----------------------------------------------------------------------------------------");
+                                System.out.println("-------------------------------------------------------------------------------------------------------");
                                 System.out.println("Showing " + count + " purchases");
                             }
                         }
@@ -341,6 +391,7 @@ public class OptimizedCustomerHistory {
     }
     
     // view customer purchase summary
+    // the existence check and the summary query are run in parallel
     // @param customerId customer ID
     public static void viewCustomerPurchaseSummary(int customerId) {
         try {
@@ -349,67 +400,27 @@ public class OptimizedCustomerHistory {
                 throw new ValidationException("Invalid customer ID", "Customer ID");
             }
             
-            // check if customer exists
-            if (!customerExists(customerId)) {
-                Logger.log(Logger.WARNING, "Attempt to view summary for non-existent customer ID: " + customerId);
-                System.out.println("Error: Customer ID does not exist!");
-                return;
-            }
-            
-            // get current user for permission check
-            Person currentUser = src.Authentication.AuthenticationService.getCurrentUser();
-            
-            // check if user has permission to view this customer's summary
-            // admins can view any customer's summary, regular users can only view their own
-            if (!SecurityUtil.hasAdminPermission() && 
-                (currentUser == null || currentUser.getPersonID() != customerId)) {
-                Logger.log(Logger.WARNING, "Unauthorized attempt to view customer summary for ID: " + 
-                          customerId + " by user ID: " + 
-                          (currentUser != null ? currentUser.getPersonID() : "unknown"));
-                System.out.println("Access denied. You can only view your own purchase summary.");
-                return;
-            }
-            
-            Logger.log(Logger.INFO, "Viewing purchase summary for customer ID: " + customerId);
-            
-            // query to get customer purchase summary
-            String query = "SELECT * FROM CustomerPurchaseSummary WHERE PersonID = ?";
-            
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(query)) {
+            try (TaskScope scope = new TaskScope("Customer purchase summary", SCREEN_TIMEOUT)) {
+                TaskScope.Subtask<Boolean> exists = scope.fork(() -> customerExists(customerId));
+                TaskScope.Subtask<CustomerSummary> summary = scope.fork(() -> fetchCustomerSummary(customerId));
+                scope.join();
                 
-                stmt.setInt(1, customerId);
-                
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        // display customer information
-                        System.out.println("\n--- Customer Purchase Summary ---");
-                        System.out.println("Customer ID: " + rs.getInt("PersonID"));
-                        System.out.println("Name: " + rs.getString("FName") + " " + rs.getString("LName"));
-                        System.out.println("Email: " + rs.getString("Email"));
-                        
-                        // display purchase summary
-                        int totalTransactions = rs.getInt("TotalTransactions");
-                        
-                        if (totalTransactions > 0) {
-                            System.out.println("\nPurchase Statistics:");
-                            System.out.println("Total Transactions: " + totalTransactions);
-                            System.out.println("Total Items Purchased: " + rs.getInt("TotalItemsPurchased"));
-                            System.out.println("Total Amount Spent: $" + String.format("%.2f", rs.getDouble("TotalSpent")));
-                            System.out.println("Last Purchase Date: " + rs.getTimestamp("LastPurchaseDate"));
-                        } else {
-                            System.out.println("\nNo purchase history found for this customer.");
-                        }
-                    } else {
-                        System.out.println("No customer found with ID: " + customerId);
-                    }
+                // check if customer exists
+                if (!exists.get()) {
+                    Logger.log(Logger.WARNING, "Attempt to view summary for non-existent customer ID: {}", customerId);
+                    System.out.println("Error: Customer ID does not exist!");
+                    return;
                 }
+                
+                showCustomerPurchaseSummary(customerId, summary.get());
             }
         } catch (ValidationException e) {
             String errorMessage = ErrorHandler.handleValidationException(e, e.getField());
             System.err.println(errorMessage);
-        } catch (SQLException e) {
-            String errorMessage = ErrorHandler.handleSQLException(e, "retrieving customer purchase summary");
+        } catch (ExecutionException e) {
+            String errorMessage = e.getCause() instanceof SQLException sqlException
+                    ? ErrorHandler.handleSQLException(sqlException, "retrieving customer purchase summary")
+                    : ErrorHandler.handleException(e, "viewing customer purchase summary");
             System.err.println(errorMessage);
         } catch (Exception e) {
             String errorMessage = ErrorHandler.handleException(e, "viewing customer purchase summary");
@@ -417,6 +428,101 @@ public class OptimizedCustomerHistory {
         }
     }
     
+    // display a customer's purchase summary if the current user may see it
+    // @param customerId customer ID
+    // @param summary the summary, or null if the view has no row for the customer
+    private static void showCustomerPurchaseSummary(int customerId, CustomerSummary summary) {
+        // get current user for permission check
+        Person currentUser = src.Authentication.AuthenticationService.getCurrentUser();
+        
+        // check if user has permission to view this customer's summary
+        // admins can view any customer's summary, regular users can only view their own
+        if (!SecurityUtil.hasAdminPermission() && 
+            (currentUser == null || currentUser.getPersonID() != customerId)) {
+            Logger.log(Logger.WARNING, "Unauthorized attempt to view customer summary for ID: {} by user ID: {}",
+                      customerId, currentUser != null ? currentUser.getPersonID() : "unknown");
+            System.out.println("Access denied. You can only view your own purchase summary.");
+            return;
+        }
+        
+        Logger.log(Logger.INFO, "Viewing purchase summary for customer ID: {}", customerId);
+        
+        if (summary == null) {
+            System.out.println("No customer found with ID: " + customerId);
+            return;
+        }
+        
+        // display customer information
+        System.out.println("\n--- Customer Purchase Summary ---");
+        System.out.println("Customer ID: " + summary.getPersonId());
+        System.out.println("Name: " + summary.getFirstName() + " " + summary.getLastName());
+        System.out.println("Email: " + summary.getEmail());
+        
+        // display purchase summary
+        if (summary.getTotalTransactions() > 0) {
+            System.out.println("\nPurchase Statistics:");
+            System.out.println("Total Transactions: " + summary.getTotalTransactions());
+            System.out.println("Total Items Purchased: " + summary.getTotalItemsPurchased());
+            System.out.println("Total Amount Spent: $" + String.format("%.2f", summary.getTotalSpent()));
+            System.out.println("Last Purchase Date: " + summary.getLastPurchaseDate());
+        } else {
+            System.out.println("\nNo purchase history found for this customer.");
+        }
+    }
+    
+    // fetch a customer's purchase summary
+    // no permission check is made, callers are responsible for that
+    // @param customerId customer ID
+    // @return the summary, or null if there is no such customer
+    // @throws SQLException if a database error occurs
+    public static CustomerSummary fetchCustomerSummary(int customerId) throws SQLException {
+        String query = "SELECT * FROM CustomerPurchaseSummary WHERE PersonID = ?";
+        
+        try (Connection conn = getCustomerReadConnection(customerId);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            
+            stmt.setInt(1, customerId);
+            
+            try (ResultSet rs = Metrics.timed("CustomerPurchaseSummary", stmt::executeQuery)) {
+                return rs.next() ? readCustomerSummary(rs) : null;
+            }
+        }
+    }
+    
+    // fetch a customer's purchase summary by email
+    // @param email customer email
+    // @return the summary, or null if there is no such customer
+    // @throws SQLException if a database error occurs
+    private static CustomerSummary fetchCustomerSummaryByEmail(String email) throws SQLException {
+        String query = "SELECT * FROM CustomerPurchaseSummary WHERE Email = ?";
+        
+        try (Connection conn = getCustomerReadConnection(email);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            
+            stmt.setString(1, email);
+            
+            try (ResultSet rs = Metrics.timed("CustomerPurchaseSummaryByEmail", stmt::executeQuery)) {
+                return rs.next() ? readCustomerSummary(rs) : null;
+            }
+        }
+    }
+    
+    // read the current row of the CustomerPurchaseSummary view
+    // @param rs result set positioned on a row
+    // @return the summary
+    // @throws SQLException if a database error occurs
+    private static CustomerSummary readCustomerSummary(ResultSet rs) throws SQLException {
+        return new CustomerSummary(
+                rs.getInt("PersonID"),
+                rs.getString("FName"),
+                rs.getString("LName"),
+                rs.getString("Email"),
+                rs.getInt("TotalTransactions"),
+                rs.getInt("TotalItemsPurchased"),
+                rs.getDouble("TotalSpent"),
+                rs.getTimestamp("LastPurchaseDate"));
+    }
+    
     // check if customer exists
     // @param customerId customer ID
     // @return true if customer exists, false otherwise
@@ -424,17 +530,51 @@ public class OptimizedCustomerHistory {
     public static boolean customerExists(int customerId) throws SQLException {
         String query = "SELECT COUNT(*) FROM Persons WHERE PersonID = ?";
         
-        try (Connection conn = getConnection();
+        try (Connection conn = ShardRouter.isSharded() ? ShardRouter.connectionFor(customerId) : getConnection();
              PreparedStatement stmt = conn.prepareStatement(query)) {
             
             stmt.setInt(1, customerId);
             
-            try (ResultSet rs = stmt.executeQuery()) {
+            try (ResultSet rs = Metrics.timed("CustomerExists", stmt::executeQuery)) {
                 return rs.next() && rs.getInt(1) > 0;
             }
         }
     }
     
+    // fetch one page of a customer's purchases, newest first
+    // no permission check is made, callers are responsible for that
+    // @param customerId customer ID
+    // @param page page number, starting at 1
+    // @param pageSize number of purchases per page
+    // @return the purchases on the page
+    // @throws SQLException if a database error occurs
+    public static List<Purchase> fetchPurchaseHistory(int customerId, int page, int pageSize) throws SQLException {
+        List<Purchase> purchases = new ArrayList<>();
+        
+        try (Connection conn = getCustomerReadConnection(customerId);
+             CallableStatement stmt = conn.prepareCall("{CALL GetCustomerPurchaseHistory(?, ?, ?)}")) {
+            
+            stmt.setInt(1, customerId);
+            stmt.setInt(2, page);
+            stmt.setInt(3, pageSize);
+            
+            if (Metrics.timed("GetCustomerPurchaseHistory", stmt::execute)) {
+                try (ResultSet rs = stmt.getResultSet()) {
+                    while (rs.next()) {
+                        purchases.add(new Purchase(
+                                rs.getLong("TransactionID"),
+                                customerId,
+                                rs.getString("ProductID"),
+                                rs.getTimestamp("Date").toString(),
+                                rs.getInt("QuantityPurchased")));
+                    }
+                }
+            }
+        }
+        
+        return purchases;
+    }
+    
     // displays all transactions from the database with pagination
     // @param scanner scanner for user input
     private static void viewPastPurchasesPaginated(Scanner scanner) {
@@ -449,105 +589,76 @@ public class OptimizedCustomerHistory {
                 // calculate offset for pagination
                 int offset = (page - 1) * pageSize;
                 
-                // optimized query to get paginated transactions with joins
-                String countQuery = "SELECT COUNT(*) FROM Purchase";
-                String dataQuery = "SELECT pu.TransactionID, pu.Date, pu.QuantityPurchased, " +
-                        "pr.ProductID, pr.ItemName, pr.ItemPrice, " +
-                        "p.PersonID, p.FName, p.LName, " +
-                        "(pu.QuantityPurchased * pr.ItemPrice) AS TotalPrice " +
-                        "FROM Purchase pu " +
-                        "JOIN Products pr ON pu.ProductID = pr.ProductID " +
-                        "JOIN Persons p ON pu.PersonID = p.PersonID " +
-                        "ORDER BY pu.Date DESC " +
-                        "LIMIT ? OFFSET ?";
+                ScatterGather.Result<PurchasesPage> result = fetchAllPurchases(offset, pageSize);
+                int totalPurchases = result.getValue().total;
                 
-                try (Connection conn = getConnection()) {
-                    // get total count for pagination
-                    int totalPurchases = 0;
-                    try (PreparedStatement countStmt = conn.prepareStatement(countQuery);
-                         ResultSet countRs = countStmt.executeQuery()) {
-                        if (countRs.next()) {
-                            totalPurchases = countRs.getInt(1);
-                        }
-                    }
+                System.out.println("\n--- All Purchases (Page " + page + ") ---");
+                System.out.printf("%-19s %-20s %-15s %-20s %-10s %-15s %-10s%n", 
+                        "ID", "Date", "Customer", "Product", "Quantity", "Price", "Total");
+                System.out.println("-------------------------------------------------------------------------------------------------------");
+                
+                List<PurchaseRow> rows = result.getValue().rows;
+                for (PurchaseRow row : rows) {
+                    // format and display each purchase
+                    System.out.printf("%-19d %-20s %-15s %-20s %-10d $%-9.2f $%-9.2f%n",
+                            row.transactionId,
+                            row.date.toString(),
+                            row.customerName,
+                            row.itemName,
+                            row.quantity,
+                            row.price,
+                            row.total);
+                }
+                
+                if (rows.isEmpty()) {
+                    System.out.println("No purchases found on this page.");
+                } else {
+                    System.out.println("-------------------------------------------------------------------------------------------------------");
+                    System.out.println("Showing " + rows.size() + " purchases");
+                }
+                if (!result.isComplete()) {
+                    System.out.println("Incomplete: no purchases from shard(s) " + result.getFailures().keySet()
+                            + " " + result.getFailures().values());
+                }
+                
+                // display pagination information
+                int totalPages = (int) Math.ceil((double) totalPurchases / pageSize);
+                System.out.println("Page " + page + " of " + totalPages + 
+                                 " (Total purchases: " + totalPurchases + ")");
+                
+                // pagination menu
+                if (totalPurchases > 0) {
+                    System.out.println("\n--- Navigation ---");
+                    System.out.println("1. Next Page");
+                    System.out.println("2. Previous Page");
+                    System.out.println("3. Return to Customer History Menu");
+                    System.out.print("Enter your choice: ");
                     
-                    // get paginated data
-                    try (PreparedStatement dataStmt = conn.prepareStatement(dataQuery)) {
-                        dataStmt.setInt(1, pageSize);
-                        dataStmt.setInt(2, offset);
-                        
-                        try (ResultSet rs = dataStmt.executeQuery()) {
-                            System.out.println("\n--- All Purchases (Page " + page + ") ---");
-                            System.out.printf("%-5s %-20s %-15s %-20s %-10s %-15s %-10s%n", 
-                                    "ID", "Date", "Customer", "Product", "Quantity", "Price", "Total");
-                            System.out.println("-----------------------------------------------------------------------------------------");
-                            
-                            boolean hasPurchases = false;
-                            int count = 0;
-                            
-                            while (rs.next()) {
-                                hasPurchases = true;
-                                count++;
-                                
-                                // format and display each purchase
-                                System.out.printf("%-5d %-20s %-15s %-20s %-10d $%-9.2f $%-9.2f%n",
-                                        rs.getInt("TransactionID"),
-                                        rs.getTimestamp("Date").toString(),
-                                        rs.getString("FName") + " " + rs.getString("LName"),
-                                        rs.getString("ItemName"),
-                                        rs.getInt("QuantityPurchased"),
-                                        rs.getDouble("ItemPrice"),
-                                        rs.getDouble("TotalPrice"));
-                            }
-                            
-                            if (!hasPurchases) {
-                                System.out.println("No purchases found on this page.");
+                    int navChoice = scanner.nextInt();
+                    scanner.nextLine(); // consume newline
+                    
+                    switch (navChoice) {
+                        case 1 -> {
+                            if (page < totalPages) {
+                                page++;
                             } else {
-                                System.out.println("-----------------------------------------------------------------------------------------");
-                                System.out.println("Showing " + count + " purchases");
+                                System.out.println("Already on the last page.");
                             }
-                            
-                            // display pagination information
-                            int totalPages = (int) Math.ceil((double) totalPurchases / pageSize);
-                            System.out.println("Page " + page + " of " + totalPages + 
-                                             " (Total purchases: " + totalPurchases + ")");
-                            
-                            // pagination menu
-                            if (totalPurchases > 0) {
-                                System.out.println("\n--- Navigation ---");
-                                System.out.println("1. Next Page");
-                                System.out.println("2. Previous Page");
-                                System.out.println("3. Return to Customer History Menu");
-                                System.out.print("Enter your choice: ");
-                                
-                                int navChoice = scanner.nextInt();
-                                scanner.nextLine(); // consume newline
-                                
-                                switch (navChoice) {
-                                    case 1 -> {
-                                        if (page < totalPages) {
-                                            page++;
-                                        } else {
-                                            System.out.println("Already on the last page.");
-                                        }
-                                    }
-                                    case 2 -> {
-                                        if (page > 1) {
-                                            page--;
-                                        } else {
-                                            System.out.println("Already on the first page.");
-                                        }
-                                    }
-                                    case 3 -> viewing = false; // return to customer history menu
-                                    default -> System.out.println("Invalid choice!");
-                                }
+                        }
+                        case 2 -> {
+                            if (page > 1) {
+                                page--;
                             } else {
-                                System.out.println("\nPress Enter to continue...");
-                                scanner.nextLine();
-                                viewing = false;
+                                System.out.println("Already on the first page.");
                             }
                         }
+                        case 3 -> viewing = false; // return to customer history menu
+                        default -> System.out.println("Invalid choice!");
                     }
+                } else {
+                    System.out.println("\nPress Enter to continue...");
+                    scanner.nextLine();
+                    viewing = false;
                 }
             }
         } catch (InputMismatchException e) {
@@ -563,4 +674,110 @@ public class OptimizedCustomerHistory {
             System.err.println(errorMessage);
         }
     }
+    
+    // one page of the all-purchases listing and the number of purchases in total
+    private static final class PurchasesPage {
+        final int total;
+        final List<PurchaseRow> rows;
+
+        PurchasesPage(int total, List<PurchaseRow> rows) {
+            this.total = total;
+            this.rows = rows;
+        }
+    }
+
+    // one line of the all-purchases listing
+    private static final class PurchaseRow {
+        final long transactionId;
+        final Timestamp date;
+        final String customerName;
+        final String itemName;
+        final int quantity;
+        final double price;
+        final double total;
+
+        PurchaseRow(ResultSet rs) throws SQLException {
+            transactionId = rs.getLong("TransactionID");
+            date = rs.getTimestamp("Date");
+            customerName = rs.getString("FName") + " " + rs.getString("LName");
+            itemName = rs.getString("ItemName");
+            quantity = rs.getInt("QuantityPurchased");
+            price = rs.getDouble("ItemPrice");
+            total = rs.getDouble("TotalPrice");
+        }
+    }
+
+    // the order of the listing, which every database also sorts by
+    private static final Comparator<PurchaseRow> NEWEST_FIRST = Comparator
+            .comparing((PurchaseRow row) -> row.date).reversed()
+            .thenComparing(Comparator.comparingLong((PurchaseRow row) -> row.transactionId).reversed());
+
+    // fetch one page of all purchases, newest first
+    // with sharded customers every shard sends its newest offset + pageSize purchases at once and
+    // the page is merged from those; shards that fail or do not answer in time are left out and
+    // named in the result
+    // @param offset number of purchases before the page
+    // @param pageSize number of purchases per page
+    // @return the page and the total number of purchases
+    // @throws SQLException if a database error occurs, or no shard answered
+    private static ScatterGather.Result<PurchasesPage> fetchAllPurchases(int offset, int pageSize) throws SQLException {
+        if (!ShardRouter.isSharded()) {
+            try (Connection conn = getReadConnection()) {
+                return ScatterGather.complete(readPurchasesPage(conn, offset, pageSize));
+            }
+        }
+        
+        ScatterGather.Result<List<PurchasesPage>> parts =
+                ScatterGather.query("ListPurchasesPage", conn -> readPurchasesPage(conn, 0, offset + pageSize));
+        int total = 0;
+        List<List<PurchaseRow>> newest = new ArrayList<>();
+        for (PurchasesPage part : parts.getValue()) {
+            total += part.total;
+            newest.add(part.rows);
+        }
+        return parts.withValue(new PurchasesPage(total, ScatterGather.mergeSorted(newest, NEWEST_FIRST, offset, pageSize)));
+    }
+
+    // read one page of the purchases in one database, newest first
+    // @param conn the connection
+    // @param offset number of purchases before the page
+    // @param pageSize number of purchases per page
+    // @return the page and the number of purchases in that database
+    // @throws SQLException if a database error occurs
+    private static PurchasesPage readPurchasesPage(Connection conn, int offset, int pageSize) throws SQLException {
+        // optimized query to get paginated transactions with joins
+        String countQuery = "SELECT COUNT(*) FROM Purchase";
+        String dataQuery = "SELECT pu.TransactionID, pu.Date, pu.QuantityPurchased, " +
+                "pr.ProductID, pr.ItemName, pr.ItemPrice, " +
+                "p.PersonID, p.FName, p.LName, " +
+                "(pu.QuantityPurchased * pr.ItemPrice) AS TotalPrice " +
+                "FROM Purchase pu " +
+                "JOIN Products pr ON pu.ProductID = pr.ProductID " +
+                "JOIN Persons p ON pu.PersonID = p.PersonID " +
+                "ORDER BY pu.Date DESC, pu.TransactionID DESC " +
+                "LIMIT ? OFFSET ?";
+        
+        // get total count for pagination
+        int totalPurchases = 0;
+        try (PreparedStatement countStmt = conn.prepareStatement(countQuery);
+             ResultSet countRs = Metrics.timed("CountPurchases", countStmt::executeQuery)) {
+            if (countRs.next()) {
+                totalPurchases = countRs.getInt(1);
+            }
+        }
+        
+        // get paginated data
+        List<PurchaseRow> rows = new ArrayList<>();
+        try (PreparedStatement dataStmt = conn.prepareStatement(dataQuery)) {
+            dataStmt.setInt(1, pageSize);
+            dataStmt.setInt(2, offset);
+            
+            try (ResultSet rs = Metrics.timed("ListPurchasesPage", dataStmt::executeQuery)) {
+                while (rs.next()) {
+                    rows.add(new PurchaseRow(rs));
+                }
+            }
+        }
+        return new PurchasesPage(totalPurchases, rows);
+    }
 }
@@ -1,17 +1,33 @@
 package src.Logic;
 
+import src.Authentication.Session;
+import src.Authentication.SessionManager;
 import src.Objects.ProductData;
 import src.Objects.ProductPageData;
+import src.Objects.ProductSales;
 import src.Security.SecurityUtil;
+import src.Service.ProductService;
 import src.Util.ErrorHandler;
 import src.Util.Logger;
+import src.Util.ChangeFeed;
+import src.Util.DomainEvent;
+import src.Util.EventBus;
+import src.Util.Metrics;
+import src.Util.ScatterGather;
+import src.Util.ShardRouter;
 import src.Util.ThreadManager;
 import src.Util.ValidationException;
 import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.InputMismatchException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
-import java.util.concurrent.Callable;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 
 public class OptimizedManageProducts {
     private static String dbUrl; // database url
@@ -36,6 +52,14 @@ public class OptimizedManageProducts {
         return DriverManager.getConnection(dbUrl, dbUser, dbPassword);
     }
 
+    // gets a connection for a read-only query, from a replica when ConnectionRouter has one
+    // @return a connection to a replica or the primary database
+    // @throws SQLException if a database error occurs
+    private static Connection getReadConnection() throws SQLException {
+        Connection replica = ConnectionRouter.replicaConnection();
+        return replica != null ? replica : getConnection();
+    }
+
     // main method for managing products
     // @param scanner scanner for user input
     public static void manageProducts(Scanner scanner) {
@@ -55,7 +79,8 @@ public class OptimizedManageProducts {
             System.out.println("4. Add New Product");
             System.out.println("5. Modify Existing Product");
             System.out.println("6. Remove Product");
-            System.out.println("7. Return to Main Menu");
+            System.out.println("7. View Database Metrics");
+            System.out.println("8. Return to Main Menu");
             System.out.print("Enter your choice: ");
             
             try {
@@ -69,9 +94,14 @@ public class OptimizedManageProducts {
                     case 4 -> addNewProduct(scanner); // add a new product
                     case 5 -> modifyProduct(scanner); // modify an existing product
                     case 6 -> removeProduct(scanner); // remove a product
-                    case 7 -> managing = false; // return to main menu
+                    case 7 -> {
+                        // view database latency metrics and background task lanes
+                        Metrics.printReport();
+                        ThreadManager.printLaneStats();
+                    }
+                    case 8 -> managing = false; // return to main menu
                     default -> {
-                        Logger.log(Logger.WARNING, "Invalid menu choice: " + choice);
+                        Logger.log(Logger.WARNING, "Invalid menu choice: {}", choice);
                         System.out.println("Invalid choice!");
                     }
                 }
@@ -87,133 +117,30 @@ public class OptimizedManageProducts {
         }
     }
 
-    // displays products with pagination using background thread for data retrieval
+    // displays products with pagination, fetching each page through ProductService
     // @param scanner scanner for user input
     private static void viewProductsPaginated(Scanner scanner) {
         try {
+            // page size and sort order are remembered for the session
+            Session session = SessionManager.current();
             int page = 1;
-            int pageSize = DEFAULT_PAGE_SIZE;
-            String sortColumn = "ProductID";
-            String sortDirection = "ASC";
+            int pageSize = session != null ? session.getIntPreference("products.pageSize", DEFAULT_PAGE_SIZE) : DEFAULT_PAGE_SIZE;
+            String sortColumn = session != null ? session.getPreference("products.sortColumn", "ProductID") : "ProductID";
+            String sortDirection = session != null ? session.getPreference("products.sortDirection", "ASC") : "ASC";
             boolean viewing = true;
             
             while (viewing) {
                 // show loading message
                 System.out.println("\nLoading products...");
                 
-                // use atomic boolean to track when data is ready
-                AtomicBoolean dataReady = new AtomicBoolean(false);
-                final int currentPage = page;
-                
-                // capture current sort settings for lambda
-                final String currentSortColumn = sortColumn;
-                final String currentSortDirection = sortDirection;
-                
-                // create a callable for the database operation
-                Callable<ProductPageData> dataTask = () -> {
-                    ProductPageData pageData = new ProductPageData();
-                    
-                    try (Connection connection = getConnection();
-                         CallableStatement stmt = connection.prepareCall("{CALL GetPaginatedProducts(?, ?, ?, ?)}")) {
-                        
-                        // set parameters for the stored procedure
-                        stmt.setInt(1, currentPage);
-                        stmt.setInt(2, pageSize);
-                        stmt.setString(3, currentSortColumn);
-                        stmt.setString(4, currentSortDirection);
-                        
-                        Logger.log(Logger.INFO, "Retrieving products page " + currentPage + 
-                                  " (sort: " + currentSortColumn + " " + currentSortDirection + ")");
-                        
-                        boolean hasResults = stmt.execute();
-                        
-                        if (hasResults) {
-                            // get products
-                            try (ResultSet rs = stmt.getResultSet()) {
-                                while (rs.next()) {
-                                    pageData.addProduct(
-                                        rs.getString("ProductID"),
-                                        rs.getString("ItemName"),
-                                        rs.getDouble("ItemPrice"),
-                                        rs.getInt("ItemQuantity")
-                                    );
-                                }
-                            }
-                            
-                            // get total count for pagination
-                            if (stmt.getMoreResults()) {
-                                try (ResultSet countRs = stmt.getResultSet()) {
-                                    if (countRs.next()) {
-                                        pageData.setTotalProducts(countRs.getInt("TotalProducts"));
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    
-                    return pageData;
-                };
-                
-                // execute the database operation in a background thread
-                ThreadManager.executeAsync(
-                    dataTask,
-                    // success callback
-                    pageData -> {
-                        // display products
-                        System.out.println("\n--- Products (Page " + currentPage + ") ---");
-                        System.out.printf("%-10s %-30s %-10s %-10s%n", 
-                                "ID", "Name", "Price", "Quantity");
-                        System.out.println("------------------------------------------------------");
-                        
-                        if (pageData.getProductCount() == 0) {
-                            System.out.println("No products found on this page.");
-                        } else {
-                            for (ProductData product : pageData.getProducts()) {
-                                System.out.printf("%-10s %-30s $%-9.2f %-10d%n",
-                                    product.id,
-                                    product.name,
-                                    product.price,
-                                    product.quantity);
-                            }
-                            
-                            System.out.println("------------------------------------------------------");
-                            System.out.println("Showing " + pageData.getProductCount() + " products");
-                        }
-                        
-                        // display pagination info
-                        int totalProducts = pageData.getTotalProducts();
-                        int totalPages = (int) Math.ceil((double) totalProducts / pageSize);
-                        System.out.println("Page " + currentPage + " of " + totalPages + 
-                                         " (Total products: " + totalProducts + ")");
-                        
-                        // signal that data is ready
-                        dataReady.set(true);
-                    },
-                    // error callback
-                    e -> {
-                        System.err.println("Error retrieving products: " + e.getMessage());
-                        dataReady.set(true);
-                    }
-                );
-                
-                // wait for data to be ready (simple polling)
-                while (!dataReady.get()) {
-                    try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
-                }
-                
-                // store total products for navigation
+                // the page is fetched on the interactive lane; total products is kept for navigation
                 int totalProducts = 0;
-                try (Connection connection = getConnection();
-                     PreparedStatement stmt = connection.prepareStatement("SELECT COUNT(*) AS TotalProducts FROM Products")) {
-                    try (ResultSet rs = stmt.executeQuery()) {
-                        if (rs.next()) {
-                            totalProducts = rs.getInt("TotalProducts");
-                        }
-                    }
+                try {
+                    ProductPageData pageData = ProductService.getProductPage(SessionManager.current(), page, pageSize, sortColumn, sortDirection).get();
+                    printProductPage(pageData, page, pageSize);
+                    totalProducts = pageData.getTotalProducts();
+                } catch (ExecutionException e) {
+                    System.err.println(ErrorHandler.handleAsyncException(e, "retrieving products"));
                 }
                     
                 // pagination menu
@@ -280,6 +207,11 @@ public class OptimizedManageProducts {
                         
                         final String newSortDirection = (dirChoice == 2) ? "DESC" : "ASC";
                         sortDirection = newSortDirection;
+                        
+                        if (session != null) {
+                            session.setPreference("products.sortColumn", sortColumn);
+                            session.setPreference("products.sortDirection", sortDirection);
+                        }
                     }
                     case 4 -> viewing = false; // return to product menu
                     default -> System.out.println("Invalid choice!");
@@ -290,15 +222,194 @@ public class OptimizedManageProducts {
             System.err.println(errorMessage);
             System.out.println("Please enter a number corresponding to the menu options.");
             scanner.nextLine(); // consume invalid input
-        } catch (SQLException e) {
-            String errorMessage = ErrorHandler.handleSQLException(e, "retrieving paginated products");
-            System.err.println(errorMessage);
         } catch (Exception e) {
             String errorMessage = ErrorHandler.handleException(e, "viewing paginated products");
             System.err.println(errorMessage);
         }
     }
     
+    // print a page of products with pagination info
+    // @param pageData the page
+    // @param page page number
+    // @param pageSize number of products per page
+    private static void printProductPage(ProductPageData pageData, int page, int pageSize) {
+        System.out.println("\n--- Products (Page " + page + ") ---");
+        System.out.printf("%-10s %-30s %-10s %-10s%n", 
+                "ID", "Name", "Price", "Quantity");
+        System.out.println("------------------------------------------------------");
+        
+        if (pageData.getProductCount() == 0) {
+            System.out.println("No products found on this page.");
+        } else {
+            for (ProductData product : pageData.getProducts()) {
+                System.out.printf("%-10s %-30s $%-9.2f %-10d%n",
+                    product.id,
+                    product.name,
+                    product.price,
+                    product.quantity);
+            }
+            
+            System.out.println("------------------------------------------------------");
+            System.out.println("Showing " + pageData.getProductCount() + " products");
+        }
+        
+        // display pagination info
+        int totalProducts = pageData.getTotalProducts();
+        int totalPages = (int) Math.ceil((double) totalProducts / pageSize);
+        System.out.println("Page " + page + " of " + totalPages + 
+                         " (Total products: " + totalProducts + ")");
+    }
+    
+    // fetch one page of products with the total product count
+    // @param page page number, starting at 1
+    // @param pageSize number of products per page
+    // @param sortColumn column to sort by
+    // @param sortDirection ASC or DESC
+    // @return the page data
+    // @throws SQLException if a database error occurs
+    public static ProductPageData fetchProductPage(int page, int pageSize, String sortColumn, String sortDirection) throws SQLException {
+        ProductPageData pageData = new ProductPageData();
+        
+        try (Connection connection = getReadConnection();
+             CallableStatement stmt = connection.prepareCall("{CALL GetPaginatedProducts(?, ?, ?, ?)}")) {
+            
+            // set parameters for the stored procedure
+            stmt.setInt(1, page);
+            stmt.setInt(2, pageSize);
+            stmt.setString(3, sortColumn);
+            stmt.setString(4, sortDirection);
+            
+            Logger.log(Logger.INFO, "Retrieving products page {} (sort: {} {})",
+                      page, sortColumn, sortDirection);
+            
+            boolean hasResults = Metrics.timed("GetPaginatedProducts", stmt::execute);
+            
+            if (hasResults) {
+                // get products
+                try (ResultSet rs = stmt.getResultSet()) {
+                    readProducts(rs, pageData);
+                }
+                
+                // get total count for pagination
+                if (stmt.getMoreResults()) {
+                    try (ResultSet countRs = stmt.getResultSet()) {
+                        if (countRs.next()) {
+                            pageData.setTotalProducts(countRs.getInt("TotalProducts"));
+                        }
+                    }
+                }
+            }
+        }
+        
+        return pageData;
+    }
+    
+    // find products matching the search criteria
+    // @param nameSearch part of the product name, or null for any
+    // @param minPrice minimum price, or null for no minimum
+    // @param maxPrice maximum price, or null for no maximum
+    // @param inStockOnly only return products with stock left
+    // @return the matching products, with the total set to the number found
+    // @throws SQLException if a database error occurs
+    public static ProductPageData findProducts(String nameSearch, Float minPrice, Float maxPrice, boolean inStockOnly) throws SQLException {
+        ProductPageData results = new ProductPageData();
+        
+        try (Connection connection = getReadConnection();
+             CallableStatement stmt = connection.prepareCall("{CALL SearchProducts(?, ?, ?, ?)}")) {
+            
+            // set parameters for the stored procedure
+            stmt.setString(1, nameSearch);
+            
+            if (minPrice != null) {
+                stmt.setFloat(2, minPrice);
+            } else {
+                stmt.setNull(2, Types.FLOAT);
+            }
+            
+            if (maxPrice != null) {
+                stmt.setFloat(3, maxPrice);
+            } else {
+                stmt.setNull(3, Types.FLOAT);
+            }
+            
+            stmt.setBoolean(4, inStockOnly);
+            
+            try (ResultSet rs = Metrics.timed("SearchProducts", stmt::executeQuery)) {
+                readProducts(rs, results);
+            }
+        }
+        
+        results.setTotalProducts(results.getProductCount());
+        return results;
+    }
+    
+    // fetch a single product by ID
+    // @param productId product ID
+    // @return the product, or null if there is no product with that ID
+    // @throws SQLException if a database error occurs
+    public static ProductData fetchProduct(String productId) throws SQLException {
+        String query = "SELECT ProductID, ItemName, ItemPrice, ItemQuantity FROM Products WHERE ProductID = ?";
+        
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
+            stmt.setString(1, productId);
+            
+            try (ResultSet rs = Metrics.timed("GetProduct", stmt::executeQuery)) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new ProductData(rs.getString(1), rs.getString(2), rs.getDouble(3), rs.getInt(4));
+            }
+        }
+    }
+    
+    // map product rows to page data
+    // column indexes are looked up once instead of by name for every row
+    // @param rs result set with ProductID, ItemName, ItemPrice and ItemQuantity columns
+    // @param pageData page data to add the products to
+    // @throws SQLException if a database error occurs
+    public static void readProducts(ResultSet rs, ProductPageData pageData) throws SQLException {
+        int idColumn = rs.findColumn("ProductID");
+        int nameColumn = rs.findColumn("ItemName");
+        int priceColumn = rs.findColumn("ItemPrice");
+        int quantityColumn = rs.findColumn("ItemQuantity");
+        
+        while (rs.next()) {
+            pageData.addProduct(
+                rs.getString(idColumn),
+                rs.getString(nameColumn),
+                rs.getDouble(priceColumn),
+                rs.getInt(quantityColumn)
+            );
+        }
+    }
+    
+    // get the products following a product ID, sorted by product ID, for exporting the catalog
+    // a page at a time: each page is one short query that seeks on the primary key, so the
+    // connection is given back before the page is written out however slowly the reader takes it
+    // @param afterId the last product ID of the previous page, or null for the first page
+    // @param limit the most products to return
+    // @return the products, fewer than limit only on the last page
+    // @throws SQLException if a database error occurs
+    public static List<ProductData> fetchProductsAfter(String afterId, int limit) throws SQLException {
+        String query = "SELECT ProductID, ItemName, ItemPrice, ItemQuantity FROM Products " +
+                       "WHERE ProductID > ? ORDER BY ProductID LIMIT ?";
+        
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(query)) {
+            stmt.setString(1, afterId == null ? "" : afterId);
+            stmt.setInt(2, limit);
+            
+            List<ProductData> products = new ArrayList<>(limit);
+            try (ResultSet rs = Metrics.timed("GetExportPage", stmt::executeQuery)) {
+                while (rs.next()) {
+                    products.add(new ProductData(rs.getString(1), rs.getString(2), rs.getDouble(3), rs.getInt(4)));
+                }
+            }
+            return products;
+        }
+    }
+
     // search products with multiple criteria
     // @param scanner scanner for user input
     private static void searchProducts(Scanner scanner) {
@@ -351,69 +462,41 @@ public class OptimizedManageProducts {
             inStockOnly = inStockStr.startsWith("y");
             
             // log search criteria
-            Logger.log(Logger.INFO, "Searching products with criteria - Name: " + 
-                      (nameSearch != null ? nameSearch : "any") + 
-                      ", Min Price: " + (minPrice != null ? minPrice : "any") + 
-                      ", Max Price: " + (maxPrice != null ? maxPrice : "any") + 
-                      ", In Stock Only: " + inStockOnly);
+            Logger.log(Logger.INFO, "Searching products with criteria - Name: {}, Min Price: {}, Max Price: {}, In Stock Only: {}",
+                      nameSearch != null ? nameSearch : "any",
+                      minPrice != null ? minPrice : "any",
+                      maxPrice != null ? maxPrice : "any",
+                      inStockOnly);
             
             // execute search
-            try (Connection connection = getConnection();
-                 CallableStatement stmt = connection.prepareCall("{CALL SearchProducts(?, ?, ?, ?)}")) {
-                
-                // set parameters for the stored procedure
-                stmt.setString(1, nameSearch);
-                
-                if (minPrice != null) {
-                    stmt.setFloat(2, minPrice);
-                } else {
-                    stmt.setNull(2, Types.FLOAT);
-                }
-                
-                if (maxPrice != null) {
-                    stmt.setFloat(3, maxPrice);
-                } else {
-                    stmt.setNull(3, Types.FLOAT);
-                }
-                
-                stmt.setBoolean(4, inStockOnly);
-                
-                // execute and display results
-                try (ResultSet rs = stmt.executeQuery()) {
-                    System.out.println("\n--- Search Results ---");
-                    System.out.printf("%-10s %-30s %-10s %-10s%n", 
-                            "ID", "Name", "Price", "Quantity");
-                    System.out.println("------------------------------------------------------");
-                    
-                    boolean hasResults = false;
-                    int count = 0;
-                    
-                    while (rs.next()) {
-                        hasResults = true;
-                        count++;
-                        
-                        // format and display each product
-                        System.out.printf("%-10s %-30s $%-9.2f %-10d%n",
-                                rs.getString("ProductID"),
-                                rs.getString("ItemName"),
-                                rs.getDouble("ItemPrice"),
-                                rs.getInt("ItemQuantity"));
-                    }
-                    
-                    if (!hasResults) {
-                        System.out.println("No products found matching your criteria.");
-                    } else {
-                        System.out.println("------------------------------------------------------");
-                        System.out.println("Found " + count + " products matching your criteria.");
-                    }
-                }
+            ProductPageData results = ProductService.searchProducts(SessionManager.current(), nameSearch, minPrice, maxPrice, inStockOnly).get();
+            
+            // display results
+            System.out.println("\n--- Search Results ---");
+            System.out.printf("%-10s %-30s %-10s %-10s%n", 
+                    "ID", "Name", "Price", "Quantity");
+            System.out.println("------------------------------------------------------");
+            
+            for (ProductData product : results.getProducts()) {
+                // format and display each product
+                System.out.printf("%-10s %-30s $%-9.2f %-10d%n",
+                        product.id,
+                        product.name,
+                        product.price,
+                        product.quantity);
+            }
+            
+            if (results.getProductCount() == 0) {
+                System.out.println("No products found matching your criteria.");
+            } else {
+                System.out.println("------------------------------------------------------");
+                System.out.println("Found " + results.getProductCount() + " products matching your criteria.");
             }
         } catch (ValidationException e) {
             String errorMessage = ErrorHandler.handleValidationException(e, e.getField());
             System.err.println(errorMessage);
-        } catch (SQLException e) {
-            String errorMessage = ErrorHandler.handleSQLException(e, "searching products");
-            System.err.println(errorMessage);
+        } catch (ExecutionException e) {
+            System.err.println(ErrorHandler.handleAsyncException(e, "searching products"));
         } catch (Exception e) {
             String errorMessage = ErrorHandler.handleException(e, "searching products");
             System.err.println(errorMessage);
@@ -425,48 +508,105 @@ public class OptimizedManageProducts {
         try {
             Logger.log(Logger.INFO, "Viewing product sales analysis");
             
-            // query to get product sales analysis
-            String query = "SELECT * FROM ProductSalesAnalysis";
+            ScatterGather.Result<List<ProductSales>> result = ProductService.getSalesAnalysis(SessionManager.current(), 0).get();
+            List<ProductSales> rows = result.getValue();
             
-            try (Connection connection = getConnection();
-                 PreparedStatement stmt = connection.prepareStatement(query);
-                 ResultSet rs = stmt.executeQuery()) {
-                
-                System.out.println("\n--- Product Sales Analysis ---");
-                System.out.printf("%-10s %-25s %-10s %-10s %-10s %-15s %-15s%n", 
-                        "ID", "Name", "Price", "Stock", "Times Sold", "Qty Sold", "Revenue");
-                System.out.println("---------------------------------------------------------------------------------");
-                
-                boolean hasData = false;
-                
-                while (rs.next()) {
-                    hasData = true;
-                    
-                    // format and display each product with sales data
+            System.out.println("\n--- Product Sales Analysis ---");
+            System.out.printf("%-10s %-25s %-10s %-10s %-10s %-15s %-15s%n", 
+                    "ID", "Name", "Price", "Stock", "Times Sold", "Qty Sold", "Revenue");
+            System.out.println("---------------------------------------------------------------------------------");
+            
+            if (rows.isEmpty()) {
+                System.out.println("No sales data available.");
+            } else {
+                for (ProductSales row : rows) {
+                    // format each product with sales data
                     System.out.printf("%-10s %-25s $%-9.2f %-10d %-10d %-15d $%-14.2f%n",
-                            rs.getString("ProductID"),
-                            rs.getString("ItemName"),
-                            rs.getDouble("ItemPrice"),
-                            rs.getInt("CurrentStock"),
-                            rs.getInt("TimesSold"),
-                            rs.getInt("TotalQuantitySold"),
-                            rs.getDouble("TotalRevenue"));
-                }
-                
-                if (!hasData) {
-                    System.out.println("No sales data available.");
-                } else {
-                    System.out.println("---------------------------------------------------------------------------------");
+                            row.getProductId(),
+                            row.getName(),
+                            row.getPrice(),
+                            row.getCurrentStock(),
+                            row.getTimesSold(),
+                            row.getTotalQuantitySold(),
+                            row.getTotalRevenue());
                 }
+                System.out.println("---------------------------------------------------------------------------------");
+            }
+            if (!result.isComplete()) {
+                System.out.println("Incomplete: no figures from shard(s) " + result.getFailures().keySet()
+                        + " " + result.getFailures().values());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                Logger.log(Logger.WARNING, "Sales analysis rejected: {}", e.getCause().getMessage());
+                System.out.println("Too many reports are running right now. Please try again shortly.");
+            } else {
+                System.err.println(ErrorHandler.handleAsyncException(e, "retrieving product sales analysis"));
             }
-        } catch (SQLException e) {
-            String errorMessage = ErrorHandler.handleSQLException(e, "retrieving product sales analysis");
-            System.err.println(errorMessage);
         } catch (Exception e) {
             String errorMessage = ErrorHandler.handleException(e, "viewing product sales analysis");
             System.err.println(errorMessage);
         }
     }
+    
+    // fetch sales figures for every product, best sellers first
+    // scans every sale; ProductService runs it on the background lane. with sharded customers
+    // every shard's figures are fetched at once and added up per product; shards that fail or
+    // do not answer in time are left out and named in the result
+    // @param top number of products wanted, or 0 for all of them
+    // @return the figures, one entry per product
+    // @throws SQLException if a database error occurs, or no shard answered
+    public static ScatterGather.Result<List<ProductSales>> fetchSalesAnalysis(int top) throws SQLException {
+        Comparator<ProductSales> byRevenue = Comparator.comparingDouble(ProductSales::getTotalRevenue).reversed();
+        if (!ShardRouter.isSharded()) {
+            List<ProductSales> rows;
+            try (Connection connection = getReadConnection()) {
+                rows = readSalesAnalysis(connection);
+            }
+            return ScatterGather.complete(top > 0 ? ScatterGather.topN(rows, byRevenue, top) : rows);
+        }
+        
+        ScatterGather.Result<List<List<ProductSales>>> parts =
+                ScatterGather.query("ProductSalesAnalysis", OptimizedManageProducts::readSalesAnalysis);
+        // answers come in shard order, so when shard 0 answered its stock levels are the ones kept
+        Map<String, ProductSales> merged = new LinkedHashMap<>();
+        for (List<ProductSales> part : parts.getValue()) {
+            for (ProductSales row : part) {
+                merged.merge(row.getProductId(), row, ProductSales::plus);
+            }
+        }
+        List<ProductSales> rows = ScatterGather.topN(merged.values(), byRevenue, top > 0 ? top : merged.size());
+        return parts.withValue(rows);
+    }
+    
+    // read the ProductSalesAnalysis view of one database
+    // @param connection the connection
+    // @return the figures, one entry per product
+    // @throws SQLException if a database error occurs
+    private static List<ProductSales> readSalesAnalysis(Connection connection) throws SQLException {
+        List<ProductSales> rows = new ArrayList<>();
+        
+        // query to get product sales analysis
+        String query = "SELECT * FROM ProductSalesAnalysis";
+        
+        try (PreparedStatement stmt = connection.prepareStatement(query);
+             ResultSet rs = Metrics.timed("ProductSalesAnalysis", stmt::executeQuery)) {
+            
+            while (rs.next()) {
+                rows.add(new ProductSales(
+                        rs.getString("ProductID"),
+                        rs.getString("ItemName"),
+                        rs.getDouble("ItemPrice"),
+                        rs.getInt("CurrentStock"),
+                        rs.getInt("TimesSold"),
+                        rs.getInt("TotalQuantitySold"),
+                        rs.getDouble("TotalRevenue"),
+                        rs.getInt("UniqueCustomers"),
+                        rs.getObject("LastPurchaseDate", LocalDateTime.class)));
+            }
+        }
+        return rows;
+    }
 
     // adds a new product to the database
     // @param scanner scanner for user input
@@ -506,14 +646,15 @@ public class OptimizedManageProducts {
                 throw new ValidationException("Quantity cannot be negative", "Quantity");
             }
             
+            ConnectionRouter.markWrite();
             try (Connection connection = getConnection()) {
                 // check if product ID already exists - using prepared statement for security
                 String checkQuery = "SELECT COUNT(*) FROM Products WHERE ProductID = ?";
                 try (PreparedStatement checkStatement = connection.prepareStatement(checkQuery)) {
                     checkStatement.setString(1, productId);
-                    try (ResultSet resultSet = checkStatement.executeQuery()) {
+                    try (ResultSet resultSet = Metrics.timed("CheckProductIdAvailable", checkStatement::executeQuery)) {
                         if (resultSet.next() && resultSet.getInt(1) > 0) {
-                            Logger.log(Logger.WARNING, "Attempt to add product with existing ID: " + productId);
+                            Logger.log(Logger.WARNING, "Attempt to add product with existing ID: {}", productId);
                             System.out.println("Error: Product ID already exists!");
                             return;
                         }
@@ -530,13 +671,16 @@ public class OptimizedManageProducts {
                     insertStatement.setInt(4, quantity);
                     
                     // execute the insert
-                    int rowsAffected = insertStatement.executeUpdate();
+                    int rowsAffected = ChangeFeed.writeProductChange(connection, productId, ChangeFeed.Change.ADDED, quantity,
+                            () -> Metrics.timed("InsertProduct", insertStatement::executeUpdate));
                     
                     if (rowsAffected > 0) {
-                        Logger.log(Logger.INFO, "New product added: " + productId + " - " + name);
+                        Logger.log(Logger.INFO, "New product added: {} - {}", productId, name);
+                        ShardRouter.replicateProduct(productId);
+                        EventBus.productAdded(productId, quantity);
                         System.out.println("Product added successfully!");
                     } else {
-                        Logger.log(Logger.WARNING, "Failed to add product: " + productId);
+                        Logger.log(Logger.WARNING, "Failed to add product: {}", productId);
                         System.out.println("Failed to add product. Please try again.");
                     }
                 }
@@ -571,14 +715,15 @@ public class OptimizedManageProducts {
                 throw new ValidationException("Product ID cannot be empty", "Product ID");
             }
 
+            ConnectionRouter.markWrite();
             try (Connection connection = getConnection()) {
                 // check if product exists - using prepared statement for security
                 String checkQuery = "SELECT * FROM Products WHERE ProductID = ?";
                 try (PreparedStatement checkStatement = connection.prepareStatement(checkQuery)) {
                     checkStatement.setString(1, productId);
-                    try (ResultSet resultSet = checkStatement.executeQuery()) {
+                    try (ResultSet resultSet = Metrics.timed("GetProductForUpdate", checkStatement::executeQuery)) {
                         if (!resultSet.next()) {
-                            Logger.log(Logger.WARNING, "Attempt to modify non-existent product: " + productId);
+                            Logger.log(Logger.WARNING, "Attempt to modify non-existent product: {}", productId);
                             System.out.println("Error: Product ID does not exist!");
                             return;
                         }
@@ -621,14 +766,17 @@ public class OptimizedManageProducts {
                                 try (PreparedStatement updateStatement = connection.prepareStatement(updateQuery)) {
                                     updateStatement.setString(1, newName);
                                     updateStatement.setString(2, productId);
-                                    int rowsAffected = updateStatement.executeUpdate();
+                                    int rowsAffected = ChangeFeed.writeProductChange(connection, productId, ChangeFeed.Change.UPDATED, DomainEvent.UNKNOWN,
+                                            () -> Metrics.timed("UpdateProduct", updateStatement::executeUpdate));
                                     
                                     if (rowsAffected > 0) {
-                                        Logger.log(Logger.INFO, "Product name updated: " + productId + 
-                                                  " from '" + currentName + "' to '" + newName + "'");
+                                        Logger.log(Logger.INFO, "Product name updated: {} from '{}' to '{}'",
+                                                  productId, currentName, newName);
+                                        ShardRouter.replicateProduct(productId);
+                                        EventBus.productUpdated(productId, DomainEvent.UNKNOWN);
                                         System.out.println("Product name updated successfully!");
                                     } else {
-                                        Logger.log(Logger.WARNING, "Failed to update product name: " + productId);
+                                        Logger.log(Logger.WARNING, "Failed to update product name: {}", productId);
                                         System.out.println("Failed to update product name. Please try again.");
                                     }
                                 }
@@ -648,14 +796,17 @@ public class OptimizedManageProducts {
                                 try (PreparedStatement updateStatement = connection.prepareStatement(updateQuery)) {
                                     updateStatement.setDouble(1, newPrice);
                                     updateStatement.setString(2, productId);
-                                    int rowsAffected = updateStatement.executeUpdate();
+                                    int rowsAffected = ChangeFeed.writeProductChange(connection, productId, ChangeFeed.Change.UPDATED, DomainEvent.UNKNOWN,
+                                            () -> Metrics.timed("UpdateProduct", updateStatement::executeUpdate));
                                     
                                     if (rowsAffected > 0) {
-                                        Logger.log(Logger.INFO, "Product price updated: " + productId + 
-                                                  " from $" + currentPrice + " to $" + newPrice);
+                                        Logger.log(Logger.INFO, "Product price updated: {} from ${} to ${}",
+                                                  productId, currentPrice, newPrice);
+                                        ShardRouter.replicateProduct(productId);
+                                        EventBus.productUpdated(productId, DomainEvent.UNKNOWN);
                                         System.out.println("Product price updated successfully!");
                                     } else {
-                                        Logger.log(Logger.WARNING, "Failed to update product price: " + productId);
+                                        Logger.log(Logger.WARNING, "Failed to update product price: {}", productId);
                                         System.out.println("Failed to update product price. Please try again.");
                                     }
                                 }
@@ -675,14 +826,17 @@ public class OptimizedManageProducts {
                                 try (PreparedStatement updateStatement = connection.prepareStatement(updateQuery)) {
                                     updateStatement.setInt(1, newQuantity);
                                     updateStatement.setString(2, productId);
-                                    int rowsAffected = updateStatement.executeUpdate();
+                                    int rowsAffected = ChangeFeed.writeProductChange(connection, productId, ChangeFeed.Change.UPDATED, newQuantity,
+                                            () -> Metrics.timed("UpdateProduct", updateStatement::executeUpdate));
                                     
                                     if (rowsAffected > 0) {
-                                        Logger.log(Logger.INFO, "Product quantity updated: " + productId + 
-                                                  " from " + currentQuantity + " to " + newQuantity);
+                                        Logger.log(Logger.INFO, "Product quantity updated: {} from {} to {}",
+                                                  productId, currentQuantity, newQuantity);
+                                        ShardRouter.replicateProduct(productId);
+                                        EventBus.productUpdated(productId, newQuantity);
                                         System.out.println("Product quantity updated successfully!");
                                     } else {
-                                        Logger.log(Logger.WARNING, "Failed to update product quantity: " + productId);
+                                        Logger.log(Logger.WARNING, "Failed to update product quantity: {}", productId);
                                         System.out.println("Failed to update product quantity. Please try again.");
                                     }
                                 }
@@ -721,22 +875,24 @@ public class OptimizedManageProducts {
                                     updateStatement.setDouble(2, newPrice);
                                     updateStatement.setInt(3, newQuantity);
                                     updateStatement.setString(4, productId);
-                                    int rowsAffected = updateStatement.executeUpdate();
+                                    int rowsAffected = ChangeFeed.writeProductChange(connection, productId, ChangeFeed.Change.UPDATED, newQuantity,
+                                            () -> Metrics.timed("UpdateProduct", updateStatement::executeUpdate));
                                     
                                     if (rowsAffected > 0) {
-                                        Logger.log(Logger.INFO, "Product updated: " + productId + 
-                                                  " - Name: '" + currentName + "' to '" + newName + "'" +
-                                                  ", Price: $" + currentPrice + " to $" + newPrice +
-                                                  ", Quantity: " + currentQuantity + " to " + newQuantity);
+                                        Logger.log(Logger.INFO, "Product updated: {} - Name: '{}' to '{}', Price: ${} to ${}, Quantity: {} to {}",
+                                                  productId, currentName, newName, currentPrice, newPrice,
+                                                  currentQuantity, newQuantity);
+                                        ShardRouter.replicateProduct(productId);
+                                        EventBus.productUpdated(productId, newQuantity);
                                         System.out.println("Product updated successfully!");
                                     } else {
-                                        Logger.log(Logger.WARNING, "Failed to update product: " + productId);
+                                        Logger.log(Logger.WARNING, "Failed to update product: {}", productId);
                                         System.out.println("Failed to update product. Please try again.");
                                     }
                                 }
                             }
                             default -> {
-                                Logger.log(Logger.WARNING, "Invalid modification choice: " + modifyChoice);
+                                Logger.log(Logger.WARNING, "Invalid modification choice: {}", modifyChoice);
                                 System.out.println("Invalid choice!");
                             }
                         }
@@ -773,27 +929,35 @@ public class OptimizedManageProducts {
                 throw new ValidationException("Product ID cannot be empty", "Product ID");
             }
 
+            ConnectionRouter.markWrite();
             try (Connection connection = getConnection()) {
                 // check if product exists - using prepared statement for security
                 String checkExistsQuery = "SELECT COUNT(*) FROM Products WHERE ProductID = ?";
                 try (PreparedStatement checkExistsStatement = connection.prepareStatement(checkExistsQuery)) {
                     checkExistsStatement.setString(1, productId);
-                    try (ResultSet resultSet = checkExistsStatement.executeQuery()) {
+                    try (ResultSet resultSet = Metrics.timed("CheckProductExists", checkExistsStatement::executeQuery)) {
                         if (resultSet.next() && resultSet.getInt(1) == 0) {
-                            Logger.log(Logger.WARNING, "Attempt to remove non-existent product: " + productId);
+                            Logger.log(Logger.WARNING, "Attempt to remove non-existent product: {}", productId);
                             System.out.println("Error: Product ID does not exist!");
                             return;
                         }
                     }
                 }
                 
+                // with sharded customers the purchases may be on any shard
+                if (ShardRouter.isSharded() && ShardRouter.hasPurchases(productId)) {
+                    Logger.log(Logger.WARNING, "Attempt to remove product with existing transactions: {}", productId);
+                    System.out.println("Error: Cannot remove product. There are pending transactions!");
+                    return;
+                }
+
                 // check if product is used in any transactions - using prepared statement for security
                 String checkTransactionQuery = "SELECT COUNT(*) FROM Purchase WHERE ProductID = ?";
                 try (PreparedStatement checkStatement = connection.prepareStatement(checkTransactionQuery)) {
                     checkStatement.setString(1, productId);
-                    try (ResultSet resultSet = checkStatement.executeQuery()) {
+                    try (ResultSet resultSet = Metrics.timed("CheckProductPurchases", checkStatement::executeQuery)) {
                         if (resultSet.next() && resultSet.getInt(1) > 0) {
-                            Logger.log(Logger.WARNING, "Attempt to remove product with existing transactions: " + productId);
+                            Logger.log(Logger.WARNING, "Attempt to remove product with existing transactions: {}", productId);
                             System.out.println("Error: Cannot remove product. There are pending transactions!");
                             return;
                         }
@@ -805,7 +969,7 @@ public class OptimizedManageProducts {
                 String getNameQuery = "SELECT ItemName FROM Products WHERE ProductID = ?";
                 try (PreparedStatement getNameStatement = connection.prepareStatement(getNameQuery)) {
                     getNameStatement.setString(1, productId);
-                    try (ResultSet resultSet = getNameStatement.executeQuery()) {
+                    try (ResultSet resultSet = Metrics.timed("GetProductName", getNameStatement::executeQuery)) {
                         if (resultSet.next()) {
                             productName = resultSet.getString("ItemName");
                         }
@@ -816,13 +980,16 @@ public class OptimizedManageProducts {
                 String deleteQuery = "DELETE FROM Products WHERE ProductID = ?";
                 try (PreparedStatement deleteStatement = connection.prepareStatement(deleteQuery)) {
                     deleteStatement.setString(1, productId);
-                    int rowsAffected = deleteStatement.executeUpdate();
+                    int rowsAffected = ChangeFeed.writeProductChange(connection, productId, ChangeFeed.Change.REMOVED, DomainEvent.UNKNOWN,
+                            () -> Metrics.timed("DeleteProduct", deleteStatement::executeUpdate));
                     
                     if (rowsAffected > 0) {
-                        Logger.log(Logger.INFO, "Product removed: " + productId + " - " + productName);
+                        Logger.log(Logger.INFO, "Product removed: {} - {}", productId, productName);
+                        ShardRouter.replicateProduct(productId);
+                        EventBus.productRemoved(productId);
                         System.out.println("Product removed successfully!");
                     } else {
-                        Logger.log(Logger.WARNING, "No product was removed with ID: " + productId);
+                        Logger.log(Logger.WARNING, "No product was removed with ID: {}", productId);
                         System.out.println("No product was removed. Please check the product ID.");
                     }
                 }
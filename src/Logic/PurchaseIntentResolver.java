@@ -0,0 +1,58 @@
+package src.Logic;
+
+import src.Util.Logger;
+import src.Util.ShardRouter;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// puts back the stock of sharded purchases that failed halfway
+//
+// a sharded purchase takes the stock on shard 0 with an intent in PurchaseIntents, then writes
+// the purchase on the customer's shard. if that write fails and putting the stock back fails
+// too, the intent stays behind. every minute, intents older than
+// storedb.db.intent-timeout-seconds (300 by default) are settled: the stock goes back unless
+// the purchase turns out to be written after all. several instances can run this at once,
+// since only the one that removes an intent returns its stock
+public class PurchaseIntentResolver {
+    private static final long CHECK_INTERVAL_SECONDS = 60;
+    private static final int INTENT_TIMEOUT_SECONDS = Integer.getInteger("storedb.db.intent-timeout-seconds", 300);
+
+    private static ScheduledExecutorService resolver = null;
+
+    // start settling intents in the background, if customers are sharded
+    public static synchronized void start() {
+        if (resolver != null || !ShardRouter.isSharded()) {
+            return;
+        }
+        resolver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "purchase-intents");
+            thread.setDaemon(true);
+            return thread;
+        });
+        resolver.scheduleWithFixedDelay(PurchaseIntentResolver::resolve, 0, CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stop() {
+        if (resolver != null) {
+            resolver.shutdownNow();
+            resolver = null;
+        }
+    }
+
+    private static void resolve() {
+        try {
+            int resolved = OptimizedCompleteTransactions.resolvePurchaseIntents(INTENT_TIMEOUT_SECONDS);
+            if (resolved > 0) {
+                Logger.log(Logger.INFO, "Settled {} unfinished sharded purchases", resolved);
+            }
+        } catch (SQLException e) {
+            Logger.log(Logger.WARNING, "Could not settle unfinished sharded purchases: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            // an exception would stop the scheduled check for good
+            Logger.log(Logger.ERROR, "Settling unfinished sharded purchases failed: {}", e.getMessage());
+        }
+    }
+}
@@ -4,18 +4,31 @@ import src.Objects.*;
 import src.Authentication.AuthenticationService;
 import src.Authentication.LoginScreen;
 import src.Security.SecurityUtil;
+import src.Server.ApiServer;
+import src.Server.PosServer;
+import src.Util.AuditLogger;
+import src.Util.ChangeFeed;
 import src.Util.ErrorHandler;
+import src.Util.EventBus;
 import src.Util.Logger;
+import src.Util.Metrics;
+import src.Util.ShardRouter;
 import src.Util.ThreadManager;
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.sql.*;
+import java.time.Duration;
 import java.util.InputMismatchException;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
 
 public class StoreDatabaseApp {
     // database connection details
     private static final String DB_URL = "jdbc:mysql://localhost:3306/storedb";
     private static final String DB_USER = "root";
     private static final String DB_PASSWORD = "password";
+    private static final long METRICS_DUMP_INTERVAL_SECONDS = 300; // how often latency metrics are logged
+    private static final int SERVER_STOP_DELAY_SECONDS = 2; // time given to HTTP requests in flight on shutdown
 
     public static void main(String[] args) {
         Scanner scanner = new Scanner(System.in);
@@ -30,6 +43,38 @@ public class StoreDatabaseApp {
             OptimizedCompleteTransactions.setConnectionInfo(DB_URL, DB_USER, DB_PASSWORD);
             OptimizedCustomerHistory.setConnectionInfo(DB_URL, DB_USER, DB_PASSWORD);
             AuthenticationService.setConnectionInfo(DB_URL, DB_USER, DB_PASSWORD);
+            AuditLogger.setConnectionInfo(DB_URL, DB_USER, DB_PASSWORD);
+            ChangeFeed.setConnectionInfo(DB_URL, DB_USER, DB_PASSWORD);
+            ConnectionRouter.setConnectionInfo(DB_URL, DB_USER, DB_PASSWORD);
+            ShardRouter.setConnectionInfo(DB_URL, DB_USER, DB_PASSWORD);
+            CheckoutJournal.setConnectionInfo(DB_URL, DB_USER, DB_PASSWORD);
+
+            // purchase IDs are made here, so the database must not make them itself
+            OptimizedCompleteTransactions.verifyPurchaseIds();
+            
+            // write database latency metrics to the log every few minutes
+            Metrics.startPeriodicDump(METRICS_DUMP_INTERVAL_SECONDS);
+
+            // apply product and stock changes made by other instances to this one's caches
+            ChangeFeed.start();
+
+            // send reports and product listings to the replicas in storedb.db.replicas, if any
+            ConnectionRouter.start();
+
+            // commit purchases to the journal in storedb.journal.file, if set, and write them to
+            // the database in the background
+            CheckoutJournal.start();
+
+            // put back stock held by sharded purchases that failed halfway
+            PurchaseIntentResolver.start();
+
+            // "--server [port]" serves the HTTP API and the POS terminal protocol instead of the
+            // console menu until stopped; storedb.pos.port moves the POS server, -1 turns it off
+            if (args.length > 0 && args[0].equals("--server")) {
+                int port = args.length > 1 ? Integer.parseInt(args[1]) : ApiServer.DEFAULT_PORT;
+                serveUntilShutdown(port, Integer.getInteger("storedb.pos.port", PosServer.DEFAULT_PORT));
+                return;
+            }
 
             System.out.println("Welcome to Store Database Management System");
         
@@ -129,9 +174,57 @@ public class StoreDatabaseApp {
         } finally {
             // ensure scanner is closed
             scanner.close();
+            // write no more journaled purchases, stop applying other instances' changes, then
+            // deliver the last domain events
+            CheckoutJournal.stop();
+            PurchaseIntentResolver.stop();
+            ChangeFeed.stop();
+            ConnectionRouter.stop();
+            EventBus.shutdown(Duration.ofSeconds(2));
             // shutdown thread manager
             ThreadManager.shutdown();
+            // log the final latency metrics
+            Metrics.stopPeriodicDump();
+            // write any queued audit events
+            AuditLogger.shutdown();
             Logger.log(Logger.INFO, "Application shutdown complete");
+            // flush the log and finish compressing rotated segments
+            Logger.close();
+        }
+    }
+
+    // run the servers until the JVM is asked to exit (Ctrl+C or a kill signal)
+    // main's cleanup after this returns gets a few seconds to finish before the JVM exits
+    // @param httpPort port for the HTTP API
+    // @param posPort port for POS terminals, or -1 for no POS server
+    // @throws IOException if a port cannot be bound
+    // @throws InterruptedException if the waiting thread is interrupted
+    private static void serveUntilShutdown(int httpPort, int posPort) throws IOException, InterruptedException {
+        ApiServer api = new ApiServer(new InetSocketAddress(httpPort));
+        PosServer pos = posPort >= 0 ? new PosServer(new InetSocketAddress(posPort)) : null;
+        CountDownLatch stopped = new CountDownLatch(1);
+        Thread mainThread = Thread.currentThread();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (pos != null) {
+                pos.stop();
+            }
+            api.stop(SERVER_STOP_DELAY_SECONDS);
+            stopped.countDown();
+            try {
+                mainThread.join(10_000); // let main shut down the lanes and flush the log
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "server-shutdown"));
+
+        api.start();
+        System.out.println("HTTP API listening on port " + api.getPort());
+        if (pos != null) {
+            pos.start();
+            System.out.println("POS server listening on port " + pos.getPort());
         }
+        System.out.println("Press Ctrl+C to stop");
+        stopped.await();
     }
 }
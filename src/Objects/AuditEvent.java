@@ -0,0 +1,33 @@
+package src.Objects;
+
+import java.time.Instant;
+
+// class to hold one user action recorded in the audit trail
+public class AuditEvent {
+    private final int userId;
+    private final String action;
+    private final String details;
+    private final Instant eventTime;
+
+    // constructor
+    // @param userId id of the user who performed the action
+    // @param action the action performed, e.g. Login or Purchase
+    // @param details additional details about the action
+    // @param eventTime when the action happened
+    public AuditEvent(int userId, String action, String details, Instant eventTime) {
+        this.userId = userId;
+        this.action = action;
+        this.details = details;
+        this.eventTime = eventTime;
+    }
+
+    public int getUserId() { return userId; }
+    public String getAction() { return action; }
+    public String getDetails() { return details; }
+    public Instant getEventTime() { return eventTime; }
+
+    @Override
+    public String toString() {
+        return String.format("[User %d] %s - %s at %s", userId, action, details, eventTime);
+    }
+}
@@ -0,0 +1,42 @@
+package src.Objects;
+
+import java.sql.Timestamp;
+
+// one row of the CustomerPurchaseSummary view
+public class CustomerSummary {
+    private final int personId;
+    private final String firstName;
+    private final String lastName;
+    private final String email;
+    private final int totalTransactions;
+    private final int totalItemsPurchased;
+    private final double totalSpent;
+    private final Timestamp lastPurchaseDate;
+
+    public CustomerSummary(int personId, String firstName, String lastName, String email, int totalTransactions,
+                           int totalItemsPurchased, double totalSpent, Timestamp lastPurchaseDate) {
+        this.personId = personId;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.totalTransactions = totalTransactions;
+        this.totalItemsPurchased = totalItemsPurchased;
+        this.totalSpent = totalSpent;
+        this.lastPurchaseDate = lastPurchaseDate;
+    }
+
+    public int getPersonId() { return personId; }
+    public String getFirstName() { return firstName; }
+    public String getLastName() { return lastName; }
+    public String getEmail() { return email; }
+    public int getTotalTransactions() { return totalTransactions; }
+    public int getTotalItemsPurchased() { return totalItemsPurchased; }
+    public double getTotalSpent() { return totalSpent; }
+    public Timestamp getLastPurchaseDate() { return lastPurchaseDate; }
+
+    @Override
+    public String toString() {
+        return String.format("CustomerID: %d | Name: %s %s | Transactions: %d | Items: %d | Spent: $%.2f",
+                personId, firstName, lastName, totalTransactions, totalItemsPurchased, totalSpent);
+    }
+}
@@ -0,0 +1,58 @@
+package src.Objects;
+
+import java.time.LocalDateTime;
+
+// one row of the ProductSalesAnalysis view
+public class ProductSales {
+    private final String productId;
+    private final String name;
+    private final double price;
+    private final int currentStock;
+    private final int timesSold;
+    private final int totalQuantitySold;
+    private final double totalRevenue;
+    private final int uniqueCustomers;
+    private final LocalDateTime lastPurchaseDate; // null if never sold
+
+    public ProductSales(String productId, String name, double price, int currentStock, int timesSold,
+                        int totalQuantitySold, double totalRevenue, int uniqueCustomers,
+                        LocalDateTime lastPurchaseDate) {
+        this.productId = productId;
+        this.name = name;
+        this.price = price;
+        this.currentStock = currentStock;
+        this.timesSold = timesSold;
+        this.totalQuantitySold = totalQuantitySold;
+        this.totalRevenue = totalRevenue;
+        this.uniqueCustomers = uniqueCustomers;
+        this.lastPurchaseDate = lastPurchaseDate;
+    }
+
+    public String getProductId() { return productId; }
+    public String getName() { return name; }
+    public double getPrice() { return price; }
+    public int getCurrentStock() { return currentStock; }
+    public int getTimesSold() { return timesSold; }
+    public int getTotalQuantitySold() { return totalQuantitySold; }
+    public double getTotalRevenue() { return totalRevenue; }
+    public int getUniqueCustomers() { return uniqueCustomers; }
+    public LocalDateTime getLastPurchaseDate() { return lastPurchaseDate; }
+
+    // add the figures for the same product from another shard
+    // every customer lives on one shard, so unique customers add up too; the catalog details
+    // and stock are kept from this row
+    // @param other the other shard's row
+    // @return the combined row
+    public ProductSales plus(ProductSales other) {
+        LocalDateTime last = lastPurchaseDate;
+        if (last == null || (other.lastPurchaseDate != null && other.lastPurchaseDate.isAfter(last))) {
+            last = other.lastPurchaseDate;
+        }
+        return new ProductSales(productId, name, price, currentStock,
+                timesSold + other.timesSold,
+                totalQuantitySold + other.totalQuantitySold,
+                totalRevenue + other.totalRevenue,
+                uniqueCustomers + other.uniqueCustomers,
+                last);
+    }
+}
@@ -1,13 +1,13 @@
 package src.Objects;
 
 public class Purchase {
-    private int id;
+    private long id;
     private int perID;
     private String prodID;
     private String date;
     private int quantity;
 
-    public Purchase (int purchaseId, int personID, String productID, String purchaseDate, int purchaseQuantity) {
+    public Purchase (long purchaseId, int personID, String productID, String purchaseDate, int purchaseQuantity) {
         this.id = purchaseId;
         this.perID = personID;
         this.prodID = productID;
@@ -15,7 +15,8 @@ public class Purchase {
         this.quantity = purchaseQuantity;
     }
 
-    public int getId() { return id; }
+    public long getId() { return id; }
+    public String getProductId() { return prodID; }
     public String getDate() { return date; }
     public int getQuantity() { return quantity; }
 
@@ -0,0 +1,68 @@
+package src.Objects;
+
+// outcome of an attempted purchase
+public class PurchaseResult {
+    // why a purchase did or did not go through
+    public enum Status {
+        COMPLETED,
+        UNKNOWN_CUSTOMER,
+        UNKNOWN_PRODUCT,
+        INSUFFICIENT_STOCK
+    }
+
+    private final Status status;
+    private final int customerId;
+    private final String productId;
+    private final String productName;
+    private final int quantity;
+    private final double totalPrice;
+    private final int availableQuantity;
+    private final long transactionId;
+
+    // constructor
+    // @param status outcome of the purchase
+    // @param customerId customer ID
+    // @param productId product ID
+    // @param productName product name, or null if the product was not found
+    // @param quantity quantity requested
+    // @param totalPrice total price charged, 0 unless completed
+    // @param availableQuantity stock before the purchase, or 0 if the product was not found
+    // @param transactionId TransactionID of the recorded purchase, 0 unless completed
+    public PurchaseResult(Status status, int customerId, String productId, String productName,
+                          int quantity, double totalPrice, int availableQuantity, long transactionId) {
+        this.status = status;
+        this.customerId = customerId;
+        this.productId = productId;
+        this.productName = productName;
+        this.quantity = quantity;
+        this.totalPrice = totalPrice;
+        this.availableQuantity = availableQuantity;
+        this.transactionId = transactionId;
+    }
+
+    // create the result of a purchase that was refused before anything was written
+    // @param status why the purchase was refused
+    // @param customerId customer ID
+    // @param productId product ID
+    // @param quantity quantity requested
+    // @return the result
+    public static PurchaseResult refused(Status status, int customerId, String productId, int quantity) {
+        return new PurchaseResult(status, customerId, productId, null, quantity, 0, 0, 0);
+    }
+
+    public boolean isCompleted() { return status == Status.COMPLETED; }
+    public Status getStatus() { return status; }
+    public int getCustomerId() { return customerId; }
+    public String getProductId() { return productId; }
+    public String getProductName() { return productName; }
+    public int getQuantity() { return quantity; }
+    public double getTotalPrice() { return totalPrice; }
+    public int getAvailableQuantity() { return availableQuantity; }
+    public long getTransactionId() { return transactionId; }
+
+    @Override
+    public String toString() {
+        return String.format("%s: Customer %d | Product %s | Quantity %d | Total $%.2f",
+                status, customerId, productId, quantity, totalPrice);
+    }
+}
@@ -1,6 +1,7 @@
 package src.Security;
 
 import src.Authentication.AuthenticationService;
+import src.Authentication.Session;
 
 public class SecurityUtil {
     
@@ -35,4 +36,35 @@ public class SecurityUtil {
         // any authenticated user has user permissions
         return AuthenticationService.isAuthenticated();
     }
+    
+    // make sure a session belongs to a logged-in user
+    // @param session the caller's session
+    // @throws SecurityException if there is no session
+    public static void requireUser(Session session) {
+        if (session == null) {
+            throw new SecurityException("Authentication required");
+        }
+    }
+    
+    // make sure a session belongs to an admin
+    // @param session the caller's session
+    // @throws SecurityException if there is no session or its user is not an admin
+    public static void requireAdmin(Session session) {
+        requireUser(session);
+        if (!session.isAdmin()) {
+            throw new SecurityException("Admin privileges required");
+        }
+    }
+    
+    // make sure a session may see a customer's data
+    // admins can see any customer, regular users only themselves
+    // @param session the caller's session
+    // @param customerId the customer
+    // @throws SecurityException if the session may not see the customer
+    public static void requireCustomerAccess(Session session, int customerId) {
+        requireUser(session);
+        if (!session.isAdmin() && session.getUserId() != customerId) {
+            throw new SecurityException("Users can only view their own purchases");
+        }
+    }
 }
@@ -0,0 +1,628 @@
+package src.Server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import src.Authentication.AuthenticationService;
+import src.Authentication.Session;
+import src.Authentication.SessionManager;
+import src.Objects.CustomerSummary;
+import src.Objects.Person;
+import src.Objects.ProductData;
+import src.Objects.ProductPageData;
+import src.Objects.ProductSales;
+import src.Objects.Purchase;
+import src.Objects.PurchaseResult;
+import src.Service.CustomerHistoryService;
+import src.Service.ProductService;
+import src.Service.TransactionService;
+import src.Util.ErrorHandler;
+import src.Util.Logger;
+import src.Util.Metrics;
+import src.Util.ScatterGather;
+import src.Util.ThreadManager;
+import src.Util.ValidationException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// HTTP front end for POS terminals and the web storefront, on the JDK's built-in server
+//
+// every request is handled on its own virtual thread (platform threads before java 21) and
+// calls the service API, whose lanes bound how many queries reach the database at once.
+// responses are written with JsonWriter straight to the socket, so the catalog export
+// writes each page of products as it is read instead of building the listing in memory
+//
+// endpoints (request parameters are query parameters or a form-encoded body):
+//   POST /api/login                      email, password -> session token
+//   POST /api/logout
+//   GET  /api/products                   page, size, sort, dir
+//   GET  /api/products/search            name, min, max, inStock
+//   GET  /api/products/export            the whole catalog, streamed
+//   GET  /api/products/sales             top; best sellers by revenue (admins only)
+//   POST /api/purchases                  customerId, productId, quantity
+//   GET  /api/customers                  email
+//   GET  /api/customers/{id}/summary
+//   GET  /api/customers/{id}/history     page, size
+//   GET  /api/stock/stream               products; server-sent stock changes (see StockStream)
+// every endpoint except login needs the header "Authorization: Bearer <token>"
+public class ApiServer {
+    public static final int DEFAULT_PORT = 8080;
+    private static final int PLATFORM_THREADS = 32; // request threads when virtual threads are unavailable
+    private static final int MAX_STOCK_STREAMS = 1000; // open stock streams with virtual threads
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int EXPORT_PAGE_SIZE = 1000; // products read per query of a catalog export
+    private static final int MAX_BODY_BYTES = 64 * 1024; // form bodies are a few short fields
+    private static final int RESPONSE_BUFFER = 8 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final StockStream stockStream;
+
+    // handles one request to an endpoint
+    @FunctionalInterface
+    interface Endpoint {
+        void handle(Request request) throws Exception;
+    }
+
+    // constructor
+    // @param address address and port to listen on; port 0 picks a free port
+    // @throws IOException if the port cannot be bound
+    public ApiServer(InetSocketAddress address) throws IOException {
+        server = HttpServer.create(address, 0);
+
+        ExecutorService virtual = ThreadManager.newVirtualThreadPerTaskExecutor();
+        if (virtual != null) {
+            executor = virtual;
+        } else {
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(PLATFORM_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "http-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        server.setExecutor(executor);
+
+        // a stream holds its request thread while open; on platform threads leave half for normal requests
+        stockStream = new StockStream(virtual != null ? MAX_STOCK_STREAMS : PLATFORM_THREADS / 2);
+        server.createContext("/api/stock/stream", stockStream);
+
+        route("/api/login", "POST", false, this::login);
+        route("/api/logout", "POST", true, this::logout);
+        route("/api/products", "GET", true, this::products);
+        route("/api/purchases", "POST", true, this::purchase);
+        route("/api/customers", "GET", true, this::customers);
+    }
+
+    // add a handler for another path, for features built on top of the API server
+    // @param path path prefix
+    // @param handler the handler
+    public void addHandler(String path, HttpHandler handler) {
+        server.createContext(path, handler);
+    }
+
+    public void start() {
+        server.start();
+        Logger.log(Logger.INFO, "HTTP API listening on port {}", getPort());
+    }
+
+    // stop accepting requests and wait a little for those in flight
+    // @param delaySeconds maximum time to wait for requests in flight
+    public void stop(int delaySeconds) {
+        stockStream.closeAll();
+        server.stop(delaySeconds);
+        executor.shutdown();
+        Logger.log(Logger.INFO, "HTTP API stopped");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // POST /api/login
+    private void login(Request request) throws Exception {
+        String email = request.require("email");
+        String password = request.require("password");
+
+        // authentication queries the database, so it goes through a lane like everything else
+        Session session = ThreadManager.supplyAsync(ThreadManager.Lane.INTERACTIVE,
+                () -> AuthenticationService.login(email, password)).get();
+        if (session == null) {
+            request.error(401, "Invalid email or password");
+            return;
+        }
+
+        Person user = session.getUser();
+        Logger.logUserAction(user.getPersonID(), "Login", "User logged in over HTTP");
+        JsonWriter json = request.json(200);
+        json.beginObject()
+                .field("token", session.getId())
+                .field("userId", user.getPersonID())
+                .field("firstName", user.getFirstName())
+                .field("lastName", user.getLastName())
+                .field("role", user.getRole())
+                .endObject();
+    }
+
+    // POST /api/logout
+    private void logout(Request request) throws Exception {
+        Logger.logUserAction(request.session.getUserId(), "Logout", "User logged out over HTTP");
+        SessionManager.close(request.session);
+        request.json(200).beginObject().field("loggedOut", true).endObject();
+    }
+
+    // GET /api/products, /api/products/search and /api/products/export
+    private void products(Request request) throws Exception {
+        switch (request.path) {
+            case "/api/products" -> {
+                int page = request.intParam("page", 1);
+                int size = Math.min(request.intParam("size", DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+                String sort = request.param("sort", "ProductID");
+                String direction = request.param("dir", "ASC").toUpperCase();
+                ProductPageData pageData = ProductService.getProductPage(request.session, page, size, sort, direction).get();
+
+                JsonWriter json = request.json(200);
+                json.beginObject().field("page", page).field("pageSize", size)
+                        .field("total", pageData.getTotalProducts());
+                writeProducts(json, pageData.getProducts());
+                json.endObject();
+            }
+            case "/api/products/search" -> {
+                Float min = request.floatParam("min");
+                Float max = request.floatParam("max");
+                boolean inStock = Boolean.parseBoolean(request.param("inStock", "false"));
+                ProductPageData results = ProductService.searchProducts(request.session,
+                        request.param("name", null), min, max, inStock).get();
+
+                JsonWriter json = request.json(200);
+                json.beginObject().field("total", results.getProductCount());
+                writeProducts(json, results.getProducts());
+                json.endObject();
+            }
+            case "/api/products/export" -> {
+                // read a page on the background lane, then write it from this thread, so a slow
+                // client only holds its own request thread; only the first few kilobytes are held
+                // back, so an error before the first page still gets a proper status
+                JsonWriter json = request.json(200);
+                json.beginObject().name("products").beginArray();
+                int count = 0;
+                String after = null;
+                List<ProductData> page;
+                do {
+                    page = ProductService.getExportPage(request.session, after, EXPORT_PAGE_SIZE).get();
+                    for (ProductData product : page) {
+                        writeProduct(json, product);
+                    }
+                    count += page.size();
+                    if (!page.isEmpty()) {
+                        after = page.get(page.size() - 1).id;
+                    }
+                } while (page.size() == EXPORT_PAGE_SIZE);
+                json.endArray().field("count", count).endObject();
+            }
+            case "/api/products/sales" -> {
+                int top = request.intParam("top", 0);
+                ScatterGather.Result<List<ProductSales>> result = ProductService.getSalesAnalysis(request.session, top).get();
+
+                // with sharded customers some shards may be missing; the figures are then too low
+                JsonWriter json = request.json(200);
+                json.beginObject().field("complete", result.isComplete()).name("missingShards").beginArray();
+                for (Map.Entry<Integer, String> failure : result.getFailures().entrySet()) {
+                    json.beginObject().field("shard", failure.getKey()).field("reason", failure.getValue()).endObject();
+                }
+                json.endArray().name("products").beginArray();
+                for (ProductSales row : result.getValue()) {
+                    json.beginObject()
+                            .field("id", row.getProductId())
+                            .field("name", row.getName())
+                            .field("timesSold", row.getTimesSold())
+                            .field("quantitySold", row.getTotalQuantitySold())
+                            .field("revenue", row.getTotalRevenue())
+                            .field("uniqueCustomers", row.getUniqueCustomers())
+                            .field("lastPurchase", row.getLastPurchaseDate() == null ? null : row.getLastPurchaseDate().toString())
+                            .endObject();
+                }
+                json.endArray().endObject();
+            }
+            default -> request.error(404, "Unknown path");
+        }
+    }
+
+    // POST /api/purchases
+    private void purchase(Request request) throws Exception {
+        int customerId = request.intParam("customerId", 0);
+        String productId = request.require("productId");
+        int quantity = request.intParam("quantity", 0);
+        PurchaseResult result = TransactionService.purchase(request.session, customerId, productId, quantity).get();
+
+        int status = switch (result.getStatus()) {
+            case COMPLETED -> 201;
+            case UNKNOWN_CUSTOMER, UNKNOWN_PRODUCT -> 404;
+            case INSUFFICIENT_STOCK -> 409;
+        };
+        JsonWriter json = request.json(status);
+        json.beginObject()
+                .field("status", result.getStatus().name())
+                .field("customerId", result.getCustomerId())
+                .field("productId", result.getProductId())
+                .field("productName", result.getProductName())
+                .field("quantity", result.getQuantity())
+                .field("totalPrice", result.getTotalPrice());
+        if (result.getStatus() == PurchaseResult.Status.COMPLETED) {
+            // a string, since IDs are above 2^53 where JSON numbers lose precision in JavaScript
+            json.field("transactionId", Long.toString(result.getTransactionId()));
+        }
+        if (result.getStatus() == PurchaseResult.Status.INSUFFICIENT_STOCK) {
+            json.field("available", result.getAvailableQuantity());
+        }
+        json.endObject();
+    }
+
+    // GET /api/customers, /api/customers/{id}/summary and /api/customers/{id}/history
+    private void customers(Request request) throws Exception {
+        String[] parts = request.path.split("/"); // "", "api", "customers", id, view
+        if (parts.length == 3) {
+            Person person = CustomerHistoryService.findCustomerByEmail(request.session, request.require("email")).get();
+            if (person == null) {
+                request.error(404, "No customer with that email");
+                return;
+            }
+            request.json(200).beginObject()
+                    .field("customerId", person.getPersonID())
+                    .field("firstName", person.getFirstName())
+                    .field("lastName", person.getLastName())
+                    .field("email", person.getEmail())
+                    .field("phone", person.getPhone())
+                    .endObject();
+            return;
+        }
+        if (parts.length != 5) {
+            request.error(404, "Unknown path");
+            return;
+        }
+
+        int customerId;
+        try {
+            customerId = Integer.parseInt(parts[3]);
+        } catch (NumberFormatException e) {
+            throw new ValidationException("Customer ID must be a number", "Customer ID");
+        }
+
+        switch (parts[4]) {
+            case "summary" -> {
+                CustomerSummary summary = CustomerHistoryService.getSummary(request.session, customerId).get();
+                if (summary == null) {
+                    request.error(404, "No customer with ID " + customerId);
+                    return;
+                }
+                request.json(200).beginObject()
+                        .field("customerId", summary.getPersonId())
+                        .field("firstName", summary.getFirstName())
+                        .field("lastName", summary.getLastName())
+                        .field("email", summary.getEmail())
+                        .field("totalTransactions", summary.getTotalTransactions())
+                        .field("totalItemsPurchased", summary.getTotalItemsPurchased())
+                        .field("totalSpent", summary.getTotalSpent())
+                        .field("lastPurchaseDate", summary.getLastPurchaseDate() != null
+                                ? summary.getLastPurchaseDate().toString() : null)
+                        .endObject();
+            }
+            case "history" -> {
+                int page = request.intParam("page", 1);
+                int size = Math.min(request.intParam("size", DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+                List<Purchase> purchases = CustomerHistoryService.getPurchaseHistory(request.session, customerId, page, size).get();
+
+                JsonWriter json = request.json(200);
+                json.beginObject().field("customerId", customerId).field("page", page).name("purchases").beginArray();
+                for (Purchase purchase : purchases) {
+                    json.beginObject()
+                            .field("transactionId", Long.toString(purchase.getId()))
+                            .field("productId", purchase.getProductId())
+                            .field("quantity", purchase.getQuantity())
+                            .field("date", purchase.getDate())
+                            .endObject();
+                }
+                json.endArray().endObject();
+            }
+            default -> request.error(404, "Unknown path");
+        }
+    }
+
+    private static void writeProducts(JsonWriter json, List<ProductData> products) throws IOException {
+        json.name("products").beginArray();
+        for (ProductData product : products) {
+            writeProduct(json, product);
+        }
+        json.endArray();
+    }
+
+    private static void writeProduct(JsonWriter json, ProductData product) throws IOException {
+        json.beginObject()
+                .field("id", product.id)
+                .field("name", product.name)
+                .field("price", product.price)
+                .field("quantity", product.quantity)
+                .endObject();
+    }
+
+    // register an endpoint with method and session checks, error mapping and latency metrics
+    // @param path path prefix
+    // @param method the only method the endpoint accepts
+    // @param needsSession true if the request must carry a valid session token
+    // @param endpoint the endpoint
+    private void route(String path, String method, boolean needsSession, Endpoint endpoint) {
+        server.createContext(path, exchange -> {
+            long start = System.nanoTime();
+            Request request = new Request(exchange);
+            try {
+                if (!method.equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Allow", method);
+                    request.error(405, "Use " + method);
+                } else if (needsSession && (request.session = sessionOf(exchange)) == null) {
+                    request.error(401, "Login required");
+                } else {
+                    endpoint.handle(request);
+                }
+            } catch (Exception e) {
+                request.fail(e);
+            } finally {
+                request.finish();
+                Metrics.record("HTTP " + method + " " + path, System.nanoTime() - start);
+            }
+        });
+    }
+
+    // find the session named by the request's bearer token
+    // @param exchange the request
+    // @return the session, or null if the token is missing, unknown or expired
+    static Session sessionOf(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            return null;
+        }
+        return SessionManager.get(authorization.substring("Bearer ".length()).trim());
+    }
+
+    // parse a query string or form-encoded body
+    // @param form the encoded parameters, or null
+    // @param into map to add the decoded parameters to
+    static void parseForm(String form, Map<String, String> into) {
+        if (form == null || form.isEmpty()) {
+            return;
+        }
+        for (String pair : form.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            into.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    // one request being handled, with its parameters and response
+    static class Request {
+        final HttpExchange exchange;
+        final String path;
+        Session session;
+        private Map<String, String> params;
+        private JsonWriter json;
+        private ResponseBody body;
+        private boolean headersSent;
+        private int status;
+
+        Request(HttpExchange exchange) {
+            this.exchange = exchange;
+            this.path = exchange.getRequestURI().getPath();
+        }
+
+        // get a request parameter from the query string or form body
+        // @param name parameter name
+        // @param defaultValue value when the parameter is missing or empty
+        // @return the parameter
+        String param(String name, String defaultValue) throws IOException {
+            String value = params().get(name);
+            return value == null || value.isEmpty() ? defaultValue : value;
+        }
+
+        // @throws ValidationException if the parameter is missing
+        String require(String name) throws IOException, ValidationException {
+            String value = param(name, null);
+            if (value == null) {
+                throw new ValidationException(name + " is required", name);
+            }
+            return value;
+        }
+
+        // @throws ValidationException if the parameter is not a whole number
+        int intParam(String name, int defaultValue) throws IOException, ValidationException {
+            String value = param(name, null);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new ValidationException(name + " must be a whole number", name);
+            }
+        }
+
+        // @return the parameter, or null if it is missing
+        // @throws ValidationException if the parameter is not a number
+        Float floatParam(String name) throws IOException, ValidationException {
+            String value = param(name, null);
+            if (value == null) {
+                return null;
+            }
+            try {
+                return Float.parseFloat(value);
+            } catch (NumberFormatException e) {
+                throw new ValidationException(name + " must be a number", name);
+            }
+        }
+
+        // start a JSON response
+        // nothing is sent until the response buffer fills or the request finishes, so a failure
+        // early in a long response can still be reported with an error status
+        // @param status HTTP status
+        // @return the writer for the body
+        JsonWriter json(int status) {
+            this.status = status;
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            body = new ResponseBody();
+            json = new JsonWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8));
+            return json;
+        }
+
+        // send an error response with a JSON body
+        // @param status HTTP status
+        // @param message message for the client
+        void error(int status, String message) throws IOException {
+            error(status, message, null);
+        }
+
+        private void error(int status, String message, String field) throws IOException {
+            JsonWriter writer = json(status);
+            writer.beginObject().field("error", message);
+            if (field != null) {
+                writer.field("field", field);
+            }
+            writer.endObject();
+        }
+
+        // report a failed request to the client, if its response has not started yet
+        // @param e the failure
+        void fail(Exception e) {
+            Throwable cause = e;
+            while ((cause instanceof ExecutionException || cause instanceof CompletionException) && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            String context = "handling " + exchange.getRequestMethod() + " " + path;
+            if (headersSent) {
+                // the client already has part of the body; all we can do is cut the response short
+                Logger.log(Logger.ERROR, "Error after response started while {}: {}", context, cause.getMessage());
+                exchange.close();
+                return;
+            }
+
+            String message = ErrorHandler.handleAsyncException(cause, context);
+            try {
+                if (cause instanceof ValidationException validation) {
+                    error(400, validation.getMessage(), validation.getField());
+                } else if (cause instanceof SecurityException) {
+                    error(session == null ? 401 : 403, message);
+                } else if (cause instanceof RejectedExecutionException || cause instanceof TimeoutException) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    error(503, message);
+                } else {
+                    error(500, message);
+                }
+            } catch (IOException io) {
+                Logger.log(Logger.WARNING, "Could not send error response: {}", io.getMessage());
+            }
+        }
+
+        // flush the response and release the exchange
+        void finish() {
+            try {
+                if (json != null) {
+                    json.flush();
+                    body.complete();
+                }
+                if (!headersSent) {
+                    exchange.sendResponseHeaders(status == 0 ? 204 : status, -1);
+                }
+            } catch (IOException e) {
+                Logger.log(Logger.WARNING, "Client went away while {} {} was responding: {}",
+                          exchange.getRequestMethod(), path, e.getMessage());
+            } finally {
+                exchange.close();
+            }
+        }
+
+        // parse the query string and, for form posts, the body
+        private Map<String, String> params() throws IOException {
+            if (params == null) {
+                params = new HashMap<>();
+                parseForm(exchange.getRequestURI().getRawQuery(), params);
+                String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+                if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+                    parseForm(readBody(), params);
+                }
+            }
+            return params;
+        }
+
+        private String readBody() throws IOException {
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+                if (bytes.length > MAX_BODY_BYTES) {
+                    throw new IOException("Request body larger than " + MAX_BODY_BYTES + " bytes");
+                }
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+
+        // response body that holds the first few kilobytes back
+        // a body that fits is sent with its length; a longer one sends the headers when the
+        // buffer fills and streams the rest with chunked encoding
+        private class ResponseBody extends OutputStream {
+            private final byte[] buffer = new byte[RESPONSE_BUFFER];
+            private int count;
+            private OutputStream out;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (out == null && count + len <= buffer.length) {
+                    System.arraycopy(b, off, buffer, count, len);
+                    count += len;
+                    return;
+                }
+                if (out == null) {
+                    exchange.sendResponseHeaders(status, 0);
+                    headersSent = true;
+                    out = exchange.getResponseBody();
+                    out.write(buffer, 0, count);
+                }
+                out.write(b, off, len);
+            }
+
+            // flush only once streaming; until then the buffer is what keeps the status open
+            @Override
+            public void flush() throws IOException {
+                if (out != null) {
+                    out.flush();
+                }
+            }
+
+            // send whatever is still held back
+            void complete() throws IOException {
+                if (out == null) {
+                    exchange.sendResponseHeaders(status, count == 0 ? -1 : count);
+                    headersSent = true;
+                    exchange.getResponseBody().write(buffer, 0, count);
+                }
+            }
+        }
+    }
+}
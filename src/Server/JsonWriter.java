@@ -0,0 +1,180 @@
+package src.Server;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+// writes JSON straight to a stream as values are produced
+// nothing is kept in memory beyond the nesting of the open objects and arrays, so a listing
+// of the whole catalog costs the same heap as a listing of one product
+//
+//   json.beginObject().name("total").value(42).name("products").beginArray();
+//   for (...) { json.beginObject().name("id").value(id).endObject(); }
+//   json.endArray().endObject().flush();
+public class JsonWriter implements Flushable {
+    private static final int MAX_DEPTH = 32;
+
+    private final Writer out;
+    // per open container: true once it holds a value, so the next one needs a comma
+    private final boolean[] hasValue = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterName;
+
+    // constructor
+    // @param out destination; callers should buffer it
+    public JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    // write the name of the next member of the current object
+    // @param name member name
+    public JsonWriter name(String name) throws IOException {
+        separate();
+        string(name);
+        out.write(':');
+        afterName = true;
+        return this;
+    }
+
+    // @param value string value, or null
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        separate();
+        string(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        separate();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    // @param value number; NaN and infinity are written as null, which JSON has no other way to say
+    public JsonWriter value(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return nullValue();
+        }
+        separate();
+        out.write(Double.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        separate();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        separate();
+        out.write("null");
+        return this;
+    }
+
+    // write a member with a string value
+    public JsonWriter field(String name, String value) throws IOException {
+        return name(name).value(value);
+    }
+
+    // write a member with a whole number value
+    public JsonWriter field(String name, long value) throws IOException {
+        return name(name).value(value);
+    }
+
+    // write a member with a decimal value
+    public JsonWriter field(String name, double value) throws IOException {
+        return name(name).value(value);
+    }
+
+    // write a member with a boolean value
+    public JsonWriter field(String name, boolean value) throws IOException {
+        return name(name).value(value);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private JsonWriter open(char bracket) throws IOException {
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("JSON nested deeper than " + MAX_DEPTH);
+        }
+        separate();
+        out.write(bracket);
+        hasValue[depth++] = false;
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        if (depth == 0) {
+            throw new IllegalStateException("No open JSON object or array to close");
+        }
+        depth--;
+        out.write(bracket);
+        return this;
+    }
+
+    // write the comma before a value or name, unless it directly follows a name
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (hasValue[depth - 1]) {
+                out.write(',');
+            }
+            hasValue[depth - 1] = true;
+        }
+    }
+
+    // write a quoted string with JSON escapes
+    private void string(String value) throws IOException {
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String escape = null;
+            if (c == '"') {
+                escape = "\\\"";
+            } else if (c == '\\') {
+                escape = "\\\\";
+            } else if (c == '\n') {
+                escape = "\\n";
+            } else if (c == '\r') {
+                escape = "\\r";
+            } else if (c == '\t') {
+                escape = "\\t";
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                escape = String.format("\\u%04x", (int) c);
+            }
+            if (escape != null) {
+                out.write(value, start, i - start);
+                out.write(escape);
+                start = i + 1;
+            }
+        }
+        out.write(value, start, value.length() - start);
+        out.write('"');
+    }
+}
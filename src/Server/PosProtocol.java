@@ -0,0 +1,100 @@
+package src.Server;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// wire format of the POS terminal protocol served by PosServer
+//
+// every message is a frame: a 4 byte big-endian length, then that many bytes
+//   request:  length | opcode (1 byte) | request id (4 bytes) | payload
+//   response: length | status (1 byte) | request id (4 bytes) | payload
+// the request id is chosen by the terminal and echoed in the response. a terminal may send
+// many requests without waiting (pipelining); responses come back in request order
+//
+// payload fields are big-endian ints and doubles, and strings written as a 2 byte length
+// followed by that many bytes of UTF-8
+//
+//   LOGIN     email, password                  -> OK userId, session token
+//   RESUME    session token (e.g. from HTTP)   -> OK userId
+//   LOOKUP    productId                        -> OK name, price
+//   STOCK     productId                        -> OK quantity
+//   PURCHASE  customerId, productId, quantity  -> OK total price, quantity left
+//                                                 INSUFFICIENT_STOCK quantity available
+//   PING                                       -> OK
+// any request may instead get NOT_FOUND, UNKNOWN_CUSTOMER, or an error status whose payload
+// is a message string. everything except LOGIN, RESUME and PING needs a session
+public final class PosProtocol {
+    // request opcodes
+    public static final byte LOGIN = 0x01;
+    public static final byte RESUME = 0x02;
+    public static final byte LOOKUP = 0x10;
+    public static final byte STOCK = 0x11;
+    public static final byte PURCHASE = 0x20;
+    public static final byte PING = 0x7F;
+
+    // response statuses
+    public static final byte OK = 0;
+    public static final byte NOT_FOUND = 1;
+    public static final byte UNKNOWN_CUSTOMER = 2;
+    public static final byte INSUFFICIENT_STOCK = 3;
+    public static final byte BAD_REQUEST = 4;
+    public static final byte UNAUTHORIZED = 5;
+    public static final byte FORBIDDEN = 6;
+    public static final byte BUSY = 7;
+    public static final byte ERROR = 8;
+
+    public static final int HEADER_LENGTH = 5; // opcode or status, then request id
+    public static final int MAX_FRAME_LENGTH = 4096; // longest frame accepted, after the length prefix
+    public static final int MAX_STRING_LENGTH = 1024; // longest string the server writes, in bytes
+
+    private PosProtocol() {
+    }
+
+    // @param opcode request opcode
+    // @return the opcode's name, for metrics and log messages
+    public static String opcodeName(byte opcode) {
+        return switch (opcode) {
+            case LOGIN -> "LOGIN";
+            case RESUME -> "RESUME";
+            case LOOKUP -> "LOOKUP";
+            case STOCK -> "STOCK";
+            case PURCHASE -> "PURCHASE";
+            case PING -> "PING";
+            default -> "UNKNOWN";
+        };
+    }
+
+    // read a length-prefixed UTF-8 string
+    // @param buffer request payload
+    // @return the string
+    // @throws BufferUnderflowException if the payload is too short
+    public static String readString(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    // write a length-prefixed UTF-8 string
+    // @param buffer response payload
+    // @param utf8 the string's UTF-8 bytes, from utf8
+    public static void putString(ByteBuffer buffer, byte[] utf8) {
+        buffer.putShort((short) utf8.length);
+        buffer.put(utf8);
+    }
+
+    // encode a string for putString, cut to MAX_STRING_LENGTH bytes
+    public static byte[] utf8(String value) {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_LENGTH) {
+            byte[] cut = new byte[MAX_STRING_LENGTH];
+            System.arraycopy(bytes, 0, cut, 0, cut.length);
+            return cut;
+        }
+        return bytes;
+    }
+}
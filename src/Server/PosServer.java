@@ -0,0 +1,405 @@
+package src.Server;
+
+import src.Authentication.AuthenticationService;
+import src.Authentication.Session;
+import src.Authentication.SessionManager;
+import src.Objects.ProductData;
+import src.Objects.PurchaseResult;
+import src.Service.ProductService;
+import src.Service.TransactionService;
+import src.Util.DomainEvent;
+import src.Util.ErrorHandler;
+import src.Util.EventBus;
+import src.Util.Logger;
+import src.Util.Metrics;
+import src.Util.ThreadManager;
+import src.Util.ValidationException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// TCP server for lane terminals speaking the binary protocol in PosProtocol
+//
+// each connection is served by its own virtual thread (a pooled daemon thread before java 21)
+// with plain blocking streams. requests on a connection are handled one after another and the
+// responses collect in the output buffer, which is only flushed once the terminal has nothing
+// more queued; a terminal that pipelines a burst of scans gets the answers back in one write
+//
+// product lookups are answered from pre-encoded responses for recently scanned products, on
+// the connection's own thread without touching the database or the lanes. stock queries and
+// purchases always go to the database through the service API
+public class PosServer {
+    public static final int DEFAULT_PORT = 9090;
+    private static final int STREAM_BUFFER = 16 * 1024;
+    private static final int HOT_PRODUCTS = 2048; // most lookups cached at once
+    private static final long HOT_PRODUCT_TTL_NANOS = TimeUnit.SECONDS.toNanos(30); // edits made by other instances show up within this
+    private static final String LOOKUP_SUBSCRIBER = "pos-lookups";
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, HotProduct> hotProducts = new ConcurrentHashMap<>();
+    private volatile boolean running;
+
+    // pre-encoded LOOKUP response payload for one product
+    private static final class HotProduct {
+        final byte[] payload;
+        final long expiresAt;
+
+        HotProduct(byte[] payload, long expiresAt) {
+            this.payload = payload;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // state of one terminal connection
+    private static final class Connection {
+        final Socket socket;
+        final DataOutputStream out;
+        final ByteBuffer payload = ByteBuffer.allocate(PosProtocol.MAX_FRAME_LENGTH);
+        Session session;
+        boolean ownsSession; // true if the session was opened by LOGIN on this connection
+
+        Connection(Socket socket, DataOutputStream out) {
+            this.socket = socket;
+            this.out = out;
+        }
+    }
+
+    // constructor
+    // @param address address and port to listen on; port 0 picks a free port
+    // @throws IOException if the port cannot be bound
+    public PosServer(InetSocketAddress address) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address);
+
+        ExecutorService virtual = ThreadManager.newVirtualThreadPerTaskExecutor();
+        if (virtual != null) {
+            executor = virtual;
+        } else {
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "pos-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public void start() {
+        running = true;
+        // a renamed or repriced product must not be served from an old pre-encoded response
+        EventBus.subscribe(LOOKUP_SUBSCRIBER, (event, sequence, endOfBatch) -> {
+            if (event.getType() == DomainEvent.Type.PRODUCT_UPDATED || event.getType() == DomainEvent.Type.PRODUCT_REMOVED) {
+                invalidateProduct(event.getProductId());
+            }
+        });
+        Thread acceptor = new Thread(this::acceptConnections, "pos-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        Logger.log(Logger.INFO, "POS server listening on port {}", getPort());
+    }
+
+    // stop accepting terminals and close the open connections
+    public void stop() {
+        running = false;
+        EventBus.unsubscribe(LOOKUP_SUBSCRIBER);
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            Logger.log(Logger.WARNING, "Error closing POS server socket: {}", e.getMessage());
+        }
+        for (Socket socket : connections) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // closing anyway
+            }
+        }
+        executor.shutdown();
+        Logger.log(Logger.INFO, "POS server stopped");
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // forget the pre-encoded lookup response for a product, after its name or price changed
+    // @param productId product ID
+    public void invalidateProduct(String productId) {
+        hotProducts.remove(productId);
+    }
+
+    private void acceptConnections() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                executor.execute(() -> serve(socket));
+            } catch (RejectedExecutionException e) {
+                break;
+            } catch (IOException e) {
+                if (running) {
+                    Logger.log(Logger.WARNING, "Error accepting POS connection: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    // read and answer requests until the terminal disconnects
+    private void serve(Socket socket) {
+        Connection connection = null;
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), STREAM_BUFFER));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), STREAM_BUFFER))) {
+            connection = new Connection(socket, out);
+            byte[] frame = new byte[PosProtocol.MAX_FRAME_LENGTH];
+
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break; // terminal disconnected between requests
+                }
+                if (length < PosProtocol.HEADER_LENGTH || length > PosProtocol.MAX_FRAME_LENGTH) {
+                    // the stream can no longer be trusted to be in step, so drop the connection
+                    Logger.log(Logger.WARNING, "POS terminal {} sent a frame of {} bytes; disconnecting",
+                              socket.getRemoteSocketAddress(), length);
+                    break;
+                }
+                in.readFully(frame, 0, length);
+
+                long start = System.nanoTime();
+                ByteBuffer request = ByteBuffer.wrap(frame, 0, length);
+                byte opcode = request.get();
+                int requestId = request.getInt();
+                handle(connection, opcode, requestId, request);
+                Metrics.record("POS " + PosProtocol.opcodeName(opcode), System.nanoTime() - start);
+
+                // answer a pipelined burst with one write
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (SocketException | EOFException e) {
+            // terminal went away mid-frame or the server is stopping
+        } catch (IOException e) {
+            Logger.log(Logger.WARNING, "POS connection error: {}", e.getMessage());
+        } finally {
+            connections.remove(socket);
+            if (connection != null && connection.ownsSession) {
+                SessionManager.close(connection.session);
+            }
+        }
+    }
+
+    // handle one request and write its response
+    private void handle(Connection connection, byte opcode, int requestId, ByteBuffer request) throws IOException {
+        ByteBuffer payload = connection.payload;
+        payload.clear();
+        try {
+            if (opcode == PosProtocol.PING) {
+                respond(connection, PosProtocol.OK, requestId);
+                return;
+            }
+            if (opcode == PosProtocol.LOGIN || opcode == PosProtocol.RESUME) {
+                authenticate(connection, opcode, requestId, request);
+                return;
+            }
+
+            // the session may have expired or been logged out elsewhere since the last request
+            if (connection.session == null || SessionManager.get(connection.session.getId()) == null) {
+                connection.session = null;
+                error(connection, PosProtocol.UNAUTHORIZED, requestId, "Login required");
+                return;
+            }
+
+            switch (opcode) {
+                case PosProtocol.LOOKUP -> lookup(connection, requestId, PosProtocol.readString(request));
+                case PosProtocol.STOCK -> stock(connection, requestId, PosProtocol.readString(request));
+                case PosProtocol.PURCHASE -> purchase(connection, requestId,
+                        request.getInt(), PosProtocol.readString(request), request.getInt());
+                default -> error(connection, PosProtocol.BAD_REQUEST, requestId, "Unknown opcode " + opcode);
+            }
+        } catch (BufferUnderflowException e) {
+            error(connection, PosProtocol.BAD_REQUEST, requestId, "Request too short for " + PosProtocol.opcodeName(opcode));
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            fail(connection, opcode, requestId, e);
+        }
+    }
+
+    // LOGIN and RESUME
+    private void authenticate(Connection connection, byte opcode, int requestId, ByteBuffer request) throws Exception {
+        Session session;
+        if (opcode == PosProtocol.LOGIN) {
+            String email = PosProtocol.readString(request);
+            String password = PosProtocol.readString(request);
+            session = ThreadManager.supplyAsync(ThreadManager.Lane.INTERACTIVE,
+                    () -> AuthenticationService.login(email, password)).get();
+        } else {
+            session = SessionManager.get(PosProtocol.readString(request));
+        }
+        if (session == null) {
+            error(connection, PosProtocol.UNAUTHORIZED, requestId,
+                  opcode == PosProtocol.LOGIN ? "Invalid email or password" : "Unknown or expired session");
+            return;
+        }
+
+        if (connection.ownsSession && connection.session != session) {
+            SessionManager.close(connection.session);
+        }
+        connection.session = session;
+        connection.ownsSession = opcode == PosProtocol.LOGIN;
+        Logger.logUserAction(session.getUserId(), "Login",
+                            "POS terminal " + connection.socket.getRemoteSocketAddress() + " connected");
+
+        connection.payload.putInt(session.getUserId());
+        if (opcode == PosProtocol.LOGIN) {
+            PosProtocol.putString(connection.payload, PosProtocol.utf8(session.getId()));
+        }
+        respond(connection, PosProtocol.OK, requestId);
+    }
+
+    // LOOKUP: name and price, from the pre-encoded responses when the product was scanned recently
+    private void lookup(Connection connection, int requestId, String productId) throws Exception {
+        HotProduct hot = hotProducts.get(productId);
+        if (hot != null && hot.expiresAt - System.nanoTime() > 0) {
+            respond(connection, PosProtocol.OK, requestId, hot.payload);
+            return;
+        }
+
+        ProductData product = ProductService.getProduct(connection.session, productId).get();
+        if (product == null) {
+            hotProducts.remove(productId);
+            respond(connection, PosProtocol.NOT_FOUND, requestId);
+            return;
+        }
+
+        ByteBuffer encoded = ByteBuffer.allocate(PosProtocol.MAX_FRAME_LENGTH);
+        PosProtocol.putString(encoded, PosProtocol.utf8(product.name));
+        encoded.putDouble(product.price);
+        byte[] payload = new byte[encoded.position()];
+        encoded.flip().get(payload);
+        remember(productId, new HotProduct(payload, System.nanoTime() + HOT_PRODUCT_TTL_NANOS));
+        respond(connection, PosProtocol.OK, requestId, payload);
+    }
+
+    // STOCK: current quantity, always read from the database
+    private void stock(Connection connection, int requestId, String productId) throws Exception {
+        ProductData product = ProductService.getProduct(connection.session, productId).get();
+        if (product == null) {
+            respond(connection, PosProtocol.NOT_FOUND, requestId);
+            return;
+        }
+        connection.payload.putInt(product.quantity);
+        respond(connection, PosProtocol.OK, requestId);
+    }
+
+    // PURCHASE
+    private void purchase(Connection connection, int requestId, int customerId, String productId, int quantity)
+            throws Exception {
+        PurchaseResult result = TransactionService.purchase(connection.session, customerId, productId, quantity).get();
+        ByteBuffer payload = connection.payload;
+        switch (result.getStatus()) {
+            case COMPLETED -> {
+                payload.putDouble(result.getTotalPrice());
+                payload.putInt(result.getAvailableQuantity() - result.getQuantity());
+                respond(connection, PosProtocol.OK, requestId);
+            }
+            case INSUFFICIENT_STOCK -> {
+                payload.putInt(result.getAvailableQuantity());
+                respond(connection, PosProtocol.INSUFFICIENT_STOCK, requestId);
+            }
+            case UNKNOWN_CUSTOMER -> respond(connection, PosProtocol.UNKNOWN_CUSTOMER, requestId);
+            case UNKNOWN_PRODUCT -> {
+                hotProducts.remove(productId);
+                respond(connection, PosProtocol.NOT_FOUND, requestId);
+            }
+        }
+    }
+
+    // cache a pre-encoded lookup, making room by dropping expired entries or, failing that, any entry
+    private void remember(String productId, HotProduct hot) {
+        if (hotProducts.size() >= HOT_PRODUCTS) {
+            long now = System.nanoTime();
+            hotProducts.values().removeIf(entry -> entry.expiresAt - now <= 0);
+            Iterator<String> oldest = hotProducts.keySet().iterator();
+            while (hotProducts.size() >= HOT_PRODUCTS && oldest.hasNext()) {
+                oldest.next();
+                oldest.remove();
+            }
+        }
+        hotProducts.put(productId, hot);
+    }
+
+    // answer a failed request with the matching status and the usual user message
+    private void fail(Connection connection, byte opcode, int requestId, Exception e) throws IOException {
+        Throwable cause = e;
+        while ((cause instanceof ExecutionException || cause instanceof CompletionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        String message = ErrorHandler.handleAsyncException(cause, "handling POS " + PosProtocol.opcodeName(opcode));
+        byte status;
+        if (cause instanceof ValidationException) {
+            status = PosProtocol.BAD_REQUEST;
+            message = cause.getMessage();
+        } else if (cause instanceof SecurityException) {
+            status = PosProtocol.FORBIDDEN;
+        } else if (cause instanceof RejectedExecutionException || cause instanceof TimeoutException) {
+            status = PosProtocol.BUSY;
+        } else {
+            status = PosProtocol.ERROR;
+        }
+        error(connection, status, requestId, message);
+    }
+
+    private static void error(Connection connection, byte status, int requestId, String message) throws IOException {
+        connection.payload.clear();
+        PosProtocol.putString(connection.payload, PosProtocol.utf8(message));
+        respond(connection, status, requestId);
+    }
+
+    // write a response whose payload was put in the connection's payload buffer
+    private static void respond(Connection connection, byte status, int requestId) throws IOException {
+        ByteBuffer payload = connection.payload;
+        connection.out.writeInt(PosProtocol.HEADER_LENGTH + payload.position());
+        connection.out.writeByte(status);
+        connection.out.writeInt(requestId);
+        connection.out.write(payload.array(), 0, payload.position());
+    }
+
+    // write a response with a pre-encoded payload
+    private static void respond(Connection connection, byte status, int requestId, byte[] payload) throws IOException {
+        connection.out.writeInt(PosProtocol.HEADER_LENGTH + payload.length);
+        connection.out.writeByte(status);
+        connection.out.writeInt(requestId);
+        connection.out.write(payload);
+    }
+}
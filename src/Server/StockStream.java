@@ -0,0 +1,178 @@
+package src.Server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import src.Authentication.Session;
+import src.Authentication.SessionManager;
+import src.Util.Logger;
+import src.Util.StockNotifier;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// GET /api/stock/stream: pushes stock level changes to clients as server-sent events
+//
+//   event: stock
+//   data: {"productId":"P100","quantity":41}
+//
+// quantity is -1 once a product is removed. a client can limit the stream to some products
+// with ?products=P100,P200, and since browsers cannot set headers on an EventSource the
+// session token may be given as ?token= instead of the Authorization header
+//
+// each client has its own pending map of product ID to latest quantity. changes arriving
+// within COALESCE_MILLIS of each other collapse into one event per product, and a slow
+// client only ever gets the latest value instead of a growing backlog
+class StockStream implements HttpHandler {
+    private static final long COALESCE_MILLIS = 200;
+    private static final long HEARTBEAT_SECONDS = 15; // comment lines that keep proxies from closing idle streams
+    private static final int RETRY_MILLIS = 3000; // how long browsers wait before reconnecting
+
+    private final int maxClients;
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger clientCount = new AtomicInteger();
+    private volatile boolean closed;
+
+    // one connected client
+    private static final class Client implements StockNotifier.Listener {
+        final Set<String> products; // null for every product
+        final Map<String, Integer> pending = new ConcurrentHashMap<>();
+        final Semaphore changed = new Semaphore(0);
+
+        Client(Set<String> products) {
+            this.products = products;
+        }
+
+        @Override
+        public void stockChanged(String productId, int quantity) {
+            if (products == null || products.contains(productId)) {
+                pending.put(productId, quantity);
+                changed.release();
+            }
+        }
+    }
+
+    // constructor
+    // @param maxClients most streams open at once; each holds a request thread for as long as it is open
+    StockStream(int maxClients) {
+        this.maxClients = maxClients;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            Map<String, String> query = new HashMap<>();
+            ApiServer.parseForm(exchange.getRequestURI().getRawQuery(), query);
+            Session session = ApiServer.sessionOf(exchange);
+            if (session == null && query.get("token") != null) {
+                session = SessionManager.get(query.get("token"));
+            }
+            if (session == null) {
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+            if (closed || clientCount.incrementAndGet() > maxClients) {
+                clientCount.decrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "5");
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            Client client = new Client(parseProducts(query.get("products")));
+            clients.add(client);
+            StockNotifier.addListener(client);
+            Logger.log(Logger.INFO, "User {} opened a stock stream ({} open)", session.getUserId(), clients.size());
+            try {
+                stream(exchange, session, client);
+            } finally {
+                StockNotifier.removeListener(client);
+                clients.remove(client);
+                clientCount.decrementAndGet();
+            }
+        }
+    }
+
+    // end every open stream, for server shutdown
+    void closeAll() {
+        closed = true;
+        for (Client client : clients) {
+            client.changed.release();
+        }
+    }
+
+    // write events until the client goes away, its session ends or the server stops
+    private void stream(HttpExchange exchange, Session session, Client client) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+        out.write("retry: " + RETRY_MILLIS + "\n\n");
+        out.flush();
+
+        try {
+            while (!closed) {
+                if (!client.changed.tryAcquire(HEARTBEAT_SECONDS, TimeUnit.SECONDS)) {
+                    if (SessionManager.get(session.getId()) == null) {
+                        break; // logged out or expired
+                    }
+                    out.write(": keep-alive\n\n");
+                    out.flush();
+                    continue;
+                }
+                if (closed) {
+                    break;
+                }
+
+                // let the rest of a burst arrive so each product is sent once
+                Thread.sleep(COALESCE_MILLIS);
+                client.changed.drainPermits();
+                for (String productId : client.pending.keySet()) {
+                    // remove returns the latest value, even one that arrived during this loop
+                    Integer quantity = client.pending.remove(productId);
+                    if (quantity != null) {
+                        writeEvent(out, productId, quantity);
+                    }
+                }
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // client disconnected
+        }
+    }
+
+    private static void writeEvent(Writer out, String productId, int quantity) throws IOException {
+        out.write("event: stock\ndata: ");
+        new JsonWriter(out).beginObject().field("productId", productId).field("quantity", quantity).endObject();
+        out.write("\n\n");
+    }
+
+    private static Set<String> parseProducts(String products) {
+        if (products == null || products.isBlank()) {
+            return null;
+        }
+        Set<String> ids = new HashSet<>();
+        for (String id : products.split(",")) {
+            if (!id.isBlank()) {
+                ids.add(id.trim());
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,90 @@
+package src.Service;
+
+import src.Authentication.Session;
+import src.Authentication.SessionManager;
+import src.Logic.OptimizedCustomerHistory;
+import src.Objects.CustomerSummary;
+import src.Objects.Person;
+import src.Objects.Purchase;
+import src.Security.SecurityUtil;
+import src.Util.ThreadManager;
+import src.Util.ValidationException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// asynchronous customer lookups for any front end
+// each call runs on the interactive lane as the given session; futures complete exceptionally
+// with the SQLException, ValidationException or SecurityException that stopped them.
+// admins can see any customer's purchases, regular users only their own
+public class CustomerHistoryService {
+    // find a customer by email
+    // @param session the caller's session
+    // @param email customer email
+    // @return a future for the customer, completing with null if no customer has that email
+    public static CompletableFuture<Person> findCustomerByEmail(Session session, String email) {
+        return ThreadManager.supplyAsync(ThreadManager.Lane.INTERACTIVE, SessionManager.wrap(session, () -> {
+            SecurityUtil.requireUser(session);
+            if (email == null || !email.matches("^[A-Za-z0-9+_.-]+@(.+)$")) {
+                throw new ValidationException("Invalid email format", "Email");
+            }
+            return OptimizedCustomerHistory.findCustomerByEmail(email);
+        }));
+    }
+
+    // check whether a customer exists
+    // customers are never deleted, so a customer found once is remembered for the rest of the session
+    // @param session the caller's session
+    // @param customerId customer ID
+    // @return a future for true if the customer exists
+    public static CompletableFuture<Boolean> customerExists(Session session, int customerId) {
+        return ThreadManager.supplyAsync(ThreadManager.Lane.INTERACTIVE, SessionManager.wrap(session, () -> {
+            SecurityUtil.requireUser(session);
+            String key = "customerExists:" + customerId;
+            if (session.getCached(key) != null) {
+                return true;
+            }
+            boolean exists = OptimizedCustomerHistory.customerExists(customerId);
+            if (exists) {
+                session.putCached(key, Boolean.TRUE);
+            }
+            return exists;
+        }));
+    }
+
+    // get a customer's purchase totals
+    // @param session the caller's session
+    // @param customerId customer ID
+    // @return a future for the summary, completing with null if there is no such customer
+    public static CompletableFuture<CustomerSummary> getSummary(Session session, int customerId) {
+        return ThreadManager.supplyAsync(ThreadManager.Lane.INTERACTIVE, SessionManager.wrap(session, () -> {
+            checkCustomerId(customerId);
+            SecurityUtil.requireCustomerAccess(session, customerId);
+            return OptimizedCustomerHistory.fetchCustomerSummary(customerId);
+        }));
+    }
+
+    // get one page of a customer's purchases, newest first
+    // @param session the caller's session
+    // @param customerId customer ID
+    // @param page page number, starting at 1
+    // @param pageSize number of purchases per page
+    // @return a future for the purchases on the page
+    public static CompletableFuture<List<Purchase>> getPurchaseHistory(Session session, int customerId,
+                                                                       int page, int pageSize) {
+        return ThreadManager.supplyAsync(ThreadManager.Lane.INTERACTIVE, SessionManager.wrap(session, () -> {
+            checkCustomerId(customerId);
+            SecurityUtil.requireCustomerAccess(session, customerId);
+            if (page < 1 || pageSize < 1) {
+                throw new ValidationException("Page and page size must be at least 1", "Page");
+            }
+            return OptimizedCustomerHistory.fetchPurchaseHistory(customerId, page, pageSize);
+        }));
+    }
+
+    private static void checkCustomerId(int customerId) throws ValidationException {
+        if (customerId <= 0) {
+            throw new ValidationException("Invalid customer ID", "Customer ID");
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package src.Service;
+
+import src.Authentication.Session;
+import src.Authentication.SessionManager;
+import src.Logic.OptimizedManageProducts;
+import src.Objects.ProductData;
+import src.Objects.ProductPageData;
+import src.Objects.ProductSales;
+import src.Security.SecurityUtil;
+import src.Util.ScatterGather;
+import src.Util.ThreadManager;
+import src.Util.ValidationException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+// asynchronous product queries for any front end
+// each call runs on a ThreadManager lane as the given session and returns at once; the future
+// completes with the result, or exceptionally with the SQLException, ValidationException or
+// SecurityException that stopped it (ErrorHandler.handleAsyncException turns any of them
+// into a user message)
+public class ProductService {
+    // columns a product page may be sorted by
+    private static final Set<String> SORT_COLUMNS = Set.of("ProductID", "ItemName", "ItemPrice", "ItemQuantity");
+
+    // drop page loads that wait longer than this to start; the user has given up by then
+    private static final Duration PAGE_START_DEADLINE = Duration.ofSeconds(15);
+
+    // get one page of products with the total product count
+    // @param session the caller's session
+    // @param page page number, starting at 1
+    // @param pageSize number of products per page
+    // @param sortColumn ProductID, ItemName, ItemPrice or ItemQuantity
+    // @param sortDirection ASC or DESC
+    // @return a future for the page
+    public static CompletableFuture<ProductPageData> getProductPage(Session session, int page, int pageSize,
+                                                                    String sortColumn, String sortDirection) {
+        return ThreadManager.supplyAsync(ThreadManager.Lane.INTERACTIVE, SessionManager.wrap(session, () -> {
+            SecurityUtil.requireUser(session);
+            if (page < 1 || pageSize < 1) {
+                throw new ValidationException("Page and page size must be at least 1", "Page");
+            }
+            if (!SORT_COLUMNS.contains(sortColumn)) {
+                throw new ValidationException("Cannot sort by " + sortColumn, "Sort Column");
+            }
+            if (!"ASC".equals(sortDirection) && !"DESC".equals(sortDirection)) {
+                throw new ValidationException("Sort direction must be ASC or DESC", "Sort Direction");
+            }
+            return OptimizedManageProducts.fetchProductPage(page, pageSize, sortColumn, sortDirection);
+        }), PAGE_START_DEADLINE);
+    }
+
+    // search products by name, price range and stock
+    // @param session the caller's session
+    // @param nameSearch part of the product name, or null for any
+    // @param minPrice minimum price, or null for any
+    // @param maxPrice maximum price, or null for any
+    // @param inStockOnly true to leave out products with no stock
+    // @return a future for the matching products; the total is the number found
+    public static CompletableFuture<ProductPageData> searchProducts(Session session, String nameSearch,
+                                                                    Float minPrice, Float maxPrice, boolean inStockOnly) {
+        return ThreadManager.supplyAsync(ThreadManager.Lane.INTERACTIVE, SessionManager.wrap(session, () -> {
+            SecurityUtil.requireUser(session);
+            if (minPrice != null && minPrice < 0) {
+                throw new ValidationException("Minimum price cannot be negative", "Minimum Price");
+            }
+            if (maxPrice != null && maxPrice < 0) {
+                throw new ValidationException("Maximum price cannot be negative", "Maximum Price");
+            }
+            if (minPrice != null && maxPrice != null && maxPrice < minPrice) {
+                throw new ValidationException("Maximum price cannot be less than minimum price", "Maximum Price");
+            }
+            return OptimizedManageProducts.findProducts(nameSearch, minPrice, maxPrice, inStockOnly);
+        }), PAGE_START_DEADLINE);
+    }
+
+    // get one product by ID with its current stock
+    // @param session the caller's session
+    // @param productId product ID
+    // @return a future for the product, or for null if there is no product with that ID
+    public static CompletableFuture<ProductData> getProduct(Session session, String productId) {
+        return ThreadManager.supplyAsync(ThreadManager.Lane.INTERACTIVE, SessionManager.wrap(session, () -> {
+            SecurityUtil.requireUser(session);
+            if (productId == null || productId.trim().isEmpty()) {
+                throw new ValidationException("Product ID cannot be empty", "Product ID");
+            }
+            return OptimizedManageProducts.fetchProduct(productId);
+        }));
+    }
+
+    // get one page of a catalog export, sorted by product ID
+    // each page is a short query on the background lane, and the caller writes it out before
+    // asking for the next, so a client reading slowly holds neither a lane thread nor a
+    // connection. pages are read separately, so products changed during an export may show
+    // their old or new values
+    // @param session the caller's session
+    // @param afterId the last product ID of the previous page, or null for the first page
+    // @param size the most products per page
+    // @return a future for the products, fewer than size only on the last page
+    public static CompletableFuture<List<ProductData>> getExportPage(Session session, String afterId, int size) {
+        return ThreadManager.supplyAsync(ThreadManager.Lane.BACKGROUND, SessionManager.wrap(session, () -> {
+            SecurityUtil.requireUser(session);
+            return OptimizedManageProducts.fetchProductsAfter(afterId, size);
+        }));
+    }
+
+    // get sales figures for every product, best sellers first (admins only)
+    // the analysis scans every sale, so it runs on the background lane where it cannot hold up
+    // interactive queries; when that lane is full the future fails with a RejectedExecutionException.
+    // with sharded customers the result names any shard whose figures are missing
+    // @param session the caller's session
+    // @param top number of products wanted, or 0 for all of them
+    // @return a future for the figures, one entry per product
+    public static CompletableFuture<ScatterGather.Result<List<ProductSales>>> getSalesAnalysis(Session session, int top) {
+        return ThreadManager.supplyAsync(ThreadManager.Lane.BACKGROUND, SessionManager.wrap(session, () -> {
+            SecurityUtil.requireAdmin(session);
+            return OptimizedManageProducts.fetchSalesAnalysis(top);
+        }));
+    }
+}
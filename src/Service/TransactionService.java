@@ -0,0 +1,32 @@
+package src.Service;
+
+import src.Authentication.Session;
+import src.Authentication.SessionManager;
+import src.Logic.OptimizedCompleteTransactions;
+import src.Objects.PurchaseResult;
+import src.Security.SecurityUtil;
+import src.Util.ThreadManager;
+
+import java.util.concurrent.CompletableFuture;
+
+// asynchronous checkout for any front end
+// the purchase runs as the given session, so it is audited against that session's user.
+// the future completes with the outcome of the purchase, including refusals such as
+// insufficient stock, or exceptionally with the SQLException, ValidationException or
+// SecurityException that stopped it
+public class TransactionService {
+    // check a purchase against the customer and stock, then record it
+    // purchases are not given a start deadline: once accepted a cashier expects them to go through
+    // @param session the cashier's session
+    // @param customerId customer ID
+    // @param productId product ID
+    // @param quantity quantity to purchase
+    // @return a future for the outcome
+    public static CompletableFuture<PurchaseResult> purchase(Session session, int customerId, String productId,
+                                                             int quantity) {
+        return ThreadManager.supplyAsync(ThreadManager.Lane.INTERACTIVE, SessionManager.wrap(session, () -> {
+            SecurityUtil.requireUser(session);
+            return OptimizedCompleteTransactions.placePurchase(customerId, productId, quantity);
+        }));
+    }
+}
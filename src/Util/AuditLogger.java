@@ -0,0 +1,327 @@
+package src.Util;
+
+import src.Objects.AuditEvent;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// structured audit trail for user actions
+// events are queued in memory and written to the AuditLog table by a background
+// thread using multi-row inserts, so callers never wait on database I/O
+public class AuditLogger {
+    private static String dbUrl; // database url
+    private static String dbUser; // database username
+    private static String dbPassword; // database password
+
+    // flush when this many events are queued or the interval has passed, whichever comes first
+    private static final int BATCH_SIZE = 100;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+
+    // events beyond this are dropped rather than blocking the caller
+    private static final int QUEUE_CAPACITY = 10_000;
+
+    // a batch that cannot be written is tried again after 1, 2, 4 and 8 seconds, then dropped
+    private static final int MAX_WRITE_ATTEMPTS = 5;
+    private static final long FIRST_RETRY_MS = 1000;
+
+    // column sizes from the AuditLog table
+    private static final int MAX_ACTION_LENGTH = 50;
+    private static final int MAX_DETAILS_LENGTH = 500;
+
+    private static final BlockingQueue<AuditEvent> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final AtomicLong droppedEvents = new AtomicLong();
+    private static final AtomicLong writtenEvents = new AtomicLong();
+
+    private static Thread writerThread = null;
+    private static volatile boolean running = false;
+
+    // sets the database connection information and starts the background writer
+    // @param url database url
+    // @param user database username
+    // @param password database password
+    public static synchronized void setConnectionInfo(String url, String user, String password) {
+        dbUrl = url;
+        dbUser = user;
+        dbPassword = password;
+
+        // ensure the audit table exists
+        try (Connection conn = getConnection()) {
+            ensureTable(conn);
+        } catch (SQLException e) {
+            Logger.log(Logger.WARNING, "Could not create AuditLog table: {}", e.getMessage());
+        }
+
+        if (writerThread == null) {
+            running = true;
+            writerThread = new Thread(AuditLogger::writeLoop, "audit-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    // gets a database connection
+    // @return a connection to the database
+    // @throws SQLException if a database error occurs
+    private static Connection getConnection() throws SQLException {
+        return DriverManager.getConnection(dbUrl, dbUser, dbPassword);
+    }
+
+    // queue a user action for the audit trail
+    // does nothing until setConnectionInfo has been called
+    // @param userId the user ID
+    // @param action the action performed
+    // @param details additional details about the action
+    public static void record(int userId, String action, String details) {
+        if (!running) {
+            return;
+        }
+
+        AuditEvent event = new AuditEvent(userId, truncate(action, MAX_ACTION_LENGTH),
+                truncate(details, MAX_DETAILS_LENGTH), Instant.now());
+        if (!queue.offer(event)) {
+            droppedEvents.incrementAndGet(); // never block the caller on a full queue
+        }
+    }
+
+    // get the most recent audit events for a user in a time range
+    // @param userId the user ID
+    // @param from start of the range (inclusive)
+    // @param to end of the range (exclusive)
+    // @param limit maximum number of events to return
+    // @return the events, newest first
+    // @throws SQLException if a database error occurs
+    public static List<AuditEvent> findByUser(int userId, Instant from, Instant to, int limit) throws SQLException {
+        String sql = "SELECT UserID, Action, Details, EventTime FROM AuditLog " +
+                     "WHERE UserID = ? AND EventTime >= ? AND EventTime < ? " +
+                     "ORDER BY EventTime DESC LIMIT ?";
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            stmt.setTimestamp(2, Timestamp.from(from));
+            stmt.setTimestamp(3, Timestamp.from(to));
+            stmt.setInt(4, limit);
+            return readEvents(stmt);
+        }
+    }
+
+    // get the most recent audit events for an action in a time range
+    // @param action the action, e.g. Purchase
+    // @param from start of the range (inclusive)
+    // @param to end of the range (exclusive)
+    // @param limit maximum number of events to return
+    // @return the events, newest first
+    // @throws SQLException if a database error occurs
+    public static List<AuditEvent> findByAction(String action, Instant from, Instant to, int limit) throws SQLException {
+        String sql = "SELECT UserID, Action, Details, EventTime FROM AuditLog " +
+                     "WHERE Action = ? AND EventTime >= ? AND EventTime < ? " +
+                     "ORDER BY EventTime DESC LIMIT ?";
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, action);
+            stmt.setTimestamp(2, Timestamp.from(from));
+            stmt.setTimestamp(3, Timestamp.from(to));
+            stmt.setInt(4, limit);
+            return readEvents(stmt);
+        }
+    }
+
+    // get the number of events dropped because the queue was full or they could not be written
+    // @return dropped event count
+    public static long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    // get the number of events written to the database
+    // @return written event count
+    public static long getWrittenEvents() {
+        return writtenEvents.get();
+    }
+
+    // stop the background writer after flushing queued events
+    // this should be called when the application is closing
+    public static synchronized void shutdown() {
+        if (writerThread == null) {
+            return;
+        }
+
+        running = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writerThread = null;
+    }
+
+    // background loop: wait for events, then write them in batches
+    // a batch that fails is kept and tried again with a growing pause, taking in new events as it waits
+    private static void writeLoop() {
+        List<AuditEvent> batch = new ArrayList<>(BATCH_SIZE);
+        Connection conn = null;
+        int failedAttempts = 0;
+
+        try {
+            while (running || !queue.isEmpty() || !batch.isEmpty()) {
+                try {
+                    // block until the first event arrives, then collect more until the batch is full or the interval ends
+                    if (batch.isEmpty()) {
+                        AuditEvent first = queue.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                        if (first == null) {
+                            continue;
+                        }
+                        batch.add(first);
+                    }
+
+                    long deadline = System.currentTimeMillis() + FLUSH_INTERVAL_MS;
+                    while (batch.size() < BATCH_SIZE) {
+                        queue.drainTo(batch, BATCH_SIZE - batch.size());
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (batch.size() >= BATCH_SIZE || remaining <= 0) {
+                            break;
+                        }
+                        AuditEvent next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                } catch (InterruptedException e) {
+                    // shutdown requested, flush what is left below
+                    queue.drainTo(batch);
+                }
+
+                if (batch.isEmpty()) {
+                    continue;
+                }
+
+                try {
+                    if (conn == null || conn.isClosed()) {
+                        conn = getConnection();
+                    }
+                    writeBatches(conn, batch);
+                    failedAttempts = 0;
+                } catch (SQLException e) {
+                    closeQuietly(conn);
+                    conn = null; // reconnect on the next attempt
+                    failedAttempts++;
+                    if (failedAttempts >= MAX_WRITE_ATTEMPTS || !running) {
+                        Logger.log(Logger.ERROR, "Dropped {} audit events after {} failed writes: {}",
+                                   batch.size(), failedAttempts, e.getMessage());
+                        droppedEvents.addAndGet(batch.size());
+                        batch.clear();
+                        failedAttempts = 0;
+                    } else {
+                        long retryMillis = FIRST_RETRY_MS << (failedAttempts - 1);
+                        Logger.log(Logger.WARNING, "Failed to write {} audit events, retrying in {} ms: {}",
+                                   batch.size(), retryMillis, e.getMessage());
+                        try {
+                            Thread.sleep(retryMillis);
+                        } catch (InterruptedException interrupted) {
+                            // shutdown requested; one last attempt follows
+                        }
+                    }
+                }
+            }
+        } finally {
+            closeQuietly(conn);
+        }
+    }
+
+    // write events with multi-row inserts of at most BATCH_SIZE rows
+    // events are removed from the list as they are written, so after a failure it holds the rest
+    // @param conn the connection to use
+    // @param events the events to write
+    // @throws SQLException if a database error occurs
+    private static void writeBatches(Connection conn, List<AuditEvent> events) throws SQLException {
+        while (!events.isEmpty()) {
+            int rows = Math.min(events.size(), BATCH_SIZE);
+
+            StringBuilder sql = new StringBuilder("INSERT INTO AuditLog (UserID, Action, Details, EventTime) VALUES ");
+            for (int i = 0; i < rows; i++) {
+                sql.append(i == 0 ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+            }
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                int parameter = 1;
+                for (int i = 0; i < rows; i++) {
+                    AuditEvent event = events.get(i);
+                    stmt.setInt(parameter++, event.getUserId());
+                    stmt.setString(parameter++, event.getAction());
+                    stmt.setString(parameter++, event.getDetails());
+                    stmt.setTimestamp(parameter++, Timestamp.from(event.getEventTime()));
+                }
+                stmt.executeUpdate();
+            }
+            events.subList(0, rows).clear();
+            writtenEvents.addAndGet(rows);
+        }
+    }
+
+    // create the AuditLog table if it doesn't exist
+    // @param conn the connection to use
+    // @throws SQLException if a database error occurs
+    private static void ensureTable(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(
+                    "CREATE TABLE IF NOT EXISTS AuditLog (" +
+                    "AuditID BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "UserID INT NOT NULL, " +
+                    "Action VARCHAR(50) NOT NULL, " +
+                    "Details VARCHAR(500) NOT NULL, " +
+                    "EventTime DATETIME(3) NOT NULL, " +
+                    "INDEX idx_audit_user_time (UserID, EventTime), " +
+                    "INDEX idx_audit_action_time (Action, EventTime), " +
+                    "INDEX idx_audit_time (EventTime))");
+        }
+    }
+
+    // read audit events from a query
+    // @param stmt the prepared query
+    // @return the events
+    // @throws SQLException if a database error occurs
+    private static List<AuditEvent> readEvents(PreparedStatement stmt) throws SQLException {
+        List<AuditEvent> events = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                events.add(new AuditEvent(
+                        rs.getInt("UserID"),
+                        rs.getString("Action"),
+                        rs.getString("Details"),
+                        rs.getTimestamp("EventTime").toInstant()));
+            }
+        }
+        return events;
+    }
+
+    private static String truncate(String value, int maxLength) {
+        if (value == null) {
+            return "";
+        }
+        return value.length() <= maxLength ? value : value.substring(0, maxLength);
+    }
+
+    private static void closeQuietly(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException ignored) {
+                // nothing useful to do if close fails
+            }
+        }
+    }
+}
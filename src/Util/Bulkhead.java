@@ -0,0 +1,293 @@
+package src.Util;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// an isolated lane of background work with its own threads and bounded queue
+// work in one bulkhead cannot starve another: a slow report filling the background
+// lane leaves the interactive lane's threads free for the page a cashier is waiting on
+//
+// the queue is bounded so a burst of submissions cannot grow memory and latency
+// without limit; what happens when it is full is set by the overflow policy.
+// tasks can carry a deadline and are dropped if it passes before they start,
+// since nobody is waiting for their result any more
+//
+// in platform mode the lane is a fixed pool of platform threads at the given priority.
+// in virtual mode every task gets its own virtual thread and a semaphore limits how
+// many run at once; tasks waiting for a permit count as queued
+public class Bulkhead {
+    // what to do with a task when the lane's queue is full
+    public enum OverflowPolicy {
+        CALLER_RUNS, // run the task on the submitting thread, slowing the submitter down
+        TIMED_OFFER, // wait up to the offer timeout for queue space, then reject
+        FAIL_FAST    // reject the task with a RejectedExecutionException
+    }
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int queueCapacity;
+    private final OverflowPolicy policy;
+    private final long offerTimeoutMillis;
+
+    // platform mode
+    private final ThreadPoolExecutor pool;
+
+    // virtual mode
+    private final ExecutorService virtualExecutor;
+    private final Semaphore permits;
+    private final Semaphore queueSlots;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    // constructor
+    // @param name lane name, also used for thread names
+    // @param maxConcurrent maximum number of tasks running at the same time
+    // @param queueCapacity maximum number of tasks waiting to run
+    // @param priority thread priority for platform threads
+    // @param policy what to do with tasks that don't fit in the queue
+    // @param offerTimeoutMillis how long TIMED_OFFER waits for queue space
+    // @param virtualExecutor executor starting a virtual thread per task, or null for platform threads
+    public Bulkhead(String name, int maxConcurrent, int queueCapacity, int priority,
+                    OverflowPolicy policy, long offerTimeoutMillis, ExecutorService virtualExecutor) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.queueCapacity = queueCapacity;
+        this.policy = policy;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.virtualExecutor = virtualExecutor;
+
+        if (virtualExecutor != null) {
+            this.pool = null;
+            this.permits = new Semaphore(maxConcurrent);
+            this.queueSlots = new Semaphore(queueCapacity);
+        } else {
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.pool = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+                        thread.setPriority(priority);
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    (runnable, executor) -> overflow(runnable));
+            this.permits = null;
+            this.queueSlots = null;
+        }
+    }
+
+    // submit a task to this lane
+    // @param task the task
+    // @return a future for the task's result
+    // @throws RejectedExecutionException if the task doesn't fit and the policy rejects it, or the lane is shut down
+    public <T> Future<T> submit(Callable<T> task) {
+        return submit(task, 0);
+    }
+
+    // submit a task that is dropped if it has not started by a deadline
+    // a dropped task's future fails with a TimeoutException
+    // @param task the task
+    // @param deadlineNanos System.nanoTime() value the task must start by, or 0 for no deadline
+    // @return a future for the task's result
+    // @throws RejectedExecutionException if the task doesn't fit and the policy rejects it, or the lane is shut down
+    public <T> Future<T> submit(Callable<T> task, long deadlineNanos) {
+        FutureTask<T> future = new FutureTask<>(() -> {
+            if (deadlineNanos != 0 && System.nanoTime() - deadlineNanos > 0) {
+                expired.increment();
+                throw new TimeoutException(name + " task deadline passed before it started");
+            }
+            active.incrementAndGet();
+            try {
+                return task.call();
+            } finally {
+                active.decrementAndGet();
+                completed.increment();
+            }
+        });
+
+        if (pool != null) {
+            pool.execute(future);
+            return future;
+        }
+
+        if (virtualExecutor.isShutdown()) {
+            throw new RejectedExecutionException(name + " lane has been shut down");
+        }
+        if (queueSlots.tryAcquire()) {
+            virtualExecutor.execute(() -> runWithPermit(future, true));
+        } else {
+            overflow(future);
+        }
+        return future;
+    }
+
+    // stop accepting tasks and wait for queued and running tasks to finish
+    // tasks still queued or running when the timeout ends are cancelled
+    // @param timeoutMillis maximum time to wait
+    // @return the number of tasks that did not finish in time
+    public int drain(long timeoutMillis) {
+        ExecutorService executor = pool != null ? pool : virtualExecutor;
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return 0;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        int unfinished = active.get() + getStats().getQueuedTasks();
+        List<Runnable> neverStarted = executor.shutdownNow();
+        for (Runnable runnable : neverStarted) {
+            if (runnable instanceof Future<?> future) {
+                future.cancel(false);
+            }
+        }
+        return unfinished;
+    }
+
+    // count a task that was dropped because its deadline passed before it started, for
+    // callers that check the deadline themselves so they can report the drop
+    void recordExpired() {
+        expired.increment();
+    }
+
+    // get the current gauges for this lane
+    // @return a snapshot of the lane's state
+    public Stats getStats() {
+        int queued = pool != null ? pool.getQueue().size() : queueCapacity - queueSlots.availablePermits();
+        return new Stats(name, active.get(), maxConcurrent, queued, queueCapacity,
+                completed.sum(), overflowed.sum(), rejected.sum(), expired.sum());
+    }
+
+    public String getName() { return name; }
+
+    // run a task once a permit is free (virtual mode)
+    // @param task the task
+    // @param queued true if the task holds a queue slot to give back once it starts
+    private void runWithPermit(FutureTask<?> task, boolean queued) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            // lane is being shut down
+            task.cancel(false);
+            return;
+        } finally {
+            if (queued) {
+                queueSlots.release();
+            }
+        }
+        try {
+            task.run();
+        } finally {
+            permits.release();
+        }
+    }
+
+    // handle a task that does not fit in the queue
+    // @param task the task
+    // @throws RejectedExecutionException if the policy rejects the task or the lane is shut down
+    private void overflow(Runnable task) {
+        overflowed.increment();
+        boolean shutdown = pool != null ? pool.isShutdown() : virtualExecutor.isShutdown();
+
+        if (!shutdown && policy == OverflowPolicy.CALLER_RUNS) {
+            if (pool != null) {
+                task.run();
+            } else {
+                runWithPermit((FutureTask<?>) task, false);
+            }
+            return;
+        }
+
+        if (!shutdown && policy == OverflowPolicy.TIMED_OFFER) {
+            try {
+                if (pool != null) {
+                    if (pool.getQueue().offer(task, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        // the queue takes tasks after shutdown too, when no worker may be left to run
+                        // them; one still queued is taken back, one already taken will run
+                        if (!pool.isShutdown() || !pool.remove(task)) {
+                            return;
+                        }
+                        shutdown = true;
+                    }
+                } else if (queueSlots.tryAcquire(offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    virtualExecutor.execute(() -> runWithPermit((FutureTask<?>) task, true));
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RejectedExecutionException e) {
+                if (queueSlots != null) {
+                    queueSlots.release(); // shut down while we were waiting
+                }
+                shutdown = true;
+            }
+        }
+
+        rejected.increment();
+        throw new RejectedExecutionException(shutdown
+                ? name + " lane has been shut down"
+                : name + " lane is full (" + queueCapacity + " queued tasks)");
+    }
+
+    // point-in-time gauges for a lane
+    public static class Stats {
+        private final String name;
+        private final int activeTasks;
+        private final int maxConcurrent;
+        private final int queuedTasks;
+        private final int queueCapacity;
+        private final long completedTasks;
+        private final long overflowedTasks;
+        private final long rejectedTasks;
+        private final long expiredTasks;
+
+        Stats(String name, int activeTasks, int maxConcurrent, int queuedTasks, int queueCapacity,
+              long completedTasks, long overflowedTasks, long rejectedTasks, long expiredTasks) {
+            this.name = name;
+            this.activeTasks = activeTasks;
+            this.maxConcurrent = maxConcurrent;
+            this.queuedTasks = queuedTasks;
+            this.queueCapacity = queueCapacity;
+            this.completedTasks = completedTasks;
+            this.overflowedTasks = overflowedTasks;
+            this.rejectedTasks = rejectedTasks;
+            this.expiredTasks = expiredTasks;
+        }
+
+        public String getName() { return name; }
+        public int getActiveTasks() { return activeTasks; }
+        public int getMaxConcurrent() { return maxConcurrent; }
+        public int getQueuedTasks() { return queuedTasks; }
+        public int getQueueCapacity() { return queueCapacity; }
+        public long getCompletedTasks() { return completedTasks; }
+        // tasks that found the queue full, whatever the policy then did with them
+        public long getOverflowedTasks() { return overflowedTasks; }
+        public long getRejectedTasks() { return rejectedTasks; }
+        // tasks dropped because their deadline passed before they started
+        public long getExpiredTasks() { return expiredTasks; }
+
+        @Override
+        public String toString() {
+            return String.format("%-12s active %d/%d, queued %d/%d, completed %d, overflowed %d, rejected %d, expired %d",
+                    name, activeTasks, maxConcurrent, queuedTasks, queueCapacity,
+                    completedTasks, overflowedTasks, rejectedTasks, expiredTasks);
+        }
+    }
+}
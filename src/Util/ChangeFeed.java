@@ -0,0 +1,292 @@
+package src.Util;
+
+import java.net.InetAddress;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// database-backed change feed that keeps the caches of several application instances coherent
+//
+// product and purchase writes add a row to the ChangeLog table in the same transaction as the
+// change itself, so a change is in the feed exactly when it is committed. every instance polls
+// the table for rows past the last ChangeID it applied, skips its own, and republishes the
+// others on the local EventBus, where the caches and stock notifications pick them up just
+// like local changes
+//
+// ChangeIDs are AUTO_INCREMENT values, which are handed out at insert time but become visible
+// at commit, so a lower ID can appear after a higher one. the poller remembers which IDs past
+// the last contiguous one it has applied and waits GAP_TIMEOUT for a missing ID before deciding
+// it belonged to a rolled back transaction
+//
+// storedb.changefeed.poll-ms sets the poll interval (1000 by default); storedb.node.id names
+// this instance in the feed (host name and process ID by default)
+public class ChangeFeed {
+    public static final String NODE_ID = nodeId();
+
+    // kind of change recorded in the feed
+    public enum Change { ADDED, UPDATED, REMOVED, PURCHASED }
+
+    private static final long DEFAULT_POLL_MILLIS = 1000;
+    private static final int POLL_BATCH = 500; // most rows read per poll
+    private static final long GAP_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long RETENTION_HOURS = 24; // rows older than this are deleted
+    private static final long CLEANUP_INTERVAL_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    private static String dbUrl; // database url
+    private static String dbUser; // database username
+    private static String dbPassword; // database password
+
+    private static ScheduledExecutorService poller = null;
+
+    // poller state, only touched by the poller thread
+    private static long contiguous = -1; // every ID up to this one is applied or given up on
+    private static final Set<Long> appliedAbove = new HashSet<>(); // applied IDs past contiguous
+    private static final Map<Long, Long> gapsSince = new HashMap<>(); // missing ID -> when first noticed
+    private static long lastCleanup = System.nanoTime();
+
+    // a piece of work done inside a transaction
+    public interface TransactionWork<T> {
+        T run() throws SQLException;
+    }
+
+    // sets the database connection information and creates the ChangeLog table if needed
+    // @param url database url
+    // @param user database username
+    // @param password database password
+    public static synchronized void setConnectionInfo(String url, String user, String password) {
+        dbUrl = url;
+        dbUser = user;
+        dbPassword = password;
+
+        try (Connection conn = getConnection()) {
+            ensureTable(conn);
+        } catch (SQLException e) {
+            Logger.log(Logger.WARNING, "Could not create ChangeLog table: {}", e.getMessage());
+        }
+    }
+
+    // run work in one transaction on the given connection, restoring auto-commit afterwards
+    // @param conn the connection
+    // @param work the work; it should write its ChangeLog rows with record
+    // @return the work's result
+    // @throws SQLException if the work or the commit fails; the transaction is rolled back
+    public static <T> T inTransaction(Connection conn, TransactionWork<T> work) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            T result = work.run();
+            conn.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    // write one product update and its ChangeLog row in one transaction
+    // @param conn the connection
+    // @param productId product ID
+    // @param change kind of change
+    // @param stockLevel product's stock after the change, or DomainEvent.UNKNOWN
+    // @param update the update; its result is the number of rows changed
+    // @return the number of rows changed; the change is only recorded if it is more than 0
+    // @throws SQLException if a database error occurs
+    public static int writeProductChange(Connection conn, String productId, Change change, int stockLevel,
+                                         TransactionWork<Integer> update) throws SQLException {
+        return inTransaction(conn, () -> {
+            int rows = update.run();
+            if (rows > 0) {
+                record(conn, productId, change, stockLevel);
+            }
+            return rows;
+        });
+    }
+
+    // add a row to the ChangeLog; call inside the transaction that makes the change
+    // @param conn the connection
+    // @param productId product ID
+    // @param change kind of change
+    // @param stockLevel product's stock after the change, or DomainEvent.UNKNOWN
+    // @throws SQLException if a database error occurs
+    public static void record(Connection conn, String productId, Change change, int stockLevel) throws SQLException {
+        String sql = "INSERT INTO ChangeLog (ProductID, ChangeType, StockLevel, SourceNode, ChangeTime) VALUES (?, ?, ?, ?, NOW(3))";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, productId);
+            stmt.setString(2, change.name());
+            if (stockLevel == DomainEvent.UNKNOWN) {
+                stmt.setNull(3, Types.INTEGER);
+            } else {
+                stmt.setInt(3, stockLevel);
+            }
+            stmt.setString(4, NODE_ID);
+            Metrics.timed("RecordChange", stmt::executeUpdate);
+        }
+    }
+
+    // start applying changes made by other instances, beginning with those committed from now on
+    public static synchronized void start() {
+        if (poller != null) {
+            return;
+        }
+        try (Connection conn = getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(ChangeID), 0) FROM ChangeLog")) {
+            // this instance's caches start empty, so nothing older needs applying
+            contiguous = rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException e) {
+            Logger.log(Logger.WARNING, "Change feed not started: {}", e.getMessage());
+            return;
+        }
+
+        long pollMillis = Long.getLong("storedb.changefeed.poll-ms", DEFAULT_POLL_MILLIS);
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "change-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(ChangeFeed::poll, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+        Logger.log(Logger.INFO, "Change feed for node {} polling every {} ms from change {}", NODE_ID, pollMillis, contiguous);
+    }
+
+    public static synchronized void stop() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+    }
+
+    // read and apply the changes committed since the last poll
+    private static void poll() {
+        try (Connection conn = getConnection()) {
+            String sql = "SELECT ChangeID, ProductID, ChangeType, StockLevel, SourceNode, " +
+                         "TIMESTAMPDIFF(MICROSECOND, ChangeTime, NOW(3)) AS LagMicros " +
+                         "FROM ChangeLog WHERE ChangeID > ? ORDER BY ChangeID LIMIT ?";
+            long highest = contiguous;
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, contiguous);
+                stmt.setInt(2, POLL_BATCH);
+                try (ResultSet rs = Metrics.timed("PollChangeLog", stmt::executeQuery)) {
+                    while (rs.next()) {
+                        long changeId = rs.getLong(1);
+                        highest = Math.max(highest, changeId);
+                        if (!appliedAbove.add(changeId)) {
+                            continue; // applied on an earlier poll, behind a gap
+                        }
+                        if (!NODE_ID.equals(rs.getString(5))) {
+                            int stockLevel = rs.getInt(4);
+                            apply(rs.getString(2), Change.valueOf(rs.getString(3)),
+                                  rs.wasNull() ? DomainEvent.UNKNOWN : stockLevel);
+                        }
+                        Metrics.record("ChangeFeed lag", TimeUnit.MICROSECONDS.toNanos(Math.max(0, rs.getLong(6))));
+                    }
+                }
+            }
+            advance(highest);
+
+            if (System.nanoTime() - lastCleanup > CLEANUP_INTERVAL_NANOS) {
+                lastCleanup = System.nanoTime();
+                deleteOldChanges(conn);
+            }
+        } catch (SQLException e) {
+            Logger.log(Logger.WARNING, "Change feed poll failed: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            // keep the schedule alive; an exception would cancel it
+            Logger.log(Logger.ERROR, "Change feed poll error: {}", e.getMessage());
+        }
+    }
+
+    // publish another instance's change on the local event bus
+    private static void apply(String productId, Change change, int stockLevel) {
+        switch (change) {
+            case ADDED -> EventBus.productAdded(productId, stockLevel);
+            case UPDATED -> EventBus.productUpdated(productId, stockLevel);
+            case REMOVED -> EventBus.productRemoved(productId);
+            case PURCHASED -> EventBus.stockChanged(productId, stockLevel);
+        }
+    }
+
+    // move contiguous past every applied ID, and past gaps that have waited long enough
+    // @param highest highest ID seen so far
+    private static void advance(long highest) {
+        long now = System.nanoTime();
+        while (contiguous < highest) {
+            long next = contiguous + 1;
+            if (appliedAbove.remove(next)) {
+                contiguous = next;
+                continue;
+            }
+            Long since = gapsSince.putIfAbsent(next, now);
+            if (since == null || now - since < GAP_TIMEOUT_NANOS) {
+                break; // may still be committed
+            }
+            gapsSince.remove(next); // rolled back, or too late to matter
+            contiguous = next;
+        }
+        for (Iterator<Long> gaps = gapsSince.keySet().iterator(); gaps.hasNext(); ) {
+            if (gaps.next() <= contiguous) {
+                gaps.remove();
+            }
+        }
+    }
+
+    private static void deleteOldChanges(Connection conn) throws SQLException {
+        String sql = "DELETE FROM ChangeLog WHERE ChangeTime < NOW(3) - INTERVAL ? HOUR LIMIT 10000";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, RETENTION_HOURS);
+            int deleted = Metrics.timed("DeleteOldChanges", stmt::executeUpdate);
+            if (deleted > 0) {
+                Logger.log(Logger.INFO, "Deleted {} old change feed rows", deleted);
+            }
+        }
+    }
+
+    // create the ChangeLog table if it doesn't exist
+    // @param conn the connection to use
+    // @throws SQLException if a database error occurs
+    private static void ensureTable(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(
+                    "CREATE TABLE IF NOT EXISTS ChangeLog (" +
+                    "ChangeID BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "ProductID VARCHAR(20) NOT NULL, " +
+                    "ChangeType VARCHAR(20) NOT NULL, " +
+                    "StockLevel INT NULL, " +
+                    "SourceNode VARCHAR(100) NOT NULL, " +
+                    "ChangeTime DATETIME(3) NOT NULL, " +
+                    "INDEX idx_changelog_time (ChangeTime))");
+        }
+    }
+
+    private static Connection getConnection() throws SQLException {
+        return DriverManager.getConnection(dbUrl, dbUser, dbPassword);
+    }
+
+    // @return the node ID from storedb.node.id, or host name and process ID
+    private static String nodeId() {
+        String configured = System.getProperty("storedb.node.id");
+        if (configured != null && !configured.isBlank()) {
+            return configured.trim();
+        }
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "localhost";
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+}
@@ -0,0 +1,52 @@
+package src.Util;
+
+// a change to the store's data, delivered to EventBus subscribers
+// instances are slots of the bus's ring buffer and are reused once every subscriber has seen
+// them, so a handler must copy whatever it needs before returning
+public final class DomainEvent {
+    public static final int UNKNOWN = -1; // for number fields an event type does not carry
+
+    public enum Type {
+        PRODUCT_ADDED,       // productId, stockLevel
+        PRODUCT_UPDATED,     // productId, stockLevel
+        PRODUCT_REMOVED,     // productId
+        PURCHASE_COMPLETED,  // customerId, productId, quantity, amount, stockLevel if it was read back
+        STOCK_CHANGED,       // productId, stockLevel; a purchase made by another instance
+        CUSTOMER_REGISTERED  // customerId
+    }
+
+    private Type type;
+    private String productId;
+    private int customerId;
+    private int quantity;
+    private int stockLevel;
+    private double amount;
+    private long publishedAt; // System.nanoTime() at publish, for delivery lag
+
+    DomainEvent() {
+    }
+
+    void set(Type type, String productId, int customerId, int quantity, int stockLevel, double amount) {
+        this.type = type;
+        this.productId = productId;
+        this.customerId = customerId;
+        this.quantity = quantity;
+        this.stockLevel = stockLevel;
+        this.amount = amount;
+        this.publishedAt = System.nanoTime();
+    }
+
+    public Type getType() { return type; }
+    public String getProductId() { return productId; }
+    public int getCustomerId() { return customerId; }
+    public int getQuantity() { return quantity; }
+    public int getStockLevel() { return stockLevel; }
+    public double getAmount() { return amount; }
+    public long getPublishedAt() { return publishedAt; }
+
+    @Override
+    public String toString() {
+        return String.format("%s | Product: %s | Customer: %d | Quantity: %d | Stock: %d | Amount: $%.2f",
+                type, productId, customerId, quantity, stockLevel, amount);
+    }
+}
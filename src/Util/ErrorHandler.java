@@ -2,6 +2,10 @@ package src.Util;
 
 import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 // utility class for handling errors and exceptions
 public class ErrorHandler {
@@ -50,6 +54,37 @@ public class ErrorHandler {
         return "A database error occurred while " + context + ". Please try again later.";
     }
     
+    // handle the failure of a background task or service call
+    // unwraps the completion or execution exception so the cause gets the same handling
+    // it would get if the work had run on the calling thread
+    // @param exception the exception to handle
+    // @param context the context in which the exception occurred
+    // @return a user-friendly error message
+    public static String handleAsyncException(Throwable exception, String context) {
+        Throwable cause = exception;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        
+        if (cause instanceof ValidationException validationException) {
+            return handleValidationException(validationException, validationException.getField());
+        }
+        if (cause instanceof SQLException sqlException) {
+            return handleSQLException(sqlException, context);
+        }
+        if (cause instanceof SecurityException securityException) {
+            return handleAuthorizationException(securityException, null);
+        }
+        
+        // the work never ran or was given up on because the application is busy
+        if (cause instanceof RejectedExecutionException || cause instanceof TimeoutException) {
+            Logger.log(Logger.WARNING, "Work for {} not completed: {}", context, cause.getMessage());
+            return "The system is busy and could not finish " + context + ". Please try again shortly.";
+        }
+        
+        return handleException(cause instanceof Exception e ? e : new Exception(cause), context);
+    }
+    
     // handle an authentication exception
     // @param exception the exception to handle
     // @return a user-friendly error message
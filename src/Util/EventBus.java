@@ -0,0 +1,277 @@
+package src.Util;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// in-process bus for DomainEvents, so caches, summaries and metrics can react to changes
+// instead of polling the database
+//
+// events go into a ring buffer of preallocated slots, so publishing allocates nothing and
+// takes no lock: a publisher claims the next sequence number with a CAS, fills the slot and
+// marks it published. every subscriber has its own thread and its own position in the ring,
+// and is handed all events published since it last looked as one batch (endOfBatch marks
+// the last), so a subscriber that does expensive work per batch can keep up with bursts
+//
+// a publisher only waits when the ring is full, i.e. when the slowest subscriber is a whole
+// ring behind; handlers must therefore be quick, and hand slow work to a ThreadManager lane.
+// a subscriber with nothing to do spins briefly and then parks until a publisher wakes it
+//
+//   EventBus.subscribe("stock-stream", (event, sequence, endOfBatch) -> ...);
+//   EventBus.publish(DomainEvent.Type.PRODUCT_REMOVED, productId, ...);
+public class EventBus {
+    private static final int RING_SIZE = 4096; // power of two
+    private static final int MASK = RING_SIZE - 1;
+    private static final int MAX_BATCH = 256; // longest batch handed to a subscriber at once
+    private static final int PARK_AFTER = 200; // idle rounds before a subscriber parks until woken
+    private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1); // publishers waiting for space
+
+    private static final DomainEvent[] ring = new DomainEvent[RING_SIZE];
+    // per slot, the sequence number last published into it
+    private static final AtomicLongArray published = new AtomicLongArray(RING_SIZE);
+    // last sequence number claimed by a publisher
+    private static final AtomicLong claimed = new AtomicLong(-1);
+    private static final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    // subscribers parked waiting for events, so publishers only look for them when there are any
+    private static final AtomicInteger sleepers = new AtomicInteger();
+
+    static {
+        for (int i = 0; i < RING_SIZE; i++) {
+            ring[i] = new DomainEvent();
+            published.set(i, -1);
+        }
+    }
+
+    // receives events from the bus
+    public interface Handler {
+        // @param event the event; the instance is reused after the handler returns
+        // @param sequence the event's position in the stream
+        // @param endOfBatch true for the last event currently available
+        void onEvent(DomainEvent event, long sequence, boolean endOfBatch) throws Exception;
+    }
+
+    // a subscriber's thread and position
+    private static final class Subscriber implements Runnable {
+        final String name;
+        final Handler handler;
+        final AtomicLong sequence; // last sequence handled
+        final Thread thread;
+        volatile boolean running = true;
+        volatile boolean finished = false; // false before the thread starts too, so publishers wait for it
+        volatile boolean parked = false;
+        volatile long stopAt = Long.MAX_VALUE; // last sequence to handle once stopped
+
+        Subscriber(String name, Handler handler, long start) {
+            this.name = name;
+            this.handler = handler;
+            this.sequence = new AtomicLong(start);
+            this.thread = new Thread(this, "events-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                deliver();
+            } finally {
+                finished = true; // stops holding back publishers, even if a handler threw an Error
+            }
+        }
+
+        private void deliver() {
+            int idle = 0;
+            // after stop, finish what was published before it
+            while (running || sequence.get() < stopAt) {
+                long next = sequence.get() + 1;
+                long last = next - 1;
+                while (last - next + 1 < MAX_BATCH && published.get((int) ((last + 1) & MASK)) == last + 1) {
+                    last++;
+                }
+                if (last < next) {
+                    if (idle < PARK_AFTER) {
+                        idle = backOff(idle);
+                    } else {
+                        awaitPublished(next);
+                    }
+                    continue;
+                }
+                idle = 0;
+
+                for (long s = next; s <= last; s++) {
+                    DomainEvent event = ring[(int) (s & MASK)];
+                    try {
+                        handler.onEvent(event, s, s == last);
+                    } catch (Exception e) {
+                        // one bad event must not stop the subscriber
+                        Logger.log(Logger.WARNING, "Event subscriber {} failed on {}: {}", name, event.getType(), e.getMessage());
+                    }
+                    if (s == last) {
+                        Metrics.record("EventBus " + name, System.nanoTime() - event.getPublishedAt());
+                    }
+                }
+                sequence.set(last); // frees the slots for publishers
+            }
+        }
+
+        // park until a sequence is published or the subscriber is stopped
+        // @param next the sequence waited for
+        private void awaitPublished(long next) {
+            parked = true;
+            sleepers.incrementAndGet();
+            try {
+                // checked after announcing the park, so a publisher that missed it sees it
+                while (running && published.get((int) (next & MASK)) != next) {
+                    LockSupport.park(this);
+                }
+            } finally {
+                parked = false;
+                sleepers.decrementAndGet();
+            }
+        }
+
+        void stop() {
+            stopAt = claimed.get();
+            running = false;
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // start delivering events published from now on to a handler, on its own thread
+    // @param name subscriber name for the thread, log messages and lag metrics
+    // @param handler the handler
+    public static synchronized void subscribe(String name, Handler handler) {
+        subscribers.removeIf(stopped -> stopped.finished);
+        Subscriber subscriber = new Subscriber(name, handler, claimed.get());
+        subscribers.add(subscriber);
+        subscriber.thread.start();
+        Logger.log(Logger.INFO, "Event subscriber {} started", name);
+    }
+
+    // stop a subscriber once it has handled everything already published
+    // @param name subscriber name
+    public static synchronized void unsubscribe(String name) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.name.equals(name)) {
+                // stays in the list, holding back publishers, until its thread has finished
+                subscriber.stop();
+            }
+        }
+    }
+
+    // publish an event
+    // @param type event type
+    // @param productId product concerned, or null
+    // @param customerId customer concerned, or DomainEvent.UNKNOWN
+    // @param quantity quantity purchased, or DomainEvent.UNKNOWN
+    // @param stockLevel product's stock after the change, or DomainEvent.UNKNOWN
+    // @param amount purchase total, or 0
+    public static void publish(DomainEvent.Type type, String productId, int customerId, int quantity,
+                               int stockLevel, double amount) {
+        long sequence = claim();
+        int index = (int) (sequence & MASK);
+        ring[index].set(type, productId, customerId, quantity, stockLevel, amount);
+        // a full store, so either this sees a parking subscriber or it sees the event
+        published.set(index, sequence);
+        if (sleepers.get() > 0) {
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.parked) {
+                    LockSupport.unpark(subscriber.thread);
+                }
+            }
+        }
+    }
+
+    public static void productAdded(String productId, int stockLevel) {
+        publish(DomainEvent.Type.PRODUCT_ADDED, productId, DomainEvent.UNKNOWN, DomainEvent.UNKNOWN, stockLevel, 0);
+    }
+
+    public static void productUpdated(String productId, int stockLevel) {
+        publish(DomainEvent.Type.PRODUCT_UPDATED, productId, DomainEvent.UNKNOWN, DomainEvent.UNKNOWN, stockLevel, 0);
+    }
+
+    public static void productRemoved(String productId) {
+        publish(DomainEvent.Type.PRODUCT_REMOVED, productId, DomainEvent.UNKNOWN, DomainEvent.UNKNOWN,
+                DomainEvent.UNKNOWN, 0);
+    }
+
+    public static void purchaseCompleted(int customerId, String productId, int quantity, double amount, int stockLevel) {
+        publish(DomainEvent.Type.PURCHASE_COMPLETED, productId, customerId, quantity, stockLevel, amount);
+    }
+
+    public static void stockChanged(String productId, int stockLevel) {
+        publish(DomainEvent.Type.STOCK_CHANGED, productId, DomainEvent.UNKNOWN, DomainEvent.UNKNOWN, stockLevel, 0);
+    }
+
+    public static void customerRegistered(int customerId) {
+        publish(DomainEvent.Type.CUSTOMER_REGISTERED, null, customerId, DomainEvent.UNKNOWN, DomainEvent.UNKNOWN, 0);
+    }
+
+    // stop the subscribers once they have handled everything already published
+    // @param timeout how long to wait for them
+    public static synchronized void shutdown(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.stop();
+        }
+        for (Subscriber subscriber : subscribers) {
+            try {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                subscriber.thread.join(Math.max(1, remainingMillis));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (subscriber.thread.isAlive()) {
+                Logger.log(Logger.WARNING, "Event subscriber {} did not finish in time", subscriber.name);
+            }
+        }
+        subscribers.clear();
+    }
+
+    // claim the next sequence number, waiting while the slowest subscriber is a whole ring behind
+    private static long claim() {
+        int idle = 0;
+        while (true) {
+            long current = claimed.get();
+            long next = current + 1;
+            if (next - RING_SIZE > slowestSequence()) {
+                idle = backOff(idle);
+                continue;
+            }
+            if (claimed.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    // @return the lowest sequence handled by any subscriber not yet finished, including one whose
+    //         thread has not started, or Long.MAX_VALUE if there are none
+    private static long slowestSequence() {
+        long slowest = Long.MAX_VALUE;
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.finished) {
+                slowest = Math.min(slowest, subscriber.sequence.get());
+            }
+        }
+        return slowest;
+    }
+
+    // wait a little longer each time nothing is available: spin, then yield, then park
+    // @param idle number of consecutive idle rounds so far
+    // @return the new idle count
+    private static int backOff(int idle) {
+        if (idle < 100) {
+            Thread.onSpinWait();
+        } else if (idle < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(MAX_IDLE_PARK_NANOS, 1000L << Math.min(idle - 200, 10)));
+        }
+        return idle + 1;
+    }
+}
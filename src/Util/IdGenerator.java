@@ -0,0 +1,83 @@
+package src.Util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// hands out 64-bit IDs that are unique across instances without asking the database, for
+// purchases written on several shards and rows created while the database is out of reach
+//
+// an ID is 41 bits of milliseconds since EPOCH, 10 bits of node number and 12 bits of sequence
+// within the millisecond, so IDs sort by the time they were made: new rows go at the end of the
+// primary key instead of queuing for the AUTO_INCREMENT lock, and a range of IDs is a range of
+// time. 41 bits of milliseconds last until 2093
+//
+// the node number comes from storedb.id.node (0 to 1023). without it, it is derived from the
+// change feed's node ID, which two instances can share by chance, so set it whenever several
+// instances write to the same database
+//
+// the next ID is one compare-and-set on the last one: the current millisecond with sequence 0,
+// or the last ID plus one if that is not larger. more than 4096 IDs in a millisecond, or a
+// clock that steps back, borrow from the following milliseconds instead of waiting, and the
+// clock catches up again
+public class IdGenerator {
+    public static final long EPOCH = 1704067200000L; // 2024-01-01T00:00:00Z
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+    private static final int NODE = nodeNumber();
+    // milliseconds and sequence of the last ID, without the node number
+    private static final AtomicLong last = new AtomicLong();
+
+    // take the next ID
+    // @return a positive ID, larger than any this instance handed out before
+    public static long next() {
+        long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+        long stamp = last.accumulateAndGet(now, (previous, candidate) -> Math.max(previous + 1, candidate));
+        long millis = stamp >>> SEQUENCE_BITS;
+        long sequence = stamp & ((1L << SEQUENCE_BITS) - 1);
+        return (millis << (NODE_BITS + SEQUENCE_BITS)) | ((long) NODE << SEQUENCE_BITS) | sequence;
+    }
+
+    // make the ID of a row dated in the past, e.g. generated history, so it sorts with its date
+    // rather than with the time it was written; unlike next(), the caller must not use the same
+    // sequence twice within one millisecond
+    // @param epochMillis the row's time, in milliseconds since 1970, not before EPOCH
+    // @param sequence 0 to 4095
+    // @return the ID
+    public static long at(long epochMillis, int sequence) {
+        if (epochMillis < EPOCH || sequence < 0 || sequence >= 1 << SEQUENCE_BITS) {
+            throw new IllegalArgumentException("No ID for time " + epochMillis + " and sequence " + sequence);
+        }
+        return ((epochMillis - EPOCH) << (NODE_BITS + SEQUENCE_BITS)) | ((long) NODE << SEQUENCE_BITS) | sequence;
+    }
+
+    // @param id an ID from next()
+    // @return the time it was made, in milliseconds since 1970
+    public static long timeOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+
+    // @param id an ID from next()
+    // @return the node number of the instance that made it
+    public static int nodeOf(long id) {
+        return (int) (id >>> SEQUENCE_BITS) & MAX_NODE;
+    }
+
+    // @return this instance's node number
+    public static int node() {
+        return NODE;
+    }
+
+    // @return the node number from storedb.id.node, or one derived from the change feed's node ID
+    private static int nodeNumber() {
+        Integer configured = Integer.getInteger("storedb.id.node");
+        if (configured != null && configured >= 0 && configured <= MAX_NODE) {
+            return configured;
+        }
+        int derived = Math.floorMod(ChangeFeed.NODE_ID.hashCode(), MAX_NODE + 1);
+        if (configured != null) {
+            Logger.log(Logger.WARNING, "storedb.id.node must be between 0 and {}, using {}", MAX_NODE, derived);
+        }
+        return derived;
+    }
+}
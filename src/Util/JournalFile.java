@@ -0,0 +1,304 @@
+package src.Util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+// append-only journal of fixed-size records in a memory-mapped file, for work that must survive
+// a crash before it reaches the database
+//
+// the file is a header followed by a ring of slots. record number n goes in slot n % capacity
+// and carries n (inverted, so an empty slot never passes for record 0) and a CRC32 of the slot,
+// so a slot still holding an older record, or one torn by a crash, is told apart from the
+// record expected there. the header keeps the number of the first record not yet replayed; on
+// opening, records are read from there for as long as they are valid, and that is where
+// appending carries on. a crash can leave valid records after the first invalid one, written
+// out by the system although they were never synced, so opening clears every free slot that
+// holds a record number still to come before anything is appended
+//
+// append only copies the record into the mapping. sync makes it durable, and appenders waiting
+// at the same time share one force: the first to arrive forces everything appended so far,
+// and those who arrive meanwhile wait for it and force whatever came after in one go. the
+// replay position is written to the header without a force of its own, so after a crash some
+// records can be replayed twice and whoever replays them must recognise them. a force that
+// fails is tried again a few times before sync gives up. every record that force was meant to
+// cover is then cancelled, which blanks its payload so it keeps its place in the order but
+// carries nothing, before any other appender may force again, and sync fails for all of them
+public class JournalFile implements AutoCloseable {
+    private static final int MAGIC = 0x53444A31; // "SDJ1"
+    private static final int HEADER_SIZE = 64; // magic, payload size, capacity, replay position
+    private static final int REPLAYED_OFFSET = 12;
+    private static final int SLOT_HEADER_SIZE = 12; // record number and CRC32
+    private static final int FORCE_ATTEMPTS = 3;
+    private static final long FORCE_RETRY_MILLIS = 20;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int payloadSize;
+    private final int slotSize;
+    private final int capacity;
+
+    private long replayed; // first record not yet replayed
+    private long appended; // records appended, i.e. the number of the next one
+    private long durable; // records forced to disk
+    private boolean forcing = false; // an appender is forcing the mapping
+    // records cancelled because their force failed, first record -> one past the last; kept
+    // until replayed so their appenders learn of it however late they look
+    private final TreeMap<Long, Long> failed = new TreeMap<>();
+
+    // open a journal, creating it if needed, and find the records not yet replayed
+    // @param path journal file
+    // @param payloadSize bytes per record
+    // @param capacity most records not yet replayed
+    // @throws IOException if the file cannot be opened, or was created with another size
+    public JournalFile(Path path, int payloadSize, int capacity) throws IOException {
+        this.path = path;
+        this.payloadSize = payloadSize;
+        this.slotSize = SLOT_HEADER_SIZE + payloadSize;
+        this.capacity = capacity;
+        long size = HEADER_SIZE + (long) slotSize * capacity;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Journal of " + capacity + " records of " + payloadSize + " bytes is too large");
+        }
+
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        boolean created = !Files.exists(path) || Files.size(path) == 0;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // two processes appending to one journal would overwrite each other's records
+            if (channel.tryLock() == null) {
+                throw new IOException("Journal " + path + " is in use by another process");
+            }
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (created) {
+                map.putInt(0, MAGIC).putInt(4, payloadSize).putInt(8, capacity).putLong(REPLAYED_OFFSET, 0);
+                map.force();
+            } else if (map.getInt(0) != MAGIC || map.getInt(4) != payloadSize || map.getInt(8) != capacity) {
+                throw new IOException("Journal " + path + " was written with other settings; replay it with "
+                        + "those or move it away");
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        replayed = map.getLong(REPLAYED_OFFSET);
+        appended = replayed;
+        byte[] payload = new byte[payloadSize];
+        while (appended - replayed < capacity && read(appended, payload)) {
+            appended++;
+        }
+        durable = appended;
+
+        try {
+            if (clearUnsynced()) {
+                map.force();
+            }
+        } catch (UncheckedIOException e) {
+            channel.close();
+            throw e.getCause();
+        }
+    }
+
+    // clear the free slots holding a record number not yet appended, left by a run that crashed
+    // before syncing them, so they cannot be read as the records appended from now on
+    // @return true if any slot was cleared
+    private boolean clearUnsynced() {
+        boolean cleared = false;
+        for (long record = appended; record < replayed + capacity; record++) {
+            int slot = slotOffset(record);
+            if (~map.getLong(slot) >= appended) {
+                map.putLong(slot, 0);
+                cleared = true;
+            }
+        }
+        return cleared;
+    }
+
+    // copy a record into the journal; it is not durable until sync returns for it
+    // @param payload the record, at most the payload size
+    // @return the record's number
+    // @throws IOException if the journal is full of records not yet replayed
+    public synchronized long append(byte[] payload) throws IOException {
+        if (payload.length > payloadSize) {
+            throw new IllegalArgumentException("Record of " + payload.length + " bytes, at most " + payloadSize);
+        }
+        if (appended - replayed >= capacity) {
+            throw new IOException("Journal " + path + " is full with " + capacity + " records not yet replayed");
+        }
+        long record = appended;
+        int slot = slotOffset(record);
+        byte[] padded = payload.length == payloadSize ? payload : Arrays.copyOf(payload, payloadSize);
+        map.putLong(slot, ~record);
+        map.put(slot + SLOT_HEADER_SIZE, padded);
+        map.putInt(slot + 8, checksum(record, padded));
+        appended++;
+        return record;
+    }
+
+    // wait until a record is on disk, forcing the journal if no one else is
+    // @param record the record's number
+    // @throws IOException if the force fails; the record has then been cancelled
+    public void sync(long record) throws IOException {
+        long first;
+        long target;
+        synchronized (this) {
+            while (true) {
+                if (isFailed(record)) {
+                    throw new IOException("Could not sync journal " + path + "; record " + record + " was cancelled");
+                }
+                if (durable > record) {
+                    return;
+                }
+                if (!forcing) {
+                    break;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for journal sync");
+                }
+            }
+            forcing = true;
+            first = durable;
+            target = appended;
+        }
+
+        boolean forced = false;
+        long start = System.nanoTime();
+        try {
+            UncheckedIOException failure = null;
+            for (int attempt = 0; attempt < FORCE_ATTEMPTS && !forced; attempt++) {
+                try {
+                    if (attempt > 0) {
+                        Thread.sleep(FORCE_RETRY_MILLIS);
+                    }
+                    map.force();
+                    forced = true;
+                } catch (UncheckedIOException e) {
+                    failure = e;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted retrying journal sync");
+                }
+            }
+            if (!forced) {
+                throw new IOException("Could not sync journal " + path + ": " + failure.getCause().getMessage(),
+                        failure.getCause());
+            }
+        } finally {
+            Metrics.record("JournalSync", System.nanoTime() - start);
+            synchronized (this) {
+                if (forced) {
+                    durable = Math.max(durable, target);
+                } else {
+                    // cancel while still forcing, so the next force cannot make them durable
+                    for (long cancelled = first; cancelled < target; cancelled++) {
+                        cancel(cancelled);
+                    }
+                    failed.put(first, target);
+                }
+                forcing = false;
+                notifyAll();
+            }
+        }
+    }
+
+    // @param record the record's number
+    // @return true if the record was cancelled because its force failed
+    private boolean isFailed(long record) {
+        Map.Entry<Long, Long> range = failed.floorEntry(record);
+        return range != null && record < range.getValue();
+    }
+
+    // read a record
+    // @param record the record's number
+    // @param payload array of the payload size to read it into
+    // @return true if the slot holds that record, intact
+    public synchronized boolean read(long record, byte[] payload) {
+        int slot = slotOffset(record);
+        if (map.getLong(slot) != ~record) {
+            return false;
+        }
+        map.get(slot + SLOT_HEADER_SIZE, payload);
+        return map.getInt(slot + 8) == checksum(record, payload);
+    }
+
+    // blank a record whose force failed; it keeps its place, so the records after it are still
+    // read, but its payload is all zeros
+    // @param record the record's number
+    private void cancel(long record) {
+        if (record < replayed || record >= appended) {
+            return;
+        }
+        byte[] blank = new byte[payloadSize];
+        int slot = slotOffset(record);
+        map.put(slot + SLOT_HEADER_SIZE, blank);
+        map.putInt(slot + 8, checksum(record, blank));
+    }
+
+    // note that every record before this one has been replayed, freeing their slots
+    // @param next number of the next record to replay
+    public synchronized void markReplayed(long next) {
+        replayed = Math.max(replayed, Math.min(next, appended));
+        map.putLong(REPLAYED_OFFSET, replayed);
+        failed.headMap(replayed).values().removeIf(end -> end <= replayed);
+    }
+
+    // @return number of the first record not yet replayed
+    public synchronized long replayed() {
+        return replayed;
+    }
+
+    // @return number of records on disk, i.e. the number of the first one that may not be
+    public synchronized long durable() {
+        return durable;
+    }
+
+    // @return number of records appended, i.e. the number of the next one
+    public synchronized long appended() {
+        return appended;
+    }
+
+    // @return size of a record
+    public int payloadSize() {
+        return payloadSize;
+    }
+
+    // force the journal, including its replay position, and close it
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            map.force();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private int slotOffset(long record) {
+        return HEADER_SIZE + (int) (record % capacity) * slotSize;
+    }
+
+    private static int checksum(long record, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(8).putLong(0, record));
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
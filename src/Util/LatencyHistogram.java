@@ -0,0 +1,144 @@
+package src.Util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// lock-free latency histogram with log-linear buckets
+// each power of two is split into 16 linear sub-buckets, so any recorded value is
+// reported within about 6% of its true value while the whole range of nanosecond
+// durations fits in under a thousand counters
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // 16
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    // record one successful call
+    // @param nanos the call duration in nanoseconds
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0; // clock went backwards, count it as instant
+        }
+
+        counts.incrementAndGet(bucketIndex(nanos));
+        totalNanos.add(nanos);
+
+        long currentMax = maxNanos.get();
+        while (nanos > currentMax && !maxNanos.compareAndSet(currentMax, nanos)) {
+            currentMax = maxNanos.get();
+        }
+    }
+
+    // record one failed call; its duration is still recorded so slow failures show up
+    // @param nanos the call duration in nanoseconds
+    public void recordError(long nanos) {
+        errorCount.increment();
+        record(nanos);
+    }
+
+    // take a consistent-enough copy of the histogram for reporting
+    // counters are read without locking, so a snapshot taken during heavy traffic
+    // may be off by the handful of calls recorded while it was being read
+    // @return the snapshot
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, totalNanos.sum(), errorCount.sum(), maxNanos.get());
+    }
+
+    // clear all recorded values
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalNanos.reset();
+        errorCount.reset();
+        maxNanos.set(0);
+    }
+
+    // get the bucket a value falls into
+    // values below 16 get their own bucket, larger values are grouped by power of two
+    // and then by the next four bits
+    // @param value the value
+    // @return the bucket index
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // get the largest value that falls into a bucket
+    // @param index the bucket index
+    // @return the bucket's upper bound
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    // point-in-time view of a histogram
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+        private final long errors;
+        private final long maxNanos;
+
+        Snapshot(long[] counts, long count, long totalNanos, long errors, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.errors = errors;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() { return count; }
+        public long getErrors() { return errors; }
+        public long getMaxNanos() { return maxNanos; }
+
+        // get the mean duration
+        // @return mean in nanoseconds, 0 if nothing was recorded
+        public long getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        // get a percentile of the recorded durations
+        // @param percentile value between 0 and 100
+        // @return the duration in nanoseconds at or below which that share of calls completed
+        public long getPercentileNanos(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+
+            long target = (long) Math.ceil(count * percentile / 100.0);
+            if (target < 1) {
+                target = 1;
+            }
+
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(bucketUpperBound(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+    }
+}
@@ -0,0 +1,470 @@
+package src.Util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
+
+// read-only access to the application log without loading it into the heap
+// the file is memory-mapped in fixed size windows so logs larger than 2GB work,
+// and only the lines that are returned or match a filter are decoded into strings.
+// each window is unmapped as soon as it has been read, since windows cannot rename or
+// delete a mapped file and log rotation would fail until the mapping was collected
+public class LogViewer {
+    // size of each mapped window of the log file
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    // levels as written by java.util.logging.SimpleFormatter, most severe first. it writes the
+    // localized name, so both that and the English name are recognised
+    private static final Level[] LEVELS = {
+        Level.SEVERE, Level.WARNING, Level.INFO, Level.CONFIG, Level.FINE, Level.FINER, Level.FINEST
+    };
+    private static final List<Level> PREFIX_LEVELS = new ArrayList<>();
+    private static final List<String> PREFIX_NAMES = new ArrayList<>();
+    private static final List<byte[]> LEVEL_PREFIXES = new ArrayList<>();
+
+    static {
+        for (Level level : LEVELS) {
+            for (String name : new String[] {level.getLocalizedName(), level.getName()}) {
+                if (!PREFIX_NAMES.contains(name)) {
+                    PREFIX_LEVELS.add(level);
+                    PREFIX_NAMES.add(name);
+                    LEVEL_PREFIXES.add((name + ": ").getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+    }
+
+    // sun.misc.Unsafe.invokeCleaner, to unmap a window without waiting for the garbage collector
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // windows are released by the garbage collector instead
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    // return the last lines of a log file, oldest first
+    // the file is scanned backwards from the end so the cost depends on the
+    // number of lines requested, not on the size of the file
+    // @param file the log file
+    // @param lineCount number of lines to return
+    // @return the last lineCount lines (fewer if the file is shorter)
+    // @throws IOException if the file cannot be read
+    public static List<String> tail(Path file, int lineCount) throws IOException {
+        List<String> lines = new ArrayList<>(Math.max(0, Math.min(lineCount, 1024)));
+        if (lineCount <= 0 || !Files.exists(file)) {
+            return lines;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long lineEnd = size;
+
+            // ignore the trailing newline so it doesn't produce an empty last line
+            if (size > 0 && readByte(channel, size - 1) == '\n') {
+                lineEnd = size - 1;
+            }
+
+            long windowEnd = lineEnd;
+            while (windowEnd > 0 && lines.size() < lineCount) {
+                long windowStart = Math.max(0, windowEnd - WINDOW_SIZE);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+                try {
+                    for (int i = (int) (windowEnd - windowStart) - 1; i >= 0 && lines.size() < lineCount; i--) {
+                        if (window.get(i) == '\n') {
+                            long lineStart = windowStart + i + 1;
+                            lines.add(decode(channel, window, windowStart, lineStart, lineEnd));
+                            lineEnd = windowStart + i;
+                        }
+                    }
+                } finally {
+                    unmap(window);
+                }
+                windowEnd = windowStart;
+            }
+
+            // the first line of the file has no newline before it
+            if (windowEnd == 0 && lines.size() < lineCount && lineEnd > 0) {
+                lines.add(decode(channel, null, 0, 0, lineEnd));
+            }
+        }
+
+        Collections.reverse(lines);
+        return lines;
+    }
+
+    // stream the log records that match a filter to a consumer, oldest first
+    // records are decoded one at a time, so memory use is bounded by the longest line, and
+    // a text filter is checked on the raw bytes so lines without the text are never decoded
+    // @param file the log file
+    // @param filter criteria the records must match
+    // @param consumer receives each matching record
+    // @return the number of records passed to the consumer
+    // @throws IOException if the file cannot be read
+    public static int search(Path file, LogFilter filter, Consumer<LogEntry> consumer) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        if (file.getFileName().toString().endsWith(".gz")) {
+            return searchCompressed(file, filter, consumer);
+        }
+
+        byte[] text = filter.text != null ? filter.text.getBytes(StandardCharsets.UTF_8) : null;
+        int matches = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long lineStart = 0;
+            long previousLineStart = -1; // start of the header line for the current record
+            long previousLineEnd = -1;
+
+            for (long windowStart = 0; windowStart < size; windowStart += WINDOW_SIZE) {
+                long windowLength = Math.min(WINDOW_SIZE, size - windowStart);
+                boolean lastWindow = windowStart + windowLength == size;
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+                try {
+                    // the end of the file also ends a last line written without a newline
+                    for (int i = 0; i < windowLength || (lastWindow && i == windowLength); i++) {
+                        if (i < windowLength ? window.get(i) != '\n' : lineStart >= size) {
+                            continue;
+                        }
+
+                        long lineEnd = windowStart + i;
+                        int prefixIndex = matchLevel(channel, window, windowStart, lineStart, lineEnd);
+                        Level level = prefixIndex >= 0 ? PREFIX_LEVELS.get(prefixIndex) : Level.OFF;
+                        long messageStart = prefixIndex >= 0 ? lineStart + LEVEL_PREFIXES.get(prefixIndex).length : lineEnd;
+
+                        if (prefixIndex >= 0 && level.intValue() >= filter.minimumLevel.intValue()
+                                && (text == null || contains(channel, window, windowStart, messageStart, lineEnd, text))) {
+                            String message = decode(channel, window, windowStart, messageStart, lineEnd);
+                            LogEntry entry = LogEntry.parse(level, message, "");
+
+                            if (filter.matches(entry)) {
+                                // only decode the header line for records that are returned
+                                if (previousLineStart >= 0) {
+                                    String header = decode(channel, window, windowStart, previousLineStart, previousLineEnd);
+                                    entry = new LogEntry(header, entry.getLevel(), message, entry.getUserId(), entry.getAction());
+                                }
+                                consumer.accept(entry);
+                                matches++;
+                                if (filter.maxResults > 0 && matches >= filter.maxResults) {
+                                    return matches;
+                                }
+                            }
+                        }
+
+                        previousLineStart = lineStart;
+                        previousLineEnd = lineEnd;
+                        lineStart = lineEnd + 1;
+                    }
+                } finally {
+                    unmap(window);
+                }
+            }
+        }
+        return matches;
+    }
+
+    // search a gzip compressed log segment
+    // compressed files can't be mapped, so they are streamed line by line instead
+    // @param file the compressed segment
+    // @param filter criteria the records must match
+    // @param consumer receives each matching record
+    // @return the number of records passed to the consumer
+    private static int searchCompressed(Path file, LogFilter filter, Consumer<LogEntry> consumer) throws IOException {
+        int matches = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file), 64 * 1024), StandardCharsets.UTF_8))) {
+            String previousLine = "";
+            String line;
+            while ((line = reader.readLine()) != null) {
+                for (int l = 0; l < PREFIX_NAMES.size(); l++) {
+                    String prefix = PREFIX_NAMES.get(l);
+                    if (line.startsWith(prefix) && line.startsWith(": ", prefix.length())) {
+                        Level level = PREFIX_LEVELS.get(l);
+                        if (level.intValue() >= filter.minimumLevel.intValue()) {
+                            LogEntry entry = LogEntry.parse(level, line.substring(prefix.length() + 2), previousLine);
+                            if (filter.matches(entry)) {
+                                consumer.accept(entry);
+                                matches++;
+                                if (filter.maxResults > 0 && matches >= filter.maxResults) {
+                                    return matches;
+                                }
+                            }
+                        }
+                        break;
+                    }
+                }
+                previousLine = line;
+            }
+        }
+        return matches;
+    }
+
+    // find which level prefix a line starts with, comparing raw bytes
+    // @return index into LEVEL_PREFIXES, or -1 if the line is not a level line
+    private static int matchLevel(FileChannel channel, MappedByteBuffer window, long windowStart,
+                                  long lineStart, long lineEnd) throws IOException {
+        for (int l = 0; l < LEVEL_PREFIXES.size(); l++) {
+            byte[] prefix = LEVEL_PREFIXES.get(l);
+            if (lineEnd - lineStart >= prefix.length && bytesAt(channel, window, windowStart, lineStart, prefix)) {
+                return l;
+            }
+        }
+        return -1;
+    }
+
+    // check whether part of the file contains a byte sequence; a UTF-8 string contains a text
+    // exactly when its bytes contain the text's bytes
+    // @param start first byte to search (inclusive)
+    // @param end last byte to search (exclusive)
+    // @param text the bytes to look for
+    private static boolean contains(FileChannel channel, MappedByteBuffer window, long windowStart,
+                                    long start, long end, byte[] text) throws IOException {
+        if (text.length == 0) {
+            return true;
+        }
+        for (long position = start; position + text.length <= end; position++) {
+            if (byteAt(channel, window, windowStart, position) == text[0]
+                    && bytesAt(channel, window, windowStart, position, text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // @return true if the file holds these bytes at a position
+    private static boolean bytesAt(FileChannel channel, MappedByteBuffer window, long windowStart,
+                                   long position, byte[] bytes) throws IOException {
+        for (int j = 0; j < bytes.length; j++) {
+            if (byteAt(channel, window, windowStart, position + j) != bytes[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // read a byte from the window, or from the file for a line that began in an earlier window
+    private static byte byteAt(FileChannel channel, MappedByteBuffer window, long windowStart, long position)
+            throws IOException {
+        return position >= windowStart ? window.get((int) (position - windowStart)) : readByte(channel, position);
+    }
+
+    // release a mapped window; it must not be read afterwards
+    private static void unmap(MappedByteBuffer window) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, window);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // released by the garbage collector instead
+        }
+    }
+
+    // decode part of the file as UTF-8, using the mapped window when the range is inside it
+    // @param window the current mapped window, or null to always read from the channel
+    // @param windowStart file position of the first byte of the window
+    // @param start first byte to decode (inclusive)
+    // @param end last byte to decode (exclusive)
+    private static String decode(FileChannel channel, MappedByteBuffer window, long windowStart,
+                                 long start, long end) throws IOException {
+        int length = (int) (end - start);
+        if (length > 0) {
+            // strip a windows line ending
+            byte last = window != null && end - 1 >= windowStart && end - 1 < windowStart + window.capacity()
+                    ? window.get((int) (end - 1 - windowStart)) : readByte(channel, end - 1);
+            if (last == '\r') {
+                length--;
+            }
+        }
+
+        byte[] bytes = new byte[Math.max(0, length)];
+        if (window != null && start >= windowStart && start + bytes.length <= windowStart + window.capacity()) {
+            window.get((int) (start - windowStart), bytes);
+        } else {
+            ByteBuffer target = ByteBuffer.wrap(bytes);
+            long position = start;
+            while (target.hasRemaining()) {
+                int read = channel.read(target, position);
+                if (read < 0) {
+                    break;
+                }
+                position += read;
+            }
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // read a single byte from the file
+    private static byte readByte(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        channel.read(buffer, position);
+        return buffer.get(0);
+    }
+
+    // criteria for searching the log
+    public static class LogFilter {
+        private Level minimumLevel = Level.ALL;
+        private Integer userId = null;
+        private String action = null;
+        private String text = null;
+        private int maxResults = 0;
+
+        // only match records at or above this level
+        // @param level the minimum level
+        // @return this filter
+        public LogFilter minimumLevel(Level level) {
+            this.minimumLevel = level;
+            return this;
+        }
+
+        // only match user actions recorded for this user
+        // @param userId the user ID
+        // @return this filter
+        public LogFilter userId(int userId) {
+            this.userId = userId;
+            return this;
+        }
+
+        // only match user actions with this action name (case-insensitive)
+        // @param action the action, e.g. Login or Purchase
+        // @return this filter
+        public LogFilter action(String action) {
+            this.action = action;
+            return this;
+        }
+
+        // only match records whose message contains this text
+        // @param text the text to look for
+        // @return this filter
+        public LogFilter containing(String text) {
+            this.text = text;
+            return this;
+        }
+
+        // stop after this many matches (0 for no limit)
+        // @param maxResults the maximum number of matches
+        // @return this filter
+        public LogFilter limit(int maxResults) {
+            this.maxResults = maxResults;
+            return this;
+        }
+
+        // get the result limit
+        // @return the maximum number of matches, 0 for no limit
+        int getLimit() {
+            return maxResults;
+        }
+
+        // copy this filter with a different result limit
+        // @param maxResults the new limit
+        // @return the copy
+        LogFilter withLimit(int maxResults) {
+            LogFilter copy = new LogFilter();
+            copy.minimumLevel = minimumLevel;
+            copy.userId = userId;
+            copy.action = action;
+            copy.text = text;
+            copy.maxResults = maxResults;
+            return copy;
+        }
+
+        // check a parsed record against the filter
+        // @param entry the record
+        // @return true if the record matches every criterion
+        boolean matches(LogEntry entry) {
+            if (userId != null && entry.getUserId() != userId) {
+                return false;
+            }
+            if (action != null && !action.equalsIgnoreCase(entry.getAction())) {
+                return false;
+            }
+            return text == null || entry.getMessage().contains(text);
+        }
+    }
+
+    // one record from the log: the header line written by the formatter and the message line
+    public static class LogEntry {
+        private final String header;
+        private final Level level;
+        private final String message;
+        private final int userId;
+        private final String action;
+
+        // constructor
+        // @param header the timestamp and source line
+        // @param level the record level
+        // @param message the logged message
+        // @param userId user ID for user actions, -1 otherwise
+        // @param action action name for user actions, null otherwise
+        public LogEntry(String header, Level level, String message, int userId, String action) {
+            this.header = header;
+            this.level = level;
+            this.message = message;
+            this.userId = userId;
+            this.action = action;
+        }
+
+        // build an entry, extracting user ID and action from "[User N] Action - details" messages
+        // @param level the record level
+        // @param message the logged message
+        // @param header the preceding header line
+        // @return the parsed entry
+        static LogEntry parse(Level level, String message, String header) {
+            int userId = -1;
+            String action = null;
+
+            if (message.startsWith("[User ")) {
+                int close = message.indexOf("] ", 6);
+                if (close > 6) {
+                    try {
+                        userId = Integer.parseInt(message.substring(6, close));
+                        int dash = message.indexOf(" - ", close + 2);
+                        action = dash > 0 ? message.substring(close + 2, dash) : message.substring(close + 2);
+                    } catch (NumberFormatException e) {
+                        userId = -1; // not a user action message
+                    }
+                }
+            }
+
+            return new LogEntry(header, level, message, userId, action);
+        }
+
+        public String getHeader() { return header; }
+        public Level getLevel() { return level; }
+        public String getMessage() { return message; }
+        public int getUserId() { return userId; }
+        public String getAction() { return action; }
+
+        @Override
+        public String toString() {
+            return header + System.lineSeparator() + level.getName() + ": " + message;
+        }
+    }
+}
@@ -1,12 +1,16 @@
 package src.Util;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.logging.FileHandler;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.SimpleFormatter;
 
@@ -19,25 +23,36 @@ public class Logger {
     private static final String LOG_FOLDER = "logs";
     private static final String LOG_FILE = "storedb.log";
     
+    // rotation settings: start a new segment past this size or at midnight, keep this many old segments
+    private static final long MAX_LOG_BYTES = 10L * 1024 * 1024;
+    private static final int MAX_LOG_SEGMENTS = 30;
+    
+    // handler writing the active log file and its rotated segments
+    private static RotatingLogHandler fileHandler = null;
+    
     // log levels
     public static final Level INFO = Level.INFO;
     public static final Level WARNING = Level.WARNING;
     public static final Level ERROR = Level.SEVERE;
     public static final Level DEBUG = Level.FINE;
     
+    // timestamp format for user actions (immutable, safe to share between threads)
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    
+    // per-thread buffer reused for building parameterized messages
+    private static final ThreadLocal<MessageBuffer> MESSAGE_BUFFER = ThreadLocal.withInitial(MessageBuffer::new);
+    
+    // buffers that grew past this size are replaced so one huge message doesn't pin memory
+    private static final int MAX_BUFFER_CAPACITY = 4096;
+    
     // initialize the logger
     public static void init() {
         if (logger == null) {
             try {
-                // create logs directory if it doesn't exist
-                File logDir = new File(LOG_FOLDER);
-                if (!logDir.exists()) {
-                    logDir.mkdir(); // create the directory
-                }
-                
                 // configure the logger
                 logger = java.util.logging.Logger.getLogger("StoreDatabase"); // get logger instance
-                FileHandler fileHandler = new FileHandler(LOG_FOLDER + "/" + LOG_FILE, true); // true = append mode
+                // rotating handler creates the logs directory and rotates by size and by day
+                fileHandler = new RotatingLogHandler(Paths.get(LOG_FOLDER), LOG_FILE, MAX_LOG_BYTES, MAX_LOG_SEGMENTS);
                 fileHandler.setFormatter(new SimpleFormatter()); // use simple text format
                 logger.addHandler(fileHandler); // add file handler to logger
                 
@@ -53,14 +68,106 @@ public class Logger {
         }
     }
     
+    // set the minimum level that will be written to the log
+    // @param level the lowest level to record
+    public static void setLevel(Level level) {
+        if (logger == null) {
+            init(); // initialize logger if not already done
+        }
+        
+        logger.setLevel(level);
+    }
+    
+    // check if a message at the given level would be recorded
+    // callers can use this to skip expensive message construction
+    // @param level the log level
+    // @return true if messages at this level are logged
+    public static boolean isLoggable(Level level) {
+        if (logger == null) {
+            init(); // initialize logger if not already done
+        }
+        
+        return logger.isLoggable(level);
+    }
+    
     // log a message with the specified level
     // @param level the log level
     // @param message the message to log
     public static void log(Level level, String message) {
-        if (logger == null) {
-            init(); // initialize logger if not already done
+        if (!isLoggable(level)) {
+            return; // level is filtered, nothing to do
+        }
+        
+        write(level, message);
+    }
+    
+    // log a message built lazily, only when the level is enabled
+    // @param level the log level
+    // @param messageSupplier supplies the message to log
+    public static void log(Level level, Supplier<String> messageSupplier) {
+        if (!isLoggable(level)) {
+            return; // level is filtered, supplier is never called
         }
         
+        write(level, messageSupplier.get());
+    }
+    
+    // log a message with one {} placeholder
+    // @param level the log level
+    // @param pattern the message pattern
+    // @param arg the value for the placeholder
+    public static void log(Level level, String pattern, Object arg) {
+        if (!isLoggable(level)) {
+            return;
+        }
+        
+        write(level, format(pattern, arg, null, null, null, 1));
+    }
+    
+    // log a message with two {} placeholders
+    // @param level the log level
+    // @param pattern the message pattern
+    // @param arg1 the value for the first placeholder
+    // @param arg2 the value for the second placeholder
+    public static void log(Level level, String pattern, Object arg1, Object arg2) {
+        if (!isLoggable(level)) {
+            return;
+        }
+        
+        write(level, format(pattern, arg1, arg2, null, null, 2));
+    }
+    
+    // log a message with three {} placeholders
+    // @param level the log level
+    // @param pattern the message pattern
+    // @param arg1 the value for the first placeholder
+    // @param arg2 the value for the second placeholder
+    // @param arg3 the value for the third placeholder
+    public static void log(Level level, String pattern, Object arg1, Object arg2, Object arg3) {
+        if (!isLoggable(level)) {
+            return;
+        }
+        
+        write(level, format(pattern, arg1, arg2, arg3, null, 3));
+    }
+    
+    // log a message with any number of {} placeholders
+    // the fixed-arity overloads above avoid the varargs array and should be preferred
+    // @param level the log level
+    // @param pattern the message pattern
+    // @param args the values for the placeholders
+    public static void log(Level level, String pattern, Object... args) {
+        if (!isLoggable(level)) {
+            return;
+        }
+        
+        write(level, format(pattern, null, null, null, args, args.length));
+    }
+    
+    // hand the message to the underlying logger
+    // @param level the log level
+    // @param message the message to log
+    private static void write(Level level, String message) {
         logger.log(level, message); // log the message
         
         // also print to console for ERROR level for immediate visibility
@@ -69,6 +176,75 @@ public class Logger {
         }
     }
     
+    // fill the {} placeholders of a pattern in the calling thread's buffer
+    // @param pattern the message pattern
+    // @param count the number of arguments available
+    // @return the message
+    private static String format(String pattern, Object arg1, Object arg2, Object arg3, Object[] args, int count) {
+        StringBuilder buffer = acquireBuffer();
+        try {
+            appendPattern(buffer, pattern, arg1, arg2, arg3, args, count);
+            return buffer.toString();
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+    
+    // get the calling thread's message buffer, emptied
+    // an argument's toString may itself log while the buffer is being filled, so a thread that
+    // is already using its buffer gets a new one instead
+    // @return the buffer to build the message in
+    private static StringBuilder acquireBuffer() {
+        MessageBuffer pooled = MESSAGE_BUFFER.get();
+        if (pooled.inUse) {
+            return new StringBuilder(256); // re-entered from inside a message
+        }
+        pooled.inUse = true;
+        pooled.builder.setLength(0);
+        return pooled.builder;
+    }
+    
+    // hand a buffer back once its message has been copied out
+    // @param buffer the buffer returned by acquireBuffer
+    private static void releaseBuffer(StringBuilder buffer) {
+        MessageBuffer pooled = MESSAGE_BUFFER.get();
+        if (pooled.builder != buffer) {
+            return; // a one-off buffer, nothing to hand back
+        }
+        if (buffer.capacity() > MAX_BUFFER_CAPACITY) {
+            pooled.builder = new StringBuilder(256); // drop oversized buffers
+        }
+        pooled.inUse = false;
+    }
+    
+    // replace each {} in the pattern with the next argument
+    // arguments are taken from arg1..arg3 when args is null, otherwise from args
+    // placeholders without a matching argument are left as-is
+    // @param buffer the buffer to append to
+    // @param pattern the message pattern
+    // @param count the number of arguments available
+    private static void appendPattern(StringBuilder buffer, String pattern,
+                                      Object arg1, Object arg2, Object arg3, Object[] args, int count) {
+        int start = 0;
+        int argIndex = 0;
+        int placeholder;
+        
+        while (argIndex < count && (placeholder = pattern.indexOf("{}", start)) >= 0) {
+            buffer.append(pattern, start, placeholder);
+            Object arg;
+            if (args != null) {
+                arg = args[argIndex];
+            } else {
+                arg = argIndex == 0 ? arg1 : (argIndex == 1 ? arg2 : arg3);
+            }
+            buffer.append(arg);
+            start = placeholder + 2;
+            argIndex++;
+        }
+        
+        buffer.append(pattern, start, pattern.length());
+    }
+    
     // log an exception with ERROR level
     // @param message the message to log
     // @param exception the exception to log
@@ -86,18 +262,102 @@ public class Logger {
     // @param action the action performed
     // @param details additional details about the action
     public static void logUserAction(int userId, String action, String details) {
+        // queue a structured copy for the database audit trail (no-op until configured)
+        AuditLogger.record(userId, action, details);
+        
+        if (!isLoggable(INFO)) {
+            return; // skip formatting when INFO is filtered
+        }
+        
+        // format the log message with user ID, action, details, and timestamp
+        String message;
+        StringBuilder buffer = acquireBuffer();
+        try {
+            buffer.append("[User ").append(userId).append("] ")
+                  .append(action).append(" - ").append(details).append(" at ");
+            TIMESTAMP_FORMAT.formatTo(LocalDateTime.now(), buffer);
+            message = buffer.toString();
+        } finally {
+            releaseBuffer(buffer);
+        }
+        
+        write(INFO, message); // log the formatted message
+    }
+    
+    // get the path of the log file
+    // @return the log file path
+    public static Path getLogFile() {
+        return Paths.get(LOG_FOLDER, LOG_FILE);
+    }
+    
+    // get the last lines of the log file without reading the whole file
+    // @param lineCount number of lines to return
+    // @return the last lines, oldest first
+    public static List<String> getLogTail(int lineCount) {
+        try {
+            return LogViewer.tail(getLogFile(), lineCount);
+        } catch (IOException e) {
+            System.err.println("Failed to read log file: " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+    
+    // stream log records matching a filter without loading the file into memory
+    // @param filter the search criteria
+    // @param consumer receives each matching record
+    // @return the number of matching records
+    public static int searchLog(LogViewer.LogFilter filter, Consumer<LogViewer.LogEntry> consumer) {
+        try {
+            return LogViewer.search(getLogFile(), filter, consumer);
+        } catch (IOException e) {
+            System.err.println("Failed to search log file: " + e.getMessage());
+            return 0;
+        }
+    }
+    
+    // stream log records in a time range, skipping rotated segments outside it
+    // segments are chosen by the time range of their records, so entries near the
+    // edges of the range may fall slightly outside it
+    // @param filter the search criteria
+    // @param from start of the range, or null for no lower bound
+    // @param to end of the range, or null for no upper bound
+    // @param consumer receives each matching record
+    // @return the number of matching records
+    public static int searchLog(LogViewer.LogFilter filter, Instant from, Instant to, Consumer<LogViewer.LogEntry> consumer) {
         if (logger == null) {
             init(); // initialize logger if not already done
         }
         
-        // format the log message with user ID, action, details, and timestamp
-        String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
-        String logMessage = String.format("[User %d] %s - %s at %s", userId, action, details, timestamp);
+        List<Path> files = fileHandler != null ? fileHandler.segmentsBetween(from, to)
+                                               : Collections.singletonList(getLogFile());
+        int total = 0;
         
-        logger.log(INFO, logMessage); // log the formatted message
+        for (Path file : files) {
+            int limit = filter.getLimit();
+            if (limit > 0 && total >= limit) {
+                break;
+            }
+            
+            try {
+                LogViewer.LogFilter segmentFilter = limit > 0 ? filter.withLimit(limit - total) : filter;
+                total += LogViewer.search(file, segmentFilter, consumer);
+            } catch (IOException e) {
+                System.err.println("Failed to search log segment " + file + ": " + e.getMessage());
+            }
+        }
+        return total;
+    }
+    
+    // close the log file, waiting for background compression of rotated segments
+    // this should be called when the application is closing
+    public static void close() {
+        if (fileHandler != null) {
+            fileHandler.close();
+        }
     }
     
     // get the contents of the log file
+    // this reads the whole file into memory, use getLogTail or searchLog for large logs
     // @return the log file contents as a string
     public static String getLogContents() {
         try {
@@ -108,4 +368,10 @@ public class Logger {
             return "Failed to read log file: " + e.getMessage();
         }
     }
+    
+    // a thread's reusable message buffer and whether a message is being built in it
+    private static final class MessageBuffer {
+        private StringBuilder builder = new StringBuilder(256);
+        private boolean inUse = false;
+    }
 }
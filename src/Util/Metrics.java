@@ -0,0 +1,153 @@
+package src.Util;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// per-operation latency metrics for database calls
+// each named operation gets its own LatencyHistogram; services wrap their JDBC
+// executions with timed(...) so counts, errors and p50/p95/p99/max can be reported
+public class Metrics {
+    // histograms by operation name
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    // scheduler for the periodic dump to the log
+    private static ScheduledExecutorService dumpScheduler = null;
+
+    // a JDBC call whose duration should be recorded
+    public interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    // run a JDBC call and record its duration under an operation name
+    // failures are counted as errors and rethrown unchanged
+    // @param operation the operation name, e.g. SearchProducts
+    // @param call the JDBC call, e.g. stmt::executeQuery
+    // @return the call's result
+    // @throws SQLException if the call fails
+    public static <T> T timed(String operation, SqlCall<T> call) throws SQLException {
+        LatencyHistogram histogram = histogram(operation);
+        long start = System.nanoTime();
+        try {
+            T result = call.call();
+            histogram.record(System.nanoTime() - start);
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            histogram.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    // record a duration measured by the caller
+    // @param operation the operation name
+    // @param nanos the duration in nanoseconds
+    public static void record(String operation, long nanos) {
+        histogram(operation).record(nanos);
+    }
+
+    // get (or create) the histogram for an operation
+    // @param operation the operation name
+    // @return the histogram
+    public static LatencyHistogram histogram(String operation) {
+        LatencyHistogram histogram = histograms.get(operation);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(operation, name -> new LatencyHistogram());
+        }
+        return histogram;
+    }
+
+    // get snapshots of every operation, sorted by name
+    // @return snapshots by operation name
+    public static Map<String, LatencyHistogram.Snapshot> snapshot() {
+        Map<String, LatencyHistogram.Snapshot> result = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return result;
+    }
+
+    // clear all recorded metrics
+    public static void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    // format the current metrics as a table, one line per operation
+    // @return the report lines
+    public static List<String> report() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%-32s %8s %6s %10s %10s %10s %10s %10s",
+                "Operation", "Count", "Errors", "Mean(ms)", "p50(ms)", "p95(ms)", "p99(ms)", "Max(ms)"));
+
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : snapshot().entrySet()) {
+            LatencyHistogram.Snapshot s = entry.getValue();
+            if (s.getCount() == 0) {
+                continue;
+            }
+            lines.add(String.format("%-32s %8d %6d %10.3f %10.3f %10.3f %10.3f %10.3f",
+                    entry.getKey(), s.getCount(), s.getErrors(),
+                    millis(s.getMeanNanos()), millis(s.getPercentileNanos(50)),
+                    millis(s.getPercentileNanos(95)), millis(s.getPercentileNanos(99)),
+                    millis(s.getMaxNanos())));
+        }
+        return lines;
+    }
+
+    // print the metrics table to the console
+    public static void printReport() {
+        List<String> lines = report();
+        System.out.println("\n--- Database Operation Latency ---");
+        if (lines.size() == 1) {
+            System.out.println("No database calls recorded yet.");
+            return;
+        }
+        for (String line : lines) {
+            System.out.println(line);
+        }
+    }
+
+    // start writing the metrics table to the log at a fixed interval
+    // @param intervalSeconds seconds between dumps
+    public static synchronized void startPeriodicDump(long intervalSeconds) {
+        if (dumpScheduler != null) {
+            return;
+        }
+
+        dumpScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumpScheduler.scheduleAtFixedRate(Metrics::dumpToLog, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    // stop the periodic dump and write one final report
+    // this should be called when the application is closing
+    public static synchronized void stopPeriodicDump() {
+        if (dumpScheduler != null) {
+            dumpScheduler.shutdownNow();
+            dumpScheduler = null;
+            dumpToLog();
+        }
+    }
+
+    // write the metrics table to the log
+    private static void dumpToLog() {
+        List<String> lines = report();
+        if (lines.size() > 1) {
+            Logger.log(Logger.INFO, () -> "Database latency metrics:" + System.lineSeparator()
+                    + String.join(System.lineSeparator(), lines));
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
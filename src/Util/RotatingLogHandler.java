@@ -0,0 +1,369 @@
+package src.Util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+import java.util.zip.GZIPOutputStream;
+
+// log handler that writes to a single active file and rotates it by size and by day
+// rotated segments are gzip compressed on a background thread, the oldest segments
+// are deleted once the retention cap is reached, and an index of segment time ranges
+// is kept so searches can skip segments outside the range they are interested in
+// final, since the constructor calls Handler methods a subclass could override
+public final class RotatingLogHandler extends Handler {
+    // name of the index file kept next to the log segments
+    private static final String INDEX_FILE = "segments.idx";
+    private static final DateTimeFormatter SEGMENT_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    // wait after a failed rotation before trying again, so a file that cannot be moved is not
+    // tried on every record
+    private static final long ROTATION_RETRY_MILLIS = 60_000;
+
+    private final Path directory;
+    private final Path activeFile;
+    private final String baseName;
+    private final long maxBytes;
+    private final int maxSegments;
+
+    // single background thread for compression and retention, so rotation never blocks logging
+    private final ExecutorService compressor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "log-compressor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // rotated segments, oldest first
+    private final List<Segment> segments = new ArrayList<>();
+
+    private OutputStream out; // null while the active file cannot be opened
+    private boolean closed = false;
+    private long retryRotationMillis = 0; // System.currentTimeMillis() before which not to rotate
+    private long currentBytes;
+    private LocalDate currentDay;
+    private long firstRecordMillis;
+    private long lastRecordMillis;
+
+    // constructor
+    // @param directory folder holding the active log and its segments
+    // @param fileName name of the active log file, e.g. storedb.log
+    // @param maxBytes rotate once the active file would grow past this size
+    // @param maxSegments number of rotated segments to keep
+    // @throws IOException if the log file cannot be opened
+    public RotatingLogHandler(Path directory, String fileName, long maxBytes, int maxSegments) throws IOException {
+        this.directory = directory;
+        this.activeFile = directory.resolve(fileName);
+        this.baseName = fileName.endsWith(".log") ? fileName.substring(0, fileName.length() - 4) : fileName;
+        this.maxBytes = maxBytes;
+        this.maxSegments = maxSegments;
+        setFormatter(new SimpleFormatter());
+
+        Files.createDirectories(directory);
+        loadIndex();
+        openActiveFile();
+
+        // a file left over from a previous day is rotated before anything new is written
+        if (currentBytes > 0 && !currentDay.equals(LocalDate.now())) {
+            rotateOrDefer();
+        }
+    }
+
+    @Override
+    public synchronized void publish(LogRecord record) {
+        if (!isLoggable(record) || closed) {
+            return;
+        }
+
+        Formatter formatter = getFormatter();
+        byte[] bytes;
+        try {
+            bytes = formatter.format(record).getBytes(StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            reportError(null, e, ErrorManager.FORMAT_FAILURE);
+            return;
+        }
+
+        try {
+            LocalDate recordDay = LocalDate.ofInstant(Instant.ofEpochMilli(record.getMillis()), ZoneId.systemDefault());
+            boolean sizeExceeded = currentBytes > 0 && currentBytes + bytes.length > maxBytes;
+            boolean dayChanged = currentBytes > 0 && !recordDay.equals(currentDay);
+            if (out == null || sizeExceeded || dayChanged) {
+                rotateOrDefer();
+            }
+            if (out == null) {
+                return; // the active file could not be opened again; the failure has been reported
+            }
+
+            out.write(bytes);
+            out.flush(); // keep the file readable by tail/search as records arrive
+            currentBytes += bytes.length;
+
+            if (firstRecordMillis == 0) {
+                firstRecordMillis = record.getMillis();
+            }
+            lastRecordMillis = record.getMillis();
+        } catch (IOException e) {
+            reportError(null, e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (out != null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                reportError(null, e, ErrorManager.FLUSH_FAILURE);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                reportError(null, e, ErrorManager.CLOSE_FAILURE);
+            }
+            out = null;
+        }
+
+        // let pending compression finish so no half-written segment is left behind
+        compressor.shutdown();
+        try {
+            compressor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // get the segments whose records overlap a time range, oldest first
+    // the active file is included when it overlaps the range
+    // @param from start of the range (inclusive), or null for no lower bound
+    // @param to end of the range (inclusive), or null for no upper bound
+    // @return paths of the segments to search
+    public synchronized List<Path> segmentsBetween(Instant from, Instant to) {
+        long fromMillis = from != null ? from.toEpochMilli() : Long.MIN_VALUE;
+        long toMillis = to != null ? to.toEpochMilli() : Long.MAX_VALUE;
+
+        List<Path> result = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.lastMillis >= fromMillis && segment.firstMillis <= toMillis) {
+                result.add(directory.resolve(segment.fileName));
+            }
+        }
+
+        // an active file with no records yet this run may still hold older lines
+        long activeFirst = firstRecordMillis != 0 ? firstRecordMillis : Long.MIN_VALUE;
+        long activeLast = lastRecordMillis != 0 ? lastRecordMillis : Long.MAX_VALUE;
+        if (Files.exists(activeFile) && activeLast >= fromMillis && activeFirst <= toMillis) {
+            result.add(activeFile);
+        }
+        return result;
+    }
+
+    // rotate the active file, or open it again if an earlier failure left none open
+    // on failure the records keep going to the active file, if it is open, and nothing is tried
+    // again for a minute
+    private void rotateOrDefer() {
+        if (System.currentTimeMillis() < retryRotationMillis) {
+            return;
+        }
+        try {
+            if (out == null) {
+                openActiveFile();
+            } else {
+                rotate();
+            }
+            retryRotationMillis = 0;
+        } catch (IOException e) {
+            retryRotationMillis = System.currentTimeMillis() + ROTATION_RETRY_MILLIS;
+            reportError("Could not rotate log file " + activeFile + ", trying again in a minute",
+                    e, ErrorManager.GENERIC_FAILURE);
+        }
+    }
+
+    // close the active file, move it aside as a segment and start a new one
+    // if it cannot be moved, it is opened again to carry on writing to it
+    private void rotate() throws IOException {
+        long first = firstRecordMillis;
+        long last = lastRecordMillis;
+        OutputStream closing = out;
+        out = null;
+
+        Path rotated;
+        try {
+            closing.close();
+            String stamp = LocalDateTime.now().format(SEGMENT_SUFFIX);
+            rotated = directory.resolve(baseName + "-" + stamp + ".log");
+            for (int n = 1; Files.exists(rotated) || Files.exists(gzipPath(rotated)); n++) {
+                rotated = directory.resolve(baseName + "-" + stamp + "-" + n + ".log");
+            }
+            Files.move(activeFile, rotated, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // e.g. another process holds the file open on windows; keep writing to it
+            openActiveFile();
+            firstRecordMillis = first;
+            lastRecordMillis = last;
+            throw e;
+        }
+
+        openActiveFile();
+        Segment segment = new Segment(rotated.getFileName().toString(),
+                first != 0 ? first : lastModifiedMillis(rotated),
+                last != 0 ? last : lastModifiedMillis(rotated));
+        segments.add(segment);
+        compressor.execute(() -> compressAndPrune(segment));
+        writeIndex();
+    }
+
+    // gzip a rotated segment and delete segments beyond the retention cap
+    // runs on the compressor thread
+    // @param segment the segment that was just rotated
+    private void compressAndPrune(Segment segment) {
+        Path source = directory.resolve(segment.fileName);
+        Path target = gzipPath(source);
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+
+        try {
+            try (InputStream in = Files.newInputStream(source);
+                 OutputStream gz = new GZIPOutputStream(Files.newOutputStream(temp), 64 * 1024)) {
+                in.transferTo(gz);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(source);
+
+            synchronized (this) {
+                segment.fileName = target.getFileName().toString();
+                pruneSegments();
+                writeIndex();
+            }
+        } catch (IOException e) {
+            reportError("Failed to compress log segment " + source, e, ErrorManager.GENERIC_FAILURE);
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // the temp file is harmless and will be overwritten next time
+            }
+        }
+    }
+
+    // delete the oldest segments until at most maxSegments remain
+    // caller must hold the handler lock
+    private void pruneSegments() throws IOException {
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.remove(0);
+            Files.deleteIfExists(directory.resolve(oldest.fileName));
+        }
+    }
+
+    // open (or create) the active file in append mode
+    private void openActiveFile() throws IOException {
+        out = new FileOutputStream(activeFile.toFile(), true);
+        currentBytes = Files.size(activeFile);
+        currentDay = currentBytes > 0
+                ? LocalDate.ofInstant(Instant.ofEpochMilli(lastModifiedMillis(activeFile)), ZoneId.systemDefault())
+                : LocalDate.now();
+        // records left from a previous run are dated from when the file was created
+        firstRecordMillis = currentBytes > 0 ? creationMillis(activeFile) : 0;
+        lastRecordMillis = 0;
+    }
+
+    // read the segment index, dropping entries whose files no longer exist
+    private void loadIndex() throws IOException {
+        Path index = directory.resolve(INDEX_FILE);
+        if (!Files.exists(index)) {
+            return;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t");
+                if (parts.length != 3) {
+                    continue; // skip malformed lines
+                }
+
+                Path file = directory.resolve(parts[0]);
+                Path compressed = gzipPath(file);
+                String name = Files.exists(file) ? parts[0] : Files.exists(compressed) ? compressed.getFileName().toString() : null;
+                if (name != null) {
+                    segments.add(new Segment(name, Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+                }
+            }
+        } catch (NumberFormatException e) {
+            reportError("Ignoring corrupt log segment index", e, ErrorManager.OPEN_FAILURE);
+        }
+
+        // segments that were rotated but not compressed before the last shutdown
+        for (Segment segment : segments) {
+            if (segment.fileName.endsWith(".log")) {
+                compressor.execute(() -> compressAndPrune(segment));
+            }
+        }
+    }
+
+    // write the segment index atomically
+    // caller must hold the handler lock
+    private void writeIndex() throws IOException {
+        Path index = directory.resolve(INDEX_FILE);
+        Path temp = directory.resolve(INDEX_FILE + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Segment segment : segments) {
+                writer.write(segment.fileName + "\t" + segment.firstMillis + "\t" + segment.lastMillis);
+                writer.newLine();
+            }
+        }
+        Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path gzipPath(Path file) {
+        return file.resolveSibling(file.getFileName() + ".gz");
+    }
+
+    private static long creationMillis(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class).creationTime().toMillis();
+    }
+
+    private static long lastModifiedMillis(Path file) throws IOException {
+        return Files.getLastModifiedTime(file).toMillis();
+    }
+
+    // a rotated log file and the time range of the records it holds
+    private static class Segment {
+        private String fileName;
+        private final long firstMillis;
+        private final long lastMillis;
+
+        Segment(String fileName, long firstMillis, long lastMillis) {
+            this.fileName = fileName;
+            this.firstMillis = firstMillis;
+            this.lastMillis = lastMillis;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package src.Util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// runs one query on every shard at once and collects the answers, for reports over customers
+// that ShardRouter has spread across databases
+//
+// each shard query gets its own thread and a connection whose network timeout is
+// storedb.db.shard-timeout-ms (5000 by default), so the report takes as long as the slowest
+// shard rather than the sum of all of them. a shard that fails or runs out of time is left
+// out and named in the result, so callers can show the other shards' figures marked as
+// incomplete instead of failing the whole report; only when no shard answers is it an error
+//
+// callers make each shard return a partial aggregate and merge them: sums and counts add up,
+// maxima take the larger, date ordered listings are k-way merged with mergeSorted, and
+// rankings keep the best with topN
+public class ScatterGather {
+    private static final long SHARD_TIMEOUT_MILLIS = Long.getLong("storedb.db.shard-timeout-ms", 5000);
+    private static final long GRACE_MILLIS = 500; // for a shard to notice its network timeout
+
+    private static final ExecutorService executor = createExecutor();
+
+    // a query to run on one shard
+    public interface ShardQuery<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    // the answers of the shards that answered, and why the others did not
+    public static final class Result<T> {
+        private final T value;
+        private final Map<Integer, String> failures;
+
+        Result(T value, Map<Integer, String> failures) {
+            this.value = value;
+            this.failures = failures;
+        }
+
+        public T getValue() { return value; }
+
+        // @return shard index -> reason, for every shard left out
+        public Map<Integer, String> getFailures() { return failures; }
+
+        // @return true if every shard answered
+        public boolean isComplete() {
+            return failures.isEmpty();
+        }
+
+        // @param merged the answers merged into one value
+        // @return a result with that value and the same missing shards
+        public <R> Result<R> withValue(R merged) {
+            return new Result<>(merged, failures);
+        }
+    }
+
+    // wrap a value that did not need any shard left out, e.g. from an unsharded database
+    // @param value the value
+    // @return a complete result
+    public static <T> Result<T> complete(T value) {
+        return new Result<>(value, Map.of());
+    }
+
+    // run a query on every shard in parallel
+    // @param name report name for metrics and log messages
+    // @param query the query, given a connection to one shard
+    // @return the answers in shard order, leaving out shards that failed or timed out
+    // @throws SQLException if no shard answered
+    public static <T> Result<List<T>> query(String name, ShardQuery<T> query) throws SQLException {
+        int shards = ShardRouter.shardCount();
+        List<Future<T>> futures = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            int index = shard;
+            futures.add(executor.submit(() -> {
+                long start = System.nanoTime();
+                try (Connection conn = ShardRouter.connection(index)) {
+                    conn.setNetworkTimeout(Runnable::run, (int) SHARD_TIMEOUT_MILLIS);
+                    T answer = query.run(conn);
+                    Metrics.record(name + " shard " + index, System.nanoTime() - start);
+                    return answer;
+                }
+            }));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SHARD_TIMEOUT_MILLIS + GRACE_MILLIS);
+        List<T> answers = new ArrayList<>(shards);
+        Map<Integer, String> failures = new TreeMap<>();
+        for (int shard = 0; shard < shards; shard++) {
+            Future<T> future = futures.get(shard);
+            try {
+                answers.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                failures.put(shard, "timed out");
+            } catch (ExecutionException e) {
+                failures.put(shard, e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                failures.put(shard, "interrupted");
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            if (answers.isEmpty()) {
+                throw new SQLException(name + ": no shard answered " + failures);
+            }
+            Logger.log(Logger.WARNING, "{} is missing {} of {} shards: {}", name, failures.size(), shards, failures);
+        }
+        return new Result<>(answers, failures);
+    }
+
+    // k-way merge of lists that are each sorted, e.g. every shard's newest purchases
+    // @param parts the sorted lists
+    // @param order the order they are sorted in
+    // @param skip number of merged items to skip, for paging
+    // @param limit most items to return
+    // @return the merged items after skip, at most limit of them
+    public static <T> List<T> mergeSorted(List<List<T>> parts, Comparator<? super T> order, int skip, int limit) {
+        // one cursor per list, ordered by the item it points at
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, parts.size()),
+                (a, b) -> order.compare(parts.get(a[0]).get(a[1]), parts.get(b[0]).get(b[1])));
+        for (int part = 0; part < parts.size(); part++) {
+            if (!parts.get(part).isEmpty()) {
+                heads.add(new int[] {part, 0});
+            }
+        }
+
+        List<T> merged = new ArrayList<>(Math.max(0, limit));
+        for (int taken = 0; !heads.isEmpty() && merged.size() < limit; taken++) {
+            int[] head = heads.poll();
+            if (taken >= skip) {
+                merged.add(parts.get(head[0]).get(head[1]));
+            }
+            if (++head[1] < parts.get(head[0]).size()) {
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+
+    // pick the first n items in an order without sorting all of them, e.g. the best sellers
+    // @param items the items
+    // @param order the order, first item first
+    // @param n number of items wanted
+    // @return the first n items, in order
+    public static <T> List<T> topN(Collection<T> items, Comparator<? super T> order, int n) {
+        if (n <= 0) {
+            return new ArrayList<>();
+        }
+        // the worst item kept so far is at the head, ready to be replaced
+        PriorityQueue<T> kept = new PriorityQueue<>(n, Collections.reverseOrder(order));
+        for (T item : items) {
+            if (kept.size() < n) {
+                kept.add(item);
+            } else if (order.compare(item, kept.peek()) < 0) {
+                kept.poll();
+                kept.add(item);
+            }
+        }
+        List<T> top = new ArrayList<>(kept);
+        top.sort(order);
+        return top;
+    }
+
+    // create the executor that runs shard queries
+    // @return a virtual thread per task executor, or a cached pool of daemon threads
+    private static ExecutorService createExecutor() {
+        ExecutorService virtual = ThreadManager.newVirtualThreadPerTaskExecutor();
+        if (virtual != null) {
+            return virtual;
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "shard-query-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
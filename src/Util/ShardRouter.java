@@ -0,0 +1,303 @@
+package src.Util;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// spreads customers over several StoreDB databases (shards) by PersonID
+//
+// the main database is shard 0; more shards are listed in storedb.db.shards as comma separated
+// JDBC urls with the main database's username and password, e.g. one schema each on a local
+// server. a customer's Persons row and Purchase rows live on the shard their PersonID hashes to
+// on a consistent hash ring, where every shard has VIRTUAL_NODES points, so adding a shard moves
+// only about 1/N of the customers (moving their rows is left to the operator). a shard's points
+// come from its position in the list, not its url, so a database can move to another url
+// without customers changing shard; new shards go at the end of the list and none is removed
+// from the middle
+//
+// the Products catalog is small and every shard needs it for its joins, so shard 0 holds the
+// master copy, including the only stock level that counts, and product writes are copied to
+// the other shards. purchases take the stock on shard 0 and write the purchase on the
+// customer's shard, so the update_inventory trigger is dropped from sharded databases. new
+// PersonIDs come from a sequence on shard 0, since each shard's AUTO_INCREMENT would repeat
+// the others'; TransactionIDs come from IdGenerator for the same reason
+//
+// without storedb.db.shards there is one shard and callers keep using their own connections
+public class ShardRouter {
+    public static final int CATALOG_SHARD = 0; // shard with the master copy of the catalog
+    private static final int VIRTUAL_NODES = 128; // points per shard on the hash ring
+
+    private static String dbUser; // database username, shared by the shards
+    private static String dbPassword; // database password, shared by the shards
+    private static volatile List<String> shardUrls = List.of();
+    private static volatile TreeMap<Long, Integer> ring = new TreeMap<>(); // point -> shard
+
+    // sets the database connection information, reads the shard list and prepares the shards
+    // @param url main database url, which becomes shard 0
+    // @param user database username
+    // @param password database password
+    public static synchronized void setConnectionInfo(String url, String user, String password) {
+        dbUser = user;
+        dbPassword = password;
+
+        List<String> urls = new ArrayList<>();
+        urls.add(url);
+        for (String shardUrl : System.getProperty("storedb.db.shards", "").split(",")) {
+            if (!shardUrl.isBlank() && !urls.contains(shardUrl.trim())) {
+                urls.add(shardUrl.trim());
+            }
+        }
+        TreeMap<Long, Integer> points = new TreeMap<>();
+        for (int shard = 0; shard < urls.size(); shard++) {
+            long base = hash("shard-" + shard);
+            for (int point = 0; point < VIRTUAL_NODES; point++) {
+                points.put(mix(base + point * 0x9E3779B97F4A7C15L), shard);
+            }
+        }
+        shardUrls = List.copyOf(urls);
+        ring = points;
+
+        if (isSharded()) {
+            Logger.log(Logger.INFO, "Customers sharded over {} databases", urls.size());
+            try {
+                prepareShards();
+            } catch (SQLException e) {
+                Logger.log(Logger.ERROR, "Could not prepare shards: {}", e.getMessage());
+            }
+        }
+    }
+
+    // @return true if more than one shard is configured
+    public static boolean isSharded() {
+        return shardUrls.size() > 1;
+    }
+
+    // @return the number of shards
+    public static int shardCount() {
+        return shardUrls.size();
+    }
+
+    // find the shard of a customer
+    // @param personId the customer's PersonID
+    // @return the shard index
+    public static int shardOf(int personId) {
+        TreeMap<Long, Integer> points = ring;
+        Map.Entry<Long, Integer> entry = points.ceilingEntry(mix(personId));
+        return entry != null ? entry.getValue() : points.firstEntry().getValue();
+    }
+
+    // get a connection to a customer's shard
+    // @param personId the customer's PersonID
+    // @return a new connection
+    // @throws SQLException if a database error occurs
+    public static Connection connectionFor(int personId) throws SQLException {
+        return connection(shardOf(personId));
+    }
+
+    // get a connection to a shard
+    // @param shard the shard index
+    // @return a new connection
+    // @throws SQLException if a database error occurs
+    public static Connection connection(int shard) throws SQLException {
+        return DriverManager.getConnection(shardUrls.get(shard), dbUser, dbPassword);
+    }
+
+    // find the shard holding the customer with an email
+    // @param email the email
+    // @return the shard index, or -1 if no shard has the email
+    // @throws SQLException if a database error occurs
+    public static int shardOfEmail(String email) throws SQLException {
+        for (int shard = 0; shard < shardUrls.size(); shard++) {
+            try (Connection conn = connection(shard);
+                 PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM Persons WHERE Email = ?")) {
+                stmt.setString(1, email);
+                try (ResultSet rs = Metrics.timed("FindShardOfEmail", stmt::executeQuery)) {
+                    if (rs.next()) {
+                        return shard;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    // get a connection to the shard holding the customer with an email
+    // @param email the email
+    // @return a new connection, or null if no shard has the email
+    // @throws SQLException if a database error occurs
+    public static Connection connectionForEmail(String email) throws SQLException {
+        int shard = shardOfEmail(email);
+        return shard >= 0 ? connection(shard) : null;
+    }
+
+    // check whether a product has been bought by a customer on any shard
+    // @param productId product ID
+    // @return true if any shard has a purchase of the product
+    // @throws SQLException if a database error occurs
+    public static boolean hasPurchases(String productId) throws SQLException {
+        for (int shard = 0; shard < shardUrls.size(); shard++) {
+            try (Connection conn = connection(shard);
+                 PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM Purchase WHERE ProductID = ? LIMIT 1")) {
+                stmt.setString(1, productId);
+                try (ResultSet rs = Metrics.timed("CheckProductPurchasesOnShard", stmt::executeQuery)) {
+                    if (rs.next()) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // take the next PersonID from the sequence on shard 0
+    // @return the new PersonID
+    // @throws SQLException if a database error occurs
+    public static int nextPersonId() throws SQLException {
+        try (Connection conn = connection(CATALOG_SHARD);
+             Statement stmt = conn.createStatement()) {
+            Metrics.timed("NextPersonID", () -> stmt.executeUpdate(
+                    "UPDATE PersonIdSequence SET LastID = LAST_INSERT_ID(LastID + 1) WHERE Name = 'Persons'"));
+            try (ResultSet rs = stmt.executeQuery("SELECT LAST_INSERT_ID()")) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    // copy a product from the master catalog to every other shard, or remove it from them
+    // failures are logged; the copies are brought up to date again when the shards are prepared
+    // @param productId product ID
+    public static void replicateProduct(String productId) {
+        if (!isSharded()) {
+            return;
+        }
+        try (Connection catalog = connection(CATALOG_SHARD);
+             PreparedStatement select = catalog.prepareStatement(
+                     "SELECT ProductID, ItemName, ItemPrice, ItemQuantity FROM Products WHERE ProductID = ?")) {
+            select.setString(1, productId);
+            try (ResultSet rs = Metrics.timed("GetProductForReplication", select::executeQuery)) {
+                boolean exists = rs.next();
+                for (int shard = 0; shard < shardUrls.size(); shard++) {
+                    if (shard == CATALOG_SHARD) {
+                        continue;
+                    }
+                    try (Connection conn = connection(shard)) {
+                        if (exists) {
+                            copyProduct(conn, rs);
+                        } else {
+                            deleteProduct(conn, productId);
+                        }
+                    } catch (SQLException e) {
+                        Logger.log(Logger.WARNING, "Could not replicate product {} to shard {}: {}", productId, shard, e.getMessage());
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            Logger.log(Logger.WARNING, "Could not replicate product {}: {}", productId, e.getMessage());
+        }
+    }
+
+    // drop the stock trigger, create the PersonID sequence and the purchase intents, and copy the
+    // catalog to every shard
+    // @throws SQLException if shard 0 cannot be prepared
+    private static void prepareShards() throws SQLException {
+        int highestPersonId = 0;
+        for (int shard = 0; shard < shardUrls.size(); shard++) {
+            try (Connection conn = connection(shard);
+                 Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("DROP TRIGGER IF EXISTS update_inventory");
+                try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(PersonID), 0) FROM Persons")) {
+                    rs.next();
+                    highestPersonId = Math.max(highestPersonId, rs.getInt(1));
+                }
+            }
+        }
+
+        try (Connection catalog = connection(CATALOG_SHARD)) {
+            try (Statement stmt = catalog.createStatement()) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS PersonIdSequence (" +
+                                   "Name VARCHAR(30) PRIMARY KEY, LastID INT NOT NULL)");
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS PurchaseIntents (" +
+                                   "TransactionID BIGINT PRIMARY KEY, PersonID INT NOT NULL, " +
+                                   "ProductID VARCHAR(20) NOT NULL, QuantityPurchased INT NOT NULL, " +
+                                   "CreatedAt DATETIME(3) NOT NULL, INDEX idx_intent_created (CreatedAt))");
+            }
+            // only the first instance to start seeds it
+            try (PreparedStatement stmt = catalog.prepareStatement(
+                    "INSERT IGNORE INTO PersonIdSequence (Name, LastID) VALUES ('Persons', ?)")) {
+                stmt.setInt(1, highestPersonId);
+                stmt.executeUpdate();
+            }
+
+            try (Statement stmt = catalog.createStatement();
+                 ResultSet rs = Metrics.timed("GetCatalogForReplication", () -> stmt.executeQuery(
+                         "SELECT ProductID, ItemName, ItemPrice, ItemQuantity FROM Products"))) {
+                List<Connection> shards = new ArrayList<>();
+                try {
+                    for (int shard = 1; shard < shardUrls.size(); shard++) {
+                        shards.add(connection(shard));
+                    }
+                    int copied = 0;
+                    while (rs.next()) {
+                        for (Connection conn : shards) {
+                            copyProduct(conn, rs);
+                        }
+                        copied++;
+                    }
+                    Logger.log(Logger.INFO, "Copied {} products to {} shards", copied, shards.size());
+                } finally {
+                    for (Connection conn : shards) {
+                        conn.close();
+                    }
+                }
+            }
+        }
+    }
+
+    // insert or update one product on a shard
+    // @param conn connection to the shard
+    // @param product result set positioned on the product
+    private static void copyProduct(Connection conn, ResultSet product) throws SQLException {
+        String sql = "INSERT INTO Products (ProductID, ItemName, ItemPrice, ItemQuantity) VALUES (?, ?, ?, ?) " +
+                     "ON DUPLICATE KEY UPDATE ItemName = VALUES(ItemName), ItemPrice = VALUES(ItemPrice), " +
+                     "ItemQuantity = VALUES(ItemQuantity)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, product.getString(1));
+            stmt.setString(2, product.getString(2));
+            stmt.setFloat(3, product.getFloat(3));
+            stmt.setInt(4, product.getInt(4));
+            Metrics.timed("ReplicateProduct", stmt::executeUpdate);
+        }
+    }
+
+    private static void deleteProduct(Connection conn, String productId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM Products WHERE ProductID = ?")) {
+            stmt.setString(1, productId);
+            Metrics.timed("ReplicateProductRemoval", stmt::executeUpdate);
+        }
+    }
+
+    // @return a well spread 64-bit hash of a string
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L; // FNV-1a
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    // @return value with its bits mixed, so that neighbouring IDs land far apart on the ring
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
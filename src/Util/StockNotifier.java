@@ -0,0 +1,69 @@
+package src.Util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// tells interested parties when a product's stock level changes
+// stock levels come from the product and purchase events on the EventBus, which this class
+// subscribes to when the first listener arrives. listeners are called on the bus's subscriber
+// thread, so they must hand the change off and return at once
+public class StockNotifier {
+    public static final int REMOVED = -1; // quantity reported for a product that was removed
+
+    // receives stock changes
+    public interface Listener {
+        // @param productId product ID
+        // @param quantity new quantity, or REMOVED
+        void stockChanged(String productId, int quantity);
+    }
+
+    private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private static boolean subscribed = false;
+
+    public static synchronized void addListener(Listener listener) {
+        listeners.add(listener);
+        if (!subscribed) {
+            EventBus.subscribe("stock-notifier", (event, sequence, endOfBatch) -> onEvent(event));
+            subscribed = true;
+        }
+    }
+
+    public static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // check before doing extra work to find the new quantity
+    // @return true if anyone is listening
+    public static boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+    // report a product's new stock level
+    // @param productId product ID
+    // @param quantity new quantity, or REMOVED
+    public static void stockChanged(String productId, int quantity) {
+        for (Listener listener : listeners) {
+            try {
+                listener.stockChanged(productId, quantity);
+            } catch (RuntimeException e) {
+                // one broken listener must not keep the change from the others
+                Logger.log(Logger.WARNING, "Stock listener failed for product {}: {}", productId, e.getMessage());
+            }
+        }
+    }
+
+    // turn product and purchase events that carry a stock level into stock changes
+    private static void onEvent(DomainEvent event) {
+        switch (event.getType()) {
+            case PRODUCT_REMOVED -> stockChanged(event.getProductId(), REMOVED);
+            case PRODUCT_ADDED, PRODUCT_UPDATED, PURCHASE_COMPLETED, STOCK_CHANGED -> {
+                if (event.getStockLevel() != DomainEvent.UNKNOWN) {
+                    stockChanged(event.getProductId(), event.getStockLevel());
+                }
+            }
+            default -> {
+                // not about stock
+            }
+        }
+    }
+}
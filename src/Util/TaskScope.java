@@ -0,0 +1,163 @@
+package src.Util;
+
+import src.Authentication.Session;
+import src.Authentication.SessionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// a group of subtasks that start together and finish together
+// used by screens that need several independent queries, so the screen waits for the
+// slowest query instead of the sum of all of them
+//
+//   try (TaskScope scope = new TaskScope("customer summary", Duration.ofSeconds(10))) {
+//       TaskScope.Subtask<Boolean> exists = scope.fork(() -> customerExists(id));
+//       TaskScope.Subtask<CustomerSummary> summary = scope.fork(() -> fetchSummary(id));
+//       scope.join();
+//       ... exists.get(), summary.get()
+//   }
+//
+// join waits for every subtask. the first subtask to fail cancels the others and join
+// throws its exception; if the deadline passes first the rest are cancelled and join
+// throws a TimeoutException. closing the scope cancels anything still running, so no
+// subtask outlives the block that forked it
+//
+// each subtask runs on a virtual thread of its own on java 21, otherwise on a pooled
+// daemon thread. subtasks do not use the ThreadManager lanes because a scope may be
+// opened by a task already running on a lane, and waiting there for queued children
+// could deadlock a small pool. the pool is still bounded, to storedb.threads.scope.size
+// threads (8 by default), so a burst of screens queues its queries instead of opening a
+// connection each. subtasks run as the session that forked them
+public class TaskScope implements AutoCloseable {
+    private static final int POOL_SIZE = Math.max(1, Integer.getInteger("storedb.threads.scope.size", 8));
+    private static final ExecutorService executor = createExecutor();
+
+    private final String name;
+    private final long deadlineNanos;
+    private final List<Subtask<?>> subtasks = new ArrayList<>();
+    private final BlockingQueue<Subtask<?>> finished = new LinkedBlockingQueue<>();
+    private boolean joined;
+    private boolean closed;
+
+    // constructor
+    // @param name name used in log messages and timeout errors
+    // @param timeout how long join may take from now, for all subtasks together
+    public TaskScope(String name, Duration timeout) {
+        this.name = name;
+        this.deadlineNanos = System.nanoTime() + timeout.toNanos();
+    }
+
+    // start a subtask
+    // @param task the task
+    // @return a handle for reading the task's result after join
+    // @throws IllegalStateException if the scope has already been joined or closed
+    public <T> Subtask<T> fork(Callable<T> task) {
+        if (joined || closed) {
+            throw new IllegalStateException("Cannot fork after join or close of " + name);
+        }
+        // read-your-writes routing and permission checks look at the session
+        Session session = SessionManager.current();
+        Subtask<T> subtask = new Subtask<>(session != null ? SessionManager.wrap(session, task) : task);
+        subtasks.add(subtask);
+        executor.execute(subtask);
+        return subtask;
+    }
+
+    // wait for all subtasks to complete
+    // @throws ExecutionException with the cause of the first subtask that failed
+    // @throws TimeoutException if the deadline passed before all subtasks completed
+    // @throws InterruptedException if the waiting thread is interrupted
+    public void join() throws ExecutionException, TimeoutException, InterruptedException {
+        if (joined) {
+            return;
+        }
+        try {
+            for (int remaining = subtasks.size(); remaining > 0; remaining--) {
+                long waitNanos = deadlineNanos - System.nanoTime();
+                Subtask<?> done = waitNanos > 0 ? finished.poll(waitNanos, TimeUnit.NANOSECONDS) : null;
+                if (done == null) {
+                    Logger.log(Logger.WARNING, "{} timed out with {} of {} queries unfinished",
+                              name, remaining, subtasks.size());
+                    throw new TimeoutException(name + " did not complete in time");
+                }
+                // throws on the first failure; the other results are no use without this one
+                done.get();
+            }
+            joined = true;
+        } finally {
+            if (!joined) {
+                cancelAll();
+            }
+        }
+    }
+
+    // cancel any subtasks still running
+    @Override
+    public void close() {
+        closed = true;
+        cancelAll();
+    }
+
+    private void cancelAll() {
+        for (Subtask<?> subtask : subtasks) {
+            subtask.cancel(true);
+        }
+    }
+
+    // create the executor that runs subtasks
+    // @return a virtual thread per task executor, or a bounded pool of daemon threads
+    private static ExecutorService createExecutor() {
+        ExecutorService virtual = ThreadManager.newVirtualThreadPerTaskExecutor();
+        if (virtual != null) {
+            return virtual;
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "scope-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    // a forked task and its result
+    public class Subtask<T> extends FutureTask<T> {
+        Subtask(Callable<T> task) {
+            super(task);
+        }
+
+        // get the result of a completed subtask
+        // @return the result
+        // @throws IllegalStateException if the scope has not been joined successfully
+        @Override
+        public T get() throws ExecutionException {
+            if (!isDone()) {
+                throw new IllegalStateException("Subtask of " + name + " read before join");
+            }
+            try {
+                return super.get();
+            } catch (InterruptedException | CancellationException e) {
+                throw new IllegalStateException("Subtask of " + name + " was cancelled", e);
+            }
+        }
+
+        @Override
+        protected void done() {
+            finished.add(this);
+        }
+    }
+}
@@ -1,62 +1,382 @@
 package src.Util;
 
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 
 // utility class for managing background threads in the application
 // uses executorservice to handle thread creation and management
+//
+// work is split into bulkheads (lanes) so one kind of work cannot starve another:
+// - INTERACTIVE: queries a user is waiting on, e.g. a product page; overflow runs on the caller
+// - BACKGROUND: reports and exports; overflow is rejected
+// - MAINTENANCE: housekeeping such as cleanup jobs; overflow is rejected
+// each lane has its own threads, bounded queue and thread priority
+//
+// queues are bounded so bursts apply backpressure instead of growing memory; each lane's
+// overflow policy is caller-runs, timed offer or fail-fast. tasks may carry a deadline
+// and are dropped if it passes before they start. shutdown drains queued and running
+// tasks (such as purchases being written) for up to a timeout before giving up on them
+//
+// two execution modes are supported:
+// - PLATFORM: each lane is a fixed pool of platform threads (the default)
+// - VIRTUAL: one virtual thread per task, with a semaphore per lane limiting how many
+//   tasks run at once so the database sees the same concurrency as with the pools.
+//   blocked tasks wait on the semaphore instead of holding a platform thread.
+//   virtual threads need java 21; on older runtimes PLATFORM is used instead
+//
+// the mode and lane sizes can be set before the first task is submitted, either in code
+// or with the system properties storedb.threads.mode (platform or virtual),
+// storedb.threads.<lane>.size, storedb.threads.<lane>.queue, storedb.threads.<lane>.policy
+// (caller_runs, timed_offer or fail_fast) and storedb.threads.<lane>.offer-timeout-ms
 public class ThreadManager {
-    // thread pool for executing background tasks
-    private static final ExecutorService executor = Executors.newFixedThreadPool(5);
-    
-    // flag to track if the manager has been shut down
-    private static boolean isShutdown = false;
-    
-    // execute a task in the background and handle the result with a callback
+    // execution modes for background tasks
+    public enum ExecutionMode { PLATFORM, VIRTUAL }
+
+    // bulkheads for different kinds of work, with their default sizes
+    public enum Lane {
+        INTERACTIVE(4, 50, Thread.NORM_PRIORITY + 1, Bulkhead.OverflowPolicy.CALLER_RUNS),
+        BACKGROUND(2, 100, Thread.NORM_PRIORITY - 1, Bulkhead.OverflowPolicy.FAIL_FAST),
+        MAINTENANCE(1, 100, Thread.MIN_PRIORITY, Bulkhead.OverflowPolicy.FAIL_FAST);
+
+        private final int defaultSize;
+        private final int defaultQueue;
+        private final int priority;
+        private final Bulkhead.OverflowPolicy defaultPolicy;
+
+        Lane(int defaultSize, int defaultQueue, int priority, Bulkhead.OverflowPolicy defaultPolicy) {
+            this.defaultSize = defaultSize;
+            this.defaultQueue = defaultQueue;
+            this.priority = priority;
+            this.defaultPolicy = defaultPolicy;
+        }
+    }
+
+    // how long a TIMED_OFFER lane waits for queue space by default
+    private static final long DEFAULT_OFFER_TIMEOUT_MS = 500;
+
+    // how long shutdown waits for queued and running tasks by default
+    private static final long DEFAULT_DRAIN_TIMEOUT_MS = 10_000;
+
+    // configured size, queue capacity and overflow policy of each lane
+    private static final Map<Lane, LaneSettings> settings = new EnumMap<>(Lane.class);
+
+    static {
+        for (Lane lane : Lane.values()) {
+            String prefix = "storedb.threads." + lane.name().toLowerCase() + ".";
+            Bulkhead.OverflowPolicy policy = lane.defaultPolicy;
+            String policyName = System.getProperty(prefix + "policy");
+            if (policyName != null) {
+                try {
+                    policy = Bulkhead.OverflowPolicy.valueOf(policyName.trim().toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Ignoring unknown overflow policy for " + lane + ": " + policyName);
+                }
+            }
+            settings.put(lane, new LaneSettings(Integer.getInteger(prefix + "size", lane.defaultSize),
+                    Integer.getInteger(prefix + "queue", lane.defaultQueue), policy,
+                    Long.getLong(prefix + "offer-timeout-ms", DEFAULT_OFFER_TIMEOUT_MS)));
+        }
+    }
+
+    // lanes, created on first use
+    private static Map<Lane, Bulkhead> bulkheads = null;
+
+    private static ExecutionMode mode = "virtual".equalsIgnoreCase(System.getProperty("storedb.threads.mode", "").trim())
+            ? ExecutionMode.VIRTUAL : ExecutionMode.PLATFORM;
+
+    // flag to track if the manager has been shut down, read by submitters without the lock
+    private static volatile boolean isShutdown = false;
+
+    // choose how background tasks are run
+    // must be called before the first task is submitted
+    // @param executionMode platform or virtual threads
+    // @throws IllegalStateException if tasks have already been submitted
+    public static synchronized void setExecutionMode(ExecutionMode executionMode) {
+        checkNotStarted();
+        mode = executionMode;
+    }
+
+    // size a lane
+    // must be called before the first task is submitted
+    // @param lane the lane
+    // @param maxConcurrent maximum number of the lane's tasks running at the same time
+    // @param queueCapacity maximum number of the lane's tasks waiting to run
+    // @param policy what to do with tasks that don't fit in the queue
+    // @throws IllegalStateException if tasks have already been submitted
+    public static synchronized void configureLane(Lane lane, int maxConcurrent, int queueCapacity,
+                                                  Bulkhead.OverflowPolicy policy) {
+        configureLane(lane, maxConcurrent, queueCapacity, policy, DEFAULT_OFFER_TIMEOUT_MS);
+    }
+
+    // size a lane
+    // must be called before the first task is submitted
+    // @param lane the lane
+    // @param maxConcurrent maximum number of the lane's tasks running at the same time
+    // @param queueCapacity maximum number of the lane's tasks waiting to run
+    // @param policy what to do with tasks that don't fit in the queue
+    // @param offerTimeoutMillis how long TIMED_OFFER waits for queue space
+    // @throws IllegalStateException if tasks have already been submitted
+    public static synchronized void configureLane(Lane lane, int maxConcurrent, int queueCapacity,
+                                                  Bulkhead.OverflowPolicy policy, long offerTimeoutMillis) {
+        checkNotStarted();
+        if (maxConcurrent <= 0 || queueCapacity <= 0 || offerTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Lane size and queue capacity must be positive");
+        }
+        settings.put(lane, new LaneSettings(maxConcurrent, queueCapacity, policy, offerTimeoutMillis));
+    }
+
+    // get the mode tasks are run in
+    // @return the execution mode; VIRTUAL only if virtual threads are actually in use
+    public static synchronized ExecutionMode getExecutionMode() {
+        getBulkheads();
+        return mode;
+    }
+
+    // execute an interactive task in the background and handle the result with a callback
     // @param task - the task to execute in the background
     // @param onSuccess - callback to handle successful completion
     // @param onError - callback to handle errors
     public static <T> void executeAsync(Callable<T> task, Consumer<T> onSuccess, Consumer<Exception> onError) {
+        executeAsync(Lane.INTERACTIVE, task, onSuccess, onError);
+    }
+
+    // execute a task in the background on a lane and handle the result with a callback
+    // @param lane - the lane to run the task on
+    // @param task - the task to execute in the background
+    // @param onSuccess - callback to handle successful completion
+    // @param onError - callback to handle errors, including rejection when the lane is full
+    public static <T> void executeAsync(Lane lane, Callable<T> task, Consumer<T> onSuccess, Consumer<Exception> onError) {
+        executeAsync(lane, task, onSuccess, onError, null);
+    }
+
+    // execute a task in the background on a lane, dropping it if it cannot start in time
+    // @param lane - the lane to run the task on
+    // @param task - the task to execute in the background
+    // @param onSuccess - callback to handle successful completion
+    // @param onError - callback to handle errors, including rejection and a TimeoutException when the task is dropped
+    // @param startWithin - how long the task may wait before starting, or null for no deadline
+    public static <T> void executeAsync(Lane lane, Callable<T> task, Consumer<T> onSuccess, Consumer<Exception> onError,
+                                        Duration startWithin) {
         if (isShutdown) {
-            onError.accept(new IllegalStateException("ThreadManager has been shut down"));
+            if (onError != null) {
+                onError.accept(new IllegalStateException("ThreadManager has been shut down"));
+            }
             return;
         }
-        
-        executor.submit(() -> {
-            try {
-                T result = task.call();
-                if (onSuccess != null) {
-                    onSuccess.accept(result);
+
+        long deadline = deadlineNanos(startWithin);
+        Bulkhead bulkhead = getBulkheads().get(lane);
+        try {
+            bulkhead.submit(() -> {
+                if (deadline != 0 && System.nanoTime() - deadline > 0) {
+                    // dropped before starting; report it but don't run the task
+                    bulkhead.recordExpired();
+                    Logger.log(Logger.WARNING, "Dropped {} task that waited longer than {}", lane, startWithin);
+                    if (onError != null) {
+                        onError.accept(new TimeoutException("Task was not started within " + startWithin));
+                    }
+                    return null;
                 }
-            } catch (Exception e) {
-                Logger.log(Logger.ERROR, "Error in background task: " + e.getMessage());
-                if (onError != null) {
-                    onError.accept(e);
+                try {
+                    T result = task.call();
+                    if (onSuccess != null) {
+                        onSuccess.accept(result);
+                    }
+                } catch (Exception e) {
+                    Logger.log(Logger.ERROR, "Error in background task: {}", e.getMessage());
+                    if (onError != null) {
+                        onError.accept(e);
+                    }
                 }
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            Logger.log(Logger.WARNING, "Rejected {} task: {}", lane, e.getMessage());
+            if (onError != null) {
+                onError.accept(e);
             }
-        });
+        }
     }
-    
-    // execute a task in the background and return a future for the result
+
+    // execute an interactive task in the background and return a future for the result
     // @param task - the task to execute in the background
     // @return a future representing the pending result
     public static <T> Future<T> submitTask(Callable<T> task) {
+        return submitTask(Lane.INTERACTIVE, task);
+    }
+
+    // execute a task in the background on a lane and return a future for the result
+    // @param lane - the lane to run the task on
+    // @param task - the task to execute in the background
+    // @return a future representing the pending result
+    // @throws RejectedExecutionException if the lane is full and rejects overflow
+    public static <T> Future<T> submitTask(Lane lane, Callable<T> task) {
+        return submitTask(lane, task, null);
+    }
+
+    // execute a task in the background on a lane, dropping it if it cannot start in time
+    // @param lane - the lane to run the task on
+    // @param task - the task to execute in the background
+    // @param startWithin - how long the task may wait before starting, or null for no deadline
+    // @return a future representing the pending result; it fails with a TimeoutException if the task was dropped
+    // @throws RejectedExecutionException if the lane is full and rejects overflow
+    public static <T> Future<T> submitTask(Lane lane, Callable<T> task, Duration startWithin) {
         if (isShutdown) {
             throw new IllegalStateException("ThreadManager has been shut down");
         }
-        return executor.submit(task);
+        return getBulkheads().get(lane).submit(task, deadlineNanos(startWithin));
+    }
+
+    // run a task on a lane and complete a future with its result
+    // @param lane - the lane to run the task on
+    // @param task - the task to execute in the background
+    // @return a future completed with the task's result, or exceptionally with its exception or the rejection
+    public static <T> CompletableFuture<T> supplyAsync(Lane lane, Callable<T> task) {
+        return supplyAsync(lane, task, null);
     }
-    
+
+    // run a task on a lane and complete a future with its result, dropping the task if it cannot start in time
+    // @param lane - the lane to run the task on
+    // @param task - the task to execute in the background
+    // @param startWithin - how long the task may wait before starting, or null for no deadline
+    // @return a future completed with the task's result, or exceptionally with its exception, the rejection
+    //         or a TimeoutException if the task was dropped
+    public static <T> CompletableFuture<T> supplyAsync(Lane lane, Callable<T> task, Duration startWithin) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        executeAsync(lane, task, result::complete, result::completeExceptionally, startWithin);
+        return result;
+    }
+
+    // get queue depth and active thread gauges for every lane
+    // @return one snapshot per lane
+    public static List<Bulkhead.Stats> getLaneStats() {
+        List<Bulkhead.Stats> stats = new ArrayList<>();
+        for (Bulkhead bulkhead : getBulkheads().values()) {
+            stats.add(bulkhead.getStats());
+        }
+        return stats;
+    }
+
+    // print the lane gauges to the console
+    public static void printLaneStats() {
+        System.out.println("\n--- Background Task Lanes (" + getExecutionMode() + " threads) ---");
+        for (Bulkhead.Stats stats : getLaneStats()) {
+            System.out.println(stats);
+        }
+    }
+
+    // create an executor that starts a new virtual thread for each task
+    // @return the executor, or null if this jvm does not support virtual threads
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            // looked up reflectively so the application still compiles and runs on java 17
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
     // shutdown the thread manager and release resources
     // this should be called when the application is closing
     public static void shutdown() {
+        shutdown(Duration.ofMillis(DEFAULT_DRAIN_TIMEOUT_MS));
+    }
+
+    // stop accepting tasks and let queued and running tasks finish
+    // tasks still unfinished when the timeout ends are cancelled
+    // @param timeout - how long to wait for all lanes together
+    public static synchronized void shutdown(Duration timeout) {
         if (!isShutdown) {
-            executor.shutdown();
-            isShutdown = true;
-            Logger.log(Logger.INFO, "ThreadManager has been shut down");
+            isShutdown = true; // refuse new tasks while draining
+            int unfinished = 0;
+            if (bulkheads != null) {
+                long deadline = System.nanoTime() + timeout.toNanos();
+                for (Bulkhead bulkhead : bulkheads.values()) {
+                    long remainingMillis = Math.max(0, (deadline - System.nanoTime()) / 1_000_000);
+                    unfinished += bulkhead.drain(remainingMillis);
+                }
+            }
+            if (unfinished > 0) {
+                Logger.log(Logger.WARNING, "ThreadManager shut down with {} unfinished tasks after {}", unfinished, timeout);
+            } else {
+                Logger.log(Logger.INFO, "ThreadManager has been shut down");
+            }
+        }
+    }
+
+    // get the lanes, creating them for the configured mode on first use
+    // @return the lanes
+    private static synchronized Map<Lane, Bulkhead> getBulkheads() {
+        if (bulkheads == null) {
+            if (mode == ExecutionMode.VIRTUAL) {
+                ExecutorService probe = newVirtualThreadPerTaskExecutor();
+                if (probe == null) {
+                    Logger.log(Logger.WARNING, "Virtual threads are not available on Java {}, using platform threads",
+                              Runtime.version().feature());
+                    mode = ExecutionMode.PLATFORM;
+                } else {
+                    probe.shutdown();
+                }
+            }
+
+            Map<Lane, Bulkhead> created = new EnumMap<>(Lane.class);
+            for (Lane lane : Lane.values()) {
+                LaneSettings laneSettings = settings.get(lane);
+                ExecutorService virtualExecutor = mode == ExecutionMode.VIRTUAL ? newVirtualThreadPerTaskExecutor() : null;
+                created.put(lane, new Bulkhead(lane.name().toLowerCase(), laneSettings.maxConcurrent,
+                        laneSettings.queueCapacity, lane.priority, laneSettings.policy,
+                        laneSettings.offerTimeoutMillis, virtualExecutor));
+            }
+            bulkheads = created;
+            Logger.log(Logger.INFO, "ThreadManager running in {} mode (interactive {}, background {}, maintenance {} threads)",
+                      mode, settings.get(Lane.INTERACTIVE).maxConcurrent, settings.get(Lane.BACKGROUND).maxConcurrent,
+                      settings.get(Lane.MAINTENANCE).maxConcurrent);
+        }
+        return bulkheads;
+    }
+
+    // convert a start-within duration to a System.nanoTime() deadline
+    // @param startWithin the duration, or null for no deadline
+    // @return the deadline, or 0 for no deadline
+    private static long deadlineNanos(Duration startWithin) {
+        if (startWithin == null) {
+            return 0;
+        }
+        long deadline = System.nanoTime() + startWithin.toNanos();
+        return deadline == 0 ? 1 : deadline; // 0 means no deadline
+    }
+
+    private static void checkNotStarted() {
+        if (bulkheads != null) {
+            throw new IllegalStateException("ThreadManager is already running in " + mode + " mode");
+        }
+    }
+
+    // size, queue capacity and overflow policy of a lane
+    private static class LaneSettings {
+        private final int maxConcurrent;
+        private final int queueCapacity;
+        private final Bulkhead.OverflowPolicy policy;
+        private final long offerTimeoutMillis;
+
+        LaneSettings(int maxConcurrent, int queueCapacity, Bulkhead.OverflowPolicy policy, long offerTimeoutMillis) {
+            this.maxConcurrent = maxConcurrent;
+            this.queueCapacity = queueCapacity;
+            this.policy = policy;
+            this.offerTimeoutMillis = offerTimeoutMillis;
         }
     }
 }